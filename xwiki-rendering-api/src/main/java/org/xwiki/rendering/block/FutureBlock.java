@@ -0,0 +1,210 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.block;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.renderer.AbstractChainingPrintRenderer;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+
+/**
+ * Placeholder for Blocks that are being computed concurrently (for example by a macro executed asynchronously). This
+ * block doesn't have any corresponding rendering stream event: its children are the computed Blocks, which are only
+ * known once the future is done. They are waited for when the block is traversed, i.e. in document order when
+ * rendering, so that the content located before can be output while the computation goes on. Before waiting, the
+ * printer of the listener is flushed if it supports it (see
+ * {@link org.xwiki.rendering.renderer.printer.WriterWikiPrinter}).
+ * <p>
+ * Note that {@link #getChildren()} never waits: the computed Blocks are not visible to the code walking the tree before
+ * it's rendered (transformations for example). The wait is bounded by a timeout after which the computation is
+ * cancelled and nothing is rendered, unless the future itself provides Blocks to display in that case (see
+ * {@link Future#get(long, TimeUnit)}).
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class FutureBlock extends AbstractBlock
+{
+    /**
+     * The computation of the Blocks.
+     */
+    private final Future<List<Block>> future;
+
+    /**
+     * The maximum time to wait for the computed Blocks.
+     */
+    private final long timeout;
+
+    /**
+     * The unit of {@link #timeout}.
+     */
+    private final TimeUnit timeoutUnit;
+
+    /**
+     * Shared with the clones so that only the first block to get the computed Blocks uses them directly and the other
+     * ones use copies of them.
+     */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    /**
+     * True if the computed Blocks have been set as children.
+     */
+    private boolean resolved;
+
+    /**
+     * @param future the computation of the Blocks to put in place of this block
+     * @param timeout the maximum time to wait for the computed Blocks
+     * @param timeoutUnit the unit of the timeout
+     */
+    public FutureBlock(Future<List<Block>> future, long timeout, TimeUnit timeoutUnit)
+    {
+        this.future = future;
+        this.timeout = timeout;
+        this.timeoutUnit = timeoutUnit;
+    }
+
+    /**
+     * @return the computation of the Blocks to put in place of this block
+     */
+    public Future<List<Block>> getFuture()
+    {
+        return this.future;
+    }
+
+    /**
+     * @return true if the computed Blocks are available as children of this block
+     */
+    public synchronized boolean isResolved()
+    {
+        return this.resolved;
+    }
+
+    @Override
+    public void traverse(Listener listener)
+    {
+        resolve(listener);
+
+        super.traverse(listener);
+    }
+
+    /**
+     * Wait for the computed Blocks, if not already done, and set them as children of this block. If the computation
+     * fails, times out or is interrupted nothing is rendered in place of this block. The wait is done without holding
+     * the lock of this block.
+     * 
+     * @param listener the listener about to receive the events of the computed Blocks
+     */
+    private void resolve(Listener listener)
+    {
+        if (isResolved()) {
+            return;
+        }
+
+        if (!this.future.isDone()) {
+            flush(listener);
+        }
+
+        List<Block> blocks = getComputedBlocks();
+
+        synchronized (this) {
+            if (!this.resolved) {
+                if (blocks == null) {
+                    blocks = Collections.emptyList();
+                } else if (this.claimed.getAndSet(true)) {
+                    // The Blocks are already used by a clone of this block
+                    List<Block> clones = new ArrayList<Block>(blocks.size());
+                    for (Block block : blocks) {
+                        clones.add(block.clone());
+                    }
+                    blocks = clones;
+                }
+
+                setChildren(blocks);
+                this.resolved = true;
+            }
+        }
+    }
+
+    /**
+     * @return the computed Blocks, or null if the computation failed, timed out or has been interrupted
+     */
+    private List<Block> getComputedBlocks()
+    {
+        List<Block> blocks;
+        try {
+            blocks = this.future.get(this.timeout, this.timeoutUnit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            blocks = null;
+        } catch (TimeoutException e) {
+            this.future.cancel(true);
+            blocks = null;
+        } catch (ExecutionException e) {
+            blocks = null;
+        } catch (CancellationException e) {
+            blocks = null;
+        }
+
+        return blocks;
+    }
+
+    /**
+     * Push what has already been output by the passed listener so that it's available while waiting for the computed
+     * Blocks.
+     * 
+     * @param listener the listener about to receive the events of the computed Blocks
+     */
+    private void flush(Listener listener)
+    {
+        WikiPrinter printer = null;
+        if (listener instanceof AbstractChainingPrintRenderer) {
+            // The current printer could be a temporary one, used to buffer some content
+            printer = ((AbstractChainingPrintRenderer) listener).getMainPrinter();
+        } else if (listener instanceof PrintRenderer) {
+            printer = ((PrintRenderer) listener).getPrinter();
+        }
+
+        if (printer instanceof Flushable) {
+            try {
+                ((Flushable) printer).flush();
+            } catch (IOException e) {
+                // The content will be output later, along with the computed Blocks
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return isResolved() ? getChildren().toString() : "[future]";
+    }
+}
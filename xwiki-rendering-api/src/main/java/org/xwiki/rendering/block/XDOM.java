@@ -22,6 +22,7 @@
 import org.xwiki.rendering.listener.Listener;
 import org.xwiki.rendering.listener.MetaData;
 import org.xwiki.rendering.util.IdGenerator;
+import org.xwiki.rendering.util.SourcePositions;
 
 import java.util.List;
 import java.util.Collections;
@@ -47,6 +48,11 @@ public class XDOM extends MetaDataBlock
      */
     private transient IdGenerator idGenerator;
 
+    /**
+     * The positions in the source of the blocks of this document, when the parser tracked them.
+     */
+    private transient SourcePositions sourcePositions;
+
     /**
      * @param childBlocks the list of children blocks of the block to construct
      * @see AbstractBlock#AbstractBlock(List)
@@ -104,6 +110,25 @@ public void setIdGenerator(IdGenerator idGenerator)
         this.idGenerator = idGenerator;
     }
 
+    /**
+     * @return the positions in the source of the blocks of this document or {@code null} if they have not been
+     *         tracked by the parser. Note that the blocks of a clone of this document have no position.
+     * @since 5.2M1
+     */
+    public SourcePositions getSourcePositions()
+    {
+        return this.sourcePositions;
+    }
+
+    /**
+     * @param sourcePositions the positions in the source of the blocks of this document
+     * @since 5.2M1
+     */
+    public void setSourcePositions(SourcePositions sourcePositions)
+    {
+        this.sourcePositions = sourcePositions;
+    }
+
     @Override
     public void before(Listener listener)
     {
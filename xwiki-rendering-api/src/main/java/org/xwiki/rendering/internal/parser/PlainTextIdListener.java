@@ -0,0 +1,439 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Stack;
+
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.ListType;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.QueueListener;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Buffers the events of a header while computing directly the plain text representation of its content, used to
+ * generate the header id. This is much lighter than sending the events to a plain text renderer but it only supports
+ * what can be found in a header: words, spaces, symbols, new lines, verbatim, formats, links, macros, etc. When
+ * another kind of event (paragraph, list, table, etc.) is received, or when a link to a document has no label (which
+ * would require to generate a label), {@link #getPlainText()} returns {@code null} and the buffered events should be
+ * sent to a plain text renderer instead.
+ * <p>
+ * The listener can be reused for several headers by calling {@link #reset()}. When a source locator is set, the events
+ * are sent by {@link #consumeEvents(Listener)} with the position in the source they had when they were received.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class PlainTextIdListener extends QueueListener
+{
+    /**
+     * Class ID for serialization.
+     */
+    private static final long serialVersionUID = 5329834536393451432L;
+
+    /**
+     * The plain text representation of the received events.
+     */
+    private StringBuilder plainText = new StringBuilder();
+
+    /**
+     * False when the plain text can't be computed from the received events.
+     */
+    private boolean supported = true;
+
+    /**
+     * Indicate for each current container block if it's still empty, same as what
+     * {@link org.xwiki.rendering.listener.chaining.EmptyBlockChainingListener} does.
+     */
+    private Stack<Boolean> containerBlockStates = new Stack<Boolean>();
+
+    /**
+     * Gives the position in the source of the received events, {@code null} if they are not located.
+     */
+    private transient ReplayableSourceLocator sourceLocator;
+
+    /**
+     * The begin and end offsets in the source of the received events, at index * 2 and index * 2 + 1.
+     */
+    private int[] offsets;
+
+    /**
+     * @param sourceLocator gives the position in the source of the received events, {@code null} if they are not
+     *            located
+     */
+    public void setSourceLocator(ReplayableSourceLocator sourceLocator)
+    {
+        this.sourceLocator = sourceLocator;
+        if (sourceLocator != null && this.offsets == null) {
+            this.offsets = new int[32];
+        }
+    }
+
+    /**
+     * @return the plain text representation of the received events or null if it can't be computed
+     */
+    public String getPlainText()
+    {
+        return this.supported ? this.plainText.toString() : null;
+    }
+
+    /**
+     * Forget the received events and the computed plain text.
+     */
+    public void reset()
+    {
+        clear();
+        this.plainText.setLength(0);
+        this.supported = true;
+        this.containerBlockStates.clear();
+    }
+
+    @Override
+    public boolean offer(Event event)
+    {
+        // Called for each received event
+        if (this.sourceLocator != null) {
+            int index = size() * 2;
+            if (index == this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, index * 2);
+            }
+            this.offsets[index] = this.sourceLocator.getBegin();
+            this.offsets[index + 1] = this.sourceLocator.getEnd();
+        }
+
+        return super.offer(event);
+    }
+
+    @Override
+    public void consumeEvents(Listener listener)
+    {
+        if (this.sourceLocator == null) {
+            super.consumeEvents(listener);
+        } else {
+            for (int index = 0; !isEmpty(); index += 2) {
+                Event event = remove();
+                this.sourceLocator.startReplay(this.offsets[index], this.offsets[index + 1]);
+                try {
+                    event.eventType.fireEvent(listener, event.eventParameters);
+                } finally {
+                    this.sourceLocator.stopReplay();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when a container block starts.
+     */
+    private void startContainerBlock()
+    {
+        markNotEmpty();
+        this.containerBlockStates.push(Boolean.TRUE);
+    }
+
+    /**
+     * Called when a container block ends.
+     *
+     * @return true if the container block was empty
+     */
+    private boolean stopContainerBlock()
+    {
+        return this.containerBlockStates.isEmpty() || this.containerBlockStates.pop();
+    }
+
+    /**
+     * Called for any event found inside the current container block.
+     */
+    private void markNotEmpty()
+    {
+        if (!this.containerBlockStates.isEmpty() && this.containerBlockStates.peek()) {
+            this.containerBlockStates.pop();
+            this.containerBlockStates.push(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Called for block level events, which are not supported.
+     */
+    private void unsupported()
+    {
+        this.supported = false;
+    }
+
+    // Supported events
+
+    @Override
+    public void beginFormat(Format format, Map<String, String> parameters)
+    {
+        startContainerBlock();
+        super.beginFormat(format, parameters);
+    }
+
+    @Override
+    public void endFormat(Format format, Map<String, String> parameters)
+    {
+        stopContainerBlock();
+        super.endFormat(format, parameters);
+    }
+
+    @Override
+    public void beginGroup(Map<String, String> parameters)
+    {
+        startContainerBlock();
+        super.beginGroup(parameters);
+    }
+
+    @Override
+    public void endGroup(Map<String, String> parameters)
+    {
+        stopContainerBlock();
+        super.endGroup(parameters);
+    }
+
+    @Override
+    public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        startContainerBlock();
+        super.beginLink(reference, isFreeStandingURI, parameters);
+    }
+
+    @Override
+    public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        if (stopContainerBlock()) {
+            if (reference.getType().equals(ResourceType.DOCUMENT)) {
+                // The label is generated by the plain text renderer
+                unsupported();
+            } else {
+                this.plainText.append(reference.getReference());
+            }
+        }
+        super.endLink(reference, isFreeStandingURI, parameters);
+    }
+
+    @Override
+    public void beginMacroMarker(String name, Map<String, String> parameters, String content, boolean isInline)
+    {
+        startContainerBlock();
+        super.beginMacroMarker(name, parameters, content, isInline);
+    }
+
+    @Override
+    public void endMacroMarker(String name, Map<String, String> parameters, String content, boolean isInline)
+    {
+        stopContainerBlock();
+        super.endMacroMarker(name, parameters, content, isInline);
+    }
+
+    @Override
+    public void onRawText(String text, Syntax syntax)
+    {
+        markNotEmpty();
+        super.onRawText(text, syntax);
+    }
+
+    @Override
+    public void onId(String name)
+    {
+        markNotEmpty();
+        super.onId(name);
+    }
+
+    @Override
+    public void onImage(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        markNotEmpty();
+        super.onImage(reference, isFreeStandingURI, parameters);
+    }
+
+    @Override
+    public void onMacro(String id, Map<String, String> parameters, String content, boolean isInline)
+    {
+        markNotEmpty();
+        super.onMacro(id, parameters, content, isInline);
+    }
+
+    @Override
+    public void onNewLine()
+    {
+        markNotEmpty();
+        this.plainText.append('\n');
+        super.onNewLine();
+    }
+
+    @Override
+    public void onSpace()
+    {
+        markNotEmpty();
+        this.plainText.append(' ');
+        super.onSpace();
+    }
+
+    @Override
+    public void onSpecialSymbol(char symbol)
+    {
+        markNotEmpty();
+        this.plainText.append(symbol);
+        super.onSpecialSymbol(symbol);
+    }
+
+    @Override
+    public void onVerbatim(String protectedString, boolean isInline, Map<String, String> parameters)
+    {
+        markNotEmpty();
+        this.plainText.append(protectedString);
+        super.onVerbatim(protectedString, isInline, parameters);
+    }
+
+    @Override
+    public void onWord(String word)
+    {
+        markNotEmpty();
+        this.plainText.append(word);
+        super.onWord(word);
+    }
+
+    // Unsupported events
+
+    @Override
+    public void beginDefinitionDescription()
+    {
+        unsupported();
+        super.beginDefinitionDescription();
+    }
+
+    @Override
+    public void beginDefinitionList(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginDefinitionList(parameters);
+    }
+
+    @Override
+    public void beginDefinitionTerm()
+    {
+        unsupported();
+        super.beginDefinitionTerm();
+    }
+
+    @Override
+    public void beginDocument(MetaData metaData)
+    {
+        unsupported();
+        super.beginDocument(metaData);
+    }
+
+    @Override
+    public void beginHeader(HeaderLevel level, String id, Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginHeader(level, id, parameters);
+    }
+
+    @Override
+    public void beginList(ListType listType, Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginList(listType, parameters);
+    }
+
+    @Override
+    public void beginListItem()
+    {
+        unsupported();
+        super.beginListItem();
+    }
+
+    @Override
+    public void beginParagraph(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginParagraph(parameters);
+    }
+
+    @Override
+    public void beginQuotation(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginQuotation(parameters);
+    }
+
+    @Override
+    public void beginQuotationLine()
+    {
+        unsupported();
+        super.beginQuotationLine();
+    }
+
+    @Override
+    public void beginSection(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginSection(parameters);
+    }
+
+    @Override
+    public void beginTable(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginTable(parameters);
+    }
+
+    @Override
+    public void beginTableCell(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginTableCell(parameters);
+    }
+
+    @Override
+    public void beginTableHeadCell(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginTableHeadCell(parameters);
+    }
+
+    @Override
+    public void beginTableRow(Map<String, String> parameters)
+    {
+        unsupported();
+        super.beginTableRow(parameters);
+    }
+
+    @Override
+    public void onEmptyLines(int count)
+    {
+        unsupported();
+        super.onEmptyLines(count);
+    }
+
+    @Override
+    public void onHorizontalLine(Map<String, String> parameters)
+    {
+        unsupported();
+        super.onHorizontalLine(parameters);
+    }
+}
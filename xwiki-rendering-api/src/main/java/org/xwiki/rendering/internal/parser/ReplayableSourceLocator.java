@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser;
+
+import org.xwiki.rendering.util.SourcePositions;
+
+/**
+ * Lets the events buffered to be sent later (for example the events of a header, sent once its id is known) keep the
+ * span they had when they were generated.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ReplayableSourceLocator implements SourceLocator
+{
+    /**
+     * Gives the span of the token being read.
+     */
+    private final SourceLocator locator;
+
+    /**
+     * The begin offset of the replayed events or {@link SourcePositions#UNKNOWN} if no event is replayed.
+     */
+    private int replayedBegin = SourcePositions.UNKNOWN;
+
+    /**
+     * The end offset of the replayed events.
+     */
+    private int replayedEnd;
+
+    /**
+     * @param locator gives the span of the token being read
+     */
+    public ReplayableSourceLocator(SourceLocator locator)
+    {
+        this.locator = locator;
+    }
+
+    @Override
+    public int getBegin()
+    {
+        return this.replayedBegin != SourcePositions.UNKNOWN ? this.replayedBegin : this.locator.getBegin();
+    }
+
+    @Override
+    public int getEnd()
+    {
+        return this.replayedBegin != SourcePositions.UNKNOWN ? this.replayedEnd : this.locator.getEnd();
+    }
+
+    @Override
+    public boolean isWhitespace(int offset)
+    {
+        return this.locator.isWhitespace(offset);
+    }
+
+    /**
+     * Locate the next events at the passed span, until {@link #stopReplay()} is called.
+     *
+     * @param begin the begin offset of the replayed events
+     * @param end the end offset of the replayed events
+     */
+    public void startReplay(int begin, int end)
+    {
+        this.replayedBegin = begin;
+        this.replayedEnd = end;
+    }
+
+    /**
+     * Locate the next events at the token being read.
+     */
+    public void stopReplay()
+    {
+        this.replayedBegin = SourcePositions.UNKNOWN;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser;
+
+/**
+ * Gives the span in the parsed source of the token that was being read when the current event was generated.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface SourceLocator
+{
+    /**
+     * @return the offset in the source where the token of the current event starts
+     */
+    int getBegin();
+
+    /**
+     * @return the offset in the source where the token of the current event ends
+     */
+    int getEnd();
+
+    /**
+     * @param offset an offset in the source, before the end of the token being read
+     * @return true if the character at the passed offset is a white space
+     */
+    boolean isWhitespace(int offset);
+}
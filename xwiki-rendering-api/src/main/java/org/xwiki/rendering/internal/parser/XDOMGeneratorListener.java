@@ -20,6 +20,7 @@
 package org.xwiki.rendering.internal.parser;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +67,7 @@
 import org.xwiki.rendering.listener.ListType;
 import org.xwiki.rendering.listener.Listener;
 import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.util.SourcePositions;
 
 /**
  * Produce a {@link XDOM} based on events.
@@ -79,6 +81,51 @@ public class XDOMGeneratorListener implements Listener
 
     private final MarkerBlock marker = new MarkerBlock();
 
+    /**
+     * Where to record the positions of the generated blocks, {@code null} if they are not tracked.
+     */
+    private final SourcePositions sourcePositions;
+
+    /**
+     * Gives the span of the source token of each event, when the positions are tracked.
+     */
+    private final SourceLocator sourceLocator;
+
+    /**
+     * The offsets of the begin events of the blocks being generated, when the positions are tracked.
+     */
+    private int[] beginOffsets;
+
+    private int beginDepth;
+
+    /**
+     * The begin offset of the block whose end event is being handled.
+     */
+    private int currentBeginOffset = SourcePositions.UNKNOWN;
+
+    /**
+     * The offset up to which the source has been attributed to the generated blocks.
+     */
+    private int consumedOffset;
+
+    /**
+     * The span of the source token of the last event.
+     */
+    private int tokenBegin = SourcePositions.UNKNOWN;
+
+    private int tokenEnd = SourcePositions.UNKNOWN;
+
+    /**
+     * The blocks ended by the events located at the current token. When the token turns out to start another block
+     * (e.g. the separator of the next table cell or list item) they are moved back to end before it.
+     */
+    private final List<Block> endedBlocks = new ArrayList<Block>();
+
+    /**
+     * The value of {@link #consumedOffset} before the blocks ended by the current token.
+     */
+    private int endedOffset;
+
     private static class MarkerBlock extends AbstractBlock
     {
         @Override
@@ -88,6 +135,181 @@ public void traverse(Listener listener)
         }
     }
 
+    /**
+     * Generates an XDOM without tracking the positions of the blocks in the source.
+     */
+    public XDOMGeneratorListener()
+    {
+        this(null, null);
+    }
+
+    /**
+     * The span of each block is computed from the span of the source token of its events: the begin of a block is the
+     * first non white space character read since the end of the previous block, its end is the last non white space
+     * character read before its end event. Words, spaces, new lines and special symbols cover exactly their token. The
+     * content of the events generated from a single token (e.g. the label of a link) is located at the whole token.
+     *
+     * @param sourcePositions where to record the positions of the generated blocks
+     * @param sourceLocator gives the span of the source token of each event
+     * @since 5.2M1
+     */
+    public XDOMGeneratorListener(SourcePositions sourcePositions, SourceLocator sourceLocator)
+    {
+        this.sourcePositions = sourcePositions;
+        this.sourceLocator = sourceLocator;
+        if (sourcePositions != null) {
+            this.beginOffsets = new int[16];
+        }
+    }
+
+    /**
+     * Read the span of the source token of the current event.
+     */
+    private void locate()
+    {
+        int begin = this.sourceLocator.getBegin();
+        int end = this.sourceLocator.getEnd();
+        if (begin != this.tokenBegin || end != this.tokenEnd) {
+            this.tokenBegin = begin;
+            this.tokenEnd = end;
+            this.endedBlocks.clear();
+        }
+    }
+
+    /**
+     * @param from an offset in the source
+     * @param to an offset in the source
+     * @return the offset of the first non white space character between the passed offsets, {@code to} if there's
+     *         none, {@code from} if {@code to} is before it
+     */
+    private int skipWhitespaces(int from, int to)
+    {
+        int offset = from;
+        while (offset < to && this.sourceLocator.isWhitespace(offset)) {
+            offset++;
+        }
+
+        return offset;
+    }
+
+    /**
+     * @param from an offset in the source
+     * @param to an offset in the source
+     * @return the offset following the last non white space character between the passed offsets, {@code from} if
+     *         there's none
+     */
+    private int trimWhitespaces(int from, int to)
+    {
+        int offset = to;
+        while (offset > from && this.sourceLocator.isWhitespace(offset - 1)) {
+            offset--;
+        }
+
+        return Math.max(offset, from);
+    }
+
+    private void setPosition(Block block, int begin, int end)
+    {
+        this.sourcePositions.setPosition(block, Math.min(begin, end), end);
+        this.consumedOffset = Math.max(this.consumedOffset, end);
+    }
+
+    private void pushMarker()
+    {
+        if (this.sourcePositions != null) {
+            locate();
+            if (!this.endedBlocks.isEmpty()) {
+                // The current token starts this block, so the blocks it ended actually end before it
+                for (Block block : this.endedBlocks) {
+                    this.sourcePositions.setPosition(block,
+                        Math.min(this.sourcePositions.getBegin(block), this.endedOffset), this.endedOffset);
+                }
+                this.consumedOffset = this.endedOffset;
+                this.endedBlocks.clear();
+            }
+            if (this.beginDepth == this.beginOffsets.length) {
+                this.beginOffsets = Arrays.copyOf(this.beginOffsets, this.beginDepth * 2);
+            }
+            this.beginOffsets[this.beginDepth++] = skipWhitespaces(this.consumedOffset, this.tokenEnd);
+        }
+        this.stack.push(this.marker);
+    }
+
+    /**
+     * @param block a block generated by an end event
+     */
+    private void push(Block block)
+    {
+        if (this.sourcePositions != null) {
+            locate();
+            if (this.endedBlocks.isEmpty()) {
+                this.endedOffset = this.consumedOffset;
+            }
+            int end = trimWhitespaces(this.consumedOffset, this.tokenEnd);
+            setPosition(block, this.currentBeginOffset != SourcePositions.UNKNOWN ? this.currentBeginOffset : end, end);
+            this.currentBeginOffset = SourcePositions.UNKNOWN;
+            this.endedBlocks.add(block);
+        }
+        this.stack.push(block);
+    }
+
+    /**
+     * @param block a block generated by an event without begin and end, located anywhere in the source read since the
+     *            end of the previous block (e.g. verbatim or macros, which are sent once the following token is read)
+     */
+    private void pushLeaf(Block block)
+    {
+        if (this.sourcePositions != null) {
+            locate();
+            this.endedBlocks.clear();
+            if (this.tokenEnd <= this.consumedOffset) {
+                // The token has already been attributed to other blocks (e.g. the label of a link)
+                setPosition(block, this.tokenBegin, this.tokenEnd);
+            } else {
+                int begin = skipWhitespaces(this.consumedOffset, this.tokenEnd);
+                if (begin == this.tokenEnd) {
+                    // Only white spaces (e.g. empty lines)
+                    setPosition(block, this.consumedOffset, this.tokenEnd);
+                } else {
+                    setPosition(block, begin, trimWhitespaces(begin, this.tokenEnd));
+                }
+            }
+        }
+        this.stack.push(block);
+    }
+
+    /**
+     * @param block a block generated by an event matching its source token (word, special symbol, etc.), or the part of
+     *            the token not attributed yet when the token generates several events
+     */
+    private void pushToken(Block block)
+    {
+        pushToken(block, false);
+    }
+
+    /**
+     * @param block a block generated by an event matching its source token, or the part of the token not attributed
+     *            yet when the token generates several events
+     * @param character true if the block is generated for each white space character of its token (i.e. a space)
+     */
+    private void pushToken(Block block, boolean character)
+    {
+        if (this.sourcePositions != null) {
+            locate();
+            this.endedBlocks.clear();
+            int begin = this.tokenBegin;
+            if (begin < this.consumedOffset && this.consumedOffset < this.tokenEnd) {
+                begin = this.consumedOffset;
+            }
+            int end = this.tokenEnd;
+            if (character && begin < end && this.sourceLocator.isWhitespace(begin)) {
+                end = begin + 1;
+            }
+            setPosition(block, begin, end);
+        }
+        this.stack.push(block);
+    }
+
     public XDOM getXDOM()
     {
         List<Block> blocks = generateListFromStack();
@@ -108,6 +330,9 @@ private List<Block> generateListFromStack()
                 blocks.add(this.stack.pop());
             } else {
                 this.stack.pop();
+                if (this.sourcePositions != null && this.beginDepth > 0) {
+                    this.currentBeginOffset = this.beginOffsets[--this.beginDepth];
+                }
                 break;
             }
         }
@@ -118,19 +343,19 @@ private List<Block> generateListFromStack()
     @Override
     public void beginDefinitionDescription()
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginDefinitionList(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginDefinitionTerm()
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     /**
@@ -140,97 +365,97 @@ public void beginDefinitionTerm()
     @Override
     public void beginDocument(MetaData metaData)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginFormat(Format format, Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginGroup(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginHeader(HeaderLevel level, String id, Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginList(ListType listType, Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginListItem()
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginMacroMarker(String name, Map<String, String> macroParameters, String content, boolean isInline)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginParagraph(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginQuotation(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginQuotationLine()
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginSection(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginTable(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginTableCell(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginTableHeadCell(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginTableRow(Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     /**
@@ -240,25 +465,25 @@ public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Ma
     @Override
     public void beginMetaData(MetaData metadata)
     {
-        this.stack.push(this.marker);
+        pushMarker();
     }
 
     @Override
     public void endDefinitionDescription()
     {
-        this.stack.push(new DefinitionDescriptionBlock(generateListFromStack()));
+        push(new DefinitionDescriptionBlock(generateListFromStack()));
     }
 
     @Override
     public void endDefinitionList(Map<String, String> parameters)
     {
-        this.stack.push(new DefinitionListBlock(generateListFromStack(), parameters));
+        push(new DefinitionListBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endDefinitionTerm()
     {
-        this.stack.push(new DefinitionTermBlock(generateListFromStack()));
+        push(new DefinitionTermBlock(generateListFromStack()));
     }
 
     /**
@@ -268,101 +493,101 @@ public void endDefinitionTerm()
     @Override
     public void endDocument(MetaData metaData)
     {
-        this.stack.push(new XDOM(generateListFromStack(), metaData));
+        push(new XDOM(generateListFromStack(), metaData));
     }
 
     @Override
     public void endFormat(Format format, Map<String, String> parameters)
     {
-        this.stack.push(new FormatBlock(generateListFromStack(), format, parameters));
+        push(new FormatBlock(generateListFromStack(), format, parameters));
     }
 
     @Override
     public void endGroup(Map<String, String> parameters)
     {
-        this.stack.push(new GroupBlock(generateListFromStack(), parameters));
+        push(new GroupBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endHeader(HeaderLevel level, String id, Map<String, String> parameters)
     {
-        this.stack.push(new HeaderBlock(generateListFromStack(), level, parameters, id));
+        push(new HeaderBlock(generateListFromStack(), level, parameters, id));
     }
 
     @Override
     public void endList(ListType listType, Map<String, String> parameters)
     {
         if (listType == ListType.BULLETED) {
-            this.stack.push(new BulletedListBlock(generateListFromStack(), parameters));
+            push(new BulletedListBlock(generateListFromStack(), parameters));
         } else {
-            this.stack.push(new NumberedListBlock(generateListFromStack(), parameters));
+            push(new NumberedListBlock(generateListFromStack(), parameters));
         }
     }
 
     @Override
     public void endListItem()
     {
-        this.stack.push(new ListItemBlock(generateListFromStack()));
+        push(new ListItemBlock(generateListFromStack()));
     }
 
     @Override
     public void endMacroMarker(String name, Map<String, String> macroParameters, String content, boolean isInline)
     {
-        this.stack.push(new MacroMarkerBlock(name, macroParameters, content, generateListFromStack(), isInline));
+        push(new MacroMarkerBlock(name, macroParameters, content, generateListFromStack(), isInline));
     }
 
     @Override
     public void endParagraph(Map<String, String> parameters)
     {
-        this.stack.push(new ParagraphBlock(generateListFromStack(), parameters));
+        push(new ParagraphBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endQuotation(Map<String, String> parameters)
     {
-        this.stack.push(new QuotationBlock(generateListFromStack(), parameters));
+        push(new QuotationBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endQuotationLine()
     {
-        this.stack.push(new QuotationLineBlock(generateListFromStack()));
+        push(new QuotationLineBlock(generateListFromStack()));
     }
 
     @Override
     public void endSection(Map<String, String> parameters)
     {
-        this.stack.push(new SectionBlock(generateListFromStack(), parameters));
+        push(new SectionBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endTable(Map<String, String> parameters)
     {
-        this.stack.push(new TableBlock(generateListFromStack(), parameters));
+        push(new TableBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endTableCell(Map<String, String> parameters)
     {
-        this.stack.push(new TableCellBlock(generateListFromStack(), parameters));
+        push(new TableCellBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endTableHeadCell(Map<String, String> parameters)
     {
-        this.stack.push(new TableHeadCellBlock(generateListFromStack(), parameters));
+        push(new TableHeadCellBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endTableRow(Map<String, String> parameters)
     {
-        this.stack.push(new TableRowBlock(generateListFromStack(), parameters));
+        push(new TableRowBlock(generateListFromStack(), parameters));
     }
 
     @Override
     public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
     {
-        this.stack.push(new LinkBlock(generateListFromStack(), reference, isFreeStandingURI, parameters));
+        push(new LinkBlock(generateListFromStack(), reference, isFreeStandingURI, parameters));
     }
 
     /**
@@ -372,72 +597,72 @@ public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<
     @Override
     public void endMetaData(MetaData metadata)
     {
-        this.stack.push(new MetaDataBlock(generateListFromStack(), metadata));
+        push(new MetaDataBlock(generateListFromStack(), metadata));
     }
 
     @Override
     public void onEmptyLines(int count)
     {
-        this.stack.push(new EmptyLinesBlock(count));
+        pushLeaf(new EmptyLinesBlock(count));
     }
 
     @Override
     public void onHorizontalLine(Map<String, String> parameters)
     {
-        this.stack.push(new HorizontalLineBlock(parameters));
+        pushLeaf(new HorizontalLineBlock(parameters));
     }
 
     @Override
     public void onId(String name)
     {
-        this.stack.push(new IdBlock(name));
+        pushLeaf(new IdBlock(name));
     }
 
     @Override
     public void onMacro(String id, Map<String, String> macroParameters, String content, boolean isInline)
     {
-        this.stack.push(new MacroBlock(id, macroParameters, content, isInline));
+        pushLeaf(new MacroBlock(id, macroParameters, content, isInline));
     }
 
     @Override
     public void onNewLine()
     {
-        this.stack.push(new NewLineBlock());
+        pushToken(new NewLineBlock());
     }
 
     @Override
     public void onRawText(String rawContent, Syntax syntax)
     {
-        this.stack.push(new RawBlock(rawContent, syntax));
+        pushLeaf(new RawBlock(rawContent, syntax));
     }
 
     @Override
     public void onSpace()
     {
-        this.stack.push(new SpaceBlock());
+        pushToken(new SpaceBlock(), true);
     }
 
     @Override
     public void onSpecialSymbol(char symbol)
     {
-        this.stack.push(new SpecialSymbolBlock(symbol));
+        pushToken(new SpecialSymbolBlock(symbol));
     }
 
     @Override
     public void onVerbatim(String protectedString, boolean isInline, Map<String, String> parameters)
     {
-        this.stack.push(new VerbatimBlock(protectedString, parameters, isInline));
+        pushLeaf(new VerbatimBlock(protectedString, parameters, isInline));
     }
 
     @Override
     public void onWord(String word)
     {
-        this.stack.push(new WordBlock(word));
+        pushToken(new WordBlock(word));
     }
 
     @Override
     public void onImage(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
     {
-        this.stack.push(new ImageBlock(reference, isFreeStandingURI, parameters));
+        pushLeaf(new ImageBlock(reference, isFreeStandingURI, parameters));
     }
 }
@@ -0,0 +1,372 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.printer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Writes XHTML directly to a {@link WikiWriter}, without building intermediate DOM4J nodes. The output is the same as
+ * the one of {@link XHTMLWriter}:
+ * <ul>
+ * <li>{@code <}, {@code >} and {@code &} are escaped, as well as {@code "} in attribute values;</li>
+ * <li>control characters, except tab, line feed and carriage return, are escaped as numerical entities;</li>
+ * <li>{@code &#123;} is used for the left curly bracket so that the output can be put in a XWiki 2.x HTML macro;</li>
+ * <li>non US-ASCII characters are not escaped since {@link XHTMLWriter} doesn't set any maximum allowed character;</li>
+ * <li>empty elements are closed with {@code />}.</li>
+ * </ul>
+ * Each tag is prepared in a reused buffer and sent to the printer at once, and text that doesn't need any escaping is
+ * sent as is.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XHTMLStreamWriter
+{
+    /**
+     * The escaped form of the US-ASCII characters in text nodes, null for the characters which are not escaped.
+     */
+    private static final String[] TEXT_ESCAPES = new String[128];
+
+    /**
+     * The escaped form of the US-ASCII characters in attribute values, null for the characters which are not escaped.
+     */
+    private static final String[] ATTRIBUTE_ESCAPES = new String[128];
+
+    /**
+     * The end of an empty element.
+     */
+    private static final String EMPTY_ELEMENT_END = "/>";
+
+    static {
+        for (char c = 0; c < 32; c++) {
+            if (c != '\t' && c != '\n' && c != '\r') {
+                TEXT_ESCAPES[c] = "&#" + (int) c + ';';
+            }
+        }
+        TEXT_ESCAPES['<'] = "&lt;";
+        TEXT_ESCAPES['>'] = "&gt;";
+        TEXT_ESCAPES['&'] = "&amp;";
+        TEXT_ESCAPES['{'] = "&#123;";
+
+        System.arraycopy(TEXT_ESCAPES, 0, ATTRIBUTE_ESCAPES, 0, TEXT_ESCAPES.length);
+        ATTRIBUTE_ESCAPES['"'] = "&quot;";
+    }
+
+    /**
+     * The writer to which the XHTML is sent.
+     */
+    private final WikiWriter writer;
+
+    /**
+     * Used to prepare the tags and the escaped text before printing them.
+     */
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * @see #setEscapeText(boolean)
+     */
+    private boolean escapeText = true;
+
+    /**
+     * @param writer the writer to which the XHTML is sent
+     */
+    public XHTMLStreamWriter(WikiWriter writer)
+    {
+        this.writer = writer;
+    }
+
+    /**
+     * @param escapeText false to print text as is (e.g. in CDATA sections), true to escape it
+     */
+    public void setEscapeText(boolean escapeText)
+    {
+        this.escapeText = escapeText;
+    }
+
+    /**
+     * @param text the text to print, escaped unless {@link #setEscapeText(boolean)} has been called with false
+     */
+    public void writeText(String text)
+    {
+        if (text != null && text.length() > 0) {
+            if (this.escapeText) {
+                int index = indexOfEscaped(text, TEXT_ESCAPES);
+                if (index < 0) {
+                    print(text);
+                } else {
+                    appendEscaped(text, index, TEXT_ESCAPES);
+                    flushBuffer();
+                }
+            } else {
+                print(text);
+            }
+        }
+    }
+
+    /**
+     * Print an empty element, in the form {@code <name att1="value1"/>}. Like a DOM element, a name appearing several
+     * times keeps its first position and its last value, and a null value removes the attribute.
+     * 
+     * @param name the name of the element
+     * @param attributes the attributes of the element, can be null
+     */
+    public void writeEmptyElement(String name, String[][] attributes)
+    {
+        if (attributes != null && !isSimpleAttributes(attributes)) {
+            Map<String, String> elementAttributes = new LinkedHashMap<String, String>();
+            for (String[] entry : attributes) {
+                if (entry[1] != null) {
+                    elementAttributes.put(entry[0], entry[1]);
+                } else {
+                    elementAttributes.remove(entry[0]);
+                }
+            }
+            writeEmptyElement(name, elementAttributes);
+        } else {
+            this.buffer.append('<').append(name);
+            appendAttributes(attributes);
+            this.buffer.append(EMPTY_ELEMENT_END);
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Print an empty element, in the form {@code <name att1="value1"/>}. Attributes with a null value are ignored.
+     * 
+     * @param name the name of the element
+     * @param attributes the attributes of the element, can be null
+     */
+    public void writeEmptyElement(String name, Map<String, String> attributes)
+    {
+        this.buffer.append('<').append(name);
+        appendAttributes(attributes);
+        this.buffer.append(EMPTY_ELEMENT_END);
+        flushBuffer();
+    }
+
+    /**
+     * Print a start tag, in the form {@code <name att1="value1">}. A null value is printed as an empty value.
+     * 
+     * @param name the name of the element
+     * @param attributes the attributes of the element, can be null
+     */
+    public void writeStartElement(String name, String[][] attributes)
+    {
+        this.buffer.append('<').append(name);
+        if (attributes != null) {
+            for (String[] entry : attributes) {
+                appendAttribute(entry[0], entry[1]);
+            }
+        }
+        this.buffer.append('>');
+        flushBuffer();
+    }
+
+    /**
+     * Print a start tag, in the form {@code <name att1="value1">}. Entries with a null key or value are ignored.
+     * 
+     * @param name the name of the element
+     * @param attributes the attributes of the element, can be null
+     */
+    public void writeStartElement(String name, Map<String, String> attributes)
+    {
+        this.buffer.append('<').append(name);
+        if (attributes != null) {
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    appendAttribute(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        this.buffer.append('>');
+        flushBuffer();
+    }
+
+    /**
+     * Print a start tag, in the form {@code <name att1="value1">}.
+     * 
+     * @param name the name of the element
+     * @param attributes the attributes of the element, can be null
+     */
+    public void writeStartElement(String name, Attributes attributes)
+    {
+        this.buffer.append('<').append(name);
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                appendAttribute(attributes.getQName(i), attributes.getValue(i));
+            }
+        }
+        this.buffer.append('>');
+        flushBuffer();
+    }
+
+    /**
+     * Print an end tag, in the form <code>&lt;/name&gt;</code>.
+     * 
+     * @param name the name of the element
+     */
+    public void writeEndElement(String name)
+    {
+        this.buffer.append("</").append(name).append('>');
+        flushBuffer();
+    }
+
+    /**
+     * @param content the content of the comment, printed as is
+     */
+    public void writeComment(String content)
+    {
+        this.buffer.append("<!--").append(content).append("-->");
+        flushBuffer();
+    }
+
+    /**
+     * Start a CDATA section.
+     */
+    public void writeStartCData()
+    {
+        print("<![CDATA[");
+    }
+
+    /**
+     * End a CDATA section.
+     */
+    public void writeEndCData()
+    {
+        print("]]>");
+    }
+
+    /**
+     * @param attributes the attributes of an empty element
+     * @return true if all the attributes have a value and a different name
+     */
+    private boolean isSimpleAttributes(String[][] attributes)
+    {
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i][1] == null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (attributes[i][0].equals(attributes[j][0])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param attributes the attributes to append, can be null
+     */
+    private void appendAttributes(String[][] attributes)
+    {
+        if (attributes != null) {
+            for (String[] entry : attributes) {
+                appendAttribute(entry[0], entry[1]);
+            }
+        }
+    }
+
+    /**
+     * @param attributes the attributes to append, the ones with a null value are ignored
+     */
+    private void appendAttributes(Map<String, String> attributes)
+    {
+        if (attributes != null) {
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                if (entry.getValue() != null) {
+                    appendAttribute(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the attribute
+     * @param value the value of the attribute, null for an empty value
+     */
+    private void appendAttribute(String name, String value)
+    {
+        this.buffer.append(' ').append(name).append("=\"");
+        if (value != null) {
+            appendEscaped(value, indexOfEscaped(value, ATTRIBUTE_ESCAPES), ATTRIBUTE_ESCAPES);
+        }
+        this.buffer.append('"');
+    }
+
+    /**
+     * @param text the text to look into
+     * @param escapes the escaped form of the US-ASCII characters
+     * @return the index of the first character to escape, -1 if there's none
+     */
+    private static int indexOfEscaped(String text, String[] escapes)
+    {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < escapes.length && escapes[c] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param text the text to escape
+     * @param start the index of the first character to escape, -1 if there's none
+     * @param escapes the escaped form of the US-ASCII characters
+     */
+    private void appendEscaped(String text, int start, String[] escapes)
+    {
+        if (start < 0) {
+            this.buffer.append(text);
+        } else {
+            this.buffer.append(text, 0, start);
+            int last = start;
+            for (int i = start; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < escapes.length && escapes[c] != null) {
+                    this.buffer.append(text, last, i).append(escapes[c]);
+                    last = i + 1;
+                }
+            }
+            this.buffer.append(text, last, text.length());
+        }
+    }
+
+    /**
+     * Print and clear the buffer.
+     */
+    private void flushBuffer()
+    {
+        print(this.buffer.toString());
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * @param text the text to send to the printer
+     */
+    private void print(String text)
+    {
+        this.writer.getWikiPrinter().print(text);
+    }
+}
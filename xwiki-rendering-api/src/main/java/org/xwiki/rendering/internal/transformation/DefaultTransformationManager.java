@@ -40,6 +40,7 @@
 import org.xwiki.rendering.transformation.TransformationContext;
 import org.xwiki.rendering.transformation.TransformationException;
 import org.xwiki.rendering.transformation.TransformationManager;
+import org.xwiki.rendering.transformation.inline.InlineTextRewriter;
 
 /**
  * Calls all existing transformations (executed by priority) on an existing XDOM object to generate a new transformed
@@ -82,21 +83,56 @@ public void performTransformations(XDOM dom, Syntax syntax) throws Transformatio
     public void performTransformations(Block block, TransformationContext context) throws TransformationException
     {
         boolean error = false;
+
+        // Inline text rewriters executed one after the other are executed together, in a single traversal
+        List<InlineTextRewriter> rewriters = new ArrayList<InlineTextRewriter>();
+
         for (Transformation transformation : getTransformations()) {
-            try {
-                transformation.transform(block, context);
-            } catch (Exception e) {
-                // Continue running the other transformations
-                this.logger.error("Failed to execute transformation", e);
-                error = true;
+            if (transformation instanceof InlineTextRewriter) {
+                rewriters.add((InlineTextRewriter) transformation);
+            } else {
+                error |= !performRewrites(block, context, rewriters);
+                try {
+                    transformation.transform(block, context);
+                } catch (Exception e) {
+                    // Continue running the other transformations
+                    this.logger.error("Failed to execute transformation", e);
+                    error = true;
+                }
             }
         }
+        error |= !performRewrites(block, context, rewriters);
+
         if (error) {
             throw new TransformationException("One or several transformations failed to execute properly. "
                 + "See the logs for details.");
         }
     }
 
+    /**
+     * Execute the passed inline text rewriters in a single traversal of the blocks.
+     * 
+     * @param block the block to transform
+     * @param context the context of the transformation
+     * @param rewriters the rewriters to execute, cleared once they are executed
+     * @return false if the rewriters failed to execute, true otherwise
+     */
+    private boolean performRewrites(Block block, TransformationContext context, List<InlineTextRewriter> rewriters)
+    {
+        boolean success = true;
+        if (!rewriters.isEmpty()) {
+            try {
+                new InlineTextRewritingPass(rewriters, context).rewrite(block);
+            } catch (Exception e) {
+                // Continue running the other transformations
+                this.logger.error("Failed to execute the inline text rewriting transformations {}", rewriters, e);
+                success = false;
+            }
+            rewriters.clear();
+        }
+        return success;
+    }
+
     /**
      * @return the ordered list of Transformations to execute
      */
@@ -0,0 +1,169 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.internal.block.ProtectedBlockFilter;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.inline.InlineTextMatcher;
+import org.xwiki.rendering.transformation.inline.InlineTextRewriter;
+
+/**
+ * Executes several {@link InlineTextRewriter}s in a single traversal of the blocks. The children of each block are
+ * given to the matchers of all the rewriters, the first matching rewriter winning, and the replacements are applied
+ * in one go once all the children have been seen. Protected blocks are left untouched and break any suite of blocks.
+ * <p>
+ * A pass is not thread safe and should be used for a single transformation.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class InlineTextRewritingPass
+{
+    /**
+     * The rewriters to execute.
+     */
+    private final List< ? extends InlineTextRewriter> rewriters;
+
+    /**
+     * The context of the transformation.
+     */
+    private final TransformationContext context;
+
+    /**
+     * Used to filter protected blocks (code macro marker block, etc).
+     */
+    private final ProtectedBlockFilter filter = new ProtectedBlockFilter();
+
+    /**
+     * The matchers of the rewriters, for each depth in the block tree since the suite of the parent blocks is not
+     * finished when the children of a block are traversed. Created when first needed.
+     */
+    private final List<List<InlineTextMatcher>> matchers = new ArrayList<List<InlineTextMatcher>>();
+
+    /**
+     * @param rewriters the rewriters to execute, by priority order
+     * @param context the context of the transformation
+     */
+    public InlineTextRewritingPass(List< ? extends InlineTextRewriter> rewriters, TransformationContext context)
+    {
+        this.rewriters = rewriters;
+        this.context = context;
+    }
+
+    /**
+     * Rewrite the descendants of the passed block.
+     * 
+     * @param block the block whose descendants to rewrite
+     */
+    public void rewrite(Block block)
+    {
+        if (!getMatchers(0).isEmpty()) {
+            rewriteChildren(block, 0);
+        }
+    }
+
+    /**
+     * Replace the suites of children blocks matched by the rewriters, in a single pass, and do the same for the
+     * children of the children.
+     * 
+     * @param parent the block whose children to rewrite
+     * @param depth the depth of the children in the traversed tree
+     */
+    private void rewriteChildren(Block parent, int depth)
+    {
+        List<Block> children = parent.getChildren();
+        List<InlineTextMatcher> depthMatchers = getMatchers(depth);
+        reset(depthMatchers);
+
+        // Only created when there's a match
+        List<Block> newChildren = null;
+        // The position of the first child not yet copied in the new children
+        int copied = 0;
+
+        for (int i = 0; i < children.size(); i++) {
+            Block child = children.get(i);
+            if (this.filter.isProtectedBlock(child)) {
+                reset(depthMatchers);
+            } else {
+                InlineTextMatcher matcher = null;
+                int matchLength = 0;
+                for (InlineTextMatcher candidate : depthMatchers) {
+                    matchLength = candidate.next(child);
+                    if (matchLength > 0) {
+                        matcher = candidate;
+                        break;
+                    }
+                }
+
+                if (matcher != null) {
+                    if (newChildren == null) {
+                        newChildren = new ArrayList<Block>(children.size());
+                    }
+                    int matchStart = i - matchLength + 1;
+                    newChildren.addAll(children.subList(copied, matchStart));
+                    newChildren.addAll(matcher.getReplacement(children.subList(matchStart, i + 1)));
+                    copied = i + 1;
+                    reset(depthMatchers);
+                } else if (!child.getChildren().isEmpty()) {
+                    rewriteChildren(child, depth + 1);
+                }
+            }
+        }
+
+        if (newChildren != null) {
+            newChildren.addAll(children.subList(copied, children.size()));
+            parent.setChildren(newChildren);
+        }
+    }
+
+    /**
+     * @param depth the depth in the traversed tree
+     * @return the matchers to use at the passed depth
+     */
+    private List<InlineTextMatcher> getMatchers(int depth)
+    {
+        while (this.matchers.size() <= depth) {
+            List<InlineTextMatcher> depthMatchers = new ArrayList<InlineTextMatcher>(this.rewriters.size());
+            for (InlineTextRewriter rewriter : this.rewriters) {
+                InlineTextMatcher matcher = rewriter.createMatcher(this.context);
+                if (matcher != null) {
+                    depthMatchers.add(matcher);
+                }
+            }
+            this.matchers.add(depthMatchers);
+        }
+
+        return this.matchers.get(depth);
+    }
+
+    /**
+     * @param depthMatchers the matchers to reset
+     */
+    private void reset(List<InlineTextMatcher> depthMatchers)
+    {
+        for (InlineTextMatcher matcher : depthMatchers) {
+            matcher.reset();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.parser;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.rendering.block.XDOM;
+
+/**
+ * Parser able to update a previously parsed {@link XDOM} after an edit of its source, by parsing again only the top
+ * level blocks affected by the edit.
+ * <p>
+ * The XDOM generated by such a parser contains one {@link org.xwiki.rendering.block.MetaDataBlock} per top level
+ * chunk of source, holding the chunk offset ({@link #SOURCE_OFFSET}) and text ({@link #SOURCE_TEXT}). These chunks are
+ * nested in the same {@link org.xwiki.rendering.block.SectionBlock}s as the blocks generated by the full parser of the
+ * syntax. Updating the XDOM after an edit always produces the same result as parsing the edited source with
+ * {@link #parse(java.io.Reader)}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface IncrementalParser extends Parser
+{
+    /**
+     * The metadata holding the offset (an {@link Integer}) in the source of the content of a top level chunk.
+     */
+    String SOURCE_OFFSET = "sourceOffset";
+
+    /**
+     * The metadata holding the source (a {@link String}) of the content of a top level chunk.
+     */
+    String SOURCE_TEXT = "sourceText";
+
+    /**
+     * @param previousXDOM the XDOM generated by a previous parsing of this parser, it's not modified
+     * @param offset the offset in the previous source where the edit starts
+     * @param removedLength the number of characters removed from the previous source, starting at the offset
+     * @param insertedText the text inserted at the offset
+     * @return a new XDOM corresponding to the edited source
+     * @throws ParseException if the previous XDOM has not been generated by this parser, if the edit doesn't match
+     *             the previous source or if an unexpected error happens during the parsing
+     */
+    XDOM parse(XDOM previousXDOM, int offset, int removedLength, String insertedText) throws ParseException;
+}
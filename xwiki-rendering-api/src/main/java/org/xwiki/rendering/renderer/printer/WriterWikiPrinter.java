@@ -0,0 +1,98 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.renderer.printer;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Printer using a {@link Writer} as the underlying output target, which allows to stream the rendered content (to an
+ * HTTP response for example) instead of keeping it in memory. The printer can be flushed, which is done for example
+ * before waiting for the content computed by an asynchronous macro (see
+ * {@link org.xwiki.rendering.block.FutureBlock}).
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class WriterWikiPrinter implements WikiPrinter, Flushable
+{
+    /**
+     * The writer where to put the provided {@link String}s.
+     */
+    private Writer writer;
+
+    /**
+     * @param writer the {@link Writer} to where to put the provided {@link String}s.
+     */
+    public WriterWikiPrinter(Writer writer)
+    {
+        this.writer = writer;
+    }
+
+    /**
+     * @return the writer where the provided {@link String}s are put.
+     */
+    public Writer getWriter()
+    {
+        return this.writer;
+    }
+
+    /**
+     * This method is protected to allow classes extending this one to override what a new line is.
+     * 
+     * @return a new line symbols
+     */
+    protected String getEOL()
+    {
+        return "\n";
+    }
+
+    @Override
+    public void print(String text)
+    {
+        write(text);
+    }
+
+    @Override
+    public void println(String text)
+    {
+        write(text);
+        write(getEOL());
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        this.writer.flush();
+    }
+
+    /**
+     * @param text the text to write
+     */
+    private void write(String text)
+    {
+        try {
+            this.writer.write(text);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to the printer", e);
+        }
+    }
+}
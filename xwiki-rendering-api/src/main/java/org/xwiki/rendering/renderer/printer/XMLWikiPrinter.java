@@ -19,18 +19,12 @@
  */
 package org.xwiki.rendering.renderer.printer;
 
-import java.io.IOException;
 import java.util.Map;
 
-import org.dom4j.Element;
 import org.dom4j.io.XMLWriter;
-import org.dom4j.tree.DefaultComment;
-import org.dom4j.tree.DefaultElement;
-import org.dom4j.tree.DefaultEntity;
 import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.AttributesImpl;
 import org.xwiki.rendering.internal.renderer.printer.WikiWriter;
+import org.xwiki.rendering.internal.renderer.printer.XHTMLStreamWriter;
 import org.xwiki.rendering.internal.renderer.printer.XHTMLWriter;
 import org.xwiki.xml.XMLUtils;
 
@@ -44,8 +38,18 @@
 {
     protected WikiWriter wikiWriter;
 
+    /**
+     * @deprecated since 5.2M1 the printer doesn't use DOM4J anymore, this writer is only created when
+     *             {@link #getXMLWriter()} is called
+     */
+    @Deprecated
     protected XMLWriter xmlWriter;
 
+    /**
+     * Used to print the XML.
+     */
+    private XHTMLStreamWriter streamWriter;
+
     /**
      * @param printer the object to which to write the XHTML output to
      */
@@ -53,11 +57,20 @@ public XMLWikiPrinter(WikiPrinter printer)
     {
         this.wikiWriter = new WikiWriter(printer);
 
-        this.xmlWriter = new XHTMLWriter(this.wikiWriter);
+        this.streamWriter = new XHTMLStreamWriter(this.wikiWriter);
     }
 
+    /**
+     * @return a DOM4J writer sending its output to the same printer
+     * @deprecated since 5.2M1 the printer doesn't use DOM4J anymore, use the print methods instead
+     */
+    @Deprecated
     public XMLWriter getXMLWriter()
     {
+        if (this.xmlWriter == null) {
+            this.xmlWriter = new XHTMLWriter(this.wikiWriter);
+        }
+
         return this.xmlWriter;
     }
 
@@ -71,11 +84,7 @@ public void setWikiPrinter(WikiPrinter printer)
      */
     public void printXML(String str)
     {
-        try {
-            this.xmlWriter.write(str);
-        } catch (IOException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeText(str);
     }
 
     /**
@@ -91,19 +100,7 @@ public void printXMLElement(String name)
      */
     public void printXMLElement(String name, String[][] attributes)
     {
-        Element element = new DefaultElement(name);
-
-        if (attributes != null && attributes.length > 0) {
-            for (String[] entry : attributes) {
-                element.addAttribute(entry[0], entry[1]);
-            }
-        }
-
-        try {
-            this.xmlWriter.write(element);
-        } catch (IOException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeEmptyElement(name, attributes);
     }
 
     /**
@@ -111,19 +108,7 @@ public void printXMLElement(String name, String[][] attributes)
      */
     public void printXMLElement(String name, Map<String, String> attributes)
     {
-        Element element = new DefaultElement(name);
-
-        if (attributes != null && !attributes.isEmpty()) {
-            for (Map.Entry<String, String> entry : attributes.entrySet()) {
-                element.addAttribute(entry.getKey(), entry.getValue());
-            }
-        }
-
-        try {
-            this.xmlWriter.write(element);
-        } catch (IOException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeEmptyElement(name, attributes);
     }
 
     /**
@@ -131,7 +116,7 @@ public void printXMLElement(String name, Map<String, String> attributes)
      */
     public void printXMLStartElement(String name)
     {
-        printXMLStartElement(name, new AttributesImpl());
+        this.streamWriter.writeStartElement(name, (String[][]) null);
     }
 
     /**
@@ -139,7 +124,7 @@ public void printXMLStartElement(String name)
      */
     public void printXMLStartElement(String name, String[][] attributes)
     {
-        printXMLStartElement(name, createAttributes(attributes));
+        this.streamWriter.writeStartElement(name, attributes);
     }
 
     /**
@@ -147,7 +132,7 @@ public void printXMLStartElement(String name, String[][] attributes)
      */
     public void printXMLStartElement(String name, Map<String, String> attributes)
     {
-        printXMLStartElement(name, createAttributes(attributes));
+        this.streamWriter.writeStartElement(name, attributes);
     }
 
     /**
@@ -155,11 +140,7 @@ public void printXMLStartElement(String name, Map<String, String> attributes)
      */
     public void printXMLStartElement(String name, Attributes attributes)
     {
-        try {
-            this.xmlWriter.startElement("", name, name, attributes);
-        } catch (SAXException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeStartElement(name, attributes);
     }
 
     /**
@@ -167,11 +148,7 @@ public void printXMLStartElement(String name, Attributes attributes)
      */
     public void printXMLEndElement(String name)
     {
-        try {
-            this.xmlWriter.endElement("", name, name);
-        } catch (SAXException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeEndElement(name);
     }
 
     /**
@@ -195,11 +172,7 @@ public void printXMLComment(String content)
      */
     public void printXMLComment(String content, boolean escape)
     {
-        try {
-            this.xmlWriter.write(new DefaultComment(escape ? XMLUtils.escapeXMLComment(content) : content));
-        } catch (IOException e) {
-            // TODO: add error log here
-        }
+        this.streamWriter.writeComment(escape ? XMLUtils.escapeXMLComment(content) : content);
     }
 
     /**
@@ -207,13 +180,9 @@ public void printXMLComment(String content, boolean escape)
      */
     public void printXMLStartCData()
     {
-        try {
-            this.xmlWriter.startCDATA();
-            // Ensure that characters inside CDATA sections are not escaped
-            this.xmlWriter.setEscapeText(false);
-        } catch (Exception e) {
-            // TODO: handle exception
-        }
+        this.streamWriter.writeStartCData();
+        // Ensure that characters inside CDATA sections are not escaped
+        this.streamWriter.setEscapeText(false);
     }
 
     /**
@@ -221,18 +190,14 @@ public void printXMLStartCData()
      */
     public void printXMLEndCData()
     {
-        try {
-            this.xmlWriter.setEscapeText(true);
-            this.xmlWriter.endCDATA();
-        } catch (Exception e) {
-            // TODO: handle exception
-        }
+        this.streamWriter.setEscapeText(true);
+        this.streamWriter.writeEndCData();
     }
 
     public void printEntity(String entity)
     {
         try {
-            this.xmlWriter.write(new DefaultEntity(entity, entity));
+            this.wikiWriter.write(entity);
         } catch (Exception e) {
             // TODO: handle exception
         }
@@ -252,41 +217,4 @@ public void printRaw(String row)
             // TODO: handle exception
         }
     }
-
-    /**
-     * Convert provided table into {@link Attributes} to use in xml writer.
-     */
-    private Attributes createAttributes(String[][] parameters)
-    {
-        AttributesImpl attributes = new AttributesImpl();
-
-        if (parameters != null && parameters.length > 0) {
-            for (String[] entry : parameters) {
-                attributes.addAttribute(null, null, entry[0], null, entry[1]);
-            }
-        }
-
-        return attributes;
-    }
-
-    /**
-     * Convert provided map into {@link Attributes} to use in xml writer.
-     */
-    private Attributes createAttributes(Map<String, String> parameters)
-    {
-        AttributesImpl attributes = new AttributesImpl();
-
-        if (parameters != null && !parameters.isEmpty()) {
-            for (Map.Entry<String, String> entry : parameters.entrySet()) {
-                String value = entry.getValue();
-                String key = entry.getKey();
-
-                if (key != null && value != null) {
-                    attributes.addAttribute(null, null, key, null, value);
-                }
-            }
-        }
-
-        return attributes;
-    }
 }
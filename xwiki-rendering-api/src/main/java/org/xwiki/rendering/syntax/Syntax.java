@@ -67,6 +67,11 @@
      */
     public static final Syntax APT_1_0 = new Syntax(SyntaxType.APT, "1.0");
 
+    /**
+     * @since 5.2M1
+     */
+    public static final Syntax XDOMBINARY_1_0 = new Syntax(SyntaxType.XDOMBINARY, "1.0");
+
     /**
      * This is HTML with annotations (comments) in order to allow round tripping between for example the WYSIWYG editor
      * and wiki syntax.
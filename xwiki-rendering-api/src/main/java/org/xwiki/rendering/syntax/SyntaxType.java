@@ -74,6 +74,11 @@
      */
     public static final SyntaxType APT = register("apt", "APT");
 
+    /**
+     * @since 5.2M1
+     */
+    public static final SyntaxType XDOMBINARY = register("xdom+binary", "Binary XDOM");
+
     /**
      * Register a Syntax Type.
      *
@@ -19,6 +19,9 @@
  */
 package org.xwiki.rendering.transformation;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.syntax.Syntax;
 
@@ -50,6 +53,11 @@ public class TransformationContext implements Cloneable
      */
     private boolean restricted;
 
+    /**
+     * @see #getAttribute(String)
+     */
+    private Map<String, Object> attributes = new HashMap<String, Object>();
+
     /**
      * Default constructor that doesn't set the XDOM or the Syntax. This is because setting the XDOM and the Syntax is
      * optional and only required by some Macros to behave as expected.
@@ -150,6 +158,36 @@ public void setRestricted(boolean restricted) {
         this.restricted = restricted;
     }
 
+    /**
+     * Transformations and macros can use attributes to share some data during the transformation of the content, for
+     * example to compute something only once for the whole {@link XDOM} instead of once per macro. Note that the
+     * attributes are not reset when the {@link XDOM} changes so the data stored should know which {@link XDOM} it's
+     * valid for.
+     *
+     * @param name the name of the attribute
+     * @return the value of the attribute or {@code null} if it's not set
+     * @since 5.2M1
+     */
+    public Object getAttribute(String name)
+    {
+        return this.attributes.get(name);
+    }
+
+    /**
+     * @param name the name of the attribute
+     * @param value the value of the attribute, {@code null} to remove the attribute
+     * @see #getAttribute(String)
+     * @since 5.2M1
+     */
+    public void setAttribute(String name, Object value)
+    {
+        if (value == null) {
+            this.attributes.remove(name);
+        } else {
+            this.attributes.put(name, value);
+        }
+    }
+
     @Override
     public TransformationContext clone()
     {
@@ -161,6 +199,9 @@ public TransformationContext clone()
             throw new RuntimeException("Failed to clone object", e);
         }
 
+        // The clone shares the attribute values but setting an attribute on it doesn't modify this context
+        newContext.attributes = new HashMap<String, Object>(this.attributes);
+
         return newContext;
     }
 }
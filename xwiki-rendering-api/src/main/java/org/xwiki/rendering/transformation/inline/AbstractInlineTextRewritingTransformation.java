@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.transformation.inline;
+
+import java.util.Collections;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.internal.transformation.InlineTextRewritingPass;
+import org.xwiki.rendering.transformation.AbstractTransformation;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.TransformationException;
+
+/**
+ * Base class for transformations rewriting suites of sibling blocks, which are executed together by the
+ * {@link org.xwiki.rendering.transformation.TransformationManager}. See {@link InlineTextRewriter}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class AbstractInlineTextRewritingTransformation extends AbstractTransformation implements
+    InlineTextRewriter
+{
+    @Override
+    public void transform(Block block, TransformationContext context) throws TransformationException
+    {
+        new InlineTextRewritingPass(Collections.singletonList(this), context).rewrite(block);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.transformation.inline;
+
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Finds the suites of sibling blocks to rewrite for a {@link InlineTextRewriter}. The matcher is given the children of
+ * a block one after the other, and is reset before the first child, after a protected block and after each
+ * replacement.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface InlineTextMatcher
+{
+    /**
+     * Forget the blocks seen so far.
+     */
+    void reset();
+
+    /**
+     * @param block the next sibling block
+     * @return the number of blocks to replace, ending with the passed block, or 0 if there's nothing to replace yet.
+     *         Can't be more than the number of blocks passed since the last reset
+     */
+    int next(Block block);
+
+    /**
+     * Called right after {@link #next(Block)} returned a match.
+     * 
+     * @param blocks the blocks to replace
+     * @return the blocks replacing the passed blocks
+     */
+    List<Block> getReplacement(List<Block> blocks);
+}
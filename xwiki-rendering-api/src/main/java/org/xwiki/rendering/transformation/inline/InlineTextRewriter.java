@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.transformation.inline;
+
+import org.xwiki.rendering.transformation.TransformationContext;
+
+/**
+ * Rewrites suites of sibling blocks (words, spaces, special symbols, etc) into other blocks. For example replaces
+ * words representing Wiki Words with links or suites of characters representing icons with images.
+ * <p>
+ * All the rewriters are executed together in a single traversal of the blocks, which skips protected blocks (code
+ * macro marker block, etc). Each rewriter is given the children of each block, one after the other, and tells when the
+ * last children it has been given should be replaced. The replacements are applied once all the children of a block
+ * have been seen.
+ * <p>
+ * Transformations implementing this interface and executed one after the other by the
+ * {@link org.xwiki.rendering.transformation.TransformationManager} are executed together, in a single traversal,
+ * without calling their {@link org.xwiki.rendering.transformation.Transformation#transform} method.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ * @see AbstractInlineTextRewritingTransformation
+ */
+public interface InlineTextRewriter
+{
+    /**
+     * Called once per traversal and per depth in the block tree so the returned matcher doesn't need to be thread
+     * safe.
+     * 
+     * @param context the context of the transformation
+     * @return a new matcher, or {@code null} if this rewriter has nothing to rewrite
+     */
+    InlineTextMatcher createMatcher(TransformationContext context);
+}
@@ -20,7 +20,9 @@
 package org.xwiki.rendering.util;
 
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
@@ -58,6 +60,16 @@
         ALLOWED.set('-');
     }
 
+    /**
+     * Same as {@link #ALLOWED} but as an array indexed by ASCII character, faster to look up.
+     */
+    private static final boolean[] ALLOWED_ASCII = new boolean[128];
+    static {
+        for (int i = 0; i < ALLOWED_ASCII.length; i++) {
+            ALLOWED_ASCII[i] = ALLOWED.get(i);
+        }
+    }
+
     /**
      * A table of hex digits.
      */
@@ -69,6 +81,34 @@
      */
     private Set<String> generatedIds = new HashSet<String>();
 
+    /**
+     * The next occurrence to try for each id prefix (the prefix followed by the normalized text). All the occurrences
+     * lower than this one are known to be already generated, which avoids testing them again and again when many
+     * identical texts are used (like headings in release notes).
+     */
+    private Map<String, Integer> nextOccurrences = new HashMap<String, Integer>();
+
+    /**
+     * Create a new generator without any generated id.
+     */
+    public IdGenerator()
+    {
+        // Nothing to do
+    }
+
+    /**
+     * Create a new generator which knows the ids already generated by the passed generator. The two generators are
+     * then independent.
+     * 
+     * @param idGenerator the generator to copy
+     * @since 5.2M1
+     */
+    public IdGenerator(IdGenerator idGenerator)
+    {
+        this.generatedIds.addAll(idGenerator.generatedIds);
+        this.nextOccurrences.putAll(idGenerator.nextOccurrences);
+    }
+
     /**
      * Same as {@link #generateUniqueId(String, String)} but with a fixed prefix of "I".
      * 
@@ -102,17 +142,36 @@ public String generateUniqueId(String prefix, String text)
                 + "] should only contain alphanumerical characters and not be empty.");
         }
 
-        String idPrefix = (prefix != null ? prefix : "") + normalizeId(text);
+        String idPrefix = prefix + normalizeId(text);
 
-        int occurence = 0;
-        String id = idPrefix;
+        Integer nextOccurrence = this.nextOccurrences.get(idPrefix);
+        int occurrence = nextOccurrence != null ? nextOccurrence : 0;
+        String id = getId(idPrefix, occurrence);
         while (this.generatedIds.contains(id)) {
-            occurence++;
-            id = idPrefix + "-" + occurence;
+            occurrence++;
+            id = getId(idPrefix, occurrence);
         }
 
         // Save the generated id so that the next call to this method will not generate the same id.
         this.generatedIds.add(id);
+        this.nextOccurrences.put(idPrefix, occurrence + 1);
+
+        return id;
+    }
+
+    /**
+     * @param idPrefix the prefix of the identifier, including the normalized text
+     * @param occurrence the occurrence of the identifier
+     * @return the identifier
+     */
+    private String getId(String idPrefix, int occurrence)
+    {
+        String id;
+        if (occurrence == 0) {
+            id = idPrefix;
+        } else {
+            id = new StringBuilder(idPrefix.length() + 4).append(idPrefix).append('-').append(occurrence).toString();
+        }
 
         return id;
     }
@@ -131,43 +190,70 @@ public String generateUniqueId(String prefix, String text)
     private String normalizeId(String stringToNormalize)
     {
         int len = stringToNormalize.length();
-        int bufLen = len * 2;
-        if (bufLen < 0) {
-            bufLen = Integer.MAX_VALUE;
+
+        // Most of the time the text only contains allowed characters so we avoid copying it
+        int start = 0;
+        while (start < len && isAllowed(stringToNormalize.charAt(start))) {
+            start++;
         }
-        StringBuffer outBuffer = new StringBuffer(bufLen);
 
-        for (int x = 0; x < len; x++) {
-            char c = stringToNormalize.charAt(x);
+        String normalized;
+        if (start == len) {
+            normalized = stringToNormalize;
+        } else {
+            StringBuilder outBuffer = new StringBuilder(len + 16);
+            outBuffer.append(stringToNormalize, 0, start);
+            for (int x = start; x < len; x++) {
+                appendNormalized(stringToNormalize.charAt(x), outBuffer);
+            }
+            normalized = outBuffer.toString();
+        }
 
-            if (ALLOWED.get(c)) {
-                outBuffer.append(c);
-            } else if (!Character.isWhitespace(c)) {
-                int nibble;
-                boolean skip = true;
+        return normalized;
+    }
 
-                nibble = (c >> 12) & 0xF;
-                if (nibble != 0) {
-                    skip = false;
-                    outBuffer.append(toHex(nibble));
-                }
+    /**
+     * Append the normalized version of a character.
+     * 
+     * @param c the character to normalize
+     * @param outBuffer the buffer to append to
+     */
+    private void appendNormalized(char c, StringBuilder outBuffer)
+    {
+        if (isAllowed(c)) {
+            outBuffer.append(c);
+        } else if (!Character.isWhitespace(c)) {
+            int nibble;
+            boolean skip = true;
 
-                nibble = (c >> 8) & 0xF;
-                if (!skip || nibble != 0) {
-                    skip = false;
-                    outBuffer.append(toHex(nibble));
-                }
+            nibble = (c >> 12) & 0xF;
+            if (nibble != 0) {
+                skip = false;
+                outBuffer.append(toHex(nibble));
+            }
 
-                nibble = (c >> 4) & 0xF;
-                if (!skip || nibble != 0) {
-                    outBuffer.append(toHex(nibble));
-                }
+            nibble = (c >> 8) & 0xF;
+            if (!skip || nibble != 0) {
+                skip = false;
+                outBuffer.append(toHex(nibble));
+            }
 
-                outBuffer.append(toHex(c & 0xF));
+            nibble = (c >> 4) & 0xF;
+            if (!skip || nibble != 0) {
+                outBuffer.append(toHex(nibble));
             }
+
+            outBuffer.append(toHex(c & 0xF));
         }
+    }
 
-        return outBuffer.toString();
+    /**
+     * @param c the character to check
+     * @return true if the character can be used as is in an id
+     */
+    private boolean isAllowed(char c)
+    {
+        return c < ALLOWED_ASCII.length && ALLOWED_ASCII[c];
     }
 
     /**
@@ -188,7 +274,55 @@ private char toHex(int nibble)
      */
     public void remove(String id)
     {
-        this.generatedIds.remove(id);
+        if (this.generatedIds.remove(id)) {
+            // Make sure the id will be generated again for the id prefix it has been generated for. Since we don't know
+            // this prefix we update both the id itself (first occurrence) and, when the id ends with "-" followed by a
+            // number, the part before it.
+            if (this.nextOccurrences.containsKey(id)) {
+                this.nextOccurrences.put(id, 0);
+            }
+            int index = id.lastIndexOf('-');
+            if (index > 0 && index < id.length() - 1) {
+                resetNextOccurrence(id.substring(0, index), parseOccurrence(id, index + 1));
+            }
+        }
+    }
+
+    /**
+     * @param idPrefix the id prefix
+     * @param occurrence the occurrence which is available again for the id prefix, or -1 if it's not an occurrence
+     */
+    private void resetNextOccurrence(String idPrefix, int occurrence)
+    {
+        Integer nextOccurrence = this.nextOccurrences.get(idPrefix);
+        if (nextOccurrence != null && occurrence > 0 && occurrence < nextOccurrence) {
+            this.nextOccurrences.put(idPrefix, occurrence);
+        }
+    }
+
+    /**
+     * @param id the id
+     * @param start the position of the occurrence in the id
+     * @return the occurrence, or -1 if the end of the id is not an occurrence as generated by
+     *         {@link #generateUniqueId(String, String)}
+     */
+    private int parseOccurrence(String id, int start)
+    {
+        int occurrence = 0;
+        if (id.charAt(start) != '0' && id.length() - start < 10) {
+            for (int i = start; i < id.length(); i++) {
+                char c = id.charAt(i);
+                if (c < '0' || c > '9') {
+                    occurrence = -1;
+                    break;
+                }
+                occurrence = occurrence * 10 + (c - '0');
+            }
+        } else {
+            occurrence = -1;
+        }
+
+        return occurrence;
     }
 
     /**
@@ -197,5 +331,6 @@ public void remove(String id)
     public void reset()
     {
         this.generatedIds.clear();
+        this.nextOccurrences.clear();
     }
 }
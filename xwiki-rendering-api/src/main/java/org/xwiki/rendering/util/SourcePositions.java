@@ -0,0 +1,143 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.util;
+
+import org.xwiki.rendering.block.Block;
+
+/**
+ * The positions in the source of the blocks generated by a parser. The positions are kept in a compact identity based
+ * table (a few int arrays) instead of as metadata on each block, which would require a map per block. Since the blocks
+ * are looked up by identity, cloned blocks don't have a position.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class SourcePositions
+{
+    /**
+     * The value returned for blocks without a position.
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * The initial size of the table, has to be a power of 2.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The blocks having a position, at the index given by their identity hash code (with linear probing).
+     */
+    private Block[] blocks = new Block[INITIAL_CAPACITY];
+
+    /**
+     * The begin and end offsets of the block at the same index in {@link #blocks}, at index * 2 and index * 2 + 1.
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * The number of blocks having a position.
+     */
+    private int size;
+
+    /**
+     * @param block the block whose position to set
+     * @param begin the offset in the source where the block starts
+     * @param end the offset in the source where the block ends
+     */
+    public void setPosition(Block block, int begin, int end)
+    {
+        if ((this.size + 1) * 2 > this.blocks.length) {
+            resize(this.blocks.length * 2);
+        }
+
+        int index = indexOf(block, this.blocks);
+        if (this.blocks[index] == null) {
+            this.blocks[index] = block;
+            this.size++;
+        }
+        this.offsets[index * 2] = begin;
+        this.offsets[index * 2 + 1] = end;
+    }
+
+    /**
+     * @param block a block
+     * @return the offset in the source where the block starts or {@link #UNKNOWN} if the block has no position
+     */
+    public int getBegin(Block block)
+    {
+        int index = indexOf(block, this.blocks);
+
+        return this.blocks[index] != null ? this.offsets[index * 2] : UNKNOWN;
+    }
+
+    /**
+     * @param block a block
+     * @return the offset in the source where the block ends or {@link #UNKNOWN} if the block has no position
+     */
+    public int getEnd(Block block)
+    {
+        int index = indexOf(block, this.blocks);
+
+        return this.blocks[index] != null ? this.offsets[index * 2 + 1] : UNKNOWN;
+    }
+
+    /**
+     * @return the number of blocks having a position
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param block a block
+     * @param table the table to look into, its length has to be a power of 2
+     * @return the index of the block in the table or of the free slot where it should be added
+     */
+    private int indexOf(Block block, Block[] table)
+    {
+        int mask = table.length - 1;
+        int index = System.identityHashCode(block) & mask;
+        while (table[index] != null && table[index] != block) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    /**
+     * @param capacity the new size of the table, has to be a power of 2
+     */
+    private void resize(int capacity)
+    {
+        Block[] oldBlocks = this.blocks;
+        int[] oldOffsets = this.offsets;
+        this.blocks = new Block[capacity];
+        this.offsets = new int[capacity * 2];
+        for (int i = 0; i < oldBlocks.length; i++) {
+            if (oldBlocks[i] != null) {
+                int index = indexOf(oldBlocks[i], this.blocks);
+                this.blocks[index] = oldBlocks[i];
+                this.offsets[index * 2] = oldOffsets[i * 2];
+                this.offsets[index * 2 + 1] = oldOffsets[i * 2 + 1];
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.wiki;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.xwiki.rendering.listener.reference.ResourceReference;
+
+/**
+ * {@link WikiModel} able to check the existence of several documents at once. Renderers that need to know whether the
+ * documents targeted by the links of a whole XDOM exist can thus ask for all of them in a single call instead of
+ * calling {@link #isDocumentAvailable(ResourceReference)} for each link. Implementations are still registered as
+ * {@link WikiModel} components; the renderers check if the {@link WikiModel} they find implements this interface.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface BatchWikiModel extends WikiModel
+{
+    /**
+     * @param documentReferences the references to the documents to check
+     * @return for each of the passed references, true if the document exists and can be viewed or false otherwise;
+     *         references missing from the returned map are checked later with
+     *         {@link #isDocumentAvailable(ResourceReference)}
+     */
+    Map<ResourceReference, Boolean> areDocumentsAvailable(Collection<ResourceReference> documentReferences);
+}
@@ -0,0 +1,97 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.QueueListener;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+
+/**
+ * Unit tests for {@link PlainTextIdListener}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class PlainTextIdListenerTest
+{
+    private static final Map<String, String> PARAMETERS = Collections.<String, String>emptyMap();
+
+    private PlainTextIdListener listener;
+
+    @Before
+    public void setUp()
+    {
+        this.listener = new PlainTextIdListener();
+    }
+
+    @Test
+    public void plainTextOfInlineContent()
+    {
+        ResourceReference reference = new ResourceReference("http://xwiki.org", ResourceType.URL);
+
+        this.listener.onWord("Hello");
+        this.listener.onSpace();
+        this.listener.beginFormat(Format.BOLD, PARAMETERS);
+        this.listener.onWord("world");
+        this.listener.endFormat(Format.BOLD, PARAMETERS);
+        this.listener.onSpecialSymbol('!');
+        this.listener.onVerbatim("{{code}}", true, PARAMETERS);
+        this.listener.beginLink(reference, false, PARAMETERS);
+        this.listener.endLink(reference, false, PARAMETERS);
+        this.listener.beginLink(reference, false, PARAMETERS);
+        this.listener.onWord("label");
+        this.listener.endLink(reference, false, PARAMETERS);
+
+        Assert.assertEquals("Hello world!{{code}}http://xwiki.orglabel", this.listener.getPlainText());
+
+        // Verify that the events have been buffered
+        Assert.assertEquals(12, this.listener.size());
+        QueueListener queue = new QueueListener();
+        this.listener.consumeEvents(queue);
+        Assert.assertEquals(12, queue.size());
+    }
+
+    @Test
+    public void plainTextWhenUnsupportedContent()
+    {
+        ResourceReference reference = new ResourceReference("Space.Page", ResourceType.DOCUMENT);
+
+        // The label of a link to a document has to be generated
+        this.listener.beginLink(reference, false, PARAMETERS);
+        this.listener.endLink(reference, false, PARAMETERS);
+        Assert.assertNull(this.listener.getPlainText());
+
+        this.listener.reset();
+        Assert.assertEquals("", this.listener.getPlainText());
+        Assert.assertTrue(this.listener.isEmpty());
+
+        this.listener.beginParagraph(PARAMETERS);
+        this.listener.onWord("word");
+        this.listener.endParagraph(PARAMETERS);
+        Assert.assertNull(this.listener.getPlainText());
+    }
+}
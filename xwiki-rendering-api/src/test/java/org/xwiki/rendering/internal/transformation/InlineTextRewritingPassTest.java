@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FormatBlock;
+import org.xwiki.rendering.block.MacroMarkerBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.inline.InlineTextMatcher;
+import org.xwiki.rendering.transformation.inline.InlineTextRewriter;
+
+/**
+ * Unit tests for {@link InlineTextRewritingPass}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class InlineTextRewritingPassTest
+{
+    /**
+     * Replaces a suite of words, separated by spaces, by a single word.
+     */
+    private static class WordsRewriter implements InlineTextRewriter
+    {
+        private final List<String> words;
+
+        private final String replacement;
+
+        public WordsRewriter(String replacement, String... words)
+        {
+            this.words = Arrays.asList(words);
+            this.replacement = replacement;
+        }
+
+        @Override
+        public InlineTextMatcher createMatcher(TransformationContext context)
+        {
+            return new InlineTextMatcher()
+            {
+                private int matched;
+
+                private int length;
+
+                @Override
+                public void reset()
+                {
+                    this.matched = 0;
+                    this.length = 0;
+                }
+
+                @Override
+                public int next(Block block)
+                {
+                    int result = 0;
+                    if (block instanceof SpaceBlock && this.matched > 0) {
+                        this.length++;
+                    } else if (block instanceof WordBlock
+                        && words.get(this.matched).equals(((WordBlock) block).getWord())) {
+                        this.matched++;
+                        this.length++;
+                        if (this.matched == words.size()) {
+                            result = this.length;
+                        }
+                    } else {
+                        reset();
+                    }
+                    return result;
+                }
+
+                @Override
+                public List<Block> getReplacement(List<Block> blocks)
+                {
+                    return Collections.<Block>singletonList(new WordBlock(replacement));
+                }
+            };
+        }
+    }
+
+    @Test
+    public void rewrite()
+    {
+        Block paragraph = new ParagraphBlock(Arrays.<Block>asList(new WordBlock("a"), new SpaceBlock(),
+            new WordBlock("x"), new SpaceBlock(), new WordBlock("y"), new SpaceBlock(),
+            new FormatBlock(Arrays.<Block>asList(new WordBlock("a")), Format.BOLD)));
+        XDOM xdom = new XDOM(Arrays.asList(paragraph));
+
+        rewrite(xdom, new WordsRewriter("b", "a"), new WordsRewriter("z", "x", "y"));
+
+        Assert.assertEquals("b z **b**", toString(paragraph));
+    }
+
+    @Test
+    public void rewriteIgnoresProtectedBlocks()
+    {
+        Block code = new MacroMarkerBlock("code", Collections.<String, String>emptyMap(),
+            Arrays.<Block>asList(new WordBlock("a")), false);
+        Block paragraph = new ParagraphBlock(Arrays.<Block>asList(new WordBlock("x"), code, new WordBlock("y")));
+        XDOM xdom = new XDOM(Arrays.asList(paragraph));
+
+        rewrite(xdom, new WordsRewriter("b", "a"), new WordsRewriter("z", "x", "y"));
+
+        Assert.assertEquals("x{code}y", toString(paragraph));
+        Assert.assertEquals("a", ((WordBlock) code.getChildren().get(0)).getWord());
+    }
+
+    @Test
+    public void rewriteWithFirstMatchingRewriter()
+    {
+        Block paragraph = new ParagraphBlock(Arrays.<Block>asList(new WordBlock("a"), new SpaceBlock(),
+            new WordBlock("x")));
+        XDOM xdom = new XDOM(Arrays.asList(paragraph));
+
+        rewrite(xdom, new InlineTextRewriter()
+        {
+            @Override
+            public InlineTextMatcher createMatcher(TransformationContext context)
+            {
+                // Nothing to rewrite
+                return null;
+            }
+        }, new WordsRewriter("b", "a"), new WordsRewriter("c", "a"), new WordsRewriter("z", "a", "x"));
+
+        Assert.assertEquals("b x", toString(paragraph));
+    }
+
+    private void rewrite(XDOM xdom, InlineTextRewriter... rewriters)
+    {
+        new InlineTextRewritingPass(Arrays.asList(rewriters), new TransformationContext()).rewrite(xdom);
+    }
+
+    private String toString(Block block)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Block child : block.getChildren()) {
+            Assert.assertSame(block, child.getParent());
+            if (child instanceof WordBlock) {
+                builder.append(((WordBlock) child).getWord());
+            } else if (child instanceof SpaceBlock) {
+                builder.append(' ');
+            } else if (child instanceof FormatBlock) {
+                builder.append("**").append(toString(child)).append("**");
+            } else {
+                builder.append('{').append(((MacroMarkerBlock) child).getId()).append('}');
+            }
+        }
+        return builder.toString();
+    }
+}
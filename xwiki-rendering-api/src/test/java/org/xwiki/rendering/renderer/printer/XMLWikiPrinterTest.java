@@ -0,0 +1,177 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.renderer.printer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.dom4j.Element;
+import org.dom4j.io.XMLWriter;
+import org.dom4j.tree.DefaultComment;
+import org.dom4j.tree.DefaultElement;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xwiki.rendering.internal.renderer.printer.WikiWriter;
+import org.xwiki.rendering.internal.renderer.printer.XHTMLWriter;
+import org.xwiki.xml.XMLUtils;
+
+/**
+ * Unit tests for {@link XMLWikiPrinter}. Verifies that the output is the same as the one of the DOM4J based
+ * {@link XHTMLWriter}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XMLWikiPrinterTest
+{
+    /**
+     * The characters used to generate the text, covering all the escaping rules.
+     */
+    private static final String CHARACTERS = "ab <>&\"'{}\t\n\r\u0001\u001f\u007f\u00e9\u20ac\ud83d\ude00;#";
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void printXML() throws Exception
+    {
+        for (int i = 0; i < 1000; i++) {
+            String text = randomText();
+
+            DefaultWikiPrinter printer = new DefaultWikiPrinter();
+            new XMLWikiPrinter(printer).printXML(text);
+
+            DefaultWikiPrinter expected = new DefaultWikiPrinter();
+            new XHTMLWriter(new WikiWriter(expected)).write(text);
+
+            Assert.assertEquals(expected.toString(), printer.toString());
+        }
+    }
+
+    @Test
+    public void printXMLStartElement() throws Exception
+    {
+        for (int i = 0; i < 1000; i++) {
+            String[][] attributes = new String[][] {{"a", randomText()}, {"b", randomText()}};
+
+            DefaultWikiPrinter printer = new DefaultWikiPrinter();
+            XMLWikiPrinter xmlPrinter = new XMLWikiPrinter(printer);
+            xmlPrinter.printXMLStartElement("span", attributes);
+            xmlPrinter.printXMLStartElement("span", toMap(attributes));
+            xmlPrinter.printXMLEndElement("span");
+            xmlPrinter.printXMLEndElement("span");
+
+            DefaultWikiPrinter expected = new DefaultWikiPrinter();
+            XMLWriter writer = new XHTMLWriter(new WikiWriter(expected));
+            writer.startElement("", "span", "span", toAttributes(attributes));
+            writer.startElement("", "span", "span", toAttributes(attributes));
+            writer.endElement("", "span", "span");
+            writer.endElement("", "span", "span");
+
+            Assert.assertEquals(expected.toString(), printer.toString());
+        }
+    }
+
+    @Test
+    public void printXMLElement() throws Exception
+    {
+        String[][] attributes =
+            new String[][] {{"a", "1"}, {"b", "<{\"'}>"}, {"a", "3"}, {"c", null}, {"b", null}, {"b", "4"}};
+
+        DefaultWikiPrinter printer = new DefaultWikiPrinter();
+        XMLWikiPrinter xmlPrinter = new XMLWikiPrinter(printer);
+        xmlPrinter.printXMLElement("br");
+        xmlPrinter.printXMLElement("img", attributes);
+        xmlPrinter.printXMLElement("img", toMap(attributes));
+
+        DefaultWikiPrinter expected = new DefaultWikiPrinter();
+        XMLWriter writer = new XHTMLWriter(new WikiWriter(expected));
+        writer.write(new DefaultElement("br"));
+        Element element = new DefaultElement("img");
+        for (String[] entry : attributes) {
+            element.addAttribute(entry[0], entry[1]);
+        }
+        writer.write(element);
+        element = new DefaultElement("img");
+        for (Map.Entry<String, String> entry : toMap(attributes).entrySet()) {
+            element.addAttribute(entry.getKey(), entry.getValue());
+        }
+        writer.write(element);
+
+        Assert.assertEquals(expected.toString(), printer.toString());
+    }
+
+    @Test
+    public void printXMLCommentAndCData() throws Exception
+    {
+        DefaultWikiPrinter printer = new DefaultWikiPrinter();
+        XMLWikiPrinter xmlPrinter = new XMLWikiPrinter(printer);
+        xmlPrinter.printXMLComment("a{<b>--", true);
+        xmlPrinter.printXMLComment("c{<d>");
+        xmlPrinter.printXMLStartCData();
+        xmlPrinter.printXML("<{&}>");
+        xmlPrinter.printXMLEndCData();
+        xmlPrinter.printXML("<{&}>");
+        xmlPrinter.printEntity("&nbsp;");
+
+        DefaultWikiPrinter expected = new DefaultWikiPrinter();
+        XMLWriter writer = new XHTMLWriter(new WikiWriter(expected));
+        writer.write(new DefaultComment(XMLUtils.escapeXMLComment("a{<b>--")));
+        writer.write(new DefaultComment("c{<d>"));
+        writer.startCDATA();
+        writer.setEscapeText(false);
+        writer.write("<{&}>");
+        writer.setEscapeText(true);
+        writer.endCDATA();
+        writer.write("<{&}>");
+        expected.print("&nbsp;");
+
+        Assert.assertEquals(expected.toString(), printer.toString());
+    }
+
+    private String randomText()
+    {
+        StringBuilder text = new StringBuilder();
+        int length = this.random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            text.append(CHARACTERS.charAt(this.random.nextInt(CHARACTERS.length())));
+        }
+        return text.toString();
+    }
+
+    private Map<String, String> toMap(String[][] attributes)
+    {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (String[] entry : attributes) {
+            map.put(entry[0], entry[1]);
+        }
+        return map;
+    }
+
+    private AttributesImpl toAttributes(String[][] attributes)
+    {
+        AttributesImpl result = new AttributesImpl();
+        for (String[] entry : attributes) {
+            result.addAttribute(null, null, entry[0], null, entry[1]);
+        }
+        return result;
+    }
+}
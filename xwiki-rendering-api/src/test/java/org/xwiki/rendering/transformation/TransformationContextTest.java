@@ -44,11 +44,21 @@ public void testClone()
         context.setSyntax(Syntax.XWIKI_2_0);
         XDOM xdom = new XDOM(Arrays.<Block>asList(new WordBlock("test")));
         context.setXDOM(xdom);
+        Object value = new Object();
+        context.setAttribute("attribute", value);
 
         TransformationContext newContext = context.clone();
         Assert.assertNotSame(context, newContext);
         Assert.assertEquals("id", newContext.getId());
         Assert.assertEquals(Syntax.XWIKI_2_0, newContext.getSyntax());
         Assert.assertEquals(xdom, newContext.getXDOM());
+        Assert.assertSame(value, newContext.getAttribute("attribute"));
+
+        // Verify that the attributes of the clone are independent from the ones of the original context
+        newContext.setAttribute("other", "value");
+        newContext.setAttribute("attribute", null);
+        Assert.assertNull(context.getAttribute("other"));
+        Assert.assertSame(value, context.getAttribute("attribute"));
+        Assert.assertNull(newContext.getAttribute("attribute"));
     }
 }
@@ -57,6 +57,38 @@ public void testGenerateUniqueIdWithPrefix()
         Assert.assertEquals("prefixtext-1", this.idGenerator.generateUniqueId("prefix", "te xt"));
     }
 
+    @Test
+    public void testGenerateUniqueIdAfterRemoveAndReset()
+    {
+        Assert.assertEquals("Itext", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-1", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-2", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-3", this.idGenerator.generateUniqueId("text"));
+
+        this.idGenerator.remove("Itext-1");
+        this.idGenerator.remove("Itext");
+        Assert.assertEquals("Itext", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-1", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-4", this.idGenerator.generateUniqueId("text"));
+
+        this.idGenerator.reset();
+        Assert.assertEquals("Itext", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-1", this.idGenerator.generateUniqueId("text"));
+    }
+
+    @Test
+    public void testGenerateUniqueIdWhenTextLooksLikeAnOccurrence()
+    {
+        Assert.assertEquals("Itext-1", this.idGenerator.generateUniqueId("text-1"));
+        Assert.assertEquals("Itext", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-2", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-1-1", this.idGenerator.generateUniqueId("text-1"));
+
+        this.idGenerator.remove("Itext-1");
+        Assert.assertEquals("Itext-1", this.idGenerator.generateUniqueId("text"));
+        Assert.assertEquals("Itext-1-2", this.idGenerator.generateUniqueId("text-1"));
+    }
+
     @Test
     public void testGenerateUniqueIdFromNonAlphaNum()
     {
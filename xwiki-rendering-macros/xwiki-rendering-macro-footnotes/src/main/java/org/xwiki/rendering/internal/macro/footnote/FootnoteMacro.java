@@ -27,8 +27,10 @@
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FormatBlock;
 import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.block.match.MacroBlockMatcher;
+import org.xwiki.rendering.listener.Format;
 import org.xwiki.rendering.macro.AbstractMacro;
 import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.macro.descriptor.DefaultContentDescriptor;
@@ -87,17 +89,28 @@ public int getPriority()
     public List<Block> execute(FootnoteMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
-        Block root = context.getXDOM();
+        FootnoteRegistry registry = FootnoteRegistry.get(context);
 
-        Block matchingBlock = root.getFirstBlock(MACRO_BLOCK_MATCHER, Block.Axes.DESCENDANT);
-        if (matchingBlock != null) {
-            return Collections.emptyList();
+        // Make sure the footnotes are displayed, at the end of the document if there's no other place for them
+        if (!registry.isPutFootnotesScheduled()) {
+            Block root = context.getXDOM();
+
+            Block matchingBlock = root.getFirstBlock(MACRO_BLOCK_MATCHER, Block.Axes.DESCENDANT);
+            if (matchingBlock == null) {
+                Block putFootnotesMacro =
+                    new MacroBlock(PutFootnotesMacro.MACRO_NAME, Collections.<String, String> emptyMap(), false);
+                root.addChild(putFootnotesMacro);
+            }
+
+            registry.setPutFootnotesScheduled(true);
         }
 
-        Block putFootnotesMacro =
-            new MacroBlock(PutFootnotesMacro.MACRO_NAME, Collections.<String, String> emptyMap(), false);
-        root.addChild(putFootnotesMacro);
+        // The reference to the footnote is filled right away so that it's displayed even if no put footnotes macro is
+        // executed after all, and filled again by the put footnotes macro displaying the footnotes
+        Block referenceBlock = new FormatBlock(Collections.<Block> emptyList(), Format.SUPERSCRIPT);
+        registry.register(new FootnoteRegistry.Footnote(content, referenceBlock));
+        PutFootnotesMacro.fillFootnoteReferenceBlock(referenceBlock, registry.getFootnotes().size());
 
-        return Collections.emptyList();
+        return Collections.singletonList(referenceBlock);
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.footnote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.rendering.transformation.TransformationContext;
+
+/**
+ * The footnotes registered by the {@link FootnoteMacro}s of a transformation. This allows the
+ * {@link PutFootnotesMacro} to list the footnotes without searching the whole {@link XDOM} for them.
+ * <p>
+ * Footnotes are listed in the order in which their macros have been executed, which is the document order unless some
+ * footnote macros are generated by macros executed after them.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class FootnoteRegistry
+{
+    /**
+     * A registered footnote.
+     */
+    public static class Footnote
+    {
+        /**
+         * @see #getContent()
+         */
+        private final String content;
+
+        /**
+         * @see #getReferenceBlock()
+         */
+        private final Block referenceBlock;
+
+        /**
+         * @param content see {@link #getContent()}
+         * @param referenceBlock see {@link #getReferenceBlock()}
+         */
+        public Footnote(String content, Block referenceBlock)
+        {
+            this.content = content;
+            this.referenceBlock = referenceBlock;
+        }
+
+        /**
+         * @return the content of the footnote macro, not parsed yet
+         */
+        public String getContent()
+        {
+            return this.content;
+        }
+
+        /**
+         * @return the block generated by the footnote macro, in which the reference to the footnote is inserted
+         */
+        public Block getReferenceBlock()
+        {
+            return this.referenceBlock;
+        }
+    }
+
+    /**
+     * The name of the transformation context attribute holding the registry.
+     */
+    private static final String ATTRIBUTE = FootnoteRegistry.class.getName();
+
+    /**
+     * The context of the transformation for which the footnotes are registered.
+     */
+    private final MacroTransformationContext context;
+
+    /**
+     * The {@link XDOM} containing the footnotes.
+     */
+    private final XDOM xdom;
+
+    /**
+     * The registered footnotes.
+     */
+    private final List<Footnote> footnotes = new ArrayList<Footnote>();
+
+    /**
+     * @see #getFootnotesBlock()
+     */
+    private Block footnotesBlock;
+
+    /**
+     * @see #isPutFootnotesScheduled()
+     */
+    private boolean putFootnotesScheduled;
+
+    /**
+     * @param context the context of the transformation for which the footnotes are registered
+     */
+    private FootnoteRegistry(MacroTransformationContext context)
+    {
+        this.context = context;
+        this.xdom = context.getXDOM();
+    }
+
+    /**
+     * @param context the context of the macro being executed
+     * @return the registry of the transformation, created if needed
+     */
+    public static FootnoteRegistry get(MacroTransformationContext context)
+    {
+        TransformationContext transformationContext = context.getTransformationContext();
+        FootnoteRegistry registry = (FootnoteRegistry) transformationContext.getAttribute(ATTRIBUTE);
+
+        // The transformation context can be reused for several transformations, and the XDOM can change during the
+        // transformation, so make sure the registry is for the current ones
+        if (registry == null || registry.context != context || registry.xdom != context.getXDOM()) {
+            registry = new FootnoteRegistry(context);
+            transformationContext.setAttribute(ATTRIBUTE, registry);
+        }
+
+        return registry;
+    }
+
+    /**
+     * @param footnote the footnote to display
+     */
+    public void register(Footnote footnote)
+    {
+        this.footnotes.add(footnote);
+    }
+
+    /**
+     * @return the footnotes to display, in registration order
+     */
+    public List<Footnote> getFootnotes()
+    {
+        return Collections.unmodifiableList(this.footnotes);
+    }
+
+    /**
+     * @return the block in which the last executed {@link PutFootnotesMacro} displayed the footnotes, {@code null} if
+     *         the footnotes haven't been displayed yet
+     */
+    public Block getFootnotesBlock()
+    {
+        return this.footnotesBlock;
+    }
+
+    /**
+     * @param footnotesBlock see {@link #getFootnotesBlock()}
+     */
+    public void setFootnotesBlock(Block footnotesBlock)
+    {
+        this.footnotesBlock = footnotesBlock;
+    }
+
+    /**
+     * @return {@code true} if a {@link PutFootnotesMacro} is going to be executed and will thus display the footnotes
+     *         registered so far
+     */
+    public boolean isPutFootnotesScheduled()
+    {
+        return this.putFootnotesScheduled;
+    }
+
+    /**
+     * @param putFootnotesScheduled see {@link #isPutFootnotesScheduled()}
+     */
+    public void setPutFootnotesScheduled(boolean putFootnotesScheduled)
+    {
+        this.putFootnotesScheduled = putFootnotesScheduled;
+    }
+}
@@ -19,9 +19,11 @@
  */
 package org.xwiki.rendering.internal.macro.footnote;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -30,16 +32,13 @@
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rendering.block.Block;
-import org.xwiki.rendering.block.FormatBlock;
 import org.xwiki.rendering.block.LinkBlock;
 import org.xwiki.rendering.block.ListItemBlock;
 import org.xwiki.rendering.block.MacroMarkerBlock;
 import org.xwiki.rendering.block.NumberedListBlock;
 import org.xwiki.rendering.block.SpaceBlock;
 import org.xwiki.rendering.block.WordBlock;
-import org.xwiki.rendering.block.match.ClassBlockMatcher;
 import org.xwiki.rendering.listener.reference.DocumentResourceReference;
-import org.xwiki.rendering.listener.Format;
 import org.xwiki.rendering.macro.AbstractMacro;
 import org.xwiki.rendering.macro.MacroContentParser;
 import org.xwiki.rendering.macro.MacroExecutionException;
@@ -104,122 +103,142 @@ public List<Block> execute(FootnoteMacroParameters parameters, String content, M
     {
         List<Block> result = Collections.emptyList();
 
-        // Get the list of footnotes in the document
-        Block root = context.getXDOM();
-        List<MacroMarkerBlock> footnotes =
-            root.getBlocks(new ClassBlockMatcher(MacroMarkerBlock.class), Block.Axes.DESCENDANT);
-        for (ListIterator<MacroMarkerBlock> it = footnotes.listIterator(); it.hasNext();) {
-            MacroMarkerBlock macro = it.next();
-            if (FootnoteMacro.MACRO_NAME.equals(macro.getId())) {
-                continue;
-            } else if (PutFootnotesMacro.MACRO_NAME.equals(macro.getId())) {
-                macro.getParent().replaceChild(Collections.<Block> emptyList(), macro);
-            }
-            it.remove();
-        }
-        if (footnotes.size() <= 0) {
+        FootnoteRegistry registry = FootnoteRegistry.get(context);
+
+        // Footnotes registered from now on need another put footnotes macro to be displayed
+        registry.setPutFootnotesScheduled(false);
+
+        // Only the last executed put footnotes macro displays the footnotes
+        removePreviousFootnotes(registry);
+
+        // Get the footnotes registered by the footnote macros
+        List<FootnoteRegistry.Footnote> footnotes = registry.getFootnotes();
+        if (footnotes.isEmpty()) {
             return result;
         }
 
+        // Parse all the footnote contents at once, identical contents being parsed only once
+        Map<String, List<Block>> parsedContents = parseContents(footnotes, context);
+
         NumberedListBlock container = new NumberedListBlock(Collections.<Block> emptyList());
         container.setParameter(CLASS_ATTRIBUTE_NAME, "footnotes");
-        Block footnoteResult;
 
         int counter = 1;
-        for (MacroMarkerBlock footnote : footnotes) {
-            footnoteResult = processFootnote(footnote, counter, context);
-            if (footnoteResult != null) {
-                container.addChild(footnoteResult);
-                counter++;
-            }
+        for (FootnoteRegistry.Footnote footnote : footnotes) {
+            List<Block> parsedContent = parsedContents.get(getContent(footnote));
+            container.addChild(createFootnoteBlock(cloneBlocks(parsedContent), counter));
+            fillFootnoteReferenceBlock(footnote.getReferenceBlock(), counter);
+            counter++;
         }
+        registry.setFootnotesBlock(container);
 
         return Collections.<Block> singletonList(container);
     }
 
     /**
-     * Processes a {{footnote}} macro, by generating a footnote element to insert in the footnote list and a reference
-     * to it, which is placed instead of the macro call.
+     * Remove the footnotes displayed by the previously executed put footnotes macro, if any.
      * 
-     * @param footnoteMacro the {{footnote}} macro element
-     * @param counter the current footnote counter
-     * @param context the execution context of the macro
-     * @return the footnote element which should be inserted in the footnote list
-     * @throws MacroExecutionException if the footnote content cannot be further processed
+     * @param registry the registry of the footnotes
      */
-    private ListItemBlock processFootnote(MacroMarkerBlock footnoteMacro, int counter,
-        MacroTransformationContext context) throws MacroExecutionException
+    private void removePreviousFootnotes(FootnoteRegistry registry)
     {
-        String content = footnoteMacro.getContent();
-        if (StringUtils.isBlank(content)) {
-            content = " ";
-        }
-        // Construct the footnote and reference blocks
-        Block referenceBlock = createFootnoteReferenceBlock(counter);
-        ListItemBlock footnoteBlock = createFootnoteBlock(content, counter, context);
-        // Insert the footnote and the reference in the document.
-        if (referenceBlock != null && footnoteBlock != null) {
-            addFootnoteRef(footnoteMacro, referenceBlock);
-            return footnoteBlock;
+        Block previousFootnotes = registry.getFootnotesBlock();
+        if (previousFootnotes != null) {
+            // Remove the whole result of the previous put footnotes macro
+            Block previousMacro = previousFootnotes.getParent();
+            if (!(previousMacro instanceof MacroMarkerBlock)) {
+                previousMacro = previousFootnotes;
+            }
+            if (previousMacro.getParent() != null) {
+                previousMacro.getParent().replaceChild(Collections.<Block> emptyList(), previousMacro);
+            }
+            registry.setFootnotesBlock(null);
         }
-        return null;
     }
 
     /**
-     * Add a footnote to the list of document footnotes. If such a list doesn't exist yet, create it and append it to
-     * the end of the document.
+     * Parse the contents of the footnotes.
      * 
-     * @param footnoteMacro the {{footnote}} macro being processed
-     * @param footnoteRef the generated block corresponding to the footnote to be inserted
+     * @param footnotes the footnotes to parse
+     * @param context the macro transformation context, used for obtaining the correct parser for parsing the contents
+     * @return the parsed contents, indexed by content
      */
-    private void addFootnoteRef(MacroMarkerBlock footnoteMacro, Block footnoteRef)
+    private Map<String, List<Block>> parseContents(List<FootnoteRegistry.Footnote> footnotes,
+        MacroTransformationContext context)
     {
-        for (ListIterator<Block> it = footnoteMacro.getChildren().listIterator(); it.hasNext();) {
-            Block b = it.next();
-            it.remove();
-            // b.replace(Collections.<Block> emptyList());
+        Map<String, List<Block>> parsedContents = new HashMap<String, List<Block>>();
+        for (FootnoteRegistry.Footnote footnote : footnotes) {
+            String footnoteContent = getContent(footnote);
+            if (!parsedContents.containsKey(footnoteContent)) {
+                List<Block> parsedContent;
+                try {
+                    parsedContent = this.contentParser.parse(footnoteContent, context, false, true).getChildren();
+                } catch (MacroExecutionException e) {
+                    parsedContent = Collections.<Block> singletonList(new WordBlock(footnoteContent));
+                }
+                parsedContents.put(footnoteContent, parsedContent);
+            }
         }
-        footnoteMacro.addChild(footnoteRef);
+
+        return parsedContents;
     }
 
     /**
-     * Generate the footnote reference (link) that should be inserted at the location of the macro, and should point to
-     * the actual footnote at the end of the document.
+     * @param footnote a footnote
+     * @return the content of the footnote, never blank
+     */
+    private String getContent(FootnoteRegistry.Footnote footnote)
+    {
+        String footnoteContent = footnote.getContent();
+        if (StringUtils.isBlank(footnoteContent)) {
+            footnoteContent = " ";
+        }
+        return footnoteContent;
+    }
+
+    /**
+     * @param blocks the blocks to clone
+     * @return copies of the passed blocks, since the same parsed content can be used by several footnotes
+     */
+    private List<Block> cloneBlocks(List<Block> blocks)
+    {
+        List<Block> clones = new ArrayList<Block>(blocks.size());
+        for (Block block : blocks) {
+            clones.add(block.clone());
+        }
+        return clones;
+    }
+
+    /**
+     * Fill the footnote reference (link) that is inserted at the location of the macro, and should point to the actual
+     * footnote at the end of the document.
      * 
+     * @param referenceBlock the block generated by the footnote macro, displayed as
+     *            {@code (superscript(link(footnote index)))}
      * @param counter the current footnote counter
-     * @return the generated reference element, displayed as {@code (superscript(link(footnote index)))}
      */
-    private Block createFootnoteReferenceBlock(int counter)
+    static void fillFootnoteReferenceBlock(Block referenceBlock, int counter)
     {
         Block result = new WordBlock(counter + "");
         DocumentResourceReference reference = new DocumentResourceReference(null);
         reference.setAnchor(FOOTNOTE_ID_PREFIX + counter);
         result = new LinkBlock(Collections.singletonList(result), reference, false);
-        result = new FormatBlock(Collections.singletonList(result), Format.SUPERSCRIPT);
-        result.setParameter(ID_ATTRIBUTE_NAME, FOOTNOTE_REFERENCE_ID_PREFIX + counter);
-        result.setParameter(CLASS_ATTRIBUTE_NAME, "footnoteRef");
-        return result;
+        // Replace the reference filled by a previous put footnotes macro, if any
+        referenceBlock.setChildren(Collections.singletonList(result));
+        referenceBlock.setParameter(ID_ATTRIBUTE_NAME, FOOTNOTE_REFERENCE_ID_PREFIX + counter);
+        referenceBlock.setParameter(CLASS_ATTRIBUTE_NAME, "footnoteRef");
     }
 
     /**
      * Generate the footnote block, a numbered list item containing a backlink to the footnote's reference, and the
      * actual footnote text, parsed into XDOM.
      * 
-     * @param content the string representation of the actual footnote text; the content of the macro
+     * @param parsedContent the actual footnote text, parsed into XDOM
      * @param counter the current footnote counter
-     * @param context the macro transformation context, used for obtaining the correct parser for parsing the content
      * @return the generated footnote block
-     * @throws MacroExecutionException if parsing the content fails
      */
-    private ListItemBlock createFootnoteBlock(String content, int counter, MacroTransformationContext context)
-        throws MacroExecutionException
+    private ListItemBlock createFootnoteBlock(List<Block> parsedContent, int counter)
     {
-        List<Block> parsedContent;
-        try {
-            parsedContent = this.contentParser.parse(content, context, false, true).getChildren();
-        } catch (MacroExecutionException e) {
-            parsedContent = Collections.<Block> singletonList(new WordBlock(content));
-        }
         Block result = new WordBlock("^");
         DocumentResourceReference reference = new DocumentResourceReference(null);
         reference.setAnchor(FOOTNOTE_REFERENCE_ID_PREFIX + counter);
@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.macro.footnote;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.internal.macro.footnote.FootnoteMacro;
+import org.xwiki.rendering.macro.Macro;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link FootnoteMacro} that cannot be performed using the Rendering Test framework.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class FootnoteMacroTest extends AbstractComponentTestCase
+{
+    /**
+     * Verify that the reference to the footnote is displayed even if no put footnotes macro is executed.
+     */
+    @Test
+    public void executeWithoutPutFootnotes() throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        Macro<FootnoteMacroParameters> macro = getComponentManager().getInstance(Macro.class, "footnote");
+        MacroTransformationContext context = new MacroTransformationContext();
+        context.setXDOM(new XDOM(Collections.<Block> emptyList()));
+
+        macro.execute(new FootnoteMacroParameters(), "one", context);
+        List<Block> blocks = macro.execute(new FootnoteMacroParameters(), "two", context);
+
+        Assert.assertEquals("beginFormat [SUPERSCRIPT] [[id]=[x_footnote_ref_2][class]=[footnoteRef]]\n"
+            + "beginLink [Typed = [true] Type = [doc] Parameters = [[anchor] = [x_footnote_2]]] [false]\n"
+            + "onWord [2]\n"
+            + "endLink [Typed = [true] Type = [doc] Parameters = [[anchor] = [x_footnote_2]]] [false]\n"
+            + "endFormat [SUPERSCRIPT] [[id]=[x_footnote_ref_2][class]=[footnoteRef]]", render(blocks));
+    }
+
+    private String render(List<Block> blocks) throws Exception
+    {
+        PrintRendererFactory factory = getComponentManager().getInstance(PrintRendererFactory.class, "event/1.0");
+        PrintRenderer renderer = factory.createRenderer(new DefaultWikiPrinter());
+        for (Block block : blocks) {
+            block.traverse(renderer);
+        }
+
+        return renderer.getPrinter().toString().trim();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.html;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of cleaned HTML contents, used by {@link HTMLMacro} to avoid cleaning identical HTML snippets again
+ * and again. The least recently used contents are evicted first.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class CleanedHTMLCache
+{
+    /**
+     * The key of a cleaned content.
+     */
+    private static final class Key
+    {
+        /**
+         * The content before cleaning.
+         */
+        private final String content;
+
+        /**
+         * Whether the content was cleaned for an inline macro.
+         */
+        private final boolean inline;
+
+        /**
+         * Whether the content was cleaned in a restricted context.
+         */
+        private final boolean restricted;
+
+        /**
+         * @param content the content before cleaning
+         * @param inline whether the content is cleaned for an inline macro
+         * @param restricted whether the content is cleaned in a restricted context
+         */
+        Key(String content, boolean inline, boolean restricted)
+        {
+            this.content = content;
+            this.inline = inline;
+            this.restricted = restricted;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            boolean equals;
+            if (obj == this) {
+                equals = true;
+            } else if (obj instanceof Key) {
+                Key key = (Key) obj;
+                equals = this.inline == key.inline && this.restricted == key.restricted
+                    && this.content.equals(key.content);
+            } else {
+                equals = false;
+            }
+
+            return equals;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 4 * this.content.hashCode() + (this.inline ? 2 : 0) + (this.restricted ? 1 : 0);
+        }
+    }
+
+    /**
+     * The cleaned contents, in access order.
+     */
+    private final Map<Key, String> contents;
+
+    /**
+     * @param maxSize the maximum number of cleaned contents to keep
+     */
+    public CleanedHTMLCache(final int maxSize)
+    {
+        this.contents = new LinkedHashMap<Key, String>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param content the content before cleaning
+     * @param inline whether the content is cleaned for an inline macro
+     * @param restricted whether the content is cleaned in a restricted context
+     * @return the cleaned content or null if it's not in the cache
+     */
+    public synchronized String get(String content, boolean inline, boolean restricted)
+    {
+        return this.contents.get(new Key(content, inline, restricted));
+    }
+
+    /**
+     * @param content the content before cleaning
+     * @param inline whether the content is cleaned for an inline macro
+     * @param restricted whether the content is cleaned in a restricted context
+     * @param cleanedContent the cleaned content
+     */
+    public synchronized void put(String content, boolean inline, boolean restricted, String cleanedContent)
+    {
+        this.contents.put(new Key(content, inline, restricted), cleanedContent);
+    }
+
+    /**
+     * @return the number of cleaned contents currently in the cache
+     */
+    public synchronized int getSize()
+    {
+        return this.contents.size();
+    }
+
+    /**
+     * Removes all the cleaned contents from the cache.
+     */
+    public synchronized void clear()
+    {
+        this.contents.clear();
+    }
+}
@@ -93,6 +93,11 @@ public class HTMLMacro extends AbstractMacro<HTMLMacroParameters>
      */
     private static final ClassBlockMatcher MACROBLOCKMATCHER = new ClassBlockMatcher(MacroBlock.class);
 
+    /**
+     * The maximum number of cleaned HTML contents to keep in the cache.
+     */
+    private static final int CACHE_SIZE = 100;
+
     /**
      * To clean the passed HTML so that it's valid XHTML (this is required since we use an XML parser to parse it).
      */
@@ -114,6 +119,11 @@ public class HTMLMacro extends AbstractMacro<HTMLMacroParameters>
     @Inject
     private MacroContentParser contentParser;
 
+    /**
+     * The cleaned HTML contents, since cleaning identical HTML snippets (in templates for example) is a waste.
+     */
+    private final CleanedHTMLCache cache = new CleanedHTMLCache(CACHE_SIZE);
+
     /**
      * Create and initialize the descriptor of the macro.
      */
@@ -162,7 +172,16 @@ public List<Block> execute(HTMLMacroParameters parameters, String content, Macro
     }
 
     /**
-     * Clean the HTML entered by the user, transforming it into valid XHTML.
+     * @return the cache of cleaned HTML contents
+     */
+    public CleanedHTMLCache getCache()
+    {
+        return this.cache;
+    }
+
+    /**
+     * Clean the HTML entered by the user, transforming it into valid XHTML, or reuse the result of a previous cleaning
+     * of the same content.
      * 
      * @param content the content to clean
      * @param context the macro transformation context
@@ -170,6 +189,27 @@ public List<Block> execute(HTMLMacroParameters parameters, String content, Macro
      * @throws MacroExecutionException if the macro is inline and the content is not inline HTML
      */
     private String cleanHTML(String content, MacroTransformationContext context) throws MacroExecutionException
+    {
+        boolean restricted = context.getTransformationContext().isRestricted();
+
+        String cleanedContent = this.cache.get(content, context.isInline(), restricted);
+        if (cleanedContent == null) {
+            cleanedContent = clean(content, context);
+            this.cache.put(content, context.isInline(), restricted, cleanedContent);
+        }
+
+        return cleanedContent;
+    }
+
+    /**
+     * Clean the HTML entered by the user, transforming it into valid XHTML.
+     * 
+     * @param content the content to clean
+     * @param context the macro transformation context
+     * @return the cleaned HTML as a string representing valid XHTML
+     * @throws MacroExecutionException if the macro is inline and the content is not inline HTML
+     */
+    private String clean(String content, MacroTransformationContext context) throws MacroExecutionException
     {
         String cleanedContent = content;
 
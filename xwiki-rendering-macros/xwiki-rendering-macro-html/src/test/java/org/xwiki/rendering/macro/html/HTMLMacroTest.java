@@ -78,4 +78,26 @@ public void restrictedHtml() throws Exception
             }
         }
     }
+
+    @Test
+    public void executeReusesCleanedContent() throws Exception
+    {
+        HTMLMacro macro = (HTMLMacro) getComponentManager().getInstance(Macro.class, "html");
+        HTMLMacroParameters parameters = new HTMLMacroParameters();
+        MacroTransformationContext context = new MacroTransformationContext();
+
+        List<Block> blocks = macro.execute(parameters, "<p>some <em>text</em></p>", context);
+        Assert.assertEquals("<p>some <em>text</em></p>", ((RawBlock) blocks.get(0)).getRawContent());
+        Assert.assertEquals(1, macro.getCache().getSize());
+
+        blocks = macro.execute(parameters, "<p>some <em>text</em></p>", context);
+        Assert.assertEquals("<p>some <em>text</em></p>", ((RawBlock) blocks.get(0)).getRawContent());
+        Assert.assertEquals(1, macro.getCache().getSize());
+
+        // The same content is cleaned differently when the macro is inline.
+        context.setInline(true);
+        blocks = macro.execute(parameters, "<p>some <em>text</em></p>", context);
+        Assert.assertEquals("some <em>text</em>", ((RawBlock) blocks.get(0)).getRawContent());
+        Assert.assertEquals(2, macro.getCache().getSize());
+    }
 }
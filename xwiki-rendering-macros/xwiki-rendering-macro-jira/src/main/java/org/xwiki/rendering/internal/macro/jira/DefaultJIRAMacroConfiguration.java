@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.jira;
+
+import java.io.File;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.rendering.macro.jira.JIRAMacroConfiguration;
+
+/**
+ * All configuration options for the JIRA Macro.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultJIRAMacroConfiguration implements JIRAMacroConfiguration
+{
+    /**
+     * Prefix for configuration keys for the JIRA Macro module.
+     */
+    private static final String PREFIX = "rendering.macro.jira.";
+
+    /**
+     * Don't wait more than 10 seconds for the JIRA server.
+     */
+    private static final int TIMEOUT = 10000;
+
+    /**
+     * Don't open more than 4 connections to the same JIRA server at the same time.
+     */
+    private static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * Keep at most 100 JIRA server responses in memory.
+     */
+    private static final int CACHE_SIZE = 100;
+
+    /**
+     * Reuse JIRA server responses for 1 minute before asking the server if they have changed.
+     */
+    private static final long CACHE_TIME_TO_LIVE = 60000L;
+
+    /**
+     * Overridden default timeout to be used if set.
+     */
+    private Integer timeout;
+
+    /**
+     * Overridden default maximum number of connections per host to be used if set.
+     */
+    private Integer maxConnectionsPerHost;
+
+    /**
+     * Overridden default cache size to be used if set.
+     */
+    private Integer cacheSize;
+
+    /**
+     * Overridden default cache time to live to be used if set.
+     */
+    private Long cacheTimeToLive;
+
+    /**
+     * Overridden cache directory to be used if set.
+     */
+    private File cacheDirectory;
+
+    /**
+     * Used to dynamically lookup a ConfigurationSource implementation since we want to make it work even if there's
+     * none available.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * @param key the name of the property, without the prefix
+     * @param defaultValue the value to return if the property isn't set or if there's no configuration source
+     * @param <T> the type of the property value
+     * @return the value of the property
+     */
+    private <T> T getProperty(String key, T defaultValue)
+    {
+        T result;
+
+        ConfigurationSource source;
+        try {
+            source = this.componentManager.getInstance(ConfigurationSource.class);
+            result = source.getProperty(PREFIX + key, defaultValue);
+        } catch (ComponentLookupException e) {
+            result = defaultValue;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int getTimeout()
+    {
+        int result;
+
+        if (this.timeout != null) {
+            result = this.timeout;
+        } else {
+            result = getProperty("timeout", TIMEOUT);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setTimeout(int timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public int getMaxConnectionsPerHost()
+    {
+        int result;
+
+        if (this.maxConnectionsPerHost != null) {
+            result = this.maxConnectionsPerHost;
+        } else {
+            result = getProperty("maxConnectionsPerHost", MAX_CONNECTIONS_PER_HOST);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+    {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    @Override
+    public int getCacheSize()
+    {
+        int result;
+
+        if (this.cacheSize != null) {
+            result = this.cacheSize;
+        } else {
+            result = getProperty("cacheSize", CACHE_SIZE);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setCacheSize(int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public long getCacheTimeToLive()
+    {
+        long result;
+
+        if (this.cacheTimeToLive != null) {
+            result = this.cacheTimeToLive;
+        } else {
+            result = getProperty("cacheTimeToLive", CACHE_TIME_TO_LIVE);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setCacheTimeToLive(long cacheTimeToLive)
+    {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
+    @Override
+    public File getCacheDirectory()
+    {
+        File result;
+
+        if (this.cacheDirectory != null) {
+            result = this.cacheDirectory;
+        } else {
+            String path = getProperty("cacheDirectory", "");
+            result = path.length() > 0 ? new File(path) : null;
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setCacheDirectory(File cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+}
@@ -29,16 +29,23 @@
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.internal.macro.jira.displayer.AbstractJIRADisplayer;
 import org.xwiki.rendering.macro.AbstractMacro;
+import org.xwiki.rendering.macro.CacheableMacro;
 import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.macro.descriptor.DefaultContentDescriptor;
 import org.xwiki.rendering.macro.jira.JIRADataSource;
 import org.xwiki.rendering.macro.jira.JIRADisplayer;
+import org.xwiki.rendering.macro.jira.JIRAMacroConfiguration;
 import org.xwiki.rendering.macro.jira.JIRAMacroParameters;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 
 /**
  * Fetches information from a JIRA server and displays them as a table, list or enumeration.
+ * <p/>
+ * The result of the macro only depends on its parameters and content (the JIRA server URL and the issues to retrieve),
+ * so it's cached by the Macro Transformation for as long as the JIRA server responses are reused without asking the
+ * server if they have changed.
  *
  * @version $Id$
  * @since 4.2M1
@@ -46,7 +53,7 @@
 @Component
 @Named("jira")
 @Singleton
-public class JIRAMacro extends AbstractMacro<JIRAMacroParameters>
+public class JIRAMacro extends AbstractMacro<JIRAMacroParameters> implements CacheableMacro<JIRAMacroParameters>
 {
     /**
      * The description of the macro.
@@ -65,6 +72,12 @@ public class JIRAMacro extends AbstractMacro<JIRAMacroParameters>
     @Inject
     private ComponentManager componentManager;
 
+    /**
+     * Used to get the time during which the results can be reused.
+     */
+    @Inject
+    private JIRAMacroConfiguration configuration;
+
     /**
      * Create and initialize the descriptor of the macro.
      */
@@ -84,7 +97,27 @@ public boolean supportsInlineMode()
     public List<Block> execute(JIRAMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
-        return getDisplayer(parameters).display(getDataSource(parameters).getData(content, parameters), parameters);
+        JIRADisplayer displayer = getDisplayer(parameters);
+
+        // Let the data source know the fields displayed by default so that it extracts only them.
+        if (parameters.getFields() == null && displayer instanceof AbstractJIRADisplayer) {
+            parameters.setFields(((AbstractJIRADisplayer) displayer).getFields(parameters));
+        }
+
+        return displayer.display(getDataSource(parameters).getData(content, parameters), parameters);
+    }
+
+    @Override
+    public String getCacheKey(JIRAMacroParameters parameters, String content, MacroTransformationContext context)
+    {
+        // The result doesn't depend on anything else than the parameters and the content
+        return "";
+    }
+
+    @Override
+    public long getCacheTimeToLive(JIRAMacroParameters parameters, String content, MacroTransformationContext context)
+    {
+        return this.configuration.getCacheTimeToLive();
     }
 
     /**
@@ -70,7 +70,7 @@ protected JIRAFieldDisplayer getFieldDisplayer(String fieldName)
      *        not defined by the user then use default field names)
      * @return the list of JIRA field names to be displayed
      */
-    protected List<String> getFields(JIRAMacroParameters parameters)
+    public List<String> getFields(JIRAMacroParameters parameters)
     {
         List<String> fields = parameters.getFields();
         if (fields == null) {
@@ -19,17 +19,28 @@
  */
 package org.xwiki.rendering.internal.macro.jira.source;
 
-import java.net.URL;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.input.SAXBuilder;
 import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.macro.jira.JIRADataSource;
 import org.xwiki.rendering.macro.jira.JIRAFields;
+import org.xwiki.rendering.macro.jira.JIRAMacroParameters;
 
 /**
  * Common implementation for JIRA Data Source that knowns how to execute a JQL query on a JIRA instance and retrieve
@@ -47,41 +58,183 @@ public abstract class AbstractJIRADataSource implements JIRADataSource
         "/sr/jira.issueviews:searchrequest-xml/temp/SearchRequest.xml?jqlQuery=";
 
     /**
-     * SAX Builder to use to read the JIRA data.
+     * The name of the XML elements representing JIRA issues.
      */
-    private SAXBuilder saxBuilder = new SAXBuilder();
+    private static final String ITEM = "item";
 
     /**
-     * @param document the XML document from which to extract JIRA issues
-     * @return the list of XML Elements for each JIRA issue, indexed in a Map with the issue id as the key
+     * The depth of the JIRA issue elements in the XML document ({@code rss/channel/item}).
+     */
+    private static final int ITEM_DEPTH = 3;
+
+    /**
+     * The fields that are always extracted, whatever the fields to display: the key is used to index the issues and
+     * the link and resolution are used to display the key.
+     */
+    private static final List<String> REQUIRED_FIELDS =
+        Arrays.asList(JIRAFields.KEY, JIRAFields.LINK, JIRAFields.RESOLUTION);
+
+    /**
+     * Used to retrieve the JIRA data.
      */
-    protected Map<String, Element> buildIssues(Document document)
+    @Inject
+    private JIRAClient client;
+
+    /**
+     * Used to read the JIRA data.
+     */
+    private XMLInputFactory xmlInputFactory;
+
+    /**
+     * Create the XML reader factory.
+     */
+    public AbstractJIRADataSource()
     {
-        Map<String, Element> issues = new LinkedHashMap<String, Element>();
-        for (Element item : document.getRootElement().getChild("channel").getChildren("item")) {
-            issues.put(item.getChildText(JIRAFields.KEY), item);
+        this.xmlInputFactory = XMLInputFactory.newInstance();
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        this.xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @param parameters the macro parameters specified by the user
+     * @return the JIRA fields to extract from the JIRA data, or null to extract all of them
+     */
+    protected Collection<String> getFields(JIRAMacroParameters parameters)
+    {
+        Set<String> fields = null;
+        if (parameters.getFields() != null) {
+            fields = new HashSet<String>(parameters.getFields());
+            fields.addAll(REQUIRED_FIELDS);
         }
-        return issues;
+        return fields;
     }
 
     /**
      * @param jiraURL the JIRA URL prefix (eg "http://jira.xwiki.org")
      * @param jqlQuery the JQL query to execute
-     * @return the XML document containing the matching JIRA issues
+     * @param fields the JIRA fields to extract, or null to extract all of them
+     * @return the list of XML Elements for each matching JIRA issue, indexed in a Map with the issue id as the key
      * @throws MacroExecutionException if the JIRA issues cannot be retrieved
      */
-    public Document getXMLDocument(String jiraURL, String jqlQuery) throws MacroExecutionException
+    public Map<String, Element> getIssues(String jiraURL, String jqlQuery, Collection<String> fields)
+        throws MacroExecutionException
     {
-        Document document;
+        Map<String, Element> issues;
         try {
             // Note: we encode using UTF8 since it's the W3C recommendation.
             // See http://www.w3.org/TR/html40/appendix/notes.html#non-ascii-chars
-            document = this.saxBuilder.build(new URL(String.format("%s%s%s", jiraURL, JQL_URL_PREFIX,
-                URLEncoder.encode(jqlQuery, "UTF-8"))));
+            byte[] data = this.client.get(String.format("%s%s%s", jiraURL, JQL_URL_PREFIX,
+                URLEncoder.encode(jqlQuery, "UTF-8")));
+            issues = parseIssues(new ByteArrayInputStream(data), fields);
         } catch (Exception e) {
             throw new MacroExecutionException(String.format("Failed to retrieve JIRA data from [%s] for JQL [%s]",
                 jiraURL, jqlQuery), e);
         }
-        return document;
+        return issues;
+    }
+
+    /**
+     * Extracts the JIRA issues from the JIRA data without loading the whole XML document in memory: the fields that
+     * are not needed are skipped.
+     *
+     * @param stream the XML data from which to extract JIRA issues
+     * @param fields the JIRA fields to extract, or null to extract all of them
+     * @return the list of XML Elements for each JIRA issue, indexed in a Map with the issue id as the key
+     * @throws XMLStreamException if the XML data is invalid
+     */
+    public Map<String, Element> parseIssues(InputStream stream, Collection<String> fields) throws XMLStreamException
+    {
+        Map<String, Element> issues = new LinkedHashMap<String, Element>();
+
+        XMLStreamReader reader = this.xmlInputFactory.createXMLStreamReader(stream);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (depth == ITEM_DEPTH - 1 && ITEM.equals(reader.getLocalName())) {
+                        Element issue = readIssue(reader, fields);
+                        issues.put(issue.getChildText(JIRAFields.KEY), issue);
+                    } else {
+                        depth++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return issues;
+    }
+
+    /**
+     * @param reader the XML reader, positioned on the start of a JIRA issue element
+     * @param fields the JIRA fields to extract, or null to extract all of them
+     * @return the JIRA issue, the reader being positioned on the end of the JIRA issue element
+     * @throws XMLStreamException if the XML data is invalid
+     */
+    private Element readIssue(XMLStreamReader reader, Collection<String> fields) throws XMLStreamException
+    {
+        Element issue = new Element(ITEM);
+
+        int event = reader.next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (fields == null || fields.contains(reader.getLocalName())) {
+                    issue.addContent(readElement(reader));
+                } else {
+                    skipElement(reader);
+                }
+            }
+            event = reader.next();
+        }
+
+        return issue;
+    }
+
+    /**
+     * @param reader the XML reader, positioned on the start of an element
+     * @return the element with its attributes and content, the reader being positioned on the end of the element
+     * @throws XMLStreamException if the XML data is invalid
+     */
+    private Element readElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        Element element = new Element(reader.getLocalName());
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+
+        int event = reader.next();
+        while (event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                element.addContent(readElement(reader));
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                element.addContent(reader.getText());
+            }
+            event = reader.next();
+        }
+
+        return element;
+    }
+
+    /**
+     * @param reader the XML reader, positioned on the start of an element, and which is positioned on the end of
+     *        the element when this method returns
+     * @throws XMLStreamException if the XML data is invalid
+     */
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        int level = 1;
+        while (level > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
     }
 }
@@ -0,0 +1,284 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.jira.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.cookie.CookiePolicy;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.rendering.macro.jira.JIRAMacroConfiguration;
+
+/**
+ * Default implementation using Apache Http Client, with pooled connections. The responses are cached in memory (and
+ * optionally on disk) and are revalidated with conditional requests ({@code If-None-Match} and
+ * {@code If-Modified-Since}) once they are older than the configured time to live. Identical requests executed at the
+ * same time are coalesced: only one of them hits the JIRA server and the others wait for its response.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultJIRAClient implements JIRAClient, Initializable
+{
+    /**
+     * The name of the HTTP header holding the entity tag of a response.
+     */
+    private static final String ETAG = "ETag";
+
+    /**
+     * The name of the HTTP header holding the last modification date of a response.
+     */
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Used to get the timeouts and the cache settings.
+     */
+    @Inject
+    private JIRAMacroConfiguration configuration;
+
+    /**
+     * The client to connect to the JIRA servers using HTTP.
+     */
+    private HttpClient httpClient;
+
+    /**
+     * The responses kept in memory, indexed by URL, the least recently used first.
+     */
+    private Map<String, JIRAResponse> cache;
+
+    /**
+     * The requests being executed, indexed by URL.
+     */
+    private final ConcurrentMap<String, FutureTask<JIRAResponse>> pendingRequests =
+        new ConcurrentHashMap<String, FutureTask<JIRAResponse>>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int timeout = this.configuration.getTimeout();
+
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams connectionParams = connectionManager.getParams();
+        connectionParams.setDefaultMaxConnectionsPerHost(this.configuration.getMaxConnectionsPerHost());
+        connectionParams.setConnectionTimeout(timeout);
+        connectionParams.setSoTimeout(timeout);
+        this.httpClient = new HttpClient(connectionManager);
+
+        // Don't wait forever for a pooled connection either.
+        this.httpClient.getParams().setConnectionManagerTimeout(timeout);
+        // Set our user agent to be a good citizen.
+        this.httpClient.getParams().setParameter(HttpMethodParams.USER_AGENT, "XWikiJIRAMacro");
+        // We don't need cookies to get JIRA issues.
+        this.httpClient.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
+
+        final int cacheSize = this.configuration.getCacheSize();
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, JIRAResponse>(16, 0.75F, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JIRAResponse> eldest)
+            {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @Override
+    public byte[] get(final String url) throws IOException
+    {
+        FutureTask<JIRAResponse> request = new FutureTask<JIRAResponse>(new Callable<JIRAResponse>()
+        {
+            @Override
+            public JIRAResponse call() throws IOException
+            {
+                return getResponse(url);
+            }
+        });
+
+        FutureTask<JIRAResponse> pendingRequest = this.pendingRequests.putIfAbsent(url, request);
+        if (pendingRequest == null) {
+            pendingRequest = request;
+            try {
+                request.run();
+            } finally {
+                this.pendingRequests.remove(url, request);
+            }
+        }
+
+        JIRAResponse response;
+        try {
+            response = pendingRequest.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while waiting for [%s]", url), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("Failed to get [%s]", url), e.getCause());
+        }
+
+        return response.getContent();
+    }
+
+    /**
+     * @param url the URL of the data to retrieve
+     * @return the cached response if it's still fresh, the response of the JIRA server otherwise
+     * @throws IOException if the data can't be retrieved
+     */
+    private JIRAResponse getResponse(String url) throws IOException
+    {
+        JIRAResponse response = this.cache.get(url);
+        if (response == null) {
+            // The responses saved on disk have no expiration date and are thus always revalidated.
+            response = load(url);
+        }
+
+        if (response == null || response.getExpirationDate() <= System.currentTimeMillis()) {
+            response = execute(url, response);
+        }
+
+        this.cache.put(url, response);
+
+        return response;
+    }
+
+    /**
+     * @param url the URL of the data to retrieve
+     * @param cachedResponse the previous response for the same URL, used to execute a conditional request, can be
+     *        null
+     * @return the response of the JIRA server, or the passed cached response if it hasn't changed
+     * @throws IOException if the data can't be retrieved
+     */
+    private JIRAResponse execute(String url, JIRAResponse cachedResponse) throws IOException
+    {
+        JIRAResponse response;
+
+        GetMethod method = new GetMethod(url);
+        try {
+            if (cachedResponse != null) {
+                if (cachedResponse.getETag() != null) {
+                    method.setRequestHeader("If-None-Match", cachedResponse.getETag());
+                }
+                if (cachedResponse.getLastModified() != null) {
+                    method.setRequestHeader("If-Modified-Since", cachedResponse.getLastModified());
+                }
+            }
+
+            int responseCode = this.httpClient.executeMethod(method);
+            long expirationDate = System.currentTimeMillis() + this.configuration.getCacheTimeToLive();
+
+            if (responseCode == HttpStatus.SC_NOT_MODIFIED && cachedResponse != null) {
+                this.logger.debug("[{}] hasn't changed", url);
+                response = new JIRAResponse(cachedResponse.getContent(), cachedResponse.getETag(),
+                    cachedResponse.getLastModified(), expirationDate);
+            } else if (responseCode == HttpStatus.SC_OK) {
+                response = new JIRAResponse(JIRAResponseStore.read(method.getResponseBodyAsStream()),
+                    getHeader(method, ETAG), getHeader(method, LAST_MODIFIED), expirationDate);
+                save(url, response);
+            } else {
+                throw new IOException(String.format("Unexpected response code [%s] for [%s]", responseCode, url));
+            }
+        } finally {
+            method.releaseConnection();
+        }
+
+        return response;
+    }
+
+    /**
+     * @param method the executed method
+     * @param name the name of the response header
+     * @return the value of the response header or null if there's no such header
+     */
+    private String getHeader(GetMethod method, String name)
+    {
+        Header header = method.getResponseHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Saves a response on disk, if enabled.
+     *
+     * @param url the URL of the response
+     * @param response the response to save
+     */
+    private void save(String url, JIRAResponse response)
+    {
+        File directory = this.configuration.getCacheDirectory();
+        if (directory != null) {
+            try {
+                JIRAResponseStore.save(directory, url, response);
+            } catch (IOException e) {
+                this.logger.warn("Failed to save the response of [{}] in [{}]", url, directory, e);
+            }
+        }
+    }
+
+    /**
+     * @param url the URL of the response
+     * @return the response saved on disk for the passed URL, or null if there's none or if it can't be read
+     */
+    private JIRAResponse load(String url)
+    {
+        JIRAResponse response = null;
+
+        File directory = this.configuration.getCacheDirectory();
+        if (directory != null) {
+            try {
+                response = JIRAResponseStore.load(directory, url);
+            } catch (IOException e) {
+                this.logger.warn("Failed to load the response of [{}] from [{}]", url, directory, e);
+            }
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.jira.source;
+
+/**
+ * A response of a JIRA server, as cached by {@link DefaultJIRAClient}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+final class JIRAResponse
+{
+    /**
+     * The content of the response.
+     */
+    private final byte[] content;
+
+    /**
+     * The entity tag of the response or null if the server didn't send one.
+     */
+    private final String etag;
+
+    /**
+     * The last modification date of the response or null if the server didn't send one.
+     */
+    private final String lastModified;
+
+    /**
+     * The date (in ms) after which the response needs to be revalidated.
+     */
+    private final long expirationDate;
+
+    /**
+     * @param content the content of the response
+     * @param etag the entity tag of the response
+     * @param lastModified the last modification date of the response
+     * @param expirationDate the date (in ms) after which the response needs to be revalidated
+     */
+    JIRAResponse(byte[] content, String etag, String lastModified, long expirationDate)
+    {
+        this.content = content;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expirationDate = expirationDate;
+    }
+
+    /**
+     * @return the content of the response
+     */
+    byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the entity tag of the response or null if the server didn't send one
+     */
+    String getETag()
+    {
+        return this.etag;
+    }
+
+    /**
+     * @return the last modification date of the response or null if the server didn't send one
+     */
+    String getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return the date (in ms) after which the response needs to be revalidated
+     */
+    long getExpirationDate()
+    {
+        return this.expirationDate;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.jira.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Properties;
+
+/**
+ * Saves the {@link JIRAResponse}s on disk and loads them back. Each response is stored in two files named after the
+ * hash of its URL: one with the content and one with the metadata (URL, entity tag and last modification date).
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+final class JIRAResponseStore
+{
+    /**
+     * The name of the property holding the URL of a response.
+     */
+    private static final String URL = "url";
+
+    /**
+     * The name of the property holding the entity tag of a response.
+     */
+    private static final String ETAG = "ETag";
+
+    /**
+     * The name of the property holding the last modification date of a response.
+     */
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * The extension of the files holding the content of the responses.
+     */
+    private static final String CONTENT_EXTENSION = ".xml";
+
+    /**
+     * The extension of the files holding the metadata of the responses.
+     */
+    private static final String METADATA_EXTENSION = ".properties";
+
+    /**
+     * The extension of the files being written.
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * Utility class.
+     */
+    private JIRAResponseStore()
+    {
+    }
+
+    /**
+     * @param directory the directory where to save the response
+     * @param url the URL of the response
+     * @param response the response to save
+     * @throws IOException if the response can't be saved
+     */
+    static void save(File directory, String url, JIRAResponse response) throws IOException
+    {
+        String name = getFileName(url);
+        directory.mkdirs();
+
+        Properties metadata = new Properties();
+        metadata.setProperty(URL, url);
+        if (response.getETag() != null) {
+            metadata.setProperty(ETAG, response.getETag());
+        }
+        if (response.getLastModified() != null) {
+            metadata.setProperty(LAST_MODIFIED, response.getLastModified());
+        }
+
+        // Write in temporary files first so that a response is never read while it's being written.
+        File contentFile = new File(directory, name + CONTENT_EXTENSION + TEMPORARY_EXTENSION);
+        OutputStream stream = new FileOutputStream(contentFile);
+        try {
+            stream.write(response.getContent());
+        } finally {
+            stream.close();
+        }
+        File metadataFile = new File(directory, name + METADATA_EXTENSION + TEMPORARY_EXTENSION);
+        stream = new FileOutputStream(metadataFile);
+        try {
+            metadata.store(stream, null);
+        } finally {
+            stream.close();
+        }
+
+        rename(contentFile, new File(directory, name + CONTENT_EXTENSION));
+        rename(metadataFile, new File(directory, name + METADATA_EXTENSION));
+    }
+
+    /**
+     * @param directory the directory where the responses are saved
+     * @param url the URL of the response
+     * @return the response saved on disk for the passed URL, or null if there's none; the responses saved on disk have
+     *         no expiration date and thus always need to be revalidated
+     * @throws IOException if the response can't be read
+     */
+    static JIRAResponse load(File directory, String url) throws IOException
+    {
+        String name = getFileName(url);
+        File contentFile = new File(directory, name + CONTENT_EXTENSION);
+        File metadataFile = new File(directory, name + METADATA_EXTENSION);
+        if (!contentFile.isFile() || !metadataFile.isFile()) {
+            return null;
+        }
+
+        Properties metadata = new Properties();
+        InputStream stream = new FileInputStream(metadataFile);
+        try {
+            metadata.load(stream);
+        } finally {
+            stream.close();
+        }
+
+        // Make sure it's not a response for another URL with the same hash.
+        if (!url.equals(metadata.getProperty(URL))) {
+            return null;
+        }
+
+        return new JIRAResponse(read(new FileInputStream(contentFile)), metadata.getProperty(ETAG),
+            metadata.getProperty(LAST_MODIFIED), 0L);
+    }
+
+    /**
+     * @param stream the stream to read, can be null
+     * @return the content of the stream
+     * @throws IOException if the stream can't be read
+     */
+    static byte[] read(InputStream stream) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (stream != null) {
+            try {
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = stream.read(buffer)) != -1) {
+                    content.write(buffer, 0, length);
+                }
+            } finally {
+                stream.close();
+            }
+        }
+
+        return content.toByteArray();
+    }
+
+    /**
+     * @param source the file to rename
+     * @param target the new file, replaced if it already exists
+     * @throws IOException if the file can't be renamed
+     */
+    private static void rename(File source, File target) throws IOException
+    {
+        if (!source.renameTo(target) && !(target.delete() && source.renameTo(target))) {
+            throw new IOException(String.format("Failed to rename [%s] to [%s]", source, target));
+        }
+    }
+
+    /**
+     * @param url the URL of a response
+     * @return the name of the files where the response is saved on disk
+     */
+    private static String getFileName(String url)
+    {
+        StringBuilder name = new StringBuilder();
+        try {
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"))) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        } catch (Exception e) {
+            // Should never happen since SHA-1 and UTF-8 are always supported
+            throw new RuntimeException("Failed to compute the hash of [" + url + "]", e);
+        }
+
+        return name.toString();
+    }
+}
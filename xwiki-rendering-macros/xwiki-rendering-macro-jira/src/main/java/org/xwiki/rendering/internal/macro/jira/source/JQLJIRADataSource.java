@@ -25,7 +25,6 @@
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rendering.macro.MacroExecutionException;
@@ -50,7 +49,6 @@ public Collection<Element> getData(String macroContent, JIRAMacroParameters para
             throw new MacroExecutionException("Missing JQL query!");
         }
 
-        Document document = getXMLDocument(parameters.getURL(), macroContent);
-        return buildIssues(document).values();
+        return getIssues(parameters.getURL(), macroContent, getFields(parameters)).values();
     }
 }
@@ -31,7 +31,6 @@
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.rendering.macro.MacroExecutionException;
@@ -72,22 +71,19 @@ public Collection<Element> getData(String macroContent, JIRAMacroParameters para
             throw new MacroExecutionException("Empty list of JIRA ids!");
         }
 
-        Document document = getXMLDocument(parameters.getURL(), constructJQLQuery(ids));
-        return buildIssues(document, ids);
+        return buildIssues(getIssues(parameters.getURL(), constructJQLQuery(ids), getFields(parameters)), ids);
     }
 
     /**
-     * @param document the XML document containing all the JIRA issues and which was returned by the JIRA server
+     * @param mappedIssues the JIRA issues returned by the JIRA server, indexed by issue id
      * @param issueIds the list of JIRA issue ids specified by the user
      * @return the list of JIRA issues (returned as XML elements), in the same order as the JIRA issue id list
      *         specified by the user
      */
-    public List<Element> buildIssues(Document document, List<Pair<String, String>> issueIds)
+    public List<Element> buildIssues(Map<String, Element> mappedIssues, List<Pair<String, String>> issueIds)
     {
         // Note: JIRA doesn't return items in the order specified in the JQL query, thus we need to manually order
         // them in the same order as passed in the issueIds parameter.
-        Map<String, Element> mappedIssues = buildIssues(document);
-
         List<Element> issues = new ArrayList<Element>();
         for (Pair<String, String> id : issueIds) {
             Element issue = mappedIssues.get(id.getLeft());
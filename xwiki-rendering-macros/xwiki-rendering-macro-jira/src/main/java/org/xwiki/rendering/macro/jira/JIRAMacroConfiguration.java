@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.macro.jira;
+
+import java.io.File;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Configuration options for the JIRA Macro.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface JIRAMacroConfiguration
+{
+    /**
+     * @return the amount of time (in ms) to wait for a connection to the JIRA server or for data from it, before
+     *         failing
+     */
+    int getTimeout();
+
+    /**
+     * @param timeout the amount of time (in ms) to wait for a connection to the JIRA server or for data from it
+     */
+    void setTimeout(int timeout);
+
+    /**
+     * @return the maximum number of connections opened to a same JIRA server at the same time
+     */
+    int getMaxConnectionsPerHost();
+
+    /**
+     * @param maxConnectionsPerHost the maximum number of connections opened to a same JIRA server at the same time
+     */
+    void setMaxConnectionsPerHost(int maxConnectionsPerHost);
+
+    /**
+     * @return the maximum number of JIRA server responses kept in memory
+     */
+    int getCacheSize();
+
+    /**
+     * @param cacheSize the maximum number of JIRA server responses kept in memory
+     */
+    void setCacheSize(int cacheSize);
+
+    /**
+     * @return the amount of time (in ms) during which a JIRA server response is reused without asking the server if
+     *         it has changed
+     */
+    long getCacheTimeToLive();
+
+    /**
+     * @param cacheTimeToLive the amount of time (in ms) during which a JIRA server response is reused without asking
+     *        the server if it has changed
+     */
+    void setCacheTimeToLive(long cacheTimeToLive);
+
+    /**
+     * @return the directory where the JIRA server responses are saved so that they're not lost when restarting, or
+     *         null if they shouldn't be saved
+     */
+    File getCacheDirectory();
+
+    /**
+     * @param cacheDirectory the directory where the JIRA server responses are saved, or null if they shouldn't be
+     *        saved
+     */
+    void setCacheDirectory(File cacheDirectory);
+}
@@ -0,0 +1,247 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.jira.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.macro.jira.JIRAMacroConfiguration;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link DefaultJIRAClient}, using a local HTTP server.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class DefaultJIRAClientTest extends AbstractComponentTestCase
+{
+    private static final String ETAG = "\"v1\"";
+
+    private static final String LAST_MODIFIED = "Mon, 19 Mar 2007 03:22:05 GMT";
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+    private String baseURL;
+
+    /**
+     * The requests received by the server, as "path If-None-Match If-Modified-Since".
+     */
+    private List<String> requests = new CopyOnWriteArrayList<String>();
+
+    /**
+     * Released to let the server answer the requests for "/slow".
+     */
+    private CountDownLatch slowResponse = new CountDownLatch(1);
+
+    private File cacheDirectory;
+
+    private JIRAMacroConfiguration configuration;
+
+    private JIRAClient client;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                requests.add(path + " " + ifNoneMatch + " " + ifModifiedSince);
+
+                int code = 200;
+                if (path.equals("/etag")) {
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    code = ETAG.equals(ifNoneMatch) ? 304 : 200;
+                } else if (path.equals("/lastmodified")) {
+                    exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+                    code = LAST_MODIFIED.equals(ifModifiedSince) ? 304 : 200;
+                } else if (path.equals("/slow")) {
+                    try {
+                        slowResponse.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else if (path.equals("/error")) {
+                    code = 500;
+                }
+
+                if (code == 304) {
+                    exchange.sendResponseHeaders(code, -1);
+                } else {
+                    byte[] content = ("content of " + path).getBytes("UTF-8");
+                    exchange.sendResponseHeaders(code, content.length);
+                    exchange.getResponseBody().write(content);
+                }
+                exchange.close();
+            }
+        });
+        this.server.start();
+        this.baseURL = "http://localhost:" + this.server.getAddress().getPort();
+
+        this.cacheDirectory = new File(System.getProperty("java.io.tmpdir"), "jira-client-test");
+        FileUtils.deleteDirectory(this.cacheDirectory);
+
+        this.configuration = getComponentManager().getInstance(JIRAMacroConfiguration.class);
+        this.configuration.setTimeout(1000);
+        this.configuration.setCacheDirectory(this.cacheDirectory);
+
+        this.client = getComponentManager().getInstance(JIRAClient.class);
+    }
+
+    @After
+    public void stopServer() throws Exception
+    {
+        this.slowResponse.countDown();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        FileUtils.deleteDirectory(this.cacheDirectory);
+    }
+
+    @Test
+    public void getReusesFreshResponse() throws Exception
+    {
+        Assert.assertEquals("content of /etag", get("/etag"));
+        Assert.assertEquals("content of /etag", get("/etag"));
+        Assert.assertEquals(Arrays.asList("/etag null null"), this.requests);
+    }
+
+    @Test
+    public void getRevalidatesWithETag() throws Exception
+    {
+        this.configuration.setCacheTimeToLive(0);
+
+        Assert.assertEquals("content of /etag", get("/etag"));
+        Assert.assertEquals("content of /etag", get("/etag"));
+        Assert.assertEquals(Arrays.asList("/etag null null", "/etag " + ETAG + " null"), this.requests);
+    }
+
+    @Test
+    public void getRevalidatesWithLastModified() throws Exception
+    {
+        this.configuration.setCacheTimeToLive(0);
+
+        Assert.assertEquals("content of /lastmodified", get("/lastmodified"));
+        Assert.assertEquals("content of /lastmodified", get("/lastmodified"));
+        Assert.assertEquals(Arrays.asList("/lastmodified null null", "/lastmodified null " + LAST_MODIFIED),
+            this.requests);
+    }
+
+    @Test
+    public void getRevalidatesResponseSavedOnDisk() throws Exception
+    {
+        Assert.assertEquals("content of /etag", get("/etag"));
+
+        // Simulate a restart.
+        ((Map< ? , ? >) FieldUtils.readField(this.client, "cache", true)).clear();
+
+        Assert.assertEquals("content of /etag", get("/etag"));
+        Assert.assertEquals(Arrays.asList("/etag null null", "/etag " + ETAG + " null"), this.requests);
+    }
+
+    @Test
+    public void getCoalescesConcurrentRequests() throws Exception
+    {
+        this.configuration.setCacheTimeToLive(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<String>()
+                {
+                    @Override
+                    public String call() throws Exception
+                    {
+                        return get("/slow");
+                    }
+                }));
+            }
+
+            // Give the time to all the threads to wait for the same request.
+            Thread.sleep(200);
+            this.slowResponse.countDown();
+
+            for (Future<String> result : results) {
+                Assert.assertEquals("content of /slow", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(Arrays.asList("/slow null null"), this.requests);
+    }
+
+    @Test
+    public void getWhenServerFails() throws Exception
+    {
+        try {
+            get("/error");
+            Assert.fail("Should have failed");
+        } catch (IOException expected) {
+            Assert.assertTrue(expected.getMessage().startsWith("Unexpected response code [500]"));
+        }
+    }
+
+    @Test
+    public void getWhenServerTimesOut() throws Exception
+    {
+        try {
+            get("/slow");
+            Assert.fail("Should have timed out");
+        } catch (IOException expected) {
+            // The server didn't answer in time.
+        }
+    }
+
+    private String get(String path) throws IOException
+    {
+        return new String(this.client.get(this.baseURL + path), "UTF-8");
+    }
+}
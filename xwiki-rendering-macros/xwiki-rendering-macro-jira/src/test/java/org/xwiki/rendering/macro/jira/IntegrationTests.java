@@ -19,18 +19,14 @@
  */
 package org.xwiki.rendering.macro.jira;
 
-import java.net.URL;
-
-import org.jdom2.Document;
-import org.jdom2.input.SAXBuilder;
+import org.apache.commons.io.IOUtils;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
 import org.jmock.integration.junit4.JUnit4Mockery;
-import org.jmock.lib.concurrent.Synchroniser;
-import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.runner.RunWith;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.rendering.internal.macro.jira.source.JIRAClient;
 import org.xwiki.rendering.test.integration.RenderingTestSuite;
 
 /**
@@ -48,31 +44,23 @@ public void initialize(ComponentManager componentManager) throws Exception
     {
         Mockery mockery = new JUnit4Mockery();
 
-        // The SAXBuilder we mock below somehow executes in different threads (apparently in a Finalizer thread) and
-        // thus we must make it thread safe.
-        mockery.setThreadingPolicy(new Synchroniser());
-
-        // SAXBuilder is a class and not an interface which is why we need to set up the Class Imposteriser
-        mockery.setImposteriser(ClassImposteriser.INSTANCE);
-
-        // Replace the SAXBuilder used in the Source implementations for hint "list" by a mock so that we don't
-        // go out on the internet and thus control our test environment.
+        // Replace the JIRA client used in the Source implementations by a mock so that we don't go out on the
+        // internet and thus control our test environment.
 
-        SAXBuilder localSaxBuilder = new SAXBuilder();
-        final Document document = localSaxBuilder.build(getClass().getResourceAsStream("/input.xml"));
+        final byte[] data = IOUtils.toByteArray(getClass().getResourceAsStream("/input.xml"));
 
-        final SAXBuilder saxBuilder = mockery.mock(SAXBuilder.class);
+        final JIRAClient client = mockery.mock(JIRAClient.class);
         mockery.checking(new Expectations() {{
-            allowing(saxBuilder).build(new URL(
+            allowing(client).get(
                 "http://localhost/sr/jira.issueviews:searchrequest-xml/temp/SearchRequest.xml?jqlQuery="
-                + "issueKey+in+%28XWIKI-1000%2CXWIKI-1001%29"));
-            will(returnValue(document));
+                + "issueKey+in+%28XWIKI-1000%2CXWIKI-1001%29");
+            will(returnValue(data));
         }});
 
         JIRADataSource listDataSource = componentManager.getInstance(JIRADataSource.class, "list");
-        ReflectionUtils.setFieldValue(listDataSource, "saxBuilder", saxBuilder);
+        ReflectionUtils.setFieldValue(listDataSource, "client", client);
 
         JIRADataSource jqlDataSource = componentManager.getInstance(JIRADataSource.class, "jql");
-        ReflectionUtils.setFieldValue(jqlDataSource, "saxBuilder", saxBuilder);
+        ReflectionUtils.setFieldValue(jqlDataSource, "client", client);
     }
 }
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.macro.jira;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.internal.macro.jira.JIRAMacro;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.transformation.Transformation;
+import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link JIRAMacro} that cannot be performed using the Rendering Test framework.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class JIRAMacroTest extends AbstractComponentTestCase
+{
+    /**
+     * Verify that the result of the macro is reused when it's executed again with the same parameters and content.
+     */
+    @Test
+    public void executeReusesCachedResult() throws Exception
+    {
+        final JIRADataSource source = registerMockComponent(JIRADataSource.class, "mock");
+        getMockery().checking(new Expectations()
+        {
+            {
+                oneOf(source).getData(with("XWIKI-1000"), with(any(JIRAMacroParameters.class)));
+                will(returnValue(Collections.singletonList(new Element("item"))));
+            }
+        });
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("url", "http://localhost");
+        parameters.put("source", "mock");
+
+        String first = transformAndRender(new MacroBlock("jira", parameters, "XWIKI-1000", false));
+        String second = transformAndRender(new MacroBlock("jira", parameters, "XWIKI-1000", false));
+
+        Assert.assertTrue(first.contains("beginTable"));
+        Assert.assertEquals(first, second);
+    }
+
+    private String transformAndRender(Block block) throws Exception
+    {
+        XDOM xdom = new XDOM(Arrays.asList(block));
+        Transformation transformation = getComponentManager().getInstance(Transformation.class, "macro");
+        transformation.transform(xdom, new TransformationContext(xdom, Syntax.XWIKI_2_0));
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        BlockRenderer renderer = getComponentManager().getInstance(BlockRenderer.class, Syntax.EVENT_1_0.toIdString());
+        renderer.render(xdom, printer);
+
+        return printer.toString();
+    }
+}
@@ -19,15 +19,15 @@
  */
 package org.xwiki.rendering.macro.jira;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
-import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.input.SAXBuilder;
 import org.junit.Test;
 import org.xwiki.rendering.internal.macro.jira.source.ListJIRADataSource;
 
@@ -83,12 +83,12 @@ public void testBuildIssues() throws Exception
     {
         ListJIRADataSource source = new ListJIRADataSource();
 
-        Document document = new SAXBuilder().build(getClass().getResourceAsStream("/input.xml"));
+        Map<String, Element> mappedIssues = source.parseIssues(getClass().getResourceAsStream("/input.xml"), null);
         List<Pair<String, String>> ids = Arrays.<Pair<String, String>>asList(
             new ImmutablePair<String, String>("XWIKI-1000", ""),
             new ImmutablePair<String, String>("XWIKI-1001", "Note"));
 
-        List<Element> issues = source.buildIssues(document, ids);
+        List<Element> issues = source.buildIssues(mappedIssues, ids);
 
         Assert.assertEquals(2, issues.size());
         Element issue1 = issues.get(0);
@@ -99,4 +99,26 @@ public void testBuildIssues() throws Exception
         Assert.assertEquals("On jetty, non-default skins are not usable", issue2.getChildTextTrim(SUMMARY));
         Assert.assertEquals("Note", issue2.getChildTextTrim(NOTE));
     }
+
+    /**
+     * Verify that only the requested fields are extracted, with their attributes.
+     */
+    @Test
+    public void testParseIssuesWithFields() throws Exception
+    {
+        ListJIRADataSource source = new ListJIRADataSource();
+
+        Map<String, Element> issues = source.parseIssues(getClass().getResourceAsStream("/input.xml"),
+            Arrays.asList(KEY, TYPE, VERSION));
+
+        Assert.assertEquals(Arrays.asList("XWIKI-1001", "XWIKI-1000"), new ArrayList<String>(issues.keySet()));
+        Element issue = issues.get("XWIKI-1001");
+        Assert.assertEquals("Bug", issue.getChildTextTrim(TYPE));
+        Assert.assertEquals("http://jira.xwiki.org/images/icons/bug.gif",
+            issue.getChild(TYPE).getAttributeValue("iconUrl"));
+        Assert.assertEquals(5, issue.getChildren(VERSION).size());
+        Assert.assertNull(issue.getChild(SUMMARY));
+        Assert.assertNull(issue.getChild("description"));
+        Assert.assertNull(issue.getChild("comments"));
+    }
 }
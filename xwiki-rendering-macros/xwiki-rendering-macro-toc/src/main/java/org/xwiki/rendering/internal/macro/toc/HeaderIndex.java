@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.toc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+/**
+ * The headers of a {@link XDOM} and their TOC labels, shared by all the TOC macros of a transformation so that the
+ * {@link XDOM} is searched and the labels are generated only once per transformation.
+ * <p>
+ * The headers are collected the first time they are asked for. This is fine since the TOC macro is executed as one of
+ * the last macros: headers generated by macros executed after it would not have been listed anyway.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class HeaderIndex
+{
+    /**
+     * The context of the transformation for which the headers are indexed.
+     */
+    private final MacroTransformationContext context;
+
+    /**
+     * The {@link XDOM} containing the indexed headers.
+     */
+    private final XDOM xdom;
+
+    /**
+     * Used to generate the labels.
+     */
+    private final TocBlockFilter tocBlockFilter;
+
+    /**
+     * The headers of the {@link XDOM} in document order, {@code null} until they are asked for.
+     */
+    private List<HeaderBlock> headers;
+
+    /**
+     * The labels already generated, indexed by identity since {@link Block#equals(Object)} and
+     * {@link Block#hashCode()} are expensive (reflection based).
+     */
+    private final Map<HeaderBlock, List<Block>> labels = new IdentityHashMap<HeaderBlock, List<Block>>();
+
+    /**
+     * @param context the context of the transformation, used to get the {@link XDOM} containing the headers to index
+     * @param tocBlockFilter used to generate the labels
+     */
+    public HeaderIndex(MacroTransformationContext context, TocBlockFilter tocBlockFilter)
+    {
+        this.context = context;
+        this.xdom = context.getXDOM();
+        this.tocBlockFilter = tocBlockFilter;
+    }
+
+    /**
+     * @param context the context of the macro being executed
+     * @return {@code true} if this index can be used by the macro, i.e. if it has been created during the same
+     *         transformation and for the same {@link XDOM}
+     */
+    public boolean isValid(MacroTransformationContext context)
+    {
+        return this.context == context && this.xdom == context.getXDOM();
+    }
+
+    /**
+     * @return the headers of the {@link XDOM} in document order
+     */
+    public List<HeaderBlock> getHeaders()
+    {
+        if (this.headers == null) {
+            this.headers = Collections.unmodifiableList(
+                this.xdom.<HeaderBlock>getBlocks(new ClassBlockMatcher(HeaderBlock.class), Block.Axes.DESCENDANT));
+        }
+
+        return this.headers;
+    }
+
+    /**
+     * @param headerBlock the header for which to generate the label, not necessarily one of the indexed headers
+     * @return a new copy of the filtered label to use in the TOC anchor link
+     */
+    public List<Block> getLabel(HeaderBlock headerBlock)
+    {
+        List<Block> label = this.labels.get(headerBlock);
+        if (label == null) {
+            label = this.tocBlockFilter.generateLabel(headerBlock);
+            this.labels.put(headerBlock, label);
+        }
+
+        // The returned blocks are going to be added to the TOC so never give the cached ones
+        List<Block> copy = new ArrayList<Block>(label.size());
+        for (Block block : label) {
+            copy.add(block.clone());
+        }
+
+        return copy;
+    }
+}
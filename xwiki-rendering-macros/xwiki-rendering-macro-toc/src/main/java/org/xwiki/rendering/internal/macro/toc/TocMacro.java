@@ -46,6 +46,7 @@
 import org.xwiki.rendering.parser.Parser;
 import org.xwiki.rendering.renderer.reference.link.LinkLabelGenerator;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.rendering.transformation.TransformationContext;
 
 /**
  * Generate a Table Of Contents based on the document sections.
@@ -63,6 +64,11 @@ public class TocMacro extends AbstractMacro<TocMacroParameters>
      */
     private static final String DESCRIPTION = "Generates a Table Of Contents.";
 
+    /**
+     * The name of the transformation context attribute holding the {@link HeaderIndex}.
+     */
+    private static final String HEADER_INDEX_ATTRIBUTE = HeaderIndex.class.getName();
+
     /**
      * Used to filter the {@link SectionBlock} title to generate the toc anchor.
      */
@@ -138,36 +144,37 @@ public List<Block> execute(TocMacroParameters parameters, String content, MacroT
         int start = parameters.getStart();
         int depth = parameters.getDepth();
 
-        Block root;
+        HeaderIndex headerIndex = getHeaderIndex(context);
+
+        // Get the list of sections in the scope
+        List<HeaderBlock> headers;
 
         if (parameters.getScope() == Scope.LOCAL) {
-            root = context.getCurrentMacroBlock().getParent();
+            Block root = context.getCurrentMacroBlock().getParent();
             if (!parameters.isCustomStart()) {
                 SectionBlock rootSection = context.getCurrentMacroBlock().getFirstBlock(
                     new ClassBlockMatcher(SectionBlock.class), Block.Axes.ANCESTOR);
-                HeaderBlock header = rootSection.getHeaderBlock();
+                HeaderBlock header = rootSection != null ? rootSection.getHeaderBlock() : null;
                 if (header != null) {
                     start = header.getLevel().getAsInt() + 1;
                 }
             }
-        } else {
-            root = context.getXDOM();
-        }
-
-        // Get the list of sections in the scope
-        List<HeaderBlock> headers = root.getBlocks(new ClassBlockMatcher(HeaderBlock.class), Block.Axes.DESCENDANT);
 
-        // If the root block is a section, remove it's header block for the list of header blocks
-        if (root instanceof SectionBlock) {
-            Block block = root.getChildren().get(0);
+            // The local scope is usually small and the macro might not be part of the indexed XDOM (when executed
+            // in a sub transformation for example) so we only search the headers of the scope.
+            headers = root.getBlocks(new ClassBlockMatcher(HeaderBlock.class), Block.Axes.DESCENDANT);
 
-            if (block instanceof HeaderBlock) {
-                headers.remove(block);
+            // If the root block is a section, remove it's header block for the list of header blocks. Note that we
+            // compare instances since Block#equals is expensive (reflection based).
+            if (root instanceof SectionBlock && !headers.isEmpty() && headers.get(0) == root.getChildren().get(0)) {
+                headers.remove(0);
             }
+        } else {
+            headers = headerIndex.getHeaders();
         }
 
         // Construct table of content from sections list
-        Block tocBlock = generateTree(headers, start, depth, parameters.isNumbered());
+        Block tocBlock = generateTree(headers, start, depth, parameters.isNumbered(), headerIndex);
         if (tocBlock != null) {
             result = Arrays.asList(tocBlock);
         } else {
@@ -177,6 +184,26 @@ public List<Block> execute(TocMacroParameters parameters, String content, MacroT
         return result;
     }
 
+    /**
+     * @param context the macro transformation context
+     * @return the index of the headers of the transformed {@link org.xwiki.rendering.block.XDOM}, shared by all the
+     *         TOC macros of the transformation
+     */
+    private HeaderIndex getHeaderIndex(MacroTransformationContext context)
+    {
+        TransformationContext transformationContext = context.getTransformationContext();
+        HeaderIndex headerIndex = (HeaderIndex) transformationContext.getAttribute(HEADER_INDEX_ATTRIBUTE);
+
+        // The transformation context can be reused for several transformations, and the XDOM can change during the
+        // transformation, so make sure the index is for the current ones
+        if (headerIndex == null || !headerIndex.isValid(context)) {
+            headerIndex = new HeaderIndex(context, this.tocBlockFilter);
+            transformationContext.setAttribute(HEADER_INDEX_ATTRIBUTE, headerIndex);
+        }
+
+        return headerIndex;
+    }
+
     /**
      * Convert headers into list block tree.
      * 
@@ -184,9 +211,11 @@ public List<Block> execute(TocMacroParameters parameters, String content, MacroT
      * @param start the "start" parameter value.
      * @param depth the "depth" parameter value.
      * @param numbered the "numbered" parameter value.
+     * @param headerIndex used to get the labels of the headers
      * @return the root block of generated block tree or null if no header was matching the specified parameters
      */
-    private Block generateTree(List<HeaderBlock> headers, int start, int depth, boolean numbered)
+    private Block generateTree(List<HeaderBlock> headers, int start, int depth, boolean numbered,
+        HeaderIndex headerIndex)
     {
         Block tocBlock = null;
 
@@ -201,7 +230,7 @@ private Block generateTree(List<HeaderBlock> headers, int start, int depth, bool
                 if (currentLevel < headerLevel) {
                     while (currentLevel < headerLevel) {
                         if (currentBlock instanceof ListBLock) {
-                            currentBlock = addItemBlock(currentBlock, null);
+                            currentBlock = addItemBlock(currentBlock, null, headerIndex);
                         }
 
                         currentBlock = createChildListBlock(numbered, currentBlock);
@@ -215,7 +244,7 @@ private Block generateTree(List<HeaderBlock> headers, int start, int depth, bool
                     currentBlock = currentBlock.getParent();
                 }
 
-                currentBlock = addItemBlock(currentBlock, headerBlock);
+                currentBlock = addItemBlock(currentBlock, headerBlock, headerIndex);
             }
         }
 
@@ -231,11 +260,13 @@ private Block generateTree(List<HeaderBlock> headers, int start, int depth, bool
      * 
      * @param currentBlock the current block in the toc tree.
      * @param headerBlock the {@link HeaderBlock} to use to generate toc anchor label.
+     * @param headerIndex used to get the label of the header
      * @return the new {@link ListItemBlock}.
      */
-    private Block addItemBlock(Block currentBlock, HeaderBlock headerBlock)
+    private Block addItemBlock(Block currentBlock, HeaderBlock headerBlock, HeaderIndex headerIndex)
     {
-        ListItemBlock itemBlock = headerBlock == null ? createEmptyTocEntry() : createTocEntry(headerBlock);
+        ListItemBlock itemBlock =
+            headerBlock == null ? createEmptyTocEntry() : createTocEntry(headerBlock, headerIndex);
 
         currentBlock.addChild(itemBlock);
 
@@ -255,14 +286,15 @@ private ListItemBlock createEmptyTocEntry()
      * Create a new toc list item based on section title.
      * 
      * @param headerBlock the {@link HeaderBlock}.
+     * @param headerIndex used to get the label of the header
      * @return the new list item block.
      */
-    private ListItemBlock createTocEntry(HeaderBlock headerBlock)
+    private ListItemBlock createTocEntry(HeaderBlock headerBlock, HeaderIndex headerIndex)
     {
         // Create the link to target the header anchor
         DocumentResourceReference reference = new DocumentResourceReference(null);
         reference.setAnchor(headerBlock.getId());
-        LinkBlock linkBlock = new LinkBlock(this.tocBlockFilter.generateLabel(headerBlock), reference, false);
+        LinkBlock linkBlock = new LinkBlock(headerIndex.getLabel(headerBlock), reference, false);
 
         return new ListItemBlock(Collections.<Block> singletonList(linkBlock));
     }
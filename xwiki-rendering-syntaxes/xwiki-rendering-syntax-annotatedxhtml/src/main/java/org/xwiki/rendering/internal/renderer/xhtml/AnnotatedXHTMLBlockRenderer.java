@@ -24,7 +24,6 @@
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
-import org.xwiki.rendering.internal.renderer.AbstractBlockRenderer;
 import org.xwiki.rendering.renderer.PrintRendererFactory;
 
 /**
@@ -36,7 +35,7 @@
 @Component
 @Named("annotatedxhtml/1.0")
 @Singleton
-public class AnnotatedXHTMLBlockRenderer extends AbstractBlockRenderer
+public class AnnotatedXHTMLBlockRenderer extends AbstractXHTMLBlockRenderer
 {
     /**
      * Factory to create Annotated XHTML Print Renderers.
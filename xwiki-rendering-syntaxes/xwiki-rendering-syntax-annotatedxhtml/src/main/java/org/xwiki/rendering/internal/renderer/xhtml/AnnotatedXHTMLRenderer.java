@@ -19,15 +19,19 @@
  */
 package org.xwiki.rendering.internal.renderer.xhtml;
 
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.xwiki.rendering.internal.renderer.xhtml.image.XHTMLImageRenderer;
+import org.xwiki.rendering.internal.renderer.xhtml.link.DocumentAvailabilityAware;
 import org.xwiki.rendering.internal.renderer.xhtml.link.XHTMLLinkRenderer;
 import org.xwiki.rendering.listener.chaining.BlockStateChainingListener;
 import org.xwiki.rendering.listener.chaining.ListenerChain;
 import org.xwiki.rendering.listener.chaining.EmptyBlockChainingListener;
 import org.xwiki.rendering.listener.chaining.MetaDataStateChainingListener;
+import org.xwiki.rendering.listener.reference.ResourceReference;
 import org.xwiki.rendering.renderer.AbstractChainingPrintRenderer;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
@@ -47,7 +51,8 @@
 @Component
 @Named("annotatedxhtml/1.0")
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class AnnotatedXHTMLRenderer extends AbstractChainingPrintRenderer implements Initializable
+public class AnnotatedXHTMLRenderer extends AbstractChainingPrintRenderer
+    implements Initializable, DocumentAvailabilityAware
 {
     /**
      * To render link events into annotated XHTML. This is done so that it's pluggable because link rendering depends
@@ -67,6 +72,14 @@ public class AnnotatedXHTMLRenderer extends AbstractChainingPrintRenderer implem
     @Named("annotated")
     private XHTMLImageRenderer imageRenderer;
 
+    @Override
+    public void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability)
+    {
+        if (this.linkRenderer instanceof DocumentAvailabilityAware) {
+            ((DocumentAvailabilityAware) this.linkRenderer).setDocumentAvailability(documentAvailability);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * @see org.xwiki.component.phase.Initializable#initialize()
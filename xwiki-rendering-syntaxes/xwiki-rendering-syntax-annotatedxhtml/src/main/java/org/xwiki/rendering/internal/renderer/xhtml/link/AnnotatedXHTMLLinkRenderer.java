@@ -41,7 +41,7 @@
 @Component
 @Named("annotated")
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class AnnotatedXHTMLLinkRenderer implements XHTMLLinkRenderer
+public class AnnotatedXHTMLLinkRenderer implements XHTMLLinkRenderer, DocumentAvailabilityAware
 {
     /**
      * Used to print Image reference as XHTML comments.
@@ -62,6 +62,14 @@ public void setXHTMLWikiPrinter(XHTMLWikiPrinter printer)
         this.defaultLinkRenderer.setXHTMLWikiPrinter(printer);
     }
 
+    @Override
+    public void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability)
+    {
+        if (this.defaultLinkRenderer instanceof DocumentAvailabilityAware) {
+            ((DocumentAvailabilityAware) this.defaultLinkRenderer).setDocumentAvailability(documentAvailability);
+        }
+    }
+
     @Override
     public void setHasLabel(boolean hasLabel)
     {
@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Default implementation, uses the Pegdown parser unless configured otherwise.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultMarkdownConfiguration implements MarkdownConfiguration
+{
+    /**
+     * Prefix for configuration keys for the Markdown syntax module.
+     */
+    private static final String PREFIX = "rendering.markdown.";
+
+    /**
+     * Used to dynamically lookup a ConfigurationSource implementation since we want to make it work even if there's
+     * none available.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    @Override
+    public String getParser()
+    {
+        String result;
+
+        try {
+            ConfigurationSource source = this.componentManager.getInstance(ConfigurationSource.class);
+            result = source.getProperty(PREFIX + "parser", PEGDOWN_PARSER);
+        } catch (ComponentLookupException e) {
+            result = PEGDOWN_PARSER;
+        }
+
+        return result;
+    }
+}
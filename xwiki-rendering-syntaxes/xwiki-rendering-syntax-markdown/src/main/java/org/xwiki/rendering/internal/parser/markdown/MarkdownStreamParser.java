@@ -30,13 +30,15 @@
 import org.pegdown.PegDownProcessor;
 import org.pegdown.ast.RootNode;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.internal.parser.markdown.linear.LinearMarkdownParser;
 import org.xwiki.rendering.listener.Listener;
 import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.parser.StreamParser;
 import org.xwiki.rendering.syntax.Syntax;
 
 /**
- * Markdown Streaming Parser.
+ * Markdown Streaming Parser. Uses Pegdown by default, or the {@link LinearMarkdownParser} when configured to (see
+ * {@link MarkdownConfiguration#getParser()}).
  *
  * @version $Id$
  * @since 4.5M1
@@ -51,6 +53,18 @@ public class MarkdownStreamParser implements StreamParser
     @Inject
     private PegdownVisitor pegdownVisitor;
 
+    /**
+     * Used to know which parser implementation to use.
+     */
+    @Inject
+    private MarkdownConfiguration configuration;
+
+    /**
+     * Parser with linear time guarantees, used instead of Pegdown when configured.
+     */
+    @Inject
+    private LinearMarkdownParser linearParser;
+
     @Override
     public Syntax getSyntax()
     {
@@ -60,14 +74,18 @@ public Syntax getSyntax()
     @Override
     public void parse(Reader source, Listener listener) throws ParseException
     {
-        // The Pegdown processor is not thread safe, thus we need one per thread at least.
-        PegDownProcessor processor = new PegDownProcessor(Extensions.ALL & ~Extensions.HARDWRAPS);
+        if (MarkdownConfiguration.LINEAR_PARSER.equals(this.configuration.getParser())) {
+            this.linearParser.parse(source, listener);
+        } else {
+            // The Pegdown processor is not thread safe, thus we need one per thread at least.
+            PegDownProcessor processor = new PegDownProcessor(Extensions.ALL & ~Extensions.HARDWRAPS);
 
-        try {
-            RootNode rootNode = processor.parseMarkdown(IOUtils.toString(source).toCharArray());
-            this.pegdownVisitor.visit(rootNode, listener);
-        } catch (IOException e) {
-            throw new ParseException("Failed to retrieve ", e);
+            try {
+                RootNode rootNode = processor.parseMarkdown(IOUtils.toString(source).toCharArray());
+                this.pegdownVisitor.visit(rootNode, listener);
+            } catch (IOException e) {
+                throw new ParseException("Failed to retrieve ", e);
+            }
         }
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.parser.ResourceReferenceParser;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.reference.link.URILabelGenerator;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Converts the inline nodes produced by the {@link MarkdownInlineParser} (formatting, links, images, etc.) into XWiki
+ * Rendering events.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class AbstractInlineMarkdownEventGenerator extends AbstractTextMarkdownEventGenerator
+{
+    /**
+     * Id of the code macro.
+     */
+    protected static final String CODE_MACRO_ID = "code";
+
+    /**
+     * HTML title attribute.
+     */
+    private static final String TITLE_ATTRIBUTE = "title";
+
+    /**
+     * Used to parse link references.
+     */
+    private ResourceReferenceParser linkResourceReferenceParser;
+
+    /**
+     * Used to parse image references.
+     */
+    private ResourceReferenceParser imageResourceReferenceParser;
+
+    /**
+     * Used to find out at runtime a link label generator matching the link reference type.
+     */
+    private ComponentManager componentManager;
+
+    /**
+     * @param inlineParser the parser to use to parse the inline content of blocks
+     * @param abbreviations the abbreviation definitions of the document
+     * @param plainRendererFactory used to extract text from nodes
+     * @param plainTextStreamParser used to convert text to events
+     * @param linkResourceReferenceParser used to parse link references
+     * @param imageResourceReferenceParser used to parse image references
+     * @param componentManager used to find out a link label generator matching the link reference type
+     */
+    public AbstractInlineMarkdownEventGenerator(MarkdownInlineParser inlineParser, Map<String, String> abbreviations,
+        PrintRendererFactory plainRendererFactory, StreamParser plainTextStreamParser,
+        ResourceReferenceParser linkResourceReferenceParser, ResourceReferenceParser imageResourceReferenceParser,
+        ComponentManager componentManager)
+    {
+        super(inlineParser, abbreviations, plainRendererFactory, plainTextStreamParser);
+
+        this.linkResourceReferenceParser = linkResourceReferenceParser;
+        this.imageResourceReferenceParser = imageResourceReferenceParser;
+        this.componentManager = componentManager;
+    }
+
+    /**
+     * @param node the inline node to convert
+     */
+    protected void generateInlineNode(MarkdownNode node)
+    {
+        switch (node.getType()) {
+            case CODE:
+                // Since XWiki doesn't have a Code Block we generate a Code Macro Block
+                getListener().onMacro(CODE_MACRO_ID, Listener.EMPTY_PARAMETERS, node.getText(), true);
+                break;
+            case EMPHASIS:
+                generateFormat(node, Format.ITALIC);
+                break;
+            case STRONG:
+                generateFormat(node, Format.BOLD);
+                break;
+            case HTML_INLINE:
+                getListener().onRawText(node.getText(), Syntax.HTML_4_01);
+                break;
+            case LINE_BREAK:
+                getListener().onNewLine();
+                break;
+            case SYMBOL:
+                getListener().onSpecialSymbol((char) node.getLevel());
+                break;
+            case ESCAPED_TEXT:
+                generatePlainText(node.getText());
+                break;
+            default:
+                generateLinkNode(node);
+                break;
+        }
+    }
+
+    /**
+     * @param node the formatting node to convert
+     * @param format the formatting
+     */
+    private void generateFormat(MarkdownNode node, Format format)
+    {
+        getListener().beginFormat(format, Listener.EMPTY_PARAMETERS);
+        generateChildren(node);
+        getListener().endFormat(format, Listener.EMPTY_PARAMETERS);
+    }
+
+    /**
+     * @param node the link or image node to convert
+     */
+    private void generateLinkNode(MarkdownNode node)
+    {
+        switch (node.getType()) {
+            case LINK:
+                generateLink(node);
+                break;
+            case IMAGE:
+                generateImage(node);
+                break;
+            case AUTO_LINK:
+                generateFreeStandingLink(this.linkResourceReferenceParser.parse(node.getText()), true);
+                break;
+            case MAIL_LINK:
+                generateFreeStandingLink(this.linkResourceReferenceParser.parse("mailto:" + node.getText()), true);
+                break;
+            case WIKI_LINK:
+                generateFreeStandingLink(this.linkResourceReferenceParser.parse(node.getText()), false);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param node the link node to convert
+     */
+    private void generateLink(MarkdownNode node)
+    {
+        ResourceReference reference = this.linkResourceReferenceParser.parse(node.getInfo());
+        Map<String, String> parameters = createTitleParameters(node.getTitle());
+
+        getListener().beginLink(reference, false, parameters);
+        generateChildren(node);
+        getListener().endLink(reference, false, parameters);
+    }
+
+    /**
+     * @param reference the link reference
+     * @param freeStanding whether the link is free standing or not
+     */
+    private void generateFreeStandingLink(ResourceReference reference, boolean freeStanding)
+    {
+        getListener().beginLink(reference, freeStanding, Listener.EMPTY_PARAMETERS);
+        getListener().endLink(reference, freeStanding, Listener.EMPTY_PARAMETERS);
+    }
+
+    /**
+     * @param node the image node to convert
+     */
+    private void generateImage(MarkdownNode node)
+    {
+        ResourceReference reference = this.imageResourceReferenceParser.parse(node.getInfo());
+        Map<String, String> parameters = createTitleParameters(node.getTitle());
+
+        // Handle alt text (only for explicit images, as Pegdown does). Note that in order to have the same behavior
+        // as the XWiki Syntax 2.0+ we don't add the alt parameter if its content is the same as the one that would be
+        // automatically generated by the XHTML Renderer.
+        if (node.getLevel() == 0) {
+            String computedAltValue = computeAltAttributeValue(reference);
+            String extractedAltValue = extractText(node);
+            if (StringUtils.isNotEmpty(extractedAltValue) && !extractedAltValue.equals(computedAltValue)) {
+                parameters.put("alt", extractedAltValue);
+            }
+        }
+
+        getListener().onImage(reference, false, parameters);
+    }
+
+    /**
+     * @param title the optional title
+     * @return the parameters holding the title
+     */
+    private Map<String, String> createTitleParameters(String title)
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (StringUtils.isNotEmpty(title)) {
+            parameters.put(TITLE_ATTRIBUTE, title);
+        }
+        return parameters;
+    }
+
+    /**
+     * @param reference the reference for which to compute the alt attribute value
+     * @return the alt attribute value that would get generated if not specified by the user
+     */
+    private String computeAltAttributeValue(ResourceReference reference)
+    {
+        String label;
+        try {
+            URILabelGenerator uriLabelGenerator =
+                this.componentManager.getInstance(URILabelGenerator.class, reference.getType().getScheme());
+            label = uriLabelGenerator.generateLabel(reference);
+        } catch (ComponentLookupException e) {
+            label = reference.getReference();
+        }
+        return label;
+    }
+}
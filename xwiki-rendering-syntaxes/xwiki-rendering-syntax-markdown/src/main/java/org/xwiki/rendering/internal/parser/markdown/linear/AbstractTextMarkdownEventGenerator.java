@@ -0,0 +1,288 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.rendering.listener.InlineFilterListener;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.WrappingListener;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Converts the text of the nodes produced by the {@link MarkdownBlockParser} and the {@link MarkdownInlineParser}
+ * into XWiki Rendering events, and holds the stack of listeners the events are sent to.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class AbstractTextMarkdownEventGenerator
+{
+    /**
+     * The characters ending an HTML entity candidate, i.e. the whitespaces as defined by the {@code \s} regex class.
+     */
+    private static final String ENTITY_WHITESPACES = " \t\n\u000B\f\r";
+
+    /**
+     * Used to parse the inline content of blocks.
+     */
+    private MarkdownInlineParser inlineParser;
+
+    /**
+     * Abbreviation definitions.
+     */
+    private Map<String, String> abbreviations;
+
+    /**
+     * Used to extract text from nodes.
+     */
+    private PrintRendererFactory plainRendererFactory;
+
+    /**
+     * A plain text parser used to convert text nodes to various events since they contain several words and special
+     * characters which we thus need to break down into individual tokens.
+     */
+    private StreamParser plainTextStreamParser;
+
+    /**
+     * Listener(s) for the generated XWiki Events. Organized as a stack so that a buffering listener can hijack all
+     * events for a while, for example. All generated events are sent to the top of the stack.
+     */
+    private Stack<Listener> listeners = new Stack<Listener>();
+
+    /**
+     * Whether we're currently in the code that handles abbreviations or not. This is to prevent recursive abbreviation
+     * handling.
+     */
+    private boolean isHandlingAbbreviations;
+
+    /**
+     * @param inlineParser the parser to use to parse the inline content of blocks
+     * @param abbreviations the abbreviation definitions of the document
+     * @param plainRendererFactory used to extract text from nodes
+     * @param plainTextStreamParser used to convert text to events
+     */
+    public AbstractTextMarkdownEventGenerator(MarkdownInlineParser inlineParser, Map<String, String> abbreviations,
+        PrintRendererFactory plainRendererFactory, StreamParser plainTextStreamParser)
+    {
+        this.inlineParser = inlineParser;
+        this.abbreviations = abbreviations;
+        this.plainRendererFactory = plainRendererFactory;
+        this.plainTextStreamParser = plainTextStreamParser;
+    }
+
+    /**
+     * @param node the node to convert, which is not a text node
+     */
+    protected abstract void generate(MarkdownNode node);
+
+    /**
+     * @return the top listener on the stack
+     */
+    protected Listener getListener()
+    {
+        return this.listeners.peek();
+    }
+
+    /**
+     * @param listener the listener to send the events to until {@link #popListener()} is called
+     */
+    protected void pushListener(Listener listener)
+    {
+        this.listeners.push(listener);
+    }
+
+    /**
+     * Sends the events to the previous listener again.
+     */
+    protected void popListener()
+    {
+        this.listeners.pop();
+    }
+
+    /**
+     * @return the factory used to extract text from nodes
+     */
+    protected PrintRendererFactory getPlainRendererFactory()
+    {
+        return this.plainRendererFactory;
+    }
+
+    /**
+     * @param node the node whose children to convert
+     */
+    protected void generateChildren(MarkdownNode node)
+    {
+        MarkdownNode child = node.getFirstChild();
+        while (child != null) {
+            if (child.getType() == MarkdownNodeType.TEXT) {
+                // Consecutive text nodes (left by unmatched delimiters for example) are handled as a single text
+                StringBuilder text = new StringBuilder();
+                for (; child != null && child.getType() == MarkdownNodeType.TEXT; child = child.getNext()) {
+                    text.append(child.getText());
+                }
+                generateText(text.toString());
+            } else {
+                generate(child);
+                child = child.getNext();
+            }
+        }
+    }
+
+    /**
+     * @param content the raw inline content to parse and convert
+     */
+    protected void generateInline(String content)
+    {
+        generateChildren(this.inlineParser.parse(content));
+    }
+
+    /**
+     * @param text the text to convert, handling abbreviations and HTML entities
+     */
+    private void generateText(String text)
+    {
+        if (!this.isHandlingAbbreviations && !this.abbreviations.isEmpty()) {
+            generateTextWithAbbreviations(text);
+        } else {
+            generateTextWithEntities(text);
+        }
+    }
+
+    /**
+     * Since XWiki doesn't support abbreviations, we add the {@code abbr} HTML element around the abbreviations used
+     * in the text.
+     *
+     * @param text the text to convert
+     */
+    private void generateTextWithAbbreviations(String text)
+    {
+        String remaining = text;
+        boolean foundAbbreviation = true;
+        while (foundAbbreviation) {
+            foundAbbreviation = false;
+            for (Map.Entry<String, String> abbreviationEntry : this.abbreviations.entrySet()) {
+                int pos = remaining.indexOf(abbreviationEntry.getKey());
+                if (pos > -1) {
+                    generateText(remaining.substring(0, pos));
+                    generateAbbreviation(abbreviationEntry.getKey(), abbreviationEntry.getValue());
+                    remaining = remaining.substring(pos + abbreviationEntry.getKey().length());
+                    foundAbbreviation = true;
+                    break;
+                }
+            }
+        }
+
+        generateTextWithEntities(remaining);
+    }
+
+    /**
+     * @param abbreviation the abbreviation found in the text
+     * @param definition the raw definition of the abbreviation
+     */
+    private void generateAbbreviation(String abbreviation, String definition)
+    {
+        this.isHandlingAbbreviations = true;
+        String abbreviationDefinition = extractText(this.inlineParser.parse(definition));
+        this.isHandlingAbbreviations = false;
+
+        String html;
+        if (StringUtils.isNotEmpty(abbreviationDefinition)) {
+            html = String.format("<abbr title=\"%s\">%s</abbr>", abbreviationDefinition, abbreviation);
+        } else {
+            html = String.format("<abbr>%s</abbr>", abbreviation);
+        }
+        getListener().onRawText(html, Syntax.HTML_4_01);
+    }
+
+    /**
+     * Markdown supports embedding HTML entities directly in the content. Thus we need to find them and replace them
+     * with raw HTML events. An entity goes from an ampersand to the last semicolon of the same non whitespace sequence
+     * of characters. Sequences without semicolon are skipped as a whole so that the text is scanned only once.
+     *
+     * @param text the text to convert
+     */
+    private void generateTextWithEntities(String text)
+    {
+        int textStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (text.charAt(i) == '&') {
+                int semicolon = -1;
+                int end = i + 1;
+                for (; end < text.length() && ENTITY_WHITESPACES.indexOf(text.charAt(end)) < 0; end++) {
+                    if (text.charAt(end) == ';') {
+                        semicolon = end;
+                    }
+                }
+                if (semicolon > 0) {
+                    generatePlainText(text.substring(textStart, i));
+                    getListener().onRawText(text.substring(i, semicolon + 1), Syntax.HTML_4_01);
+                    textStart = semicolon + 1;
+                    i = semicolon + 1;
+                } else {
+                    i = end;
+                }
+            } else {
+                i++;
+            }
+        }
+        generatePlainText(text.substring(textStart));
+    }
+
+    /**
+     * @param text the text to parse and for which to send XWiki events
+     */
+    protected void generatePlainText(String text)
+    {
+        if (text.length() > 0) {
+            try {
+                WrappingListener inlineListener = new InlineFilterListener();
+                inlineListener.setWrappedListener(getListener());
+                this.plainTextStreamParser.parse(new StringReader(text), inlineListener);
+            } catch (ParseException e) {
+                throw new RuntimeException(String.format("Error parsing content [%s]", text), e);
+            }
+        }
+    }
+
+    /**
+     * Extracts the content of the passed node as a String.
+     *
+     * @param node the node from which to extract the content
+     * @return the textual content of the passed node and children
+     */
+    protected String extractText(MarkdownNode node)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        pushListener(this.plainRendererFactory.createRenderer(printer));
+        generateChildren(node);
+        popListener();
+        return printer.toString();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.ResourceReferenceParser;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+
+/**
+ * Default {@link LinearMarkdownParser} implementation. The content is first split into blocks by the
+ * {@link MarkdownBlockParser} (which also collects reference definitions), then converted to events by the
+ * {@link MarkdownEventGenerator}, which parses the inline content of each block with the {@link MarkdownInlineParser}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultLinearMarkdownParser implements LinearMarkdownParser
+{
+    /**
+     * Used to extract text from nodes.
+     */
+    @Inject
+    @Named("plain/1.0")
+    private PrintRendererFactory plainRendererFactory;
+
+    /**
+     * A plain text parser used to convert text nodes to events.
+     */
+    @Inject
+    @Named("plain/1.0")
+    private StreamParser plainTextStreamParser;
+
+    /**
+     * We parse link references with the default reference parser (i.e. the same one used by XWiki Syntax 2.1).
+     */
+    @Inject
+    @Named("link")
+    private ResourceReferenceParser linkResourceReferenceParser;
+
+    /**
+     * We parse image references with the default reference parser (i.e. the same one used by XWiki Syntax 2.1).
+     */
+    @Inject
+    @Named("image")
+    private ResourceReferenceParser imageResourceReferenceParser;
+
+    /**
+     * Used to find out at runtime a link label generator matching the link reference type.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    @Override
+    public void parse(Reader source, Listener listener) throws ParseException
+    {
+        String content;
+        try {
+            content = IOUtils.toString(source);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the Markdown content", e);
+        }
+
+        MarkdownBlockParser blockParser = new MarkdownBlockParser();
+        MarkdownNode document = blockParser.parse(content);
+
+        MarkdownEventGenerator generator = new MarkdownEventGenerator(
+            new MarkdownInlineParser(blockParser.getReferences()), blockParser.getAbbreviations(),
+            this.plainRendererFactory, this.plainTextStreamParser, this.linkResourceReferenceParser,
+            this.imageResourceReferenceParser, this.componentManager);
+        generator.generate(document, listener);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.io.Reader;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.parser.ParseException;
+
+/**
+ * Markdown parser which doesn't backtrack and thus parses any content in a time linear in its size. It generates the
+ * same events as the Pegdown based parser.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface LinearMarkdownParser
+{
+    /**
+     * @param source the Markdown content to parse
+     * @param listener the listener to send the XWiki events to
+     * @throws ParseException if the source cannot be read
+     */
+    void parse(Reader source, Listener listener) throws ParseException;
+}
@@ -0,0 +1,1301 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits Markdown content into a tree of block nodes. The content is processed line by line and every line is looked
+ * at a bounded number of times per nesting level (nesting is itself bounded by {@link #MAX_NESTING}), which makes the
+ * block parsing linear in the size of the content. Inline content is kept as raw text and is parsed later by the
+ * {@link MarkdownInlineParser}.
+ * <p>
+ * Reference and abbreviation definitions are collected while parsing so that they can be used anywhere in the
+ * document, including before their definition.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MarkdownBlockParser
+{
+    /**
+     * Maximum nesting of block quotes and lists. Deeper content is handled as paragraph text.
+     */
+    private static final int MAX_NESTING = 16;
+
+    /**
+     * Indentation of code blocks and of list item continuation lines.
+     */
+    private static final int CODE_INDENT = 4;
+
+    /**
+     * Maximum number of digits of a numbered list item marker.
+     */
+    private static final int MAX_LIST_NUMBER_DIGITS = 9;
+
+    /**
+     * Maximum number of header rows of a table.
+     */
+    private static final int MAX_TABLE_HEADER_ROWS = 10;
+
+    /**
+     * Minimum number of characters of a horizontal rule and of a code fence.
+     */
+    private static final int MIN_RULE_LENGTH = 3;
+
+    /**
+     * The HTML elements that start an HTML block.
+     */
+    private static final Set<String> HTML_BLOCK_ELEMENTS = new HashSet<String>(Arrays.asList("address", "article",
+        "aside", "blockquote", "canvas", "center", "dd", "div", "dl", "dt", "fieldset", "figcaption", "figure",
+        "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "isindex", "li", "menu",
+        "noframes", "noscript", "ol", "output", "p", "pre", "script", "section", "style", "table", "tbody", "td",
+        "tfoot", "th", "thead", "tr", "ul", "video"));
+
+    /**
+     * Start of an HTML comment.
+     */
+    private static final String HTML_COMMENT_START = "<!--";
+
+    /**
+     * Line separator used when joining lines.
+     */
+    private static final char NEW_LINE = '\n';
+
+    /**
+     * End of the label of a reference or abbreviation definition.
+     */
+    private static final String DEFINITION_LABEL_END = "]:";
+
+    /**
+     * Characters that can enclose the title of a reference definition, besides parentheses.
+     */
+    private static final String TITLE_QUOTES = "\"'";
+
+    /**
+     * Characters that can follow the name of an HTML element starting an HTML block.
+     */
+    private static final String HTML_TAG_NAME_ENDS = "> /";
+
+    /**
+     * Characters of the bullet list item markers.
+     */
+    private static final String BULLET_MARKERS = "*+-";
+
+    /**
+     * @see #getReferences()
+     */
+    private Map<String, MarkdownReference> references = new HashMap<String, MarkdownReference>();
+
+    /**
+     * @see #getAbbreviations()
+     */
+    private Map<String, String> abbreviations = new LinkedHashMap<String, String>();
+
+    /**
+     * @param source the Markdown content to parse
+     * @return the root node of the document
+     */
+    public MarkdownNode parse(String source)
+    {
+        MarkdownNode document = new MarkdownNode(MarkdownNodeType.DOCUMENT);
+        parseBlocks(splitLines(source), document, 0, false);
+        return document;
+    }
+
+    /**
+     * @return the link and image reference definitions found in the parsed content, indexed by normalized label
+     */
+    public Map<String, MarkdownReference> getReferences()
+    {
+        return this.references;
+    }
+
+    /**
+     * @return the abbreviation definitions found in the parsed content, indexed by abbreviation
+     */
+    public Map<String, String> getAbbreviations()
+    {
+        return this.abbreviations;
+    }
+
+    /**
+     * @param source the content to split
+     * @return the lines of the content, with tabs expanded to 4 columns
+     */
+    private List<String> splitLines(String source)
+    {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder line = new StringBuilder();
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '\r' || c == NEW_LINE) {
+                lines.add(line.toString());
+                line.setLength(0);
+                // \r\n is a single line separator
+                if (c == '\r' && i + 1 < source.length() && source.charAt(i + 1) == NEW_LINE) {
+                    i++;
+                }
+            } else if (c == '\t') {
+                do {
+                    line.append(' ');
+                } while (line.length() % CODE_INDENT != 0);
+            } else {
+                line.append(c);
+            }
+            i++;
+        }
+        if (line.length() > 0) {
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Parses the passed lines as a sequence of blocks.
+     *
+     * @param lines the lines to parse, with the prefixes of the enclosing containers removed
+     * @param parent the node to which to add the parsed blocks
+     * @param depth the current nesting depth
+     * @param inListItem whether the lines are the content of a list item or not, in which case list items interrupt
+     *            paragraphs
+     */
+    private void parseBlocks(List<String> lines, MarkdownNode parent, int depth, boolean inListItem)
+    {
+        int i = 0;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (isBlank(line)) {
+                i++;
+                continue;
+            }
+
+            int indent = getIndentation(line);
+            if (indent >= CODE_INDENT) {
+                i = parseIndentedCode(lines, i, parent);
+                continue;
+            }
+
+            i = parseBlock(lines, i, line.substring(indent), parent, depth, inListItem);
+        }
+    }
+
+    /**
+     * Parses the block starting at the passed line, which is neither blank nor indented code.
+     *
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the block
+     * @param content the first line of the block, without indentation
+     * @param parent the node to which to add the parsed block
+     * @param depth the current nesting depth
+     * @param inListItem whether the lines are the content of a list item or not
+     * @return the index of the line following the block
+     */
+    private int parseBlock(List<String> lines, int start, String content, MarkdownNode parent, int depth,
+        boolean inListItem)
+    {
+        int next;
+        if (isFenceStart(content)) {
+            next = parseFencedCode(lines, start, parent);
+        } else if (getHeadingLevel(content) > 0) {
+            parent.appendChild(createATXHeading(content));
+            next = start + 1;
+        } else if (isHorizontalRule(content)) {
+            parent.appendChild(new MarkdownNode(MarkdownNodeType.HORIZONTAL_RULE));
+            next = start + 1;
+        } else if (content.charAt(0) == '>' && depth < MAX_NESTING) {
+            next = parseBlockQuote(lines, start, parent, depth);
+        } else if (getListMarkerLength(content) > 0 && depth < MAX_NESTING) {
+            next = parseList(lines, start, parent, depth);
+        } else {
+            next = parseOtherBlock(lines, start, content, parent, depth, inListItem);
+        }
+
+        return next;
+    }
+
+    /**
+     * Parses the blocks which don't start with a specific marker: HTML blocks, reference and abbreviation
+     * definitions, tables, definition lists and paragraphs.
+     *
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the block
+     * @param content the first line of the block, without indentation
+     * @param parent the node to which to add the parsed block
+     * @param depth the current nesting depth
+     * @param inListItem whether the lines are the content of a list item or not
+     * @return the index of the line following the block
+     */
+    private int parseOtherBlock(List<String> lines, int start, String content, MarkdownNode parent, int depth,
+        boolean inListItem)
+    {
+        int next;
+        if (isHTMLBlockStart(content)) {
+            next = parseHTMLBlock(lines, start, parent);
+        } else if (parseReferenceDefinition(content) || parseAbbreviationDefinition(content)) {
+            next = start + 1;
+        } else if (isTableStart(lines, start)) {
+            next = parseTable(lines, start, parent);
+        } else if (isDefinitionTerm(lines, start) && depth < MAX_NESTING) {
+            next = parseDefinitionList(lines, start, parent, depth);
+        } else {
+            next = parseParagraph(lines, start, parent, inListItem);
+        }
+
+        return next;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the code block
+     * @param parent the node to which to add the code block
+     * @return the index of the line following the code block
+     */
+    private int parseIndentedCode(List<String> lines, int start, MarkdownNode parent)
+    {
+        StringBuilder code = new StringBuilder();
+        int pendingBlankLines = 0;
+        int i = start;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (isBlank(line)) {
+                pendingBlankLines++;
+            } else if (getIndentation(line) >= CODE_INDENT) {
+                if (code.length() > 0) {
+                    code.append(NEW_LINE);
+                }
+                for (; pendingBlankLines > 0; pendingBlankLines--) {
+                    code.append(NEW_LINE);
+                }
+                code.append(line, CODE_INDENT, line.length());
+            } else {
+                break;
+            }
+            i++;
+        }
+        parent.appendChild(new MarkdownNode(MarkdownNodeType.CODE_BLOCK, code.toString()));
+
+        return i;
+    }
+
+    /**
+     * Parses a fenced code block. Note that an unclosed fence extends to the end of the container, which avoids having
+     * to look ahead for a closing fence (and thus keeps the parsing linear).
+     *
+     * @param lines the lines being parsed
+     * @param start the index of the line holding the opening fence
+     * @param parent the node to which to add the code block
+     * @return the index of the line following the code block
+     */
+    private int parseFencedCode(List<String> lines, int start, MarkdownNode parent)
+    {
+        String opening = lines.get(start).trim();
+        int fenceLength = getFenceLength(opening);
+        char fenceChar = opening.charAt(0);
+
+        StringBuilder code = new StringBuilder();
+        int i = start + 1;
+        for (; i < lines.size(); i++) {
+            String line = lines.get(i);
+            String trimmed = line.trim();
+            if (getFenceLength(trimmed) >= fenceLength && trimmed.charAt(0) == fenceChar
+                && isBlank(trimmed.substring(getFenceLength(trimmed))))
+            {
+                i++;
+                break;
+            }
+            if (i > start + 1) {
+                code.append(NEW_LINE);
+            }
+            code.append(line);
+        }
+
+        MarkdownNode node = new MarkdownNode(MarkdownNodeType.CODE_BLOCK, code.toString());
+        node.setInfo(opening.substring(fenceLength).trim());
+        parent.appendChild(node);
+
+        return i;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return the heading node
+     */
+    private MarkdownNode createATXHeading(String content)
+    {
+        int level = getHeadingLevel(content);
+        int end = content.length();
+        while (end > level && Character.isWhitespace(content.charAt(end - 1))) {
+            end--;
+        }
+        // Optional closing sequence of hashes, which must be preceded by a space
+        int closingStart = end;
+        while (closingStart > level && content.charAt(closingStart - 1) == '#') {
+            closingStart--;
+        }
+        if (closingStart == level || content.charAt(closingStart - 1) == ' ') {
+            end = closingStart;
+        }
+
+        MarkdownNode node = new MarkdownNode(MarkdownNodeType.HEADING, content.substring(level, end).trim());
+        node.setLevel(level);
+
+        return node;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the quote
+     * @param parent the node to which to add the quote
+     * @param depth the current nesting depth
+     * @return the index of the line following the quote
+     */
+    private int parseBlockQuote(List<String> lines, int start, MarkdownNode parent, int depth)
+    {
+        List<String> quoteLines = new ArrayList<String>();
+        boolean lazyAllowed = false;
+        int i = start;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (isBlank(line)) {
+                // The quote goes on if the following non blank line is also quoted.
+                int next = skipBlankLines(lines, i);
+                if (next >= lines.size() || !isQuoteLine(lines.get(next))) {
+                    break;
+                }
+                for (; i < next; i++) {
+                    quoteLines.add("");
+                }
+                lazyAllowed = false;
+            } else if (isQuoteLine(line)) {
+                String content = removeQuoteMarker(line);
+                quoteLines.add(content);
+                lazyAllowed = !isBlank(content);
+                i++;
+            } else if (lazyAllowed) {
+                quoteLines.add(line);
+                i++;
+            } else {
+                break;
+            }
+        }
+
+        MarkdownNode node = new MarkdownNode(MarkdownNodeType.BLOCK_QUOTE);
+        parseBlocks(quoteLines, node, depth + 1, false);
+        parent.appendChild(node);
+
+        return i;
+    }
+
+    /**
+     * @param line a block quote line
+     * @return the content of the line, without the quote marker and the space following it
+     */
+    private String removeQuoteMarker(String line)
+    {
+        String content = line.substring(getIndentation(line) + 1);
+        if (content.length() > 0 && content.charAt(0) == ' ') {
+            content = content.substring(1);
+        }
+
+        return content;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the list
+     * @param parent the node to which to add the list
+     * @param depth the current nesting depth
+     * @return the index of the line following the list
+     */
+    private int parseList(List<String> lines, int start, MarkdownNode parent, int depth)
+    {
+        boolean ordered = isOrderedListMarker(lines.get(start).trim());
+        List<List<String>> items = new ArrayList<List<String>>();
+        boolean loose = false;
+        int i = start;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            int indent = getIndentation(line);
+            String content = line.substring(indent);
+            int markerLength = getListMarkerLength(content);
+            if (indent >= CODE_INDENT || markerLength < 0 || !isListItem(content, ordered)) {
+                break;
+            }
+
+            // A blank line between two items makes the whole list loose.
+            if (!items.isEmpty() && isBlank(lines.get(i - 1))) {
+                loose = true;
+            }
+
+            List<String> itemLines = new ArrayList<String>();
+            itemLines.add(content.substring(markerLength));
+            i = collectListItemLines(lines, i + 1, indent + markerLength, itemLines);
+            loose |= removeTrailingBlankLines(itemLines);
+            items.add(itemLines);
+        }
+
+        parent.appendChild(createList(items, ordered, loose, depth));
+
+        // Don't consume the blank lines following the list
+        while (i > start && isBlank(lines.get(i - 1))) {
+            i--;
+        }
+
+        return i;
+    }
+
+    /**
+     * @param content the line content, without indentation, which starts with a list item marker
+     * @param ordered whether the items of the current list are numbered or not
+     * @return {@code true} if the line starts an item of the current list
+     */
+    private boolean isListItem(String content, boolean ordered)
+    {
+        return isOrderedListMarker(content) == ordered && !isHorizontalRule(content);
+    }
+
+    /**
+     * Removes the trailing blank lines of a list item.
+     *
+     * @param itemLines the lines of the list item
+     * @return {@code true} if the item still contains blank lines, which makes the list loose
+     */
+    private boolean removeTrailingBlankLines(List<String> itemLines)
+    {
+        int last = itemLines.size() - 1;
+        while (last > 0 && isBlank(itemLines.get(last))) {
+            itemLines.remove(last--);
+        }
+
+        boolean hasBlankLines = false;
+        for (String itemLine : itemLines) {
+            hasBlankLines |= isBlank(itemLine);
+        }
+
+        return hasBlankLines;
+    }
+
+    /**
+     * @param items the lines of each list item
+     * @param ordered whether the list is numbered or not
+     * @param loose whether the list is loose, in which case the paragraphs of the items are kept
+     * @param depth the current nesting depth
+     * @return the list node
+     */
+    private MarkdownNode createList(List<List<String>> items, boolean ordered, boolean loose, int depth)
+    {
+        MarkdownNode list = new MarkdownNode(ordered ? MarkdownNodeType.ORDERED_LIST : MarkdownNodeType.BULLET_LIST);
+        for (List<String> itemLines : items) {
+            MarkdownNode item = new MarkdownNode(MarkdownNodeType.LIST_ITEM);
+            parseBlocks(itemLines, item, depth + 1, true);
+            if (!loose) {
+                tightenParagraphs(item);
+            }
+            list.appendChild(item);
+        }
+
+        return list;
+    }
+
+    /**
+     * Collects the continuation lines of a list item.
+     *
+     * @param lines the lines being parsed
+     * @param start the index of the line following the first line of the item
+     * @param contentIndent the indentation of the item content
+     * @param itemLines the list to which to add the lines of the item, without their indentation
+     * @return the index of the line following the item
+     */
+    private int collectListItemLines(List<String> lines, int start, int contentIndent, List<String> itemLines)
+    {
+        boolean afterBlankLine = false;
+        int i = start;
+        for (; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (isBlank(line)) {
+                itemLines.add("");
+                afterBlankLine = true;
+                continue;
+            }
+
+            int indent = getIndentation(line);
+            String content = line.substring(indent);
+            if (indent < contentIndent && indent < CODE_INDENT) {
+                // Not indented enough to belong to the item: either a sibling item, the end of the list or a lazy
+                // continuation line of the item last paragraph.
+                if (afterBlankLine || getListMarkerLength(content) > 0 || isLeafBlockStart(content)) {
+                    break;
+                }
+            }
+            itemLines.add(line.substring(Math.min(indent, Math.max(contentIndent, CODE_INDENT))));
+            afterBlankLine = false;
+        }
+
+        return i;
+    }
+
+    /**
+     * Converts the paragraphs directly contained in the passed node into tight paragraphs.
+     *
+     * @param node the list item node
+     */
+    private void tightenParagraphs(MarkdownNode node)
+    {
+        for (MarkdownNode child = node.getFirstChild(); child != null; child = child.getNext()) {
+            if (child.getType() == MarkdownNodeType.PARAGRAPH) {
+                child.setType(MarkdownNodeType.TIGHT_PARAGRAPH);
+            }
+        }
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the HTML block
+     * @param parent the node to which to add the HTML block
+     * @return the index of the line following the HTML block
+     */
+    private int parseHTMLBlock(List<String> lines, int start, MarkdownNode parent)
+    {
+        StringBuilder html = new StringBuilder(lines.get(start).trim());
+        int i = start + 1;
+        for (; i < lines.size() && !isBlank(lines.get(i)); i++) {
+            html.append(NEW_LINE).append(lines.get(i));
+        }
+        parent.appendChild(new MarkdownNode(MarkdownNodeType.HTML_BLOCK, html.toString()));
+
+        return i;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the table
+     * @param parent the node to which to add the table
+     * @return the index of the line following the table
+     */
+    private int parseTable(List<String> lines, int start, MarkdownNode parent)
+    {
+        int dividerIndex = findTableDivider(lines, start);
+        List<String> divider = splitTableRow(lines.get(dividerIndex), null);
+        int[] alignments = new int[divider.size()];
+        for (int column = 0; column < alignments.length; column++) {
+            alignments[column] = getColumnAlignment(divider.get(column).trim());
+        }
+
+        MarkdownNode table = new MarkdownNode(MarkdownNodeType.TABLE);
+        for (int i = start; i < dividerIndex; i++) {
+            table.appendChild(createTableRow(lines.get(i), MarkdownNodeType.TABLE_HEAD_CELL, alignments));
+        }
+        int i = dividerIndex + 1;
+        for (; i < lines.size() && !isBlank(lines.get(i)) && lines.get(i).indexOf('|') >= 0; i++) {
+            table.appendChild(createTableRow(lines.get(i), MarkdownNodeType.TABLE_CELL, alignments));
+        }
+        parent.appendChild(table);
+
+        return i;
+    }
+
+    /**
+     * @param line the line holding the row
+     * @param cellType the type of the cells to create
+     * @param alignments the alignments of the table columns
+     * @return the row node
+     */
+    private MarkdownNode createTableRow(String line, MarkdownNodeType cellType, int[] alignments)
+    {
+        MarkdownNode row = new MarkdownNode(MarkdownNodeType.TABLE_ROW);
+        List<Integer> spans = new ArrayList<Integer>();
+        List<String> cells = splitTableRow(line, spans);
+        int column = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            MarkdownNode cell = new MarkdownNode(cellType, normalizeCellContent(cells.get(i)));
+            cell.setSpan(spans.get(i));
+            cell.setLevel(alignments[Math.min(column, alignments.length - 1)]);
+            row.appendChild(cell);
+            column += spans.get(i);
+        }
+
+        return row;
+    }
+
+    /**
+     * Splits a table row into cells. Several consecutive pipes after a cell make it span several columns.
+     *
+     * @param line the line holding the row
+     * @param spans if not {@code null}, the list to which to add the number of columns spanned by each cell
+     * @return the content of the cells
+     */
+    private List<String> splitTableRow(String line, List<Integer> spans)
+    {
+        List<String> cells = new ArrayList<String>();
+        String content = line.trim();
+        int i = content.length() > 0 && content.charAt(0) == '|' ? 1 : 0;
+        StringBuilder cell = new StringBuilder();
+        while (i < content.length()) {
+            if (content.charAt(i) == '|') {
+                int span = countPipes(content, i);
+                addCell(cell.toString(), span, cells, spans);
+                cell.setLength(0);
+                i += span;
+            } else {
+                // An escaped pipe doesn't end the cell
+                int length = content.startsWith("\\|", i) ? 2 : 1;
+                cell.append(content, i, i + length);
+                i += length;
+            }
+        }
+        if (cell.length() > 0) {
+            addCell(cell.toString(), 1, cells, spans);
+        }
+
+        return cells;
+    }
+
+    /**
+     * @param content the row content
+     * @param start the position of the first pipe
+     * @return the number of consecutive pipes starting at the passed position
+     */
+    private int countPipes(String content, int start)
+    {
+        int end = start;
+        while (end < content.length() && content.charAt(end) == '|') {
+            end++;
+        }
+
+        return end - start;
+    }
+
+    /**
+     * @param cell the content of the cell
+     * @param span the number of columns spanned by the cell
+     * @param cells the list to which to add the content of the cell
+     * @param spans if not {@code null}, the list to which to add the number of columns spanned by the cell
+     */
+    private void addCell(String cell, int span, List<String> cells, List<Integer> spans)
+    {
+        cells.add(cell);
+        if (spans != null) {
+            spans.add(span);
+        }
+    }
+
+    /**
+     * Removes leading whitespaces and collapses trailing whitespaces into a single space, as Pegdown does.
+     *
+     * @param cell the raw content of the cell
+     * @return the normalized content of the cell
+     */
+    private String normalizeCellContent(String cell)
+    {
+        int start = 0;
+        while (start < cell.length() && Character.isWhitespace(cell.charAt(start))) {
+            start++;
+        }
+        int end = cell.length();
+        while (end > start && Character.isWhitespace(cell.charAt(end - 1))) {
+            end--;
+        }
+
+        String result = cell.substring(start, end);
+        if (end < cell.length() && end > start) {
+            result += ' ';
+        }
+
+        return result;
+    }
+
+    /**
+     * @param divider the divider cell content
+     * @return 0 for no alignment, 1 for left, 2 for right and 3 for center
+     */
+    private int getColumnAlignment(String divider)
+    {
+        int alignment = 0;
+        if (divider.length() > 0) {
+            if (divider.charAt(0) == ':') {
+                alignment |= 1;
+            }
+            if (divider.charAt(divider.length() - 1) == ':' && divider.length() > 1) {
+                alignment |= 2;
+            }
+        }
+
+        return alignment;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first term of the list
+     * @param parent the node to which to add the definition list
+     * @param depth the current nesting depth
+     * @return the index of the line following the definition list
+     */
+    private int parseDefinitionList(List<String> lines, int start, MarkdownNode parent, int depth)
+    {
+        MarkdownNode list = new MarkdownNode(MarkdownNodeType.DEFINITION_LIST);
+        int i = start;
+        while (i < lines.size() && isDefinitionTerm(lines, i)) {
+            list.appendChild(new MarkdownNode(MarkdownNodeType.DEFINITION_TERM, lines.get(i).trim()));
+            i = skipBlankLines(lines, i + 1);
+            while (i < lines.size() && isDefinitionLine(lines.get(i))) {
+                i = skipBlankLines(lines, parseDefinition(lines, i, list, depth));
+            }
+        }
+        parent.appendChild(list);
+
+        return i;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the definition
+     * @param list the node to which to add the definition
+     * @param depth the current nesting depth
+     * @return the index of the line following the definition
+     */
+    private int parseDefinition(List<String> lines, int start, MarkdownNode list, int depth)
+    {
+        List<String> definitionLines = new ArrayList<String>();
+        definitionLines.add(lines.get(start).trim().substring(1).trim());
+        int i = start + 1;
+        for (; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (isBlank(line)) {
+                // The definition goes on after blank lines if the following content is indented.
+                int next = skipBlankLines(lines, i);
+                if (next == lines.size() || getIndentation(lines.get(next)) < CODE_INDENT) {
+                    break;
+                }
+                for (; i < next; i++) {
+                    definitionLines.add("");
+                }
+                line = lines.get(i);
+            } else if (isDefinitionLine(line)) {
+                break;
+            }
+            definitionLines.add(line.substring(Math.min(getIndentation(line), CODE_INDENT)));
+        }
+
+        MarkdownNode definition = new MarkdownNode(MarkdownNodeType.DEFINITION_DESCRIPTION);
+        parseBlocks(definitionLines, definition, depth + 1, false);
+        list.appendChild(definition);
+
+        return i;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the paragraph
+     * @param parent the node to which to add the paragraph
+     * @param inListItem whether list items interrupt the paragraph or not
+     * @return the index of the line following the paragraph
+     */
+    private int parseParagraph(List<String> lines, int start, MarkdownNode parent, boolean inListItem)
+    {
+        // Setext heading
+        int level = start + 1 < lines.size() ? getSetextLevel(lines.get(start + 1)) : 0;
+        if (level > 0) {
+            MarkdownNode heading = new MarkdownNode(MarkdownNodeType.HEADING, lines.get(start).trim());
+            heading.setLevel(level);
+            parent.appendChild(heading);
+            return start + 2;
+        }
+
+        StringBuilder text = new StringBuilder();
+        int i = start;
+        for (; i < lines.size() && !isBlank(lines.get(i)); i++) {
+            String line = lines.get(i);
+            if (i > start) {
+                if (endsParagraph(lines, i, inListItem)) {
+                    break;
+                }
+                text.append(NEW_LINE);
+            }
+            text.append(line, getIndentation(line), line.length());
+        }
+
+        // Trailing whitespaces are meaningless at the end of a paragraph
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        text.setLength(end);
+        parent.appendChild(new MarkdownNode(MarkdownNodeType.PARAGRAPH, text.toString()));
+
+        return i;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param index the index of a non blank line following the first line of a paragraph
+     * @param inListItem whether list items interrupt paragraphs or not
+     * @return {@code true} if the paragraph ends before the passed line
+     */
+    private boolean endsParagraph(List<String> lines, int index, boolean inListItem)
+    {
+        return interruptsParagraph(lines.get(index).trim(), inListItem)
+            || index + 1 < lines.size() && getSetextLevel(lines.get(index + 1)) > 0;
+    }
+
+    /**
+     * @param content the trimmed line
+     * @param inListItem whether list items interrupt paragraphs or not
+     * @return {@code true} if the passed line starts a new block instead of continuing the current paragraph
+     */
+    private boolean interruptsParagraph(String content, boolean inListItem)
+    {
+        return content.charAt(0) == '>' || isLeafBlockStart(content)
+            || inListItem && getListMarkerLength(content) > 0;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content starts an ATX heading, a fenced code block or a horizontal rule, which
+     *         can't be continuation lines
+     */
+    private boolean isLeafBlockStart(String content)
+    {
+        return getHeadingLevel(content) > 0 || isFenceStart(content) || isHorizontalRule(content);
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content was a valid reference definition, in which case it's been recorded
+     */
+    private boolean parseReferenceDefinition(String content)
+    {
+        int labelEnd = content.indexOf(DEFINITION_LABEL_END);
+        if (content.charAt(0) != '[' || labelEnd < 2) {
+            return false;
+        }
+
+        String label = MarkdownReference.normalizeLabel(content.substring(1, labelEnd));
+        String rest = content.substring(labelEnd + 2).trim();
+        if (label.length() == 0 || rest.length() == 0 || label.indexOf(']') >= 0) {
+            return false;
+        }
+
+        MarkdownReference reference = parseReference(rest);
+        if (reference == null) {
+            return false;
+        }
+
+        if (!this.references.containsKey(label)) {
+            this.references.put(label, reference);
+        }
+
+        return true;
+    }
+
+    /**
+     * @param definition the non empty part of a reference definition following the label
+     * @return the defined reference or {@code null} if the definition is not valid
+     */
+    private MarkdownReference parseReference(String definition)
+    {
+        String url;
+        int urlEnd;
+        if (definition.charAt(0) == '<' && definition.indexOf('>') > 0) {
+            urlEnd = definition.indexOf('>');
+            url = definition.substring(1, urlEnd);
+            urlEnd++;
+        } else {
+            urlEnd = 0;
+            while (urlEnd < definition.length() && !Character.isWhitespace(definition.charAt(urlEnd))) {
+                urlEnd++;
+            }
+            url = definition.substring(0, urlEnd);
+        }
+
+        String titlePart = definition.substring(urlEnd).trim();
+        if (titlePart.length() == 0) {
+            return new MarkdownReference(url, null);
+        }
+
+        String title = parseReferenceTitle(titlePart);
+
+        return title != null ? new MarkdownReference(url, title) : null;
+    }
+
+    /**
+     * @param titlePart the non empty part of a reference definition following the URL
+     * @return the title, without its delimiters, or {@code null} if the title is not properly delimited
+     */
+    private String parseReferenceTitle(String titlePart)
+    {
+        if (titlePart.length() < 2) {
+            return null;
+        }
+
+        char open = titlePart.charAt(0);
+        char close = titlePart.charAt(titlePart.length() - 1);
+        if (TITLE_QUOTES.indexOf(open) >= 0 && close == open || open == '(' && close == ')') {
+            return titlePart.substring(1, titlePart.length() - 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content was a valid abbreviation definition, in which case it's been recorded
+     */
+    private boolean parseAbbreviationDefinition(String content)
+    {
+        if (!content.startsWith("*[")) {
+            return false;
+        }
+
+        int labelEnd = content.indexOf(DEFINITION_LABEL_END);
+        if (labelEnd < 3) {
+            return false;
+        }
+
+        this.abbreviations.put(content.substring(2, labelEnd), content.substring(labelEnd + 2).trim());
+
+        return true;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param index the index of the line to check
+     * @return {@code true} if the line starts a table, i.e. if it's a divider line or if it's followed by a divider
+     *         line, optionally after other header rows
+     */
+    private boolean isTableStart(List<String> lines, int index)
+    {
+        return findTableDivider(lines, index) >= 0;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index of the first line of the table
+     * @return the index of the divider line of the table starting at the passed line, or -1 if there's no table
+     *         starting at the passed line
+     */
+    private int findTableDivider(List<String> lines, int start)
+    {
+        // The number of header rows is bounded so that lines containing pipes aren't scanned again and again
+        int limit = Math.min(lines.size(), start + MAX_TABLE_HEADER_ROWS + 1);
+        for (int i = start; i < limit; i++) {
+            String line = lines.get(i);
+            if (isTableDivider(line)) {
+                return i;
+            } else if (line.indexOf('|') < 0) {
+                break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param line the line to check
+     * @return {@code true} if the line is made of pipes, colons, dashes and spaces only, with at least one pipe and
+     *         one dash
+     */
+    private boolean isTableDivider(String line)
+    {
+        boolean hasPipe = false;
+        boolean hasDash = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '|') {
+                hasPipe = true;
+            } else if (c == '-') {
+                hasDash = true;
+            } else if (c != ':' && c != ' ') {
+                return false;
+            }
+        }
+
+        return hasPipe && hasDash;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param index the index of the line to check
+     * @return {@code true} if the line is a definition term, i.e. if it's followed by a definition, optionally
+     *         separated by one blank line
+     */
+    private boolean isDefinitionTerm(List<String> lines, int index)
+    {
+        if (isBlank(lines.get(index)) || isDefinitionLine(lines.get(index))) {
+            return false;
+        }
+
+        int next = index + 1;
+        if (next < lines.size() && isBlank(lines.get(next))) {
+            next++;
+        }
+
+        return next < lines.size() && isDefinitionLine(lines.get(next));
+    }
+
+    /**
+     * @param line the line to check
+     * @return {@code true} if the line starts a definition
+     */
+    private boolean isDefinitionLine(String line)
+    {
+        int indent = getIndentation(line);
+        return indent < CODE_INDENT && line.length() > indent + 1 && line.charAt(indent) == ':'
+            && line.charAt(indent + 1) == ' ';
+    }
+
+    /**
+     * @param line the line to check
+     * @return {@code true} if the line is part of a block quote
+     */
+    private boolean isQuoteLine(String line)
+    {
+        int indent = getIndentation(line);
+        return indent < CODE_INDENT && indent < line.length() && line.charAt(indent) == '>';
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content is an HTML block element opening tag or an HTML comment
+     */
+    private boolean isHTMLBlockStart(String content)
+    {
+        if (content.charAt(0) != '<') {
+            return false;
+        }
+        if (content.startsWith(HTML_COMMENT_START)) {
+            return true;
+        }
+
+        int start = content.length() > 1 && content.charAt(1) == '/' ? 2 : 1;
+        int end = start;
+        while (end < content.length() && Character.isLetterOrDigit(content.charAt(end))) {
+            end++;
+        }
+        if (end == start || end < content.length() && HTML_TAG_NAME_ENDS.indexOf(content.charAt(end)) < 0) {
+            return false;
+        }
+
+        return HTML_BLOCK_ELEMENTS.contains(content.substring(start, end).toLowerCase());
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return the number of characters of the list item marker, including the following spaces, or -1 if the content
+     *         doesn't start with a list item marker
+     */
+    private int getListMarkerLength(String content)
+    {
+        int markerEnd = BULLET_MARKERS.indexOf(content.charAt(0)) >= 0 ? 1 : getNumberMarkerLength(content);
+        if (markerEnd < 0) {
+            return -1;
+        }
+
+        int end = markerEnd;
+        while (end < content.length() && content.charAt(end) == ' ') {
+            end++;
+        }
+
+        // At least one space is required after the marker, and more than 4 spaces means indented code
+        if (end == markerEnd && end < content.length()) {
+            return -1;
+        }
+
+        return end - markerEnd > CODE_INDENT ? markerEnd + 1 : end;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return the number of characters of the numbered list item marker, without the following spaces, or -1 if the
+     *         content doesn't start with a numbered list item marker
+     */
+    private int getNumberMarkerLength(String content)
+    {
+        int markerEnd = 0;
+        while (markerEnd < content.length() && markerEnd <= MAX_LIST_NUMBER_DIGITS
+            && Character.isDigit(content.charAt(markerEnd)))
+        {
+            markerEnd++;
+        }
+        if (markerEnd == 0 || markerEnd > MAX_LIST_NUMBER_DIGITS || markerEnd >= content.length()
+            || content.charAt(markerEnd) != '.')
+        {
+            return -1;
+        }
+
+        return markerEnd + 1;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content starts with a numbered list item marker
+     */
+    private boolean isOrderedListMarker(String content)
+    {
+        return content.length() > 0 && Character.isDigit(content.charAt(0));
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return the level of the ATX heading started by the content or 0 if it doesn't start an ATX heading
+     */
+    private int getHeadingLevel(String content)
+    {
+        int level = 0;
+        while (level < content.length() && content.charAt(level) == '#') {
+            level++;
+        }
+
+        return level > 0 && level <= 6 && level < content.length() ? level : 0;
+    }
+
+    /**
+     * @param line the line to check
+     * @return 1 or 2 if the line is a Setext heading underline (respectively {@code ===} and {@code ---}), 0 otherwise
+     */
+    private int getSetextLevel(String line)
+    {
+        String content = line.trim();
+        if (content.length() == 0 || getIndentation(line) >= CODE_INDENT) {
+            return 0;
+        }
+
+        char c = content.charAt(0);
+        if (c != '=' && c != '-') {
+            return 0;
+        }
+        for (int i = 1; i < content.length(); i++) {
+            if (content.charAt(i) != c) {
+                return 0;
+            }
+        }
+
+        return c == '=' ? 1 : 2;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content is a horizontal rule
+     */
+    private boolean isHorizontalRule(String content)
+    {
+        char c = content.charAt(0);
+        if (c != '-' && c != '*' && c != '_') {
+            return false;
+        }
+
+        int count = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char current = content.charAt(i);
+            if (current == c) {
+                count++;
+            } else if (current != ' ') {
+                return false;
+            }
+        }
+
+        return count >= MIN_RULE_LENGTH;
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return {@code true} if the content opens a fenced code block
+     */
+    private boolean isFenceStart(String content)
+    {
+        int length = getFenceLength(content);
+        return length > 0 && (content.charAt(0) != '`' || content.indexOf('`', length) < 0);
+    }
+
+    /**
+     * @param content the line content, without indentation
+     * @return the length of the code fence starting the content, or 0 if it doesn't start with a code fence
+     */
+    private int getFenceLength(String content)
+    {
+        if (content.length() == 0) {
+            return 0;
+        }
+
+        char c = content.charAt(0);
+        if (c != '`' && c != '~') {
+            return 0;
+        }
+
+        int length = 0;
+        while (length < content.length() && content.charAt(length) == c) {
+            length++;
+        }
+
+        return length >= MIN_RULE_LENGTH ? length : 0;
+    }
+
+    /**
+     * @param lines the lines being parsed
+     * @param start the index from which to start skipping
+     * @return the index of the first non blank line starting at the passed index
+     */
+    private int skipBlankLines(List<String> lines, int start)
+    {
+        int i = start;
+        while (i < lines.size() && isBlank(lines.get(i))) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @param line the line to check
+     * @return the number of leading spaces of the line
+     */
+    private int getIndentation(String line)
+    {
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+
+        return indent;
+    }
+
+    /**
+     * @param line the line to check
+     * @return {@code true} if the line contains only whitespaces
+     */
+    private boolean isBlank(String line)
+    {
+        for (int i = 0; i < line.length(); i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.internal.parser.markdown.DefinitionListListener;
+import org.xwiki.rendering.internal.parser.markdown.QuoteListener;
+import org.xwiki.rendering.internal.parser.markdown.SectionListener;
+import org.xwiki.rendering.listener.CompositeListener;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.ListType;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.QueueListener;
+import org.xwiki.rendering.parser.ResourceReferenceParser;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.util.IdGenerator;
+
+/**
+ * Converts the tree of nodes produced by the {@link MarkdownBlockParser} into XWiki Rendering events. The generated
+ * events are the same as the ones generated by the Pegdown visitors
+ * ({@link org.xwiki.rendering.internal.parser.markdown.XWikiPegdownVisitor}).
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MarkdownEventGenerator extends AbstractInlineMarkdownEventGenerator
+{
+    /**
+     * HTML Align attribute for table cells.
+     */
+    private static final String ALIGN_ATTRIBUTE = "align";
+
+    /**
+     * Values of the align attribute, indexed by the alignment computed by the {@link MarkdownBlockParser}.
+     */
+    private static final String[] ALIGNMENTS = {null, "left", "right", "center"};
+
+    /**
+     * Used to generate a unique id for Headings.
+     */
+    private IdGenerator idGenerator = new IdGenerator();
+
+    /**
+     * @param inlineParser the parser to use to parse the inline content of blocks
+     * @param abbreviations the abbreviation definitions of the document
+     * @param plainRendererFactory used to extract text from nodes
+     * @param plainTextStreamParser used to convert text to events
+     * @param linkResourceReferenceParser used to parse link references
+     * @param imageResourceReferenceParser used to parse image references
+     * @param componentManager used to find out a link label generator matching the link reference type
+     */
+    public MarkdownEventGenerator(MarkdownInlineParser inlineParser, Map<String, String> abbreviations,
+        PrintRendererFactory plainRendererFactory, StreamParser plainTextStreamParser,
+        ResourceReferenceParser linkResourceReferenceParser, ResourceReferenceParser imageResourceReferenceParser,
+        ComponentManager componentManager)
+    {
+        super(inlineParser, abbreviations, plainRendererFactory, plainTextStreamParser, linkResourceReferenceParser,
+            imageResourceReferenceParser, componentManager);
+    }
+
+    /**
+     * @param document the root node of the document
+     * @param listener the listener to send the XWiki events to
+     */
+    public void generate(MarkdownNode document, Listener listener)
+    {
+        SectionListener sectionListener = new SectionListener();
+        sectionListener.setWrappedListener(listener);
+        pushListener(sectionListener);
+
+        MetaData metaData = new MetaData(Collections.singletonMap(MetaData.SYNTAX, (Object) Syntax.MARKDOWN_1_0));
+        getListener().beginDocument(metaData);
+        generateChildren(document);
+        getListener().endDocument(metaData);
+
+        popListener();
+    }
+
+    @Override
+    protected void generate(MarkdownNode node)
+    {
+        switch (node.getType()) {
+            case PARAGRAPH:
+                getListener().beginParagraph(Listener.EMPTY_PARAMETERS);
+                generateInline(node.getText());
+                getListener().endParagraph(Listener.EMPTY_PARAMETERS);
+                break;
+            case TIGHT_PARAGRAPH:
+                generateInline(node.getText());
+                break;
+            case HEADING:
+                generateHeading(node);
+                break;
+            case CODE_BLOCK:
+                generateCodeBlock(node);
+                break;
+            case BLOCK_QUOTE:
+                generateBlockQuote(node);
+                break;
+            case HORIZONTAL_RULE:
+                getListener().onHorizontalLine(Listener.EMPTY_PARAMETERS);
+                break;
+            case HTML_BLOCK:
+                getListener().onRawText(node.getText(), Syntax.HTML_4_01);
+                break;
+            default:
+                generateListNode(node);
+                break;
+        }
+    }
+
+    /**
+     * @param node the list related node to convert
+     */
+    private void generateListNode(MarkdownNode node)
+    {
+        switch (node.getType()) {
+            case BULLET_LIST:
+                generateList(node, ListType.BULLETED);
+                break;
+            case ORDERED_LIST:
+                generateList(node, ListType.NUMBERED);
+                break;
+            case LIST_ITEM:
+                getListener().beginListItem();
+                generateChildren(node);
+                getListener().endListItem();
+                break;
+            case DEFINITION_LIST:
+                getListener().beginDefinitionList(Listener.EMPTY_PARAMETERS);
+                generateChildren(node);
+                getListener().endDefinitionList(Listener.EMPTY_PARAMETERS);
+                break;
+            case DEFINITION_TERM:
+                getListener().beginDefinitionTerm();
+                generateInline(node.getText());
+                getListener().endDefinitionTerm();
+                break;
+            case DEFINITION_DESCRIPTION:
+                generateDefinitionDescription(node);
+                break;
+            default:
+                generateTableNode(node);
+                break;
+        }
+    }
+
+    /**
+     * @param node the table related node to convert
+     */
+    private void generateTableNode(MarkdownNode node)
+    {
+        switch (node.getType()) {
+            case TABLE:
+                getListener().beginTable(Listener.EMPTY_PARAMETERS);
+                generateChildren(node);
+                getListener().endTable(Listener.EMPTY_PARAMETERS);
+                break;
+            case TABLE_ROW:
+                getListener().beginTableRow(Listener.EMPTY_PARAMETERS);
+                generateChildren(node);
+                getListener().endTableRow(Listener.EMPTY_PARAMETERS);
+                break;
+            case TABLE_HEAD_CELL:
+            case TABLE_CELL:
+                generateTableCell(node);
+                break;
+            default:
+                generateInlineNode(node);
+                break;
+        }
+    }
+
+    /**
+     * @param node the heading node to convert
+     */
+    private void generateHeading(MarkdownNode node)
+    {
+        // Heading needs to have an id generated from a plaintext representation of its content, so the header start
+        // event will be sent at the end of the header, after reading the content inside and generating the id.
+        CompositeListener composite = new CompositeListener();
+        QueueListener queueListener = new QueueListener();
+        composite.addListener(queueListener);
+        PrintRenderer plainRenderer = getPlainRendererFactory().createRenderer(new DefaultWikiPrinter());
+        composite.addListener(plainRenderer);
+
+        pushListener(composite);
+        generateInline(node.getText());
+        popListener();
+
+        String id = this.idGenerator.generateUniqueId("H", plainRenderer.getPrinter().toString());
+
+        HeaderLevel level = HeaderLevel.parseInt(node.getLevel());
+        getListener().beginHeader(level, id, Listener.EMPTY_PARAMETERS);
+        queueListener.consumeEvents(getListener());
+        getListener().endHeader(level, id, Listener.EMPTY_PARAMETERS);
+    }
+
+    /**
+     * @param node the code block node to convert
+     */
+    private void generateCodeBlock(MarkdownNode node)
+    {
+        Map<String, String> parameters;
+        if (StringUtils.isNotEmpty(node.getInfo())) {
+            parameters = Collections.singletonMap("language", node.getInfo());
+        } else {
+            parameters = Listener.EMPTY_PARAMETERS;
+        }
+
+        getListener().onMacro(CODE_MACRO_ID, parameters, node.getText(), false);
+    }
+
+    /**
+     * @param node the block quote node to convert
+     */
+    private void generateBlockQuote(MarkdownNode node)
+    {
+        getListener().beginQuotation(Listener.EMPTY_PARAMETERS);
+
+        // XWiki only supports paragraph in quotations, see http://jira.xwiki.org/browse/XRENDERING-259.
+        // We replace Paragraph events with QuotationLine events.
+        QuoteListener quoteListener = new QuoteListener();
+        quoteListener.setWrappedListener(getListener());
+        pushListener(quoteListener);
+        generateChildren(node);
+        popListener();
+        quoteListener.closeOpenedQuotationLines();
+
+        getListener().endQuotation(Listener.EMPTY_PARAMETERS);
+    }
+
+    /**
+     * @param node the list node to convert
+     * @param type the type of the list
+     */
+    private void generateList(MarkdownNode node, ListType type)
+    {
+        getListener().beginList(type, Listener.EMPTY_PARAMETERS);
+        generateChildren(node);
+        getListener().endList(type, Listener.EMPTY_PARAMETERS);
+    }
+
+    /**
+     * @param node the definition description node to convert
+     */
+    private void generateDefinitionDescription(MarkdownNode node)
+    {
+        getListener().beginDefinitionDescription();
+
+        DefinitionListListener listener = new DefinitionListListener();
+        listener.setWrappedListener(getListener());
+        pushListener(listener);
+        generateChildren(node);
+        popListener();
+
+        getListener().endDefinitionDescription();
+    }
+
+    /**
+     * @param node the table cell node to convert
+     */
+    private void generateTableCell(MarkdownNode node)
+    {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (node.getSpan() > 1) {
+            parameters.put("colspan", "" + node.getSpan());
+        }
+        if (ALIGNMENTS[node.getLevel()] != null) {
+            parameters.put(ALIGN_ATTRIBUTE, ALIGNMENTS[node.getLevel()]);
+        }
+
+        if (node.getType() == MarkdownNodeType.TABLE_HEAD_CELL) {
+            getListener().beginTableHeadCell(parameters);
+            generateInline(node.getText());
+            getListener().endTableHeadCell(parameters);
+        } else {
+            getListener().beginTableCell(parameters);
+            generateInline(node.getText());
+            getListener().endTableCell(parameters);
+        }
+    }
+}
@@ -0,0 +1,1327 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the inline content of a block into a list of inline nodes. Emphasis and links are resolved with a delimiter
+ * stack (the algorithm used by the CommonMark reference implementations) instead of backtracking, and all lookaheads
+ * are either bounded by {@link #MAX_SCAN_LENGTH} or cached, so that parsing is linear in the size of the content.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MarkdownInlineParser
+{
+    /**
+     * Maximum number of characters looked ahead for a link label, destination or title, or an autolink.
+     */
+    private static final int MAX_SCAN_LENGTH = 1000;
+
+    /**
+     * Characters that can be escaped with a backslash.
+     */
+    private static final String ESCAPABLE_CHARACTERS = "\\`*_{}[]()#+-.!<>|";
+
+    /**
+     * Characters that can enclose the title of a link.
+     */
+    private static final String TITLE_QUOTES = "\"'";
+
+    /**
+     * The URL schemes recognized in free-standing URLs.
+     */
+    private static final String[] AUTOLINK_SCHEMES = {"http://", "https://", "ftp://", "file://"};
+
+    /**
+     * Characters ignored at the end of a free-standing URL.
+     */
+    private static final String AUTOLINK_TRAILING_PUNCTUATION = ".,;:!?";
+
+    /**
+     * Optional prefix of the email addresses between angle brackets.
+     */
+    private static final String MAILTO_PREFIX = "mailto:";
+
+    /**
+     * Characters allowed, besides ASCII letters and digits, in the local part of a free-standing email address.
+     */
+    private static final String EMAIL_LOCAL_PART_CHARACTERS = "-+_.";
+
+    /**
+     * Characters allowed, besides ASCII letters and digits, in the domain of a free-standing email address.
+     */
+    private static final String EMAIL_DOMAIN_CHARACTERS = "-_.";
+
+    /**
+     * Start of an HTML comment.
+     */
+    private static final String HTML_COMMENT_START = "<!--";
+
+    /**
+     * End of an HTML comment.
+     */
+    private static final String HTML_COMMENT_END = "-->";
+
+    /**
+     * Marks a cached lookahead search which found nothing until the end of the content.
+     */
+    private static final int NOT_FOUND = Integer.MAX_VALUE;
+
+    /**
+     * Left double angle quotation mark.
+     */
+    private static final char LEFT_ANGLE_QUOTE = '\u201C';
+
+    /**
+     * Right double angle quotation mark.
+     */
+    private static final char RIGHT_ANGLE_QUOTE = '\u201D';
+
+    /**
+     * Em dash.
+     */
+    private static final char EM_DASH = '\u2014';
+
+    /**
+     * En dash.
+     */
+    private static final char EN_DASH = '\u2013';
+
+    /**
+     * Horizontal ellipsis.
+     */
+    private static final char ELLIPSIS = '\u2026';
+
+    /**
+     * An emphasis delimiter run ({@code *} or {@code _}) which may open or close emphasis.
+     */
+    private static class Delimiter
+    {
+        /**
+         * The text node holding the delimiter characters.
+         */
+        private MarkdownNode node;
+
+        /**
+         * The delimiter character.
+         */
+        private char character;
+
+        /**
+         * The number of delimiter characters not yet used.
+         */
+        private int count;
+
+        /**
+         * Whether the run can open emphasis.
+         */
+        private boolean canOpen;
+
+        /**
+         * Whether the run can close emphasis.
+         */
+        private boolean canClose;
+
+        /**
+         * The previous delimiter on the stack.
+         */
+        private Delimiter previous;
+
+        /**
+         * The next delimiter on the stack.
+         */
+        private Delimiter next;
+    }
+
+    /**
+     * An opening bracket ({@code [} or {@code ![}) which may start a link or an image.
+     */
+    private static class Bracket
+    {
+        /**
+         * The text node holding the bracket.
+         */
+        private MarkdownNode node;
+
+        /**
+         * Whether the bracket opens an image or a link.
+         */
+        private boolean image;
+
+        /**
+         * Position in the content of the text following the bracket.
+         */
+        private int textStart;
+
+        /**
+         * The delimiter at the top of the stack when the bracket was found.
+         */
+        private Delimiter previousDelimiter;
+
+        /**
+         * The previous bracket on the stack.
+         */
+        private Bracket previous;
+
+        /**
+         * Whether the bracket can still open a link (links can't contain other links).
+         */
+        private boolean active = true;
+    }
+
+    /**
+     * The link and image reference definitions of the document, indexed by normalized label.
+     */
+    private Map<String, MarkdownReference> references;
+
+    /**
+     * The content being parsed.
+     */
+    private String input;
+
+    /**
+     * The current position in the content.
+     */
+    private int position;
+
+    /**
+     * The node receiving the inline nodes.
+     */
+    private MarkdownNode container;
+
+    /**
+     * Text not yet added to the container.
+     */
+    private StringBuilder text = new StringBuilder();
+
+    /**
+     * Top of the delimiter stack.
+     */
+    private Delimiter lastDelimiter;
+
+    /**
+     * Top of the bracket stack.
+     */
+    private Bracket lastBracket;
+
+    /**
+     * Start positions of the backtick runs of the content, indexed by run length. Computed when the first backtick is
+     * found.
+     */
+    private Map<Integer, List<Integer>> backtickRuns;
+
+    /**
+     * For each backtick run length, the index in {@link #backtickRuns} of the first run which may still close a code
+     * span.
+     */
+    private Map<Integer, Integer> backtickCursors;
+
+    /**
+     * Cached position of the next {@code ]]}.
+     */
+    private int wikiLinkEnd;
+
+    /**
+     * Cached position of the next {@code >>}.
+     */
+    private int angleQuoteEnd;
+
+    /**
+     * Cached position of the next end of HTML comment.
+     */
+    private int commentEnd;
+
+    /**
+     * The number of angle quotes opened and not yet closed.
+     */
+    private int openAngleQuotes;
+
+    /**
+     * @param references the link and image reference definitions of the document, indexed by normalized label
+     */
+    public MarkdownInlineParser(Map<String, MarkdownReference> references)
+    {
+        this.references = references;
+    }
+
+    /**
+     * @param content the inline content to parse
+     * @return a node whose children are the parsed inline nodes
+     */
+    public MarkdownNode parse(String content)
+    {
+        this.input = content;
+        this.position = 0;
+        this.container = new MarkdownNode(MarkdownNodeType.PARAGRAPH);
+        this.text.setLength(0);
+        this.lastDelimiter = null;
+        this.lastBracket = null;
+        this.backtickRuns = null;
+        this.backtickCursors = null;
+        this.wikiLinkEnd = -1;
+        this.angleQuoteEnd = -1;
+        this.commentEnd = -1;
+        this.openAngleQuotes = 0;
+
+        while (this.position < this.input.length()) {
+            parseCharacter(this.input.charAt(this.position));
+        }
+        flushText();
+        processEmphasis(null);
+
+        MarkdownNode result = this.container;
+        this.container = null;
+        this.input = null;
+
+        return result;
+    }
+
+    /**
+     * @param c the character at the current position
+     */
+    private void parseCharacter(char c)
+    {
+        switch (c) {
+            case '\n':
+                parseNewLine();
+                break;
+            case '\\':
+                parseBackslash();
+                break;
+            case '`':
+                parseBackticks();
+                break;
+            case '*':
+            case '_':
+                parseDelimiterRun(c);
+                break;
+            case '[':
+                parseOpenBracket();
+                break;
+            case '!':
+                parseBang();
+                break;
+            case ']':
+                parseCloseBracket();
+                break;
+            default:
+                parseSymbolCharacter(c);
+                break;
+        }
+    }
+
+    /**
+     * @param c the character at the current position, which doesn't start a code span, an emphasis or a link
+     */
+    private void parseSymbolCharacter(char c)
+    {
+        switch (c) {
+            case '<':
+                parseLessThan();
+                break;
+            case '>':
+                parseGreaterThan();
+                break;
+            case '.':
+                parseDot();
+                break;
+            case '-':
+                parseDash();
+                break;
+            default:
+                if (!parseFreeStandingURL() && !parseFreeStandingEmail()) {
+                    this.text.append(c);
+                    this.position++;
+                }
+                break;
+        }
+    }
+
+    /**
+     * A new line followed by 2 spaces or more is a hard line break, otherwise it's a simple space.
+     */
+    private void parseNewLine()
+    {
+        int spaces = 0;
+        while (spaces < this.text.length() && this.text.charAt(this.text.length() - 1 - spaces) == ' ') {
+            spaces++;
+        }
+        this.text.setLength(this.text.length() - spaces);
+        if (spaces >= 2) {
+            flushText();
+            this.container.appendChild(new MarkdownNode(MarkdownNodeType.LINE_BREAK));
+        } else {
+            this.text.append(' ');
+        }
+
+        this.position++;
+        while (this.position < this.input.length() && this.input.charAt(this.position) == ' ') {
+            this.position++;
+        }
+    }
+
+    /**
+     * Handles escaped characters. Like with Pegdown, an escaped character is never part of the surrounding words.
+     */
+    private void parseBackslash()
+    {
+        if (this.position + 1 < this.input.length()
+            && ESCAPABLE_CHARACTERS.indexOf(this.input.charAt(this.position + 1)) >= 0)
+        {
+            flushText();
+            this.container.appendChild(new MarkdownNode(MarkdownNodeType.ESCAPED_TEXT,
+                String.valueOf(this.input.charAt(this.position + 1))));
+            this.position += 2;
+        } else {
+            this.text.append('\\');
+            this.position++;
+        }
+    }
+
+    /**
+     * Handles code spans. The closing run of backticks is found through an index of all the backtick runs of the
+     * content so that unclosed runs don't trigger a scan until the end of the content.
+     */
+    private void parseBackticks()
+    {
+        int start = this.position;
+        int length = countRun(start, '`');
+        int end = findClosingBacktickRun(start + length, length);
+        if (end < 0) {
+            this.text.append(this.input, start, start + length);
+            this.position = start + length;
+        } else {
+            flushText();
+            String code = this.input.substring(start + length, end).trim().replace('\n', ' ');
+            this.container.appendChild(new MarkdownNode(MarkdownNodeType.CODE, code));
+            this.position = end + length;
+        }
+    }
+
+    /**
+     * @param from the position from which to look for a closing run
+     * @param length the length of the opening run
+     * @return the position of the closing run or -1 if there's none
+     */
+    private int findClosingBacktickRun(int from, int length)
+    {
+        if (this.backtickRuns == null) {
+            indexBacktickRuns();
+        }
+
+        List<Integer> runs = this.backtickRuns.get(length);
+        if (runs != null) {
+            int cursor = this.backtickCursors.get(length);
+            while (cursor < runs.size() && runs.get(cursor) < from) {
+                cursor++;
+            }
+            this.backtickCursors.put(length, cursor);
+            if (cursor < runs.size()) {
+                return runs.get(cursor);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indexes all the backtick runs of the content by length.
+     */
+    private void indexBacktickRuns()
+    {
+        this.backtickRuns = new HashMap<Integer, List<Integer>>();
+        this.backtickCursors = new HashMap<Integer, Integer>();
+        int i = 0;
+        while (i < this.input.length()) {
+            if (this.input.charAt(i) == '`') {
+                int length = countRun(i, '`');
+                List<Integer> runs = this.backtickRuns.get(length);
+                if (runs == null) {
+                    runs = new ArrayList<Integer>();
+                    this.backtickRuns.put(length, runs);
+                    this.backtickCursors.put(length, 0);
+                }
+                runs.add(i);
+                i += length;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Handles a run of emphasis delimiters.
+     *
+     * @param c the delimiter character
+     */
+    private void parseDelimiterRun(char c)
+    {
+        int start = this.position;
+        int length = countRun(start, c);
+        char before = start > 0 ? this.input.charAt(start - 1) : ' ';
+        char after = start + length < this.input.length() ? this.input.charAt(start + length) : ' ';
+
+        boolean leftFlanking = !Character.isWhitespace(after);
+        boolean rightFlanking = !Character.isWhitespace(before);
+        boolean canOpen;
+        boolean canClose;
+        if (c == '_') {
+            // Intra-word underscores don't generate emphasis
+            canOpen = leftFlanking && !Character.isLetterOrDigit(before);
+            canClose = rightFlanking && !Character.isLetterOrDigit(after);
+        } else {
+            canOpen = leftFlanking;
+            canClose = rightFlanking;
+        }
+
+        flushText();
+        MarkdownNode node = new MarkdownNode(MarkdownNodeType.TEXT, this.input.substring(start, start + length));
+        this.container.appendChild(node);
+        this.position = start + length;
+
+        if (canOpen || canClose) {
+            Delimiter delimiter = new Delimiter();
+            delimiter.node = node;
+            delimiter.character = c;
+            delimiter.count = length;
+            delimiter.canOpen = canOpen;
+            delimiter.canClose = canClose;
+            delimiter.previous = this.lastDelimiter;
+            if (this.lastDelimiter != null) {
+                this.lastDelimiter.next = delimiter;
+            }
+            this.lastDelimiter = delimiter;
+        }
+    }
+
+    /**
+     * Handles {@code [[reference]]} links and opening brackets.
+     */
+    private void parseOpenBracket()
+    {
+        if (this.position + 1 < this.input.length() && this.input.charAt(this.position + 1) == '[') {
+            this.wikiLinkEnd = findNext("]]", this.position + 2, this.wikiLinkEnd);
+            if (this.wikiLinkEnd != NOT_FOUND && this.wikiLinkEnd > this.position + 2) {
+                flushText();
+                this.container.appendChild(new MarkdownNode(MarkdownNodeType.WIKI_LINK,
+                    this.input.substring(this.position + 2, this.wikiLinkEnd)));
+                this.position = this.wikiLinkEnd + 2;
+                return;
+            }
+        }
+
+        pushBracket(false, 1);
+    }
+
+    /**
+     * Handles opening image brackets.
+     */
+    private void parseBang()
+    {
+        if (this.position + 1 < this.input.length() && this.input.charAt(this.position + 1) == '[') {
+            pushBracket(true, 2);
+        } else {
+            this.text.append('!');
+            this.position++;
+        }
+    }
+
+    /**
+     * @param image whether the bracket opens an image or a link
+     * @param length the number of characters of the bracket
+     */
+    private void pushBracket(boolean image, int length)
+    {
+        flushText();
+        MarkdownNode node =
+            new MarkdownNode(MarkdownNodeType.TEXT, this.input.substring(this.position, this.position + length));
+        this.container.appendChild(node);
+        this.position += length;
+
+        Bracket bracket = new Bracket();
+        bracket.node = node;
+        bracket.image = image;
+        bracket.textStart = this.position;
+        bracket.previousDelimiter = this.lastDelimiter;
+        bracket.previous = this.lastBracket;
+        this.lastBracket = bracket;
+    }
+
+    /**
+     * Handles closing brackets, which may end a link or an image.
+     */
+    private void parseCloseBracket()
+    {
+        Bracket opener = this.lastBracket;
+        MarkdownNode target = null;
+        int end = -1;
+
+        if (opener != null) {
+            this.lastBracket = opener.previous;
+            if (opener.active) {
+                target = new MarkdownNode(opener.image ? MarkdownNodeType.IMAGE : MarkdownNodeType.LINK);
+                end = parseTarget(opener, target);
+            }
+        }
+
+        if (end < 0) {
+            this.text.append(']');
+            this.position++;
+            return;
+        }
+
+        flushText();
+        processEmphasis(opener.previousDelimiter);
+        this.container.wrapChildren(opener.node, appendPlaceholder(), target);
+        this.container.removeChild(opener.node);
+        this.container.removeChild(this.container.getLastChild());
+
+        // Links can't contain links
+        if (!opener.image) {
+            for (Bracket bracket = this.lastBracket; bracket != null && bracket.active; bracket = bracket.previous) {
+                bracket.active = false;
+            }
+        }
+
+        this.position = end;
+    }
+
+    /**
+     * @param opener the opening bracket
+     * @param target the node in which to store the URL and title
+     * @return the position following the target or -1 if there's no valid inline or reference target
+     */
+    private int parseTarget(Bracket opener, MarkdownNode target)
+    {
+        int end = parseInlineTarget(this.position + 1, target);
+        if (end < 0) {
+            end = parseReferenceTarget(opener, target);
+        }
+
+        return end;
+    }
+
+    /**
+     * @return an empty text node added at the end of the container
+     */
+    private MarkdownNode appendPlaceholder()
+    {
+        MarkdownNode placeholder = new MarkdownNode(MarkdownNodeType.TEXT, "");
+        this.container.appendChild(placeholder);
+        return placeholder;
+    }
+
+    /**
+     * Parses an inline link target, i.e. {@code (url "title")}.
+     *
+     * @param start the position following the closing bracket
+     * @param target the node in which to store the URL and title
+     * @return the position following the target or -1 if there's no valid inline target
+     */
+    private int parseInlineTarget(int start, MarkdownNode target)
+    {
+        int limit = Math.min(this.input.length(), start + MAX_SCAN_LENGTH);
+        if (start >= limit || this.input.charAt(start) != '(') {
+            return -1;
+        }
+
+        int i = parseDestination(skipSpaces(start + 1, limit), limit, target);
+        if (i >= 0) {
+            i = parseTitle(skipSpaces(i, limit), limit, target);
+        }
+
+        if (i < 0 || i >= limit || this.input.charAt(i) != ')') {
+            return -1;
+        }
+
+        return i + 1;
+    }
+
+    /**
+     * Parses the URL of an inline link target, either between angle brackets or up to the first whitespace or
+     * unbalanced closing parenthesis.
+     *
+     * @param start the start of the URL
+     * @param limit the position at which to stop looking
+     * @param target the node in which to store the URL
+     * @return the position following the URL or -1 if the URL is not valid
+     */
+    private int parseDestination(int start, int limit, MarkdownNode target)
+    {
+        int end;
+        if (start < limit && this.input.charAt(start) == '<') {
+            end = findBracketedDestinationEnd(start + 1, limit);
+            if (end < 0) {
+                return -1;
+            }
+            target.setInfo(this.input.substring(start + 1, end));
+            end++;
+        } else {
+            end = findDestinationEnd(start, limit);
+            target.setInfo(this.input.substring(start, end));
+        }
+
+        return end;
+    }
+
+    /**
+     * @param start the position following the opening angle bracket
+     * @param limit the position at which to stop looking
+     * @return the position of the closing angle bracket, or -1 if it's not on the same line
+     */
+    private int findBracketedDestinationEnd(int start, int limit)
+    {
+        int end = start;
+        while (end < limit && this.input.charAt(end) != '>' && this.input.charAt(end) != '\n') {
+            end++;
+        }
+
+        return end < limit && this.input.charAt(end) == '>' ? end : -1;
+    }
+
+    /**
+     * @param start the start of the URL
+     * @param limit the position at which to stop looking
+     * @return the position of the first whitespace or unbalanced closing parenthesis following the URL
+     */
+    private int findDestinationEnd(int start, int limit)
+    {
+        int end = start;
+        int depth = 0;
+        while (end < limit && !Character.isWhitespace(this.input.charAt(end))) {
+            char c = this.input.charAt(end);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Parses the optional title of an inline link target.
+     *
+     * @param start the position following the URL and the spaces after it
+     * @param limit the position at which to stop looking
+     * @param target the node in which to store the title
+     * @return the position following the title (or the passed position if there's no title), or -1 if the title is
+     *         not closed
+     */
+    private int parseTitle(int start, int limit, MarkdownNode target)
+    {
+        target.setTitle(null);
+        if (start >= limit || TITLE_QUOTES.indexOf(this.input.charAt(start)) < 0) {
+            return start;
+        }
+
+        // The title ends with the last quote followed by the closing parenthesis
+        char quote = this.input.charAt(start);
+        for (int i = start + 1; i < limit; i++) {
+            if (this.input.charAt(i) == quote) {
+                int end = skipSpaces(i + 1, limit);
+                if (end < limit && this.input.charAt(end) == ')') {
+                    target.setTitle(this.input.substring(start + 1, i));
+                    return end;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses a full ({@code [text][label]}), collapsed ({@code [label][]}) or shortcut ({@code [label]}) reference
+     * link.
+     *
+     * @param opener the opening bracket
+     * @param target the node in which to store the URL and title
+     * @return the position following the reference or -1 if it's not a defined reference
+     */
+    private int parseReferenceTarget(Bracket opener, MarkdownNode target)
+    {
+        int afterBracket = this.position + 1;
+        String label = null;
+        int end = afterBracket;
+
+        // Pegdown allows a space between the two parts of a full reference
+        int labelStart = afterBracket;
+        if (labelStart < this.input.length() && this.input.charAt(labelStart) == ' ') {
+            labelStart++;
+        }
+        int labelEnd = findReferenceLabelEnd(labelStart);
+        if (labelEnd > 0) {
+            label = this.input.substring(labelStart + 1, labelEnd);
+            end = labelEnd + 1;
+        }
+
+        if (label == null || label.trim().length() == 0) {
+            if (this.position - opener.textStart > MAX_SCAN_LENGTH) {
+                return -1;
+            }
+            label = this.input.substring(opener.textStart, this.position);
+        }
+
+        MarkdownReference reference = this.references.get(MarkdownReference.normalizeLabel(label));
+        if (reference == null) {
+            return -1;
+        }
+
+        target.setInfo(reference.getURL());
+        target.setTitle(reference.getTitle());
+        // Pegdown doesn't compute the alternative text of images defined through a reference
+        target.setLevel(1);
+
+        return end;
+    }
+
+    /**
+     * @param start the position of the opening bracket of the label
+     * @return the position of the closing bracket of the label, or -1 if there's no label at the passed position
+     */
+    private int findReferenceLabelEnd(int start)
+    {
+        if (start >= this.input.length() || this.input.charAt(start) != '[') {
+            return -1;
+        }
+
+        int limit = Math.min(this.input.length(), start + MAX_SCAN_LENGTH);
+        int end = start + 1;
+        while (end < limit && this.input.charAt(end) != ']' && this.input.charAt(end) != '[') {
+            end++;
+        }
+
+        return end < limit && this.input.charAt(end) == ']' ? end : -1;
+    }
+
+    /**
+     * Handles autolinks, inline HTML and opening angle quotes.
+     */
+    private void parseLessThan()
+    {
+        if (!parseLeftAngleQuote() && !parseAutoLink() && !parseInlineHTML()) {
+            this.text.append('<');
+            this.position++;
+        }
+    }
+
+    /**
+     * @return {@code true} if an opening angle quote, which is closed later, has been found at the current position
+     */
+    private boolean parseLeftAngleQuote()
+    {
+        int start = this.position;
+        if (start + 1 >= this.input.length() || this.input.charAt(start + 1) != '<') {
+            return false;
+        }
+
+        this.angleQuoteEnd = findNext(">>", start + 2, this.angleQuoteEnd);
+        if (this.angleQuoteEnd == NOT_FOUND) {
+            return false;
+        }
+
+        appendSymbol(LEFT_ANGLE_QUOTE, 2);
+        this.openAngleQuotes++;
+
+        return true;
+    }
+
+    /**
+     * @return {@code true} if an URL or email address between angle brackets has been found at the current position
+     */
+    private boolean parseAutoLink()
+    {
+        int start = this.position + 1;
+        int limit = Math.min(this.input.length(), start + MAX_SCAN_LENGTH);
+        int end = start;
+        while (end < limit && !isAutoLinkEnd(this.input.charAt(end))) {
+            end++;
+        }
+        if (end == start || end >= limit || this.input.charAt(end) != '>') {
+            return false;
+        }
+
+        String content = this.input.substring(start, end);
+        MarkdownNode node;
+        int schemeEnd = content.indexOf("://");
+        if (schemeEnd > 0 && isLetters(content, 0, schemeEnd)) {
+            node = new MarkdownNode(MarkdownNodeType.AUTO_LINK, content);
+        } else if (content.indexOf('@') > 0) {
+            node = new MarkdownNode(MarkdownNodeType.MAIL_LINK,
+                content.startsWith(MAILTO_PREFIX) ? content.substring(MAILTO_PREFIX.length()) : content);
+        } else {
+            return false;
+        }
+
+        flushText();
+        this.container.appendChild(node);
+        this.position = end + 1;
+
+        return true;
+    }
+
+    /**
+     * @return {@code true} if an HTML tag or comment has been found at the current position
+     */
+    private boolean parseInlineHTML()
+    {
+        int start = this.position;
+        int end;
+        if (this.input.startsWith(HTML_COMMENT_START, start)) {
+            this.commentEnd = findNext(HTML_COMMENT_END, start + HTML_COMMENT_START.length(), this.commentEnd);
+            end = this.commentEnd == NOT_FOUND ? -1 : this.commentEnd + HTML_COMMENT_END.length();
+        } else {
+            end = findHTMLTagEnd(start);
+        }
+        if (end < 0) {
+            return false;
+        }
+
+        flushText();
+        this.container.appendChild(new MarkdownNode(MarkdownNodeType.HTML_INLINE, this.input.substring(start, end)));
+        this.position = end;
+
+        return true;
+    }
+
+    /**
+     * @param start the position of the {@code <} starting the tag
+     * @return the position following the end of the HTML tag, or -1 if there's no HTML tag at the passed position
+     */
+    private int findHTMLTagEnd(int start)
+    {
+        int nameStart = start + 1;
+        if (nameStart < this.input.length() && this.input.charAt(nameStart) == '/') {
+            nameStart++;
+        }
+        if (nameStart >= this.input.length() || !Character.isLetter(this.input.charAt(nameStart))) {
+            return -1;
+        }
+
+        // The tag ends at the next '>', but not after another '<' which guarantees that each character is looked at
+        // at most twice.
+        int end = nameStart;
+        while (end < this.input.length() && this.input.charAt(end) != '>' && this.input.charAt(end) != '<') {
+            end++;
+        }
+
+        return end < this.input.length() && this.input.charAt(end) == '>' ? end + 1 : -1;
+    }
+
+    /**
+     * Handles closing angle quotes.
+     */
+    private void parseGreaterThan()
+    {
+        if (this.openAngleQuotes > 0 && this.position + 1 < this.input.length()
+            && this.input.charAt(this.position + 1) == '>')
+        {
+            appendSymbol(RIGHT_ANGLE_QUOTE, 2);
+            this.openAngleQuotes--;
+        } else {
+            this.text.append('>');
+            this.position++;
+        }
+    }
+
+    /**
+     * Handles ellipsis.
+     */
+    private void parseDot()
+    {
+        if (this.input.startsWith("...", this.position)) {
+            appendSymbol(ELLIPSIS, 3);
+        } else if (this.input.startsWith(". . .", this.position)) {
+            appendSymbol(ELLIPSIS, 5);
+        } else {
+            this.text.append('.');
+            this.position++;
+        }
+    }
+
+    /**
+     * Handles em and en dashes.
+     */
+    private void parseDash()
+    {
+        if (this.input.startsWith("---", this.position)) {
+            appendSymbol(EM_DASH, 3);
+        } else if (this.input.startsWith("--", this.position)) {
+            appendSymbol(EN_DASH, 2);
+        } else {
+            this.text.append('-');
+            this.position++;
+        }
+    }
+
+    /**
+     * @return {@code true} if a free-standing URL has been found at the current position
+     */
+    private boolean parseFreeStandingURL()
+    {
+        int start = this.position;
+        char c = this.input.charAt(start);
+        if (c != 'h' && c != 'f' || start > 0 && Character.isLetterOrDigit(this.input.charAt(start - 1))) {
+            return false;
+        }
+
+        for (String scheme : AUTOLINK_SCHEMES) {
+            if (this.input.startsWith(scheme, start)) {
+                int end = findFreeStandingURLEnd(start + scheme.length());
+                if (end == start + scheme.length()) {
+                    return false;
+                }
+                flushText();
+                this.container.appendChild(new MarkdownNode(MarkdownNodeType.AUTO_LINK,
+                    this.input.substring(start, end)));
+                this.position = end;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param start the position following the scheme of the URL
+     * @return the end of the URL, without the trailing punctuation
+     */
+    private int findFreeStandingURLEnd(int start)
+    {
+        int end = start;
+        while (end < this.input.length() && !Character.isWhitespace(this.input.charAt(end))
+            && this.input.charAt(end) != '<')
+        {
+            end++;
+        }
+        while (end > start && AUTOLINK_TRAILING_PUNCTUATION.indexOf(this.input.charAt(end - 1)) >= 0) {
+            end--;
+        }
+
+        return end;
+    }
+
+    /**
+     * @return {@code true} if a free-standing email address has been found at the current position
+     */
+    private boolean parseFreeStandingEmail()
+    {
+        int start = this.position;
+        // Only start at the beginning of the local part so that each character is scanned at most once.
+        if (!isEmailCharacter(this.input.charAt(start), EMAIL_LOCAL_PART_CHARACTERS)
+            || start > 0 && isEmailCharacter(this.input.charAt(start - 1), EMAIL_LOCAL_PART_CHARACTERS))
+        {
+            return false;
+        }
+
+        int at = skipEmailCharacters(start, EMAIL_LOCAL_PART_CHARACTERS);
+        int end = skipEmailCharacters(at + 1, EMAIL_DOMAIN_CHARACTERS);
+        if (at >= this.input.length() || this.input.charAt(at) != '@' || end == at + 1) {
+            return false;
+        }
+
+        flushText();
+        this.container.appendChild(new MarkdownNode(MarkdownNodeType.MAIL_LINK, this.input.substring(start, end)));
+        this.position = end;
+
+        return true;
+    }
+
+    /**
+     * @param c the character to check
+     * @param allowed the characters allowed besides ASCII letters and digits
+     * @return {@code true} if the passed character can be part of a free-standing email address
+     */
+    private static boolean isEmailCharacter(char c, String allowed)
+    {
+        return c < 128 && Character.isLetterOrDigit(c) || allowed.indexOf(c) >= 0;
+    }
+
+    /**
+     * @param start the position from which to skip characters
+     * @param allowed the characters allowed besides ASCII letters and digits
+     * @return the position of the first character which can't be part of a free-standing email address
+     */
+    private int skipEmailCharacters(int start, String allowed)
+    {
+        int end = start;
+        while (end < this.input.length() && isEmailCharacter(this.input.charAt(end), allowed)) {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * @param c the character to check
+     * @return {@code true} if the passed character ends an URL or email address between angle brackets
+     */
+    private static boolean isAutoLinkEnd(char c)
+    {
+        return c == '>' || c == '<' || Character.isWhitespace(c);
+    }
+
+    /**
+     * Looks for the next occurrence of a token, reusing the result of the previous search when it's still ahead, so
+     * that the content is scanned at most once for each token.
+     *
+     * @param token the token to look for
+     * @param from the position from which to look for the token
+     * @param cached the position found by the previous search, -1 if there was none
+     * @return the position of the next occurrence of the token, or {@link #NOT_FOUND}
+     */
+    private int findNext(String token, int from, int cached)
+    {
+        int next = cached;
+        if (next != NOT_FOUND && next < from) {
+            next = this.input.indexOf(token, from);
+            if (next < 0) {
+                next = NOT_FOUND;
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * @param symbol the symbol to add
+     * @param length the number of characters of the content represented by the symbol
+     */
+    private void appendSymbol(char symbol, int length)
+    {
+        flushText();
+        MarkdownNode node = new MarkdownNode(MarkdownNodeType.SYMBOL);
+        node.setLevel(symbol);
+        this.container.appendChild(node);
+        this.position += length;
+    }
+
+    /**
+     * Resolves emphasis between the delimiters located above the passed bottom delimiter, and removes them from the
+     * stack. For each closer, openers are searched for downwards but never below the position where a previous search
+     * for the same delimiter character failed, which keeps the processing linear.
+     *
+     * @param bottom the delimiter below which to stop, {@code null} for the whole stack
+     */
+    private void processEmphasis(Delimiter bottom)
+    {
+        Delimiter starBottom = bottom;
+        Delimiter underscoreBottom = bottom;
+
+        Delimiter closer = getFirstDelimiter(bottom);
+        while (closer != null) {
+            if (!closer.canClose) {
+                closer = closer.next;
+                continue;
+            }
+
+            Delimiter opener = findOpener(closer, bottom, closer.character == '*' ? starBottom : underscoreBottom);
+            if (opener != null) {
+                closer = applyEmphasis(opener, closer);
+            } else {
+                if (closer.character == '*') {
+                    starBottom = closer.previous;
+                } else {
+                    underscoreBottom = closer.previous;
+                }
+                Delimiter next = closer.next;
+                if (!closer.canOpen) {
+                    removeDelimiter(closer);
+                }
+                closer = next;
+            }
+        }
+
+        while (this.lastDelimiter != null && this.lastDelimiter != bottom) {
+            removeDelimiter(this.lastDelimiter);
+        }
+    }
+
+    /**
+     * @param bottom the delimiter below which to stop, {@code null} for the whole stack
+     * @return the first delimiter located above the passed bottom delimiter, {@code null} if there's none
+     */
+    private Delimiter getFirstDelimiter(Delimiter bottom)
+    {
+        Delimiter first = null;
+        if (this.lastDelimiter != bottom) {
+            first = this.lastDelimiter;
+            while (first.previous != bottom) {
+                first = first.previous;
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * @param closer the closing delimiter
+     * @param bottom the delimiter below which to stop
+     * @param openersBottom the delimiter below which a previous search for the same delimiter character failed
+     * @return the nearest delimiter below the closer which can open emphasis with it, {@code null} if there's none
+     */
+    private Delimiter findOpener(Delimiter closer, Delimiter bottom, Delimiter openersBottom)
+    {
+        Delimiter opener = closer.previous;
+        while (isAbove(opener, bottom, openersBottom)
+            && (opener.character != closer.character || !opener.canOpen))
+        {
+            opener = opener.previous;
+        }
+
+        return isAbove(opener, bottom, openersBottom) ? opener : null;
+    }
+
+    /**
+     * @param delimiter the delimiter to check
+     * @param bottom the delimiter below which to stop
+     * @param openersBottom the delimiter below which a previous search for the same delimiter character failed
+     * @return {@code true} if the passed delimiter is located above both bottom delimiters
+     */
+    private boolean isAbove(Delimiter delimiter, Delimiter bottom, Delimiter openersBottom)
+    {
+        return delimiter != null && delimiter != bottom && delimiter != openersBottom;
+    }
+
+    /**
+     * Wraps the nodes located between the passed opener and closer into an emphasis node.
+     *
+     * @param opener the opening delimiter
+     * @param closer the closing delimiter
+     * @return the next closer to process
+     */
+    private Delimiter applyEmphasis(Delimiter opener, Delimiter closer)
+    {
+        int used = closer.count >= 2 && opener.count >= 2 ? 2 : 1;
+        opener.count -= used;
+        closer.count -= used;
+        opener.node.setText(opener.node.getText().substring(0, opener.count));
+        closer.node.setText(closer.node.getText().substring(0, closer.count));
+
+        MarkdownNode emphasis = new MarkdownNode(used == 2 ? MarkdownNodeType.STRONG : MarkdownNodeType.EMPHASIS);
+        this.container.wrapChildren(opener.node, closer.node, emphasis);
+
+        // Delimiters between the opener and the closer can't match anymore
+        Delimiter delimiter = closer.previous;
+        while (delimiter != opener) {
+            Delimiter previous = delimiter.previous;
+            removeDelimiter(delimiter);
+            delimiter = previous;
+        }
+
+        if (opener.count == 0) {
+            this.container.removeChild(opener.node);
+            removeDelimiter(opener);
+        }
+
+        Delimiter next = closer;
+        if (closer.count == 0) {
+            next = closer.next;
+            this.container.removeChild(closer.node);
+            removeDelimiter(closer);
+        }
+
+        return next;
+    }
+
+    /**
+     * @param delimiter the delimiter to remove from the stack
+     */
+    private void removeDelimiter(Delimiter delimiter)
+    {
+        if (delimiter.previous != null) {
+            delimiter.previous.next = delimiter.next;
+        }
+        if (delimiter.next != null) {
+            delimiter.next.previous = delimiter.previous;
+        } else {
+            this.lastDelimiter = delimiter.previous;
+        }
+    }
+
+    /**
+     * Adds the pending text to the container.
+     */
+    private void flushText()
+    {
+        if (this.text.length() > 0) {
+            this.container.appendChild(new MarkdownNode(MarkdownNodeType.TEXT, this.text.toString()));
+            this.text.setLength(0);
+        }
+    }
+
+    /**
+     * @param start the start of the run
+     * @param c the character of the run
+     * @return the number of consecutive occurrences of the passed character starting at the passed position
+     */
+    private int countRun(int start, char c)
+    {
+        int end = start;
+        while (end < this.input.length() && this.input.charAt(end) == c) {
+            end++;
+        }
+
+        return end - start;
+    }
+
+    /**
+     * @param start the position from which to skip spaces
+     * @param limit the position at which to stop
+     * @return the position of the first non space character
+     */
+    private int skipSpaces(int start, int limit)
+    {
+        int i = start;
+        while (i < limit && (this.input.charAt(i) == ' ' || this.input.charAt(i) == '\n')) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * @param value the string to check
+     * @param start the start of the range to check
+     * @param end the end of the range to check
+     * @return {@code true} if the range contains only ASCII letters
+     */
+    private boolean isLetters(String value, int start, int end)
+    {
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
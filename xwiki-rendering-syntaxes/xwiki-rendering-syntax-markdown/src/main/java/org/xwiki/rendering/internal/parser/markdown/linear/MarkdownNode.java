@@ -0,0 +1,284 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+/**
+ * A node of the Markdown document tree. Children are kept as a doubly linked list so that inline nodes can be wrapped
+ * into emphasis and link nodes in constant time, which is what makes the inline parser linear.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MarkdownNode
+{
+    /**
+     * @see #getType()
+     */
+    private MarkdownNodeType type;
+
+    /**
+     * @see #getText()
+     */
+    private String text;
+
+    /**
+     * @see #getInfo()
+     */
+    private String info;
+
+    /**
+     * @see #getTitle()
+     */
+    private String title;
+
+    /**
+     * @see #getLevel()
+     */
+    private int level;
+
+    /**
+     * @see #getSpan()
+     */
+    private int span = 1;
+
+    /**
+     * @see #getFirstChild()
+     */
+    private MarkdownNode firstChild;
+
+    /**
+     * @see #getLastChild()
+     */
+    private MarkdownNode lastChild;
+
+    /**
+     * @see #getNext()
+     */
+    private MarkdownNode next;
+
+    /**
+     * @see #getPrevious()
+     */
+    private MarkdownNode previous;
+
+    /**
+     * @param type the type of the node
+     */
+    public MarkdownNode(MarkdownNodeType type)
+    {
+        this.type = type;
+    }
+
+    /**
+     * @param type the type of the node
+     * @param text the text of the node
+     */
+    public MarkdownNode(MarkdownNodeType type, String text)
+    {
+        this.type = type;
+        this.text = text;
+    }
+
+    /**
+     * @return the type of the node
+     */
+    public MarkdownNodeType getType()
+    {
+        return this.type;
+    }
+
+    /**
+     * @param type see {@link #getType()}
+     */
+    public void setType(MarkdownNodeType type)
+    {
+        this.type = type;
+    }
+
+    /**
+     * @return the text of the node (raw inline content for blocks containing inline content, code, HTML, etc)
+     */
+    public String getText()
+    {
+        return this.text;
+    }
+
+    /**
+     * @param text see {@link #getText()}
+     */
+    public void setText(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * @return additional information about the node (the language of a code block or the URL of a link or image)
+     */
+    public String getInfo()
+    {
+        return this.info;
+    }
+
+    /**
+     * @param info see {@link #getInfo()}
+     */
+    public void setInfo(String info)
+    {
+        this.info = info;
+    }
+
+    /**
+     * @return the optional title of a link or image
+     */
+    public String getTitle()
+    {
+        return this.title;
+    }
+
+    /**
+     * @param title see {@link #getTitle()}
+     */
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+
+    /**
+     * @return the heading level, the table cell alignment or the symbol character depending on the node type
+     */
+    public int getLevel()
+    {
+        return this.level;
+    }
+
+    /**
+     * @param level see {@link #getLevel()}
+     */
+    public void setLevel(int level)
+    {
+        this.level = level;
+    }
+
+    /**
+     * @return the number of columns spanned by a table cell
+     */
+    public int getSpan()
+    {
+        return this.span;
+    }
+
+    /**
+     * @param span see {@link #getSpan()}
+     */
+    public void setSpan(int span)
+    {
+        this.span = span;
+    }
+
+    /**
+     * @return the first child of this node or {@code null} if there's none
+     */
+    public MarkdownNode getFirstChild()
+    {
+        return this.firstChild;
+    }
+
+    /**
+     * @return the last child of this node or {@code null} if there's none
+     */
+    public MarkdownNode getLastChild()
+    {
+        return this.lastChild;
+    }
+
+    /**
+     * @return the next sibling of this node or {@code null} if there's none
+     */
+    public MarkdownNode getNext()
+    {
+        return this.next;
+    }
+
+    /**
+     * @return the previous sibling of this node or {@code null} if there's none
+     */
+    public MarkdownNode getPrevious()
+    {
+        return this.previous;
+    }
+
+    /**
+     * @param child the node to add as the last child of this node
+     */
+    public void appendChild(MarkdownNode child)
+    {
+        child.next = null;
+        child.previous = this.lastChild;
+        if (this.lastChild != null) {
+            this.lastChild.next = child;
+        } else {
+            this.firstChild = child;
+        }
+        this.lastChild = child;
+    }
+
+    /**
+     * Removes the passed child node from this node.
+     *
+     * @param child the child node to remove
+     */
+    public void removeChild(MarkdownNode child)
+    {
+        if (child.previous != null) {
+            child.previous.next = child.next;
+        } else {
+            this.firstChild = child.next;
+        }
+        if (child.next != null) {
+            child.next.previous = child.previous;
+        } else {
+            this.lastChild = child.previous;
+        }
+        child.next = null;
+        child.previous = null;
+    }
+
+    /**
+     * Moves all the siblings located strictly between the two passed children of this node into the passed wrapper
+     * node, and inserts the wrapper in their place. Runs in constant time.
+     *
+     * @param from the child after which to start wrapping
+     * @param to the child before which to stop wrapping
+     * @param wrapper the node which will receive the wrapped children
+     */
+    public void wrapChildren(MarkdownNode from, MarkdownNode to, MarkdownNode wrapper)
+    {
+        if (from.next != to) {
+            wrapper.firstChild = from.next;
+            wrapper.lastChild = to.previous;
+            wrapper.firstChild.previous = null;
+            wrapper.lastChild.next = null;
+        }
+        from.next = wrapper;
+        wrapper.previous = from;
+        wrapper.next = to;
+        to.previous = wrapper;
+    }
+}
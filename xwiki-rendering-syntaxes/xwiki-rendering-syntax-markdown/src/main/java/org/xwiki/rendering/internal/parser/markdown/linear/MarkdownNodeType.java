@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+/**
+ * The types of nodes generated by the {@link MarkdownBlockParser} and the {@link MarkdownInlineParser}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public enum MarkdownNodeType
+{
+    /**
+     * The root of the document.
+     */
+    DOCUMENT,
+
+    /**
+     * A paragraph, its text being the raw inline content.
+     */
+    PARAGRAPH,
+
+    /**
+     * A paragraph of a tight list item, whose inline content is emitted without paragraph events.
+     */
+    TIGHT_PARAGRAPH,
+
+    /**
+     * A heading, its level being the heading level and its text being the raw inline content.
+     */
+    HEADING,
+
+    /**
+     * A fenced or indented code block, its text being the code and its info the optional language.
+     */
+    CODE_BLOCK,
+
+    /**
+     * A block quotation.
+     */
+    BLOCK_QUOTE,
+
+    /**
+     * A bulleted list.
+     */
+    BULLET_LIST,
+
+    /**
+     * A numbered list.
+     */
+    ORDERED_LIST,
+
+    /**
+     * A list item.
+     */
+    LIST_ITEM,
+
+    /**
+     * A definition list.
+     */
+    DEFINITION_LIST,
+
+    /**
+     * A definition term, its text being the raw inline content.
+     */
+    DEFINITION_TERM,
+
+    /**
+     * A definition description.
+     */
+    DEFINITION_DESCRIPTION,
+
+    /**
+     * A horizontal rule.
+     */
+    HORIZONTAL_RULE,
+
+    /**
+     * A block of raw HTML.
+     */
+    HTML_BLOCK,
+
+    /**
+     * A table.
+     */
+    TABLE,
+
+    /**
+     * A table row.
+     */
+    TABLE_ROW,
+
+    /**
+     * A table header cell, its text being the raw inline content.
+     */
+    TABLE_HEAD_CELL,
+
+    /**
+     * A table cell, its text being the raw inline content.
+     */
+    TABLE_CELL,
+
+    /**
+     * Plain text.
+     */
+    TEXT,
+
+    /**
+     * An escaped character, which is never merged with the surrounding text.
+     */
+    ESCAPED_TEXT,
+
+    /**
+     * A code span.
+     */
+    CODE,
+
+    /**
+     * Emphasized content.
+     */
+    EMPHASIS,
+
+    /**
+     * Strongly emphasized content.
+     */
+    STRONG,
+
+    /**
+     * An explicit or reference link, its info being the URL.
+     */
+    LINK,
+
+    /**
+     * An explicit or reference image, its info being the URL.
+     */
+    IMAGE,
+
+    /**
+     * An URL or email address between angle brackets or a free-standing URL, its text being the URL.
+     */
+    AUTO_LINK,
+
+    /**
+     * An email address between angle brackets, its text being the address.
+     */
+    MAIL_LINK,
+
+    /**
+     * A {@code [[reference]]} link, its text being the reference.
+     */
+    WIKI_LINK,
+
+    /**
+     * Inline raw HTML.
+     */
+    HTML_INLINE,
+
+    /**
+     * A hard line break.
+     */
+    LINE_BREAK,
+
+    /**
+     * A typographic symbol (ellipsis, dashes, angle quotes), its level being the symbol character.
+     */
+    SYMBOL
+}
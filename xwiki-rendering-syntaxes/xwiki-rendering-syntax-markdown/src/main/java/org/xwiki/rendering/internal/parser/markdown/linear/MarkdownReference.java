@@ -0,0 +1,91 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.markdown.linear;
+
+/**
+ * A link or image reference definition (i.e. {@code [label]: url "title"}).
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MarkdownReference
+{
+    /**
+     * @see #getURL()
+     */
+    private String url;
+
+    /**
+     * @see #getTitle()
+     */
+    private String title;
+
+    /**
+     * @param url see {@link #getURL()}
+     * @param title see {@link #getTitle()}
+     */
+    public MarkdownReference(String url, String title)
+    {
+        this.url = url;
+        this.title = title;
+    }
+
+    /**
+     * @return the URL the reference points to
+     */
+    public String getURL()
+    {
+        return this.url;
+    }
+
+    /**
+     * @return the optional title of the reference, {@code null} if not specified
+     */
+    public String getTitle()
+    {
+        return this.title;
+    }
+
+    /**
+     * Normalizes a reference label so that definitions and usages can be matched: leading and trailing whitespaces
+     * are removed and inner whitespaces are collapsed.
+     *
+     * @param label the label to normalize
+     * @return the normalized label
+     */
+    public static String normalizeLabel(String label)
+    {
+        StringBuilder builder = new StringBuilder(label.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    builder.append(' ');
+                    pendingSpace = false;
+                }
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.markdown;
+
+import java.io.StringReader;
+
+import org.apache.commons.lang3.StringUtils;
+import org.pegdown.Extensions;
+import org.pegdown.PegDownProcessor;
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.internal.parser.markdown.PegdownVisitor;
+import org.xwiki.rendering.internal.parser.markdown.linear.LinearMarkdownParser;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+
+/**
+ * Compares the time spent by the Pegdown based parser and by the {@link LinearMarkdownParser} on a big document, and
+ * shows that the time spent by the linear parser on the adversarial inputs of {@link LinearMarkdownParserTest} grows
+ * linearly with their size. This is not a test so it's not executed by the build, run it with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=org.xwiki.rendering.internal.markdown.LinearMarkdownParserBenchmark
+ * </pre>
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class LinearMarkdownParserBenchmark
+{
+    /**
+     * The number of times each measure is taken, the first ones being slower while the JVM warms up.
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * The adversarial inputs, repeated to get big documents.
+     */
+    private static final String[] ADVERSARIAL_INPUTS = new String[] {"[[a ", "```\na\n", "<a <!-- ", "*a _b ",
+        "[a](", "> * "};
+
+    /**
+     * Used to get the parsers.
+     */
+    private final ComponentManager componentManager;
+
+    /**
+     * The parser being measured.
+     */
+    private final LinearMarkdownParser linearParser;
+
+    /**
+     * The events of the parsed documents are generated in order to measure the whole parsing.
+     */
+    private final PrintRendererFactory eventRendererFactory;
+
+    /**
+     * @throws Exception if the components can't be initialized
+     */
+    private LinearMarkdownParserBenchmark() throws Exception
+    {
+        EmbeddableComponentManager embeddableComponentManager = new EmbeddableComponentManager();
+        embeddableComponentManager.initialize(getClass().getClassLoader());
+        this.componentManager = embeddableComponentManager;
+        this.linearParser = this.componentManager.getInstance(LinearMarkdownParser.class);
+        this.eventRendererFactory = this.componentManager.getInstance(PrintRendererFactory.class, "event/1.0");
+    }
+
+    /**
+     * @param args not used
+     * @throws Exception if the parsing fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        LinearMarkdownParserBenchmark benchmark = new LinearMarkdownParserBenchmark();
+        benchmark.compareParsers();
+        benchmark.parseAdversarialInputs();
+    }
+
+    /**
+     * Parses a big document with both parsers.
+     * 
+     * @throws Exception if the parsing fails
+     */
+    private void compareParsers() throws Exception
+    {
+        String source = StringUtils.repeat("# Section\n\nSome *text* with a [link](http://xwiki.org) and `code`.\n\n"
+            + "* item 1\n* item 2\n\n> quote\n\n", 2000);
+
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            parseWithPegdown(source);
+            long pegdown = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            parseWithLinear(source);
+            long linear = System.nanoTime() - start;
+
+            System.out.println(String.format("Pegdown: %d ms, Linear: %d ms", pegdown / 1000000, linear / 1000000));
+        }
+    }
+
+    /**
+     * Parses the adversarial inputs with increasing sizes. The Pegdown based parser is not measured since it doesn't
+     * finish in a reasonable time on some of them.
+     * 
+     * @throws Exception if the parsing fails
+     */
+    private void parseAdversarialInputs() throws Exception
+    {
+        for (String input : ADVERSARIAL_INPUTS) {
+            StringBuilder times = new StringBuilder();
+            for (int size = 10000; size <= 80000; size *= 2) {
+                String source = StringUtils.repeat(input, size);
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < RUNS; i++) {
+                    long start = System.nanoTime();
+                    parseWithLinear(source);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                times.append(String.format(" %d: %d ms", size, best / 1000000));
+            }
+            System.out.println(String.format("Linear, [%s] repeated%s", StringUtils.replace(input, "\n", "\\n"),
+                times));
+        }
+    }
+
+    /**
+     * @param source the Markdown source
+     * @throws Exception if the parsing fails
+     */
+    private void parseWithLinear(String source) throws Exception
+    {
+        this.linearParser.parse(new StringReader(source), createListener());
+    }
+
+    /**
+     * @param source the Markdown source
+     * @throws Exception if the parsing fails
+     */
+    private void parseWithPegdown(String source) throws Exception
+    {
+        // Use a new visitor for each parse since the one held by the Markdown parser keeps the generated header ids.
+        PegdownVisitor visitor = this.componentManager.getInstance(PegdownVisitor.class);
+        visitor.visit(new PegDownProcessor(Extensions.ALL & ~Extensions.HARDWRAPS).parseMarkdown(source.toCharArray()),
+            createListener());
+    }
+
+    /**
+     * @return a listener rendering the events in memory
+     */
+    private Listener createListener()
+    {
+        return this.eventRendererFactory.createRenderer(new DefaultWikiPrinter());
+    }
+}
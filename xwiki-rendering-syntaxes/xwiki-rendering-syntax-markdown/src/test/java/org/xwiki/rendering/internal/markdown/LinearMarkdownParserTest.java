@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.markdown;
+
+import java.io.InputStream;
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.pegdown.Extensions;
+import org.pegdown.PegDownProcessor;
+import org.xwiki.rendering.internal.parser.markdown.PegdownVisitor;
+import org.xwiki.rendering.internal.parser.markdown.linear.LinearMarkdownParser;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link LinearMarkdownParser}. Verifies that the linear parser generates the same events as the
+ * Pegdown based parser and that it doesn't blow up on pathological input.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class LinearMarkdownParserTest extends AbstractComponentTestCase
+{
+    /**
+     * The inputs of the compatibility tests, used to check that both parsers generate the same events.
+     */
+    private static final String[] COMPATIBILITY_INPUTS = new String[] {"bold/bold1.in.txt", "bold/bold1.in.1.txt",
+        "bold/bold3.in.txt", "horizontalline/horizontalline1.in.txt", "horizontalline/horizontalline1.in.1.txt",
+        "horizontalline/horizontalline1.in.2.txt", "horizontalline/horizontalline1.in.3.txt",
+        "horizontalline/horizontalline1.in.4.txt", "image/image1.in.txt", "image/image1.in.1.txt",
+        "italic/italic1.in.txt", "italic/italic1.in.1.txt", "link/link1.in.txt", "link/link2.in.txt",
+        "link/link2.in.1.txt", "link/link2.in.2.txt", "link/link4.in.txt", "link/link4.in.1.txt",
+        "link/link5.in.txt", "link/link5.in.1.txt", "list/definitionlist1.in.txt", "list/list1.in.txt",
+        "list/list1.in.1.txt", "list/list1.in.2.txt", "list/list2.in.txt", "list/list3.in.txt",
+        "paragraph/paragraph1.in.txt", "paragraph/paragraph2.in.txt", "paragraph/paragraph5.in.txt",
+        "paragraph/paragraph6.in.txt", "quote/quote1.in.txt", "section/section1.in.txt",
+        "section/section1.in.1.txt", "symbol/symbol1.in.txt", "table/table1.in.txt", "table/table1.in.1.txt"};
+
+    /**
+     * The size of the pathological inputs.
+     */
+    private static final int SIZE = 20000;
+
+    private LinearMarkdownParser linearParser;
+
+    private PrintRendererFactory eventRendererFactory;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.linearParser = getComponentManager().getInstance(LinearMarkdownParser.class);
+        this.eventRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "event/1.0");
+    }
+
+    @Test
+    public void parseGeneratesSameEventsAsPegdown() throws Exception
+    {
+        for (String input : COMPATIBILITY_INPUTS) {
+            InputStream stream = getClass().getResourceAsStream("/markdown10/simple/" + input);
+            try {
+                String source = IOUtils.toString(stream, "UTF-8");
+                Assert.assertEquals("Unexpected events for [" + input + "]", parseWithPegdown(source),
+                    parseWithLinear(source));
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+    }
+
+    @Test
+    public void parseMixedContentGeneratesSameEventsAsPegdown() throws Exception
+    {
+        String source = "# Title\n\nSome *emphasis*, **strong** and `code` with a [link](http://xwiki.org \"title\")"
+            + " and ![image](image.png).\n\n> quoted *text*\n\n```java\nint i = 0;\n```\n\n"
+            + "Name | Value\n---- | ----:\na | 1\n\n<<quoted>> text... -- and --- done\n\n"
+            + "*[HTML]: Hyper Text Markup Language\n\nSome HTML &amp; more.";
+        Assert.assertEquals(parseWithPegdown(source), parseWithLinear(source));
+    }
+
+    @Test(timeout = 10000)
+    public void parseNestedBrackets() throws Exception
+    {
+        parseWithLinear(StringUtils.repeat("[", SIZE) + "a" + StringUtils.repeat("]", SIZE));
+    }
+
+    @Test(timeout = 10000)
+    public void parseUnclosedBrackets() throws Exception
+    {
+        parseWithLinear(StringUtils.repeat("[a](", SIZE));
+    }
+
+    @Test(timeout = 10000)
+    public void parseUnmatchedEmphasis() throws Exception
+    {
+        parseWithLinear(StringUtils.repeat("*a _b ", SIZE));
+    }
+
+    @Test(timeout = 10000)
+    public void parseBacktickRuns() throws Exception
+    {
+        StringBuilder source = new StringBuilder();
+        for (int i = 1; i < 200; i++) {
+            source.append(StringUtils.repeat("`", i)).append(" a ");
+        }
+        parseWithLinear(StringUtils.repeat(source.toString(), 10));
+    }
+
+    @Test(timeout = 10000)
+    public void parseNestedBlockQuotesAndLists() throws Exception
+    {
+        parseWithLinear(StringUtils.repeat("> ", SIZE) + "a");
+        parseWithLinear(StringUtils.repeat("* ", SIZE) + "a");
+    }
+
+    @Test(timeout = 10000)
+    public void parseUnclosedWikiLinksAndFences() throws Exception
+    {
+        parseWithLinear(StringUtils.repeat("[[a ", SIZE));
+        parseWithLinear(StringUtils.repeat("```\na\n", SIZE));
+        parseWithLinear(StringUtils.repeat("<a <!-- ", SIZE));
+    }
+
+    private String parseWithLinear(String source) throws Exception
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        PrintRenderer renderer = this.eventRendererFactory.createRenderer(printer);
+        this.linearParser.parse(new StringReader(source), renderer);
+        return printer.toString();
+    }
+
+    private String parseWithPegdown(String source) throws Exception
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        PrintRenderer renderer = this.eventRendererFactory.createRenderer(printer);
+        // Use a new visitor for each parse since the one held by the Markdown parser keeps the generated header ids.
+        PegdownVisitor visitor = getComponentManager().getInstance(PegdownVisitor.class);
+        visitor.visit(new PegDownProcessor(Extensions.ALL & ~Extensions.HARDWRAPS).parseMarkdown(source.toCharArray()),
+            renderer);
+        return printer.toString();
+    }
+}
@@ -24,16 +24,21 @@
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.xwiki.rendering.wikimodel.IWikiLocatingParser;
 import org.xwiki.rendering.wikimodel.IWikiParser;
+import org.xwiki.rendering.wikimodel.IWikiSourceLocator;
 import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.internal.parser.ReplayableSourceLocator;
+import org.xwiki.rendering.internal.parser.SourceLocator;
 import org.xwiki.rendering.internal.parser.XDOMGeneratorListener;
 import org.xwiki.rendering.listener.Listener;
 import org.xwiki.rendering.parser.ResourceReferenceParser;
 import org.xwiki.rendering.parser.ParseException;
-import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.parser.SourcePositionParser;
 import org.xwiki.rendering.parser.StreamParser;
 import org.xwiki.rendering.renderer.PrintRendererFactory;
 import org.xwiki.rendering.util.IdGenerator;
+import org.xwiki.rendering.util.SourcePositions;
 
 /**
  * Common code for all WikiModel-based parsers.
@@ -41,7 +46,7 @@
  * @version $Id$
  * @since 1.5M2
  */
-public abstract class AbstractWikiModelParser implements Parser, WikiModelStreamParser
+public abstract class AbstractWikiModelParser implements SourcePositionParser, WikiModelStreamParser
 {
     /**
      * Used by the XWiki Generator Listener to generate unique header ids.
@@ -92,7 +97,7 @@ public XDOM parse(Reader source) throws ParseException
     {
         IdGenerator idGenerator = new IdGenerator();
         XDOMGeneratorListener listener = new XDOMGeneratorListener();
-        parse(source, listener, idGenerator);
+        parse(createWikiModelParser(), source, listener, idGenerator, null);
 
         XDOM xdom = listener.getXDOM();
         xdom.setIdGenerator(idGenerator);
@@ -100,12 +105,60 @@ public XDOM parse(Reader source) throws ParseException
         return xdom;
     }
 
+    @Override
+    public XDOM parse(Reader source, boolean trackSourcePositions) throws ParseException
+    {
+        if (!trackSourcePositions) {
+            return parse(source);
+        }
+
+        IdGenerator idGenerator = new IdGenerator();
+        SourcePositions sourcePositions = new SourcePositions();
+        IWikiParser parser = createWikiModelParser();
+        XDOMGeneratorListener listener;
+        ReplayableSourceLocator sourceLocator = null;
+        if (parser instanceof IWikiLocatingParser) {
+            final IWikiSourceLocator locator = ((IWikiLocatingParser) parser).enableSourceLocator();
+            sourceLocator = new ReplayableSourceLocator(new SourceLocator()
+            {
+                @Override
+                public int getBegin()
+                {
+                    return locator.getBeginOffset();
+                }
+
+                @Override
+                public int getEnd()
+                {
+                    return locator.getEndOffset();
+                }
+
+                @Override
+                public boolean isWhitespace(int offset)
+                {
+                    return Character.isWhitespace(locator.getChar(offset));
+                }
+            });
+            listener = new XDOMGeneratorListener(sourcePositions, sourceLocator);
+        } else {
+            // The WikiModel parser doesn't support locating the events
+            listener = new XDOMGeneratorListener();
+        }
+        parse(parser, source, listener, idGenerator, sourceLocator);
+
+        XDOM xdom = listener.getXDOM();
+        xdom.setIdGenerator(idGenerator);
+        xdom.setSourcePositions(sourcePositions);
+
+        return xdom;
+    }
+
     @Override
     public void parse(Reader source, Listener listener) throws ParseException
     {
         IdGenerator idGenerator = new IdGenerator();
 
-        parse(source, listener, idGenerator);
+        parse(createWikiModelParser(), source, listener, idGenerator, null);
     }
 
     @Override
@@ -116,18 +169,25 @@ public XWikiGeneratorListener createXWikiGeneratorListener(Listener listener, Id
     }
 
     /**
+     * @param parser the WikiModel parser to use
      * @param source the content to parse
      * @param listener receive event for each element
      * @param idGenerator unique id tool generator
+     * @param sourceLocator gives the position in the source of the events, {@code null} if they are not located
      * @throws ParseException if the source cannot be read or an unexpected error happens during the parsing. Parsers
      *             should be written to not generate any error as much as possible.
      * @since 2.1RC1
      */
-    private void parse(Reader source, Listener listener, IdGenerator idGenerator) throws ParseException
+    private void parse(IWikiParser parser, Reader source, Listener listener, IdGenerator idGenerator,
+        ReplayableSourceLocator sourceLocator) throws ParseException
     {
-        IWikiParser parser = createWikiModelParser();
+        XWikiGeneratorListener generatorListener = createXWikiGeneratorListener(listener, idGenerator);
+        if (sourceLocator != null && generatorListener instanceof DefaultXWikiGeneratorListener) {
+            // Keep the position of the events buffered by the generator listener
+            ((DefaultXWikiGeneratorListener) generatorListener).setSourceLocator(sourceLocator);
+        }
         try {
-            parser.parse(source, createXWikiGeneratorListener(listener, idGenerator));
+            parser.parse(source, generatorListener);
         } catch (Exception e) {
             throw new ParseException("Failed to parse input source", e);
         }
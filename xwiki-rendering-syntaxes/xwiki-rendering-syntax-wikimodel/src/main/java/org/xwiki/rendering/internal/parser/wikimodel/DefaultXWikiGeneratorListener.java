@@ -34,7 +34,8 @@
 import org.xwiki.rendering.wikimodel.WikiParameters;
 import org.xwiki.rendering.wikimodel.WikiReference;
 import org.xwiki.rendering.wikimodel.WikiStyle;
-import org.xwiki.rendering.listener.CompositeListener;
+import org.xwiki.rendering.internal.parser.PlainTextIdListener;
+import org.xwiki.rendering.internal.parser.ReplayableSourceLocator;
 import org.xwiki.rendering.listener.Format;
 import org.xwiki.rendering.listener.HeaderLevel;
 import org.xwiki.rendering.listener.MetaData;
@@ -101,6 +102,31 @@ public class DefaultXWikiGeneratorListener implements XWikiGeneratorListener
 
     private PrintRendererFactory plainRendererFactory;
 
+    /**
+     * Used to buffer the events of a header, reused from one header to another.
+     */
+    private PlainTextIdListener headerListener;
+
+    /**
+     * Gives the position in the source of the generated events, {@code null} if they are not located.
+     */
+    private ReplayableSourceLocator sourceLocator;
+
+    /**
+     * The begin and end offsets in the source of the begin event of the current header, sent once the header ends.
+     */
+    private int headerBegin;
+
+    private int headerEnd;
+
+    /**
+     * The begin and end offsets in the source of the last end format, whose events are sent when the next inline
+     * element starts.
+     */
+    private int endFormatBegin;
+
+    private int endFormatEnd;
+
     private int documentDepth = 0;
 
     private Stack<WikiFormat> currentFormatStack = new Stack<WikiFormat>();
@@ -131,6 +157,16 @@ public DefaultXWikiGeneratorListener(StreamParser parser, Listener listener,
         this.documentMetadata.addMetaData(MetaData.SYNTAX, this.syntax);
     }
 
+    /**
+     * @param sourceLocator gives the position in the source of the generated events, used to keep the position of the
+     *            events which are buffered
+     * @since 5.2M1
+     */
+    public void setSourceLocator(ReplayableSourceLocator sourceLocator)
+    {
+        this.sourceLocator = sourceLocator;
+    }
+
     /**
      * Returns the 'default' listener to send xwiki events to, the top of the listeners stack.
      * 
@@ -230,7 +266,14 @@ protected void flushFormat()
     private void flushFormat(List<WikiStyle> xorStyles, List<WikiParameter> xorParameters)
     {
         if (this.lastEndFormat != null) {
-            flushFormat(this.lastEndFormat.getStyles(), this.lastEndFormat.getParams(), xorStyles, xorParameters);
+            if (this.sourceLocator != null) {
+                // Locate the end of the formats where it has been read
+                this.sourceLocator.startReplay(this.endFormatBegin, this.endFormatEnd);
+                flushFormat(this.lastEndFormat.getStyles(), this.lastEndFormat.getParams(), xorStyles, xorParameters);
+                this.sourceLocator.stopReplay();
+            } else {
+                flushFormat(this.lastEndFormat.getStyles(), this.lastEndFormat.getParams(), xorStyles, xorParameters);
+            }
         }
     }
 
@@ -393,14 +436,24 @@ public void beginHeader(int level, WikiParameters params)
     {
         // Heading needs to have an id generated from a plaintext representation of its content, so the header start
         // event will be sent at the end of the header, after reading the content inside and generating the id.
-        // For this:
-        // buffer all events in a queue until the header ends, and also send them to a print renderer to generate the ID
-        CompositeListener composite = new CompositeListener();
-        composite.addListener(new QueueListener());
-        composite.addListener(this.plainRendererFactory.createRenderer(new DefaultWikiPrinter()));
+        // For this: buffer all events in a queue until the header ends, while computing the plain text of the header.
+        PlainTextIdListener headerListener;
+        if (this.headerListener != null) {
+            headerListener = this.headerListener;
+            headerListener.reset();
+            // Not available for another header until this one ends
+            this.headerListener = null;
+        } else {
+            headerListener = new PlainTextIdListener();
+            headerListener.setSourceLocator(this.sourceLocator);
+        }
+        if (this.sourceLocator != null) {
+            this.headerBegin = this.sourceLocator.getBegin();
+            this.headerEnd = this.sourceLocator.getEnd();
+        }
 
-        // These 2 listeners will receive all events from now on until the header ends
-        pushListener(composite);
+        // This listener will receive all events from now on until the header ends
+        pushListener(headerListener);
     }
 
     @Override
@@ -522,6 +575,10 @@ public void endFormat(WikiFormat format)
         // wikimodel sends an empty begin/endFormat event before starting an inline block (such as a paragraph).
         if (format.getStyles().size() > 0 || format.getParams().size() > 0) {
             this.lastEndFormat = format;
+            if (this.sourceLocator != null) {
+                this.endFormatBegin = this.sourceLocator.getBegin();
+                this.endFormatEnd = this.sourceLocator.getEnd();
+            }
         }
     }
 
@@ -531,27 +588,51 @@ public void endHeader(int level, WikiParameters params)
         // End all formats
         flushInline();
 
-        CompositeListener composite = (CompositeListener) getListener();
-
         // Get the listener where events inside the header were buffered
-        QueueListener queue = (QueueListener) composite.getListener(0);
-        // and the listener in which the id was generated
-        PrintRenderer renderer = (PrintRenderer) composite.getListener(1);
+        PlainTextIdListener queue = (PlainTextIdListener) getListener();
 
         // Restore the 'default' listener as it was at the beginning of the header
         popListener();
 
         HeaderLevel headerLevel = HeaderLevel.parseInt(level);
-        // Generate the id from the content inside the header written to the renderer
-        String id = this.idGenerator.generateUniqueId("H", renderer.getPrinter().toString());
+        // Generate the id from the plain text content inside the header
+        String id = this.idGenerator.generateUniqueId("H", getPlainText(queue));
         Map<String, String> parameters = convertParameters(params);
 
-        // Generate the begin header event to the 'default' listener
-        getListener().beginHeader(headerLevel, id, parameters);
+        // Generate the begin header event to the 'default' listener, where the header started
+        if (this.sourceLocator != null) {
+            this.sourceLocator.startReplay(this.headerBegin, this.headerEnd);
+            getListener().beginHeader(headerLevel, id, parameters);
+            this.sourceLocator.stopReplay();
+        } else {
+            getListener().beginHeader(headerLevel, id, parameters);
+        }
         // Send all buffered events to the 'default' listener
         queue.consumeEvents(getListener());
         // Generate the end header event to the 'default' listener
         getListener().endHeader(headerLevel, id, parameters);
+
+        // Reuse the listener for the next header
+        this.headerListener = queue;
+    }
+
+    /**
+     * @param queue the buffered events of the header
+     * @return the plain text representation of the header content
+     */
+    private String getPlainText(PlainTextIdListener queue)
+    {
+        String plainText = queue.getPlainText();
+        if (plainText == null) {
+            // Unusual header content, render it with the plain text renderer
+            PrintRenderer renderer = this.plainRendererFactory.createRenderer(new DefaultWikiPrinter());
+            for (QueueListener.Event event : queue) {
+                event.eventType.fireEvent(renderer, event.eventParameters);
+            }
+            plainText = renderer.getPrinter().toString();
+        }
+
+        return plainText;
     }
 
     @Override
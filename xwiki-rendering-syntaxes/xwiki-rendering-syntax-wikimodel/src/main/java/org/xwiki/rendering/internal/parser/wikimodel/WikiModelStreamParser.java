@@ -20,8 +20,10 @@
 package org.xwiki.rendering.internal.parser.wikimodel;
 
 import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.parser.StreamParser;
 import org.xwiki.rendering.util.IdGenerator;
+import org.xwiki.rendering.wikimodel.IWikiParser;
 
 /**
  * Adds the ability to create a corresponding XWiki Generator Listener over {@link StreamParser}.
@@ -31,6 +33,13 @@
  */
 public interface WikiModelStreamParser extends StreamParser
 {
+    /**
+     * @return the WikiModel parser instance to use to parse input content.
+     * @throws ParseException when there's a problem creating an instance of the parser to use
+     * @since 5.2M1
+     */
+    IWikiParser createWikiModelParser() throws ParseException;
+
     /**
      * @param listener the XWiki listener to which to forward WikiModel events
      * @param idGenerator unique id tool generator
@@ -0,0 +1,388 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal;
+
+/**
+ * Constants of the XDOM+Binary 1.0 format.
+ * <p>
+ * A stream starts with {@link #MAGIC} and {@link #VERSION}, followed by one record per listener event: the event code
+ * and then its arguments. Integers are unsigned variable length integers (7 bits per byte, least significant group
+ * first). Strings are written once in full and then referred to by their index in a string table which is built by
+ * both the writer and the reader as they go. Each string reference is an integer which is either {@link #STRING_NULL},
+ * {@link #STRING_NEW} (followed by the number of chars and the chars in modified UTF-8, which keeps lone surrogates) or
+ * the index of an already seen string plus {@link #STRING_TABLE_OFFSET}. Enumerations are written as the string
+ * reference of their name.
+ * <p>
+ * The codes below are part of the format: new codes can be added but existing ones must never change.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class XDOMBinaryFormat
+{
+    /**
+     * The bytes every stream starts with.
+     */
+    public static final byte[] MAGIC = new byte[] {'X', 'D', 'B'};
+
+    /**
+     * The version of the format, written after {@link #MAGIC}.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * String reference of a {@code null} string.
+     */
+    public static final int STRING_NULL = 0;
+
+    /**
+     * String reference announcing a string which is not yet in the string table.
+     */
+    public static final int STRING_NEW = 1;
+
+    /**
+     * Offset of the string references pointing to the string table.
+     */
+    public static final int STRING_TABLE_OFFSET = 2;
+
+    // Events
+
+    /**
+     * Code of the {@code beginDocument} event.
+     */
+    public static final int BEGIN_DOCUMENT = 1;
+
+    /**
+     * Code of the {@code endDocument} event.
+     */
+    public static final int END_DOCUMENT = 2;
+
+    /**
+     * Code of the {@code beginMetaData} event.
+     */
+    public static final int BEGIN_META_DATA = 3;
+
+    /**
+     * Code of the {@code endMetaData} event.
+     */
+    public static final int END_META_DATA = 4;
+
+    /**
+     * Code of the {@code beginGroup} event.
+     */
+    public static final int BEGIN_GROUP = 5;
+
+    /**
+     * Code of the {@code endGroup} event.
+     */
+    public static final int END_GROUP = 6;
+
+    /**
+     * Code of the {@code beginFormat} event.
+     */
+    public static final int BEGIN_FORMAT = 7;
+
+    /**
+     * Code of the {@code endFormat} event.
+     */
+    public static final int END_FORMAT = 8;
+
+    /**
+     * Code of the {@code beginParagraph} event.
+     */
+    public static final int BEGIN_PARAGRAPH = 9;
+
+    /**
+     * Code of the {@code endParagraph} event.
+     */
+    public static final int END_PARAGRAPH = 10;
+
+    /**
+     * Code of the {@code beginList} event.
+     */
+    public static final int BEGIN_LIST = 11;
+
+    /**
+     * Code of the {@code endList} event.
+     */
+    public static final int END_LIST = 12;
+
+    /**
+     * Code of the {@code beginDefinitionList} event.
+     */
+    public static final int BEGIN_DEFINITION_LIST = 13;
+
+    /**
+     * Code of the {@code endDefinitionList} event.
+     */
+    public static final int END_DEFINITION_LIST = 14;
+
+    /**
+     * Code of the {@code beginListItem} event.
+     */
+    public static final int BEGIN_LIST_ITEM = 15;
+
+    /**
+     * Code of the {@code endListItem} event.
+     */
+    public static final int END_LIST_ITEM = 16;
+
+    /**
+     * Code of the {@code beginDefinitionTerm} event.
+     */
+    public static final int BEGIN_DEFINITION_TERM = 17;
+
+    /**
+     * Code of the {@code endDefinitionTerm} event.
+     */
+    public static final int END_DEFINITION_TERM = 18;
+
+    /**
+     * Code of the {@code beginDefinitionDescription} event.
+     */
+    public static final int BEGIN_DEFINITION_DESCRIPTION = 19;
+
+    /**
+     * Code of the {@code endDefinitionDescription} event.
+     */
+    public static final int END_DEFINITION_DESCRIPTION = 20;
+
+    /**
+     * Code of the {@code beginTable} event.
+     */
+    public static final int BEGIN_TABLE = 21;
+
+    /**
+     * Code of the {@code endTable} event.
+     */
+    public static final int END_TABLE = 22;
+
+    /**
+     * Code of the {@code beginTableRow} event.
+     */
+    public static final int BEGIN_TABLE_ROW = 23;
+
+    /**
+     * Code of the {@code endTableRow} event.
+     */
+    public static final int END_TABLE_ROW = 24;
+
+    /**
+     * Code of the {@code beginTableCell} event.
+     */
+    public static final int BEGIN_TABLE_CELL = 25;
+
+    /**
+     * Code of the {@code endTableCell} event.
+     */
+    public static final int END_TABLE_CELL = 26;
+
+    /**
+     * Code of the {@code beginTableHeadCell} event.
+     */
+    public static final int BEGIN_TABLE_HEAD_CELL = 27;
+
+    /**
+     * Code of the {@code endTableHeadCell} event.
+     */
+    public static final int END_TABLE_HEAD_CELL = 28;
+
+    /**
+     * Code of the {@code beginSection} event.
+     */
+    public static final int BEGIN_SECTION = 29;
+
+    /**
+     * Code of the {@code endSection} event.
+     */
+    public static final int END_SECTION = 30;
+
+    /**
+     * Code of the {@code beginHeader} event.
+     */
+    public static final int BEGIN_HEADER = 31;
+
+    /**
+     * Code of the {@code endHeader} event.
+     */
+    public static final int END_HEADER = 32;
+
+    /**
+     * Code of the {@code beginMacroMarker} event.
+     */
+    public static final int BEGIN_MACRO_MARKER = 33;
+
+    /**
+     * Code of the {@code endMacroMarker} event.
+     */
+    public static final int END_MACRO_MARKER = 34;
+
+    /**
+     * Code of the {@code beginQuotation} event.
+     */
+    public static final int BEGIN_QUOTATION = 35;
+
+    /**
+     * Code of the {@code endQuotation} event.
+     */
+    public static final int END_QUOTATION = 36;
+
+    /**
+     * Code of the {@code beginQuotationLine} event.
+     */
+    public static final int BEGIN_QUOTATION_LINE = 37;
+
+    /**
+     * Code of the {@code endQuotationLine} event.
+     */
+    public static final int END_QUOTATION_LINE = 38;
+
+    /**
+     * Code of the {@code beginLink} event.
+     */
+    public static final int BEGIN_LINK = 39;
+
+    /**
+     * Code of the {@code endLink} event.
+     */
+    public static final int END_LINK = 40;
+
+    /**
+     * Code of the {@code onNewLine} event.
+     */
+    public static final int ON_NEW_LINE = 41;
+
+    /**
+     * Code of the {@code onMacro} event.
+     */
+    public static final int ON_MACRO = 42;
+
+    /**
+     * Code of the {@code onWord} event.
+     */
+    public static final int ON_WORD = 43;
+
+    /**
+     * Code of the {@code onSpace} event.
+     */
+    public static final int ON_SPACE = 44;
+
+    /**
+     * Code of the {@code onSpecialSymbol} event.
+     */
+    public static final int ON_SPECIAL_SYMBOL = 45;
+
+    /**
+     * Code of the {@code onId} event.
+     */
+    public static final int ON_ID = 46;
+
+    /**
+     * Code of the {@code onHorizontalLine} event.
+     */
+    public static final int ON_HORIZONTAL_LINE = 47;
+
+    /**
+     * Code of the {@code onEmptyLines} event.
+     */
+    public static final int ON_EMPTY_LINES = 48;
+
+    /**
+     * Code of the {@code onVerbatim} event.
+     */
+    public static final int ON_VERBATIM = 49;
+
+    /**
+     * Code of the {@code onRawText} event.
+     */
+    public static final int ON_RAW_TEXT = 50;
+
+    /**
+     * Code of the {@code onImage} event.
+     */
+    public static final int ON_IMAGE = 51;
+
+    // Resource references
+
+    /**
+     * Code of a {@code null} resource reference.
+     */
+    public static final int REFERENCE_NULL = 0;
+
+    /**
+     * A {@link org.xwiki.rendering.listener.reference.ResourceReference}, also used for the implementations which don't
+     * have a dedicated code.
+     */
+    public static final int REFERENCE_GENERIC = 1;
+
+    /**
+     * Code of a {@link org.xwiki.rendering.listener.reference.DocumentResourceReference}.
+     */
+    public static final int REFERENCE_DOCUMENT = 2;
+
+    /**
+     * Code of an {@link org.xwiki.rendering.listener.reference.AttachmentResourceReference}.
+     */
+    public static final int REFERENCE_ATTACHMENT = 3;
+
+    /**
+     * Code of an {@link org.xwiki.rendering.listener.reference.InterWikiResourceReference}.
+     */
+    public static final int REFERENCE_INTERWIKI = 4;
+
+    // Meta data values
+
+    /**
+     * Code of a {@code null} meta data value.
+     */
+    public static final int VALUE_NULL = 0;
+
+    /**
+     * A string, also used for the values which don't have a dedicated code once converted to a string.
+     */
+    public static final int VALUE_STRING = 1;
+
+    /**
+     * Code of a {@link org.xwiki.rendering.syntax.Syntax} meta data value.
+     */
+    public static final int VALUE_SYNTAX = 2;
+
+    /**
+     * Code of an {@link Integer} meta data value.
+     */
+    public static final int VALUE_INTEGER = 3;
+
+    /**
+     * Code of a {@link Long} meta data value.
+     */
+    public static final int VALUE_LONG = 4;
+
+    /**
+     * Code of a {@link Boolean} meta data value.
+     */
+    public static final int VALUE_BOOLEAN = 5;
+
+    /**
+     * Utility class.
+     */
+    private XDOMBinaryFormat()
+    {
+    }
+}
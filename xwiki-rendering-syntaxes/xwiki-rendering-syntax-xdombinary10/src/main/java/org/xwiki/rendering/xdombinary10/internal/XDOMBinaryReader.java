@@ -0,0 +1,758 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.ListType;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.AttachmentResourceReference;
+import org.xwiki.rendering.listener.reference.DocumentResourceReference;
+import org.xwiki.rendering.listener.reference.InterWikiResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.syntax.SyntaxType;
+
+/**
+ * Decodes a stream in the XDOM+Binary 1.0 format (see {@link XDOMBinaryFormat}) and sends the corresponding events to
+ * a listener.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XDOMBinaryReader
+{
+    /**
+     * The size of the read buffer.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The error message used when a variable length integer is too long.
+     */
+    private static final String INVALID_INTEGER = "Invalid variable length integer";
+
+    /**
+     * The stream to read from.
+     */
+    private final InputStream stream;
+
+    /**
+     * The bytes read from the stream.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The position of the next byte to read in {@link #buffer}.
+     */
+    private int position;
+
+    /**
+     * The number of bytes in {@link #buffer}.
+     */
+    private int limit;
+
+    /**
+     * The strings read so far, by index.
+     */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Reused to decode the strings.
+     */
+    private char[] chars = new char[64];
+
+    /**
+     * @param stream the stream to read from
+     */
+    public XDOMBinaryReader(InputStream stream)
+    {
+        this.stream = stream;
+    }
+
+    /**
+     * Read the whole stream.
+     * 
+     * @param listener the listener to send the events to
+     * @throws ParseException when the stream can't be read or is not a valid XDOM+Binary 1.0 stream
+     */
+    public void read(Listener listener) throws ParseException
+    {
+        try {
+            if (!fill()) {
+                // Nothing was rendered
+                return;
+            }
+
+            readHeader();
+
+            while (this.position < this.limit || fill()) {
+                readEvent(readByte(), listener);
+            }
+        } catch (EOFException e) {
+            throw new ParseException("Unexpected end of binary XDOM", e);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read binary XDOM", e);
+        }
+    }
+
+    /**
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is not a XDOM+Binary 1.0 stream
+     */
+    private void readHeader() throws IOException, ParseException
+    {
+        for (byte b : XDOMBinaryFormat.MAGIC) {
+            if (readByte() != b) {
+                throw new ParseException("Not a binary XDOM");
+            }
+        }
+
+        int version = readByte();
+        if (version != XDOMBinaryFormat.VERSION) {
+            throw new ParseException("Unsupported binary XDOM version [" + version + "]");
+        }
+    }
+
+    /**
+     * Read the arguments of an event and send it. The most frequent events are handled first.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.ON_WORD:
+                listener.onWord(readString());
+                break;
+            case XDOMBinaryFormat.ON_SPACE:
+                listener.onSpace();
+                break;
+            case XDOMBinaryFormat.ON_SPECIAL_SYMBOL:
+                listener.onSpecialSymbol((char) readInt());
+                break;
+            case XDOMBinaryFormat.ON_NEW_LINE:
+                listener.onNewLine();
+                break;
+            case XDOMBinaryFormat.BEGIN_PARAGRAPH:
+                listener.beginParagraph(readParameters());
+                break;
+            case XDOMBinaryFormat.END_PARAGRAPH:
+                listener.endParagraph(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_FORMAT:
+                listener.beginFormat(readEnum(Format.class), readParameters());
+                break;
+            case XDOMBinaryFormat.END_FORMAT:
+                listener.endFormat(readEnum(Format.class), readParameters());
+                break;
+            default:
+                readStructureEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a document, meta data, group or section event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readStructureEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_DOCUMENT:
+                listener.beginDocument(readMetaData());
+                break;
+            case XDOMBinaryFormat.END_DOCUMENT:
+                listener.endDocument(readMetaData());
+                break;
+            case XDOMBinaryFormat.BEGIN_META_DATA:
+                listener.beginMetaData(readMetaData());
+                break;
+            case XDOMBinaryFormat.END_META_DATA:
+                listener.endMetaData(readMetaData());
+                break;
+            case XDOMBinaryFormat.BEGIN_GROUP:
+                listener.beginGroup(readParameters());
+                break;
+            case XDOMBinaryFormat.END_GROUP:
+                listener.endGroup(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_SECTION:
+                listener.beginSection(readParameters());
+                break;
+            case XDOMBinaryFormat.END_SECTION:
+                listener.endSection(readParameters());
+                break;
+            default:
+                readListEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a list or quotation event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readListEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_LIST:
+                listener.beginList(readEnum(ListType.class), readParameters());
+                break;
+            case XDOMBinaryFormat.END_LIST:
+                listener.endList(readEnum(ListType.class), readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_LIST_ITEM:
+                listener.beginListItem();
+                break;
+            case XDOMBinaryFormat.END_LIST_ITEM:
+                listener.endListItem();
+                break;
+            case XDOMBinaryFormat.BEGIN_QUOTATION:
+                listener.beginQuotation(readParameters());
+                break;
+            case XDOMBinaryFormat.END_QUOTATION:
+                listener.endQuotation(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_QUOTATION_LINE:
+                listener.beginQuotationLine();
+                break;
+            case XDOMBinaryFormat.END_QUOTATION_LINE:
+                listener.endQuotationLine();
+                break;
+            default:
+                readDefinitionListEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a definition list event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readDefinitionListEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_DEFINITION_LIST:
+                listener.beginDefinitionList(readParameters());
+                break;
+            case XDOMBinaryFormat.END_DEFINITION_LIST:
+                listener.endDefinitionList(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_DEFINITION_TERM:
+                listener.beginDefinitionTerm();
+                break;
+            case XDOMBinaryFormat.END_DEFINITION_TERM:
+                listener.endDefinitionTerm();
+                break;
+            case XDOMBinaryFormat.BEGIN_DEFINITION_DESCRIPTION:
+                listener.beginDefinitionDescription();
+                break;
+            case XDOMBinaryFormat.END_DEFINITION_DESCRIPTION:
+                listener.endDefinitionDescription();
+                break;
+            default:
+                readTableEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a table event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readTableEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_TABLE:
+                listener.beginTable(readParameters());
+                break;
+            case XDOMBinaryFormat.END_TABLE:
+                listener.endTable(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_TABLE_ROW:
+                listener.beginTableRow(readParameters());
+                break;
+            case XDOMBinaryFormat.END_TABLE_ROW:
+                listener.endTableRow(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_TABLE_CELL:
+                listener.beginTableCell(readParameters());
+                break;
+            case XDOMBinaryFormat.END_TABLE_CELL:
+                listener.endTableCell(readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_TABLE_HEAD_CELL:
+                listener.beginTableHeadCell(readParameters());
+                break;
+            case XDOMBinaryFormat.END_TABLE_HEAD_CELL:
+                listener.endTableHeadCell(readParameters());
+                break;
+            default:
+                readStandaloneEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a header event or of a standalone block event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readStandaloneEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_HEADER:
+                listener.beginHeader(readEnum(HeaderLevel.class), readString(), readParameters());
+                break;
+            case XDOMBinaryFormat.END_HEADER:
+                listener.endHeader(readEnum(HeaderLevel.class), readString(), readParameters());
+                break;
+            case XDOMBinaryFormat.ON_ID:
+                listener.onId(readString());
+                break;
+            case XDOMBinaryFormat.ON_HORIZONTAL_LINE:
+                listener.onHorizontalLine(readParameters());
+                break;
+            case XDOMBinaryFormat.ON_EMPTY_LINES:
+                listener.onEmptyLines(readLength());
+                break;
+            case XDOMBinaryFormat.ON_VERBATIM:
+                listener.onVerbatim(readString(), readBoolean(), readParameters());
+                break;
+            case XDOMBinaryFormat.ON_RAW_TEXT:
+                listener.onRawText(readString(), readSyntax());
+                break;
+            default:
+                readResourceEvent(code, listener);
+                break;
+        }
+    }
+
+    /**
+     * Read the arguments of a link, image or macro event and send it.
+     * 
+     * @param code the code of the event
+     * @param listener the listener to send the event to
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private void readResourceEvent(int code, Listener listener) throws IOException, ParseException
+    {
+        switch (code) {
+            case XDOMBinaryFormat.BEGIN_LINK:
+                listener.beginLink(readReference(), readBoolean(), readParameters());
+                break;
+            case XDOMBinaryFormat.END_LINK:
+                listener.endLink(readReference(), readBoolean(), readParameters());
+                break;
+            case XDOMBinaryFormat.ON_IMAGE:
+                listener.onImage(readReference(), readBoolean(), readParameters());
+                break;
+            case XDOMBinaryFormat.BEGIN_MACRO_MARKER:
+                listener.beginMacroMarker(readString(), readParameters(), readString(), readBoolean());
+                break;
+            case XDOMBinaryFormat.END_MACRO_MARKER:
+                listener.endMacroMarker(readString(), readParameters(), readString(), readBoolean());
+                break;
+            case XDOMBinaryFormat.ON_MACRO:
+                listener.onMacro(readString(), readParameters(), readString(), readBoolean());
+                break;
+            default:
+                throw new ParseException("Unknown binary XDOM event [" + code + "]");
+        }
+    }
+
+    // Values
+
+    /**
+     * @return true if some bytes have been read, false if the end of the stream has been reached
+     * @throws IOException when failing to read the stream
+     */
+    private boolean fill() throws IOException
+    {
+        int read;
+        do {
+            read = this.stream.read(this.buffer, 0, this.buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+
+        this.position = 0;
+        this.limit = read;
+
+        return true;
+    }
+
+    /**
+     * @return the next byte
+     * @throws IOException when failing to read the stream
+     */
+    private int readByte() throws IOException
+    {
+        if (this.position == this.limit && !fill()) {
+            throw new EOFException();
+        }
+
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    /**
+     * @return the next boolean
+     * @throws IOException when failing to read the stream
+     */
+    private boolean readBoolean() throws IOException
+    {
+        return readByte() != 0;
+    }
+
+    /**
+     * @return the next unsigned integer
+     * @throws IOException when failing to read the stream
+     */
+    private int readInt() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException(INVALID_INTEGER);
+    }
+
+    /**
+     * @return the next unsigned long
+     * @throws IOException when failing to read the stream
+     */
+    private long readLong() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException(INVALID_INTEGER);
+    }
+
+    /**
+     * @return the next length or number of elements
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the length is negative
+     */
+    private int readLength() throws IOException, ParseException
+    {
+        int length = readInt();
+        if (length < 0) {
+            throw new ParseException("Invalid binary XDOM length [" + (length & 0xFFFFFFFFL) + "]");
+        }
+
+        return length;
+    }
+
+    /**
+     * @return the next string
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the string reference is invalid
+     */
+    private String readString() throws IOException, ParseException
+    {
+        int reference = readInt();
+
+        if (reference == XDOMBinaryFormat.STRING_NULL) {
+            return null;
+        } else if (reference == XDOMBinaryFormat.STRING_NEW) {
+            String value = readChars();
+            this.strings.add(value);
+
+            return value;
+        }
+
+        int index = reference - XDOMBinaryFormat.STRING_TABLE_OFFSET;
+        if (index < 0 || index >= this.strings.size()) {
+            throw new ParseException("Invalid binary XDOM string reference [" + reference + "]");
+        }
+
+        return this.strings.get(index);
+    }
+
+    /**
+     * @return the next string written as the number of chars followed by the chars in modified UTF-8
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the length is invalid
+     */
+    private String readChars() throws IOException, ParseException
+    {
+        int length = readLength();
+
+        char[] result = this.chars;
+        for (int i = 0; i < length; i++) {
+            if (i == result.length) {
+                // Grow as the chars are actually read so that an invalid length fails on the end of the stream
+                // instead of allocating it upfront
+                this.chars = new char[(int) Math.min((long) result.length * 2, length)];
+                System.arraycopy(result, 0, this.chars, 0, i);
+                result = this.chars;
+            }
+            result[i] = readChar();
+        }
+
+        return new String(result, 0, length);
+    }
+
+    /**
+     * @return the next char, encoded in modified UTF-8 on one to three bytes
+     * @throws IOException when failing to read the stream
+     */
+    private char readChar() throws IOException
+    {
+        int b = readByte();
+        if (b < 0x80) {
+            return (char) b;
+        } else if (b < 0xE0) {
+            int low = readByte() & 0x3F;
+
+            return (char) (((b & 0x1F) << 6) | low);
+        }
+
+        int middle = (readByte() & 0x3F) << 6;
+        int low = readByte() & 0x3F;
+
+        return (char) (((b & 0x0F) << 12) | middle | low);
+    }
+
+    /**
+     * @param <E> the type of enumeration
+     * @param type the type of enumeration
+     * @return the next enumeration value
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the value is not part of the enumeration
+     */
+    private <E extends Enum<E>> E readEnum(Class<E> type) throws IOException, ParseException
+    {
+        String name = readString();
+        if (name == null) {
+            return null;
+        }
+
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown [" + type.getSimpleName() + "] value [" + name + "]", e);
+        }
+    }
+
+    /**
+     * @return the next parameters
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private Map<String, String> readParameters() throws IOException, ParseException
+    {
+        int size = readLength();
+
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return Listener.EMPTY_PARAMETERS;
+        }
+
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        for (int i = 1; i < size; i++) {
+            parameters.put(readString(), readString());
+        }
+
+        return parameters;
+    }
+
+    /**
+     * @return the next syntax
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private Syntax readSyntax() throws IOException, ParseException
+    {
+        if (!readBoolean()) {
+            return null;
+        }
+
+        String typeId = readString();
+        String typeName = readString();
+        String version = readString();
+        String qualifier = readString();
+
+        SyntaxType type = SyntaxType.getSyntaxTypes().get(typeId);
+        if (type == null || !type.getName().equals(typeName)) {
+            type = new SyntaxType(typeId, typeName);
+        }
+
+        return new Syntax(type, version, qualifier);
+    }
+
+    /**
+     * @return the next meta data
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private MetaData readMetaData() throws IOException, ParseException
+    {
+        int size = readLength();
+
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            // Don't use MetaData.EMPTY since meta data are mutable
+            return new MetaData();
+        }
+
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (int i = 1; i < size; i++) {
+            values.put(readString(), readValue());
+        }
+
+        return new MetaData(values);
+    }
+
+    /**
+     * @return the next meta data value
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private Object readValue() throws IOException, ParseException
+    {
+        int type = readByte();
+
+        Object value;
+        switch (type) {
+            case XDOMBinaryFormat.VALUE_NULL:
+                value = null;
+                break;
+            case XDOMBinaryFormat.VALUE_STRING:
+                value = readString();
+                break;
+            case XDOMBinaryFormat.VALUE_SYNTAX:
+                value = readSyntax();
+                break;
+            case XDOMBinaryFormat.VALUE_INTEGER:
+                int integer = readInt();
+                value = (integer >>> 1) ^ -(integer & 1);
+                break;
+            case XDOMBinaryFormat.VALUE_LONG:
+                long longInteger = readLong();
+                value = (longInteger >>> 1) ^ -(longInteger & 1);
+                break;
+            case XDOMBinaryFormat.VALUE_BOOLEAN:
+                value = readBoolean();
+                break;
+            default:
+                throw new ParseException("Unknown binary XDOM meta data value type [" + type + "]");
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the next resource reference
+     * @throws IOException when failing to read the stream
+     * @throws ParseException when the stream is invalid
+     */
+    private ResourceReference readReference() throws IOException, ParseException
+    {
+        int kind = readByte();
+        if (kind == XDOMBinaryFormat.REFERENCE_NULL) {
+            return null;
+        }
+
+        String scheme = readString();
+        String reference = readString();
+
+        ResourceReference resourceReference;
+        switch (kind) {
+            case XDOMBinaryFormat.REFERENCE_GENERIC:
+                resourceReference = new ResourceReference(reference, null);
+                break;
+            case XDOMBinaryFormat.REFERENCE_DOCUMENT:
+                resourceReference = new DocumentResourceReference(reference);
+                break;
+            case XDOMBinaryFormat.REFERENCE_ATTACHMENT:
+                resourceReference = new AttachmentResourceReference(reference);
+                break;
+            case XDOMBinaryFormat.REFERENCE_INTERWIKI:
+                resourceReference = new InterWikiResourceReference(reference);
+                break;
+            default:
+                throw new ParseException("Unknown binary XDOM resource reference kind [" + kind + "]");
+        }
+
+        resourceReference.setType(scheme != null ? new ResourceType(scheme) : null);
+        resourceReference.setTyped(readBoolean());
+        Map<String, String> parameters = readParameters();
+        if (parameters != null) {
+            resourceReference.setParameters(parameters);
+        }
+        for (int i = readLength(); i > 0; i--) {
+            resourceReference.addBaseReference(readString());
+        }
+
+        return resourceReference;
+    }
+}
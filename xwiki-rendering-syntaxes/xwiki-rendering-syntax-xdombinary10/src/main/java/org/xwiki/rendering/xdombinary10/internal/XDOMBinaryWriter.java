@@ -0,0 +1,824 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.properties.ConverterManager;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.ListType;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.AttachmentResourceReference;
+import org.xwiki.rendering.listener.reference.DocumentResourceReference;
+import org.xwiki.rendering.listener.reference.InterWikiResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Encodes the received events in the XDOM+Binary 1.0 format (see {@link XDOMBinaryFormat}).
+ * <p>
+ * The events are encoded in a memory buffer which is written to the stream each time a top level event is complete
+ * (and when the buffer is full) so that the stream always ends with complete events without the need for an explicit
+ * flush. A writer keeps the string table of the stream it writes to so it must not be shared.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XDOMBinaryWriter implements Listener
+{
+    /**
+     * The size from which the buffer is written to the stream even if the current top level event is not complete.
+     */
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    /**
+     * The stream to write to.
+     */
+    private final OutputStream stream;
+
+    /**
+     * Used to convert the meta data values which don't have a dedicated encoding to strings.
+     */
+    private final ConverterManager converter;
+
+    /**
+     * The strings already written and their index in the string table.
+     */
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * The encoded events not yet written to the stream.
+     */
+    private byte[] buffer = new byte[FLUSH_THRESHOLD * 2];
+
+    /**
+     * The number of bytes in {@link #buffer}.
+     */
+    private int count;
+
+    /**
+     * The number of begin events which have not been ended yet.
+     */
+    private int depth;
+
+    /**
+     * Indicate if the header of the stream has been written.
+     */
+    private boolean started;
+
+    /**
+     * @param stream the stream to write to
+     */
+    public XDOMBinaryWriter(OutputStream stream)
+    {
+        this(stream, null);
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param converter used to convert the meta data values which don't have a dedicated encoding to strings, the
+     *            values are converted using {@link String#valueOf(Object)} when null
+     */
+    public XDOMBinaryWriter(OutputStream stream, ConverterManager converter)
+    {
+        this.stream = stream;
+        this.converter = converter;
+    }
+
+    /**
+     * Write the buffered bytes to the stream. There's no need to call it when the events are balanced.
+     */
+    public void flush()
+    {
+        if (this.count > 0) {
+            try {
+                this.stream.write(this.buffer, 0, this.count);
+                this.stream.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write binary XDOM", e);
+            }
+            this.count = 0;
+        }
+    }
+
+    // Events
+
+    @Override
+    public void beginDocument(MetaData metaData)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_DOCUMENT);
+        writeMetaData(metaData);
+        ++this.depth;
+    }
+
+    @Override
+    public void endDocument(MetaData metaData)
+    {
+        startEvent(XDOMBinaryFormat.END_DOCUMENT);
+        writeMetaData(metaData);
+        endBlock();
+    }
+
+    @Override
+    public void beginMetaData(MetaData metadata)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_META_DATA);
+        writeMetaData(metadata);
+        ++this.depth;
+    }
+
+    @Override
+    public void endMetaData(MetaData metadata)
+    {
+        startEvent(XDOMBinaryFormat.END_META_DATA);
+        writeMetaData(metadata);
+        endBlock();
+    }
+
+    @Override
+    public void beginGroup(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_GROUP, parameters);
+    }
+
+    @Override
+    public void endGroup(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_GROUP, parameters);
+    }
+
+    @Override
+    public void beginFormat(Format format, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_FORMAT);
+        writeEnum(format);
+        writeParameters(parameters);
+        ++this.depth;
+    }
+
+    @Override
+    public void endFormat(Format format, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.END_FORMAT);
+        writeEnum(format);
+        writeParameters(parameters);
+        endBlock();
+    }
+
+    @Override
+    public void beginParagraph(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_PARAGRAPH, parameters);
+    }
+
+    @Override
+    public void endParagraph(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_PARAGRAPH, parameters);
+    }
+
+    @Override
+    public void beginList(ListType listType, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_LIST);
+        writeEnum(listType);
+        writeParameters(parameters);
+        ++this.depth;
+    }
+
+    @Override
+    public void endList(ListType listType, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.END_LIST);
+        writeEnum(listType);
+        writeParameters(parameters);
+        endBlock();
+    }
+
+    @Override
+    public void beginDefinitionList(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_DEFINITION_LIST, parameters);
+    }
+
+    @Override
+    public void endDefinitionList(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_DEFINITION_LIST, parameters);
+    }
+
+    @Override
+    public void beginListItem()
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_LIST_ITEM);
+        ++this.depth;
+    }
+
+    @Override
+    public void endListItem()
+    {
+        startEvent(XDOMBinaryFormat.END_LIST_ITEM);
+        endBlock();
+    }
+
+    @Override
+    public void beginDefinitionTerm()
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_DEFINITION_TERM);
+        ++this.depth;
+    }
+
+    @Override
+    public void endDefinitionTerm()
+    {
+        startEvent(XDOMBinaryFormat.END_DEFINITION_TERM);
+        endBlock();
+    }
+
+    @Override
+    public void beginDefinitionDescription()
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_DEFINITION_DESCRIPTION);
+        ++this.depth;
+    }
+
+    @Override
+    public void endDefinitionDescription()
+    {
+        startEvent(XDOMBinaryFormat.END_DEFINITION_DESCRIPTION);
+        endBlock();
+    }
+
+    @Override
+    public void beginTable(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_TABLE, parameters);
+    }
+
+    @Override
+    public void endTable(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_TABLE, parameters);
+    }
+
+    @Override
+    public void beginTableRow(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_TABLE_ROW, parameters);
+    }
+
+    @Override
+    public void endTableRow(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_TABLE_ROW, parameters);
+    }
+
+    @Override
+    public void beginTableCell(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_TABLE_CELL, parameters);
+    }
+
+    @Override
+    public void endTableCell(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_TABLE_CELL, parameters);
+    }
+
+    @Override
+    public void beginTableHeadCell(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_TABLE_HEAD_CELL, parameters);
+    }
+
+    @Override
+    public void endTableHeadCell(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_TABLE_HEAD_CELL, parameters);
+    }
+
+    @Override
+    public void beginSection(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_SECTION, parameters);
+    }
+
+    @Override
+    public void endSection(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_SECTION, parameters);
+    }
+
+    @Override
+    public void beginHeader(HeaderLevel level, String id, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_HEADER);
+        writeEnum(level);
+        writeString(id);
+        writeParameters(parameters);
+        ++this.depth;
+    }
+
+    @Override
+    public void endHeader(HeaderLevel level, String id, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.END_HEADER);
+        writeEnum(level);
+        writeString(id);
+        writeParameters(parameters);
+        endBlock();
+    }
+
+    @Override
+    public void beginMacroMarker(String name, Map<String, String> macroParameters, String content, boolean isInline)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_MACRO_MARKER);
+        writeMacro(name, macroParameters, content, isInline);
+        ++this.depth;
+    }
+
+    @Override
+    public void endMacroMarker(String name, Map<String, String> macroParameters, String content, boolean isInline)
+    {
+        startEvent(XDOMBinaryFormat.END_MACRO_MARKER);
+        writeMacro(name, macroParameters, content, isInline);
+        endBlock();
+    }
+
+    @Override
+    public void beginQuotation(Map<String, String> parameters)
+    {
+        beginBlock(XDOMBinaryFormat.BEGIN_QUOTATION, parameters);
+    }
+
+    @Override
+    public void endQuotation(Map<String, String> parameters)
+    {
+        endBlock(XDOMBinaryFormat.END_QUOTATION, parameters);
+    }
+
+    @Override
+    public void beginQuotationLine()
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_QUOTATION_LINE);
+        ++this.depth;
+    }
+
+    @Override
+    public void endQuotationLine()
+    {
+        startEvent(XDOMBinaryFormat.END_QUOTATION_LINE);
+        endBlock();
+    }
+
+    @Override
+    public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.BEGIN_LINK);
+        writeReference(reference);
+        writeBoolean(isFreeStandingURI);
+        writeParameters(parameters);
+        ++this.depth;
+    }
+
+    @Override
+    public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.END_LINK);
+        writeReference(reference);
+        writeBoolean(isFreeStandingURI);
+        writeParameters(parameters);
+        endBlock();
+    }
+
+    @Override
+    public void onNewLine()
+    {
+        startEvent(XDOMBinaryFormat.ON_NEW_LINE);
+        endEvent();
+    }
+
+    @Override
+    public void onMacro(String id, Map<String, String> macroParameters, String content, boolean isInline)
+    {
+        startEvent(XDOMBinaryFormat.ON_MACRO);
+        writeMacro(id, macroParameters, content, isInline);
+        endEvent();
+    }
+
+    @Override
+    public void onWord(String word)
+    {
+        startEvent(XDOMBinaryFormat.ON_WORD);
+        writeString(word);
+        endEvent();
+    }
+
+    @Override
+    public void onSpace()
+    {
+        startEvent(XDOMBinaryFormat.ON_SPACE);
+        endEvent();
+    }
+
+    @Override
+    public void onSpecialSymbol(char symbol)
+    {
+        startEvent(XDOMBinaryFormat.ON_SPECIAL_SYMBOL);
+        writeInt(symbol);
+        endEvent();
+    }
+
+    @Override
+    public void onId(String name)
+    {
+        startEvent(XDOMBinaryFormat.ON_ID);
+        writeString(name);
+        endEvent();
+    }
+
+    @Override
+    public void onHorizontalLine(Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.ON_HORIZONTAL_LINE);
+        writeParameters(parameters);
+        endEvent();
+    }
+
+    @Override
+    public void onEmptyLines(int count)
+    {
+        startEvent(XDOMBinaryFormat.ON_EMPTY_LINES);
+        writeInt(count);
+        endEvent();
+    }
+
+    @Override
+    public void onVerbatim(String protectedString, boolean isInline, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.ON_VERBATIM);
+        writeString(protectedString);
+        writeBoolean(isInline);
+        writeParameters(parameters);
+        endEvent();
+    }
+
+    @Override
+    public void onRawText(String rawContent, Syntax syntax)
+    {
+        startEvent(XDOMBinaryFormat.ON_RAW_TEXT);
+        writeString(rawContent);
+        writeSyntax(syntax);
+        endEvent();
+    }
+
+    @Override
+    public void onImage(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        startEvent(XDOMBinaryFormat.ON_IMAGE);
+        writeReference(reference);
+        writeBoolean(isFreeStandingURI);
+        writeParameters(parameters);
+        endEvent();
+    }
+
+    // Records
+
+    /**
+     * Start a new event record, writing the header of the stream first if needed.
+     * 
+     * @param code the code of the event
+     */
+    private void startEvent(int code)
+    {
+        if (!this.started) {
+            ensureCapacity(XDOMBinaryFormat.MAGIC.length + 1);
+            for (byte b : XDOMBinaryFormat.MAGIC) {
+                this.buffer[this.count++] = b;
+            }
+            this.buffer[this.count++] = (byte) XDOMBinaryFormat.VERSION;
+            this.started = true;
+        }
+
+        writeByte(code);
+    }
+
+    /**
+     * Write a begin event only taking parameters.
+     * 
+     * @param code the code of the event
+     * @param parameters the parameters of the event
+     */
+    private void beginBlock(int code, Map<String, String> parameters)
+    {
+        startEvent(code);
+        writeParameters(parameters);
+        ++this.depth;
+    }
+
+    /**
+     * Write an end event only taking parameters.
+     * 
+     * @param code the code of the event
+     * @param parameters the parameters of the event
+     */
+    private void endBlock(int code, Map<String, String> parameters)
+    {
+        startEvent(code);
+        writeParameters(parameters);
+        endBlock();
+    }
+
+    /**
+     * Finish the current event record and write the buffer to the stream if a top level event is complete or if the
+     * buffer is full.
+     */
+    private void endEvent()
+    {
+        if (this.depth == 0 || this.count >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Finish the current end event record. Unbalanced end events (when rendering a part of a document for example) are
+     * ignored when computing the depth.
+     */
+    private void endBlock()
+    {
+        if (this.depth > 0) {
+            --this.depth;
+        }
+        endEvent();
+    }
+
+    // Values
+
+    /**
+     * @param value the byte to write
+     */
+    private void writeByte(int value)
+    {
+        ensureCapacity(1);
+        this.buffer[this.count++] = (byte) value;
+    }
+
+    /**
+     * @param value the boolean to write
+     */
+    private void writeBoolean(boolean value)
+    {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * @param value the unsigned integer to write
+     */
+    private void writeInt(int value)
+    {
+        ensureCapacity(5);
+
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            this.buffer[this.count++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        this.buffer[this.count++] = (byte) remaining;
+    }
+
+    /**
+     * @param value the unsigned long to write
+     */
+    private void writeLong(long value)
+    {
+        ensureCapacity(10);
+
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            this.buffer[this.count++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        this.buffer[this.count++] = (byte) remaining;
+    }
+
+    /**
+     * @param value the string to write
+     */
+    private void writeString(String value)
+    {
+        if (value == null) {
+            writeInt(XDOMBinaryFormat.STRING_NULL);
+        } else {
+            Integer index = this.strings.get(value);
+            if (index != null) {
+                writeInt(index + XDOMBinaryFormat.STRING_TABLE_OFFSET);
+            } else {
+                this.strings.put(value, this.strings.size());
+                writeInt(XDOMBinaryFormat.STRING_NEW);
+                writeChars(value);
+            }
+        }
+    }
+
+    /**
+     * Write the number of chars followed by the chars in modified UTF-8.
+     * 
+     * @param value the string to write
+     */
+    private void writeChars(String value)
+    {
+        int length = value.length();
+        writeInt(length);
+        ensureCapacity(length * 3);
+
+        byte[] bytes = this.buffer;
+        int position = this.count;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c != 0 && c < 0x80) {
+                bytes[position++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[position++] = (byte) (0xC0 | (c >> 6));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[position++] = (byte) (0xE0 | (c >> 12));
+                bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        this.count = position;
+    }
+
+    /**
+     * @param value the enumeration value to write
+     */
+    private void writeEnum(Enum< ? > value)
+    {
+        writeString(value != null ? value.name() : null);
+    }
+
+    /**
+     * @param parameters the parameters to write
+     */
+    private void writeParameters(Map<String, String> parameters)
+    {
+        if (parameters == null) {
+            writeInt(0);
+        } else {
+            writeInt(parameters.size() + 1);
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                writeString(parameter.getKey());
+                writeString(parameter.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the macro
+     * @param parameters the parameters of the macro
+     * @param content the content of the macro
+     * @param isInline if the macro is inline
+     */
+    private void writeMacro(String name, Map<String, String> parameters, String content, boolean isInline)
+    {
+        writeString(name);
+        writeParameters(parameters);
+        writeString(content);
+        writeBoolean(isInline);
+    }
+
+    /**
+     * @param syntax the syntax to write
+     */
+    private void writeSyntax(Syntax syntax)
+    {
+        if (syntax == null) {
+            writeBoolean(false);
+        } else {
+            writeBoolean(true);
+            writeString(syntax.getType().getId());
+            writeString(syntax.getType().getName());
+            writeString(syntax.getVersion());
+            writeString(syntax.getQualifier());
+        }
+    }
+
+    /**
+     * @param metaData the meta data to write
+     */
+    private void writeMetaData(MetaData metaData)
+    {
+        if (metaData == null) {
+            writeInt(0);
+        } else {
+            Map<String, Object> values = metaData.getMetaData();
+            writeInt(values.size() + 1);
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                writeString(value.getKey());
+                writeValue(value.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param value the meta data value to write
+     */
+    private void writeValue(Object value)
+    {
+        if (value == null) {
+            writeByte(XDOMBinaryFormat.VALUE_NULL);
+        } else if (value instanceof String) {
+            writeByte(XDOMBinaryFormat.VALUE_STRING);
+            writeString((String) value);
+        } else if (value.getClass() == Syntax.class) {
+            writeByte(XDOMBinaryFormat.VALUE_SYNTAX);
+            writeSyntax((Syntax) value);
+        } else if (value instanceof Integer) {
+            writeByte(XDOMBinaryFormat.VALUE_INTEGER);
+            int integer = (Integer) value;
+            writeInt((integer << 1) ^ (integer >> 31));
+        } else if (value instanceof Long) {
+            writeByte(XDOMBinaryFormat.VALUE_LONG);
+            long integer = (Long) value;
+            writeLong((integer << 1) ^ (integer >> 63));
+        } else if (value instanceof Boolean) {
+            writeByte(XDOMBinaryFormat.VALUE_BOOLEAN);
+            writeBoolean((Boolean) value);
+        } else {
+            writeByte(XDOMBinaryFormat.VALUE_STRING);
+            writeString(this.converter != null ? this.converter.<String>convert(String.class, value) : String
+                .valueOf(value));
+        }
+    }
+
+    /**
+     * @param reference the resource reference to write
+     */
+    private void writeReference(ResourceReference reference)
+    {
+        if (reference == null) {
+            writeByte(XDOMBinaryFormat.REFERENCE_NULL);
+
+            return;
+        }
+
+        Class< ? > referenceClass = reference.getClass();
+        if (referenceClass == DocumentResourceReference.class) {
+            writeByte(XDOMBinaryFormat.REFERENCE_DOCUMENT);
+        } else if (referenceClass == AttachmentResourceReference.class) {
+            writeByte(XDOMBinaryFormat.REFERENCE_ATTACHMENT);
+        } else if (referenceClass == InterWikiResourceReference.class) {
+            writeByte(XDOMBinaryFormat.REFERENCE_INTERWIKI);
+        } else {
+            // Other implementations are read back as generic resource references with the same type, reference and
+            // parameters
+            writeByte(XDOMBinaryFormat.REFERENCE_GENERIC);
+        }
+
+        writeString(reference.getType() != null ? reference.getType().getScheme() : null);
+        writeString(reference.getReference());
+        writeBoolean(reference.isTyped());
+        writeParameters(reference.getParameters());
+
+        List<String> baseReferences = reference.getBaseReferences();
+        writeInt(baseReferences.size());
+        for (String baseReference : baseReferences) {
+            writeString(baseReference);
+        }
+    }
+
+    /**
+     * @param length the number of bytes about to be written in the buffer
+     */
+    private void ensureCapacity(int length)
+    {
+        if (this.count + length > this.buffer.length) {
+            byte[] newBuffer = new byte[Math.max(this.buffer.length * 2, this.count + length)];
+            System.arraycopy(this.buffer, 0, newBuffer, 0, this.count);
+            this.buffer = newBuffer;
+        }
+    }
+}
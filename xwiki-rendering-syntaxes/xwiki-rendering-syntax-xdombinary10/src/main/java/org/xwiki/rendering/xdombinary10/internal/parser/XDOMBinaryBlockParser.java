@@ -0,0 +1,45 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal.parser;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.internal.parser.AbstractBlockParser;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * XDOM+Binary 1.0 parser producing a XDOM object.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("xdom+binary/1.0")
+@Singleton
+public class XDOMBinaryBlockParser extends AbstractBlockParser
+{
+    @Override
+    public Syntax getSyntax()
+    {
+        return Syntax.XDOMBINARY_1_0;
+    }
+}
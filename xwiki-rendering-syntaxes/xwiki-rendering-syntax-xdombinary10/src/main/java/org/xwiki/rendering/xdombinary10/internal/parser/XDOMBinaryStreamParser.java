@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.xdombinary10.internal.XDOMBinaryReader;
+
+/**
+ * XDOM+Binary 1.0 stream parser. The source is expected to contain one char per byte, as printed by the XDOM+Binary
+ * 1.0 renderer.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("xdom+binary/1.0")
+@Singleton
+public class XDOMBinaryStreamParser implements StreamParser
+{
+    @Override
+    public Syntax getSyntax()
+    {
+        return Syntax.XDOMBINARY_1_0;
+    }
+
+    @Override
+    public void parse(Reader source, Listener listener) throws ParseException
+    {
+        new XDOMBinaryReader(new ReaderInputStream(source)).read(listener);
+    }
+
+    /**
+     * Converts back the chars printed by the renderer to bytes.
+     * 
+     * @version $Id$
+     */
+    private static class ReaderInputStream extends InputStream
+    {
+        /**
+         * The reader to read chars from.
+         */
+        private final Reader reader;
+
+        /**
+         * Reused to read chars.
+         */
+        private char[] chars = new char[0];
+
+        /**
+         * @param reader the reader to read chars from
+         */
+        ReaderInputStream(Reader reader)
+        {
+            this.reader = reader;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int c = this.reader.read();
+
+            return c < 0 ? c : toByte(c);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            if (this.chars.length < length) {
+                this.chars = new char[length];
+            }
+
+            int read = this.reader.read(this.chars, 0, length);
+            for (int i = 0; i < read; i++) {
+                bytes[offset + i] = (byte) toByte(this.chars[i]);
+            }
+
+            return read;
+        }
+
+        /**
+         * @param c the char to convert
+         * @return the corresponding byte
+         * @throws IOException when the char can't have been printed by the renderer
+         */
+        private int toByte(int c) throws IOException
+        {
+            if (c > 0xFF) {
+                throw new IOException("Not a binary XDOM char [" + c + "]");
+            }
+
+            return c;
+        }
+    }
+}
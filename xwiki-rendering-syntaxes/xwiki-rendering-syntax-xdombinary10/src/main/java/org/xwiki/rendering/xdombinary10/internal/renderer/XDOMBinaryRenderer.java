@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal.renderer;
+
+import java.io.OutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.properties.ConverterManager;
+import org.xwiki.rendering.listener.WrappingListener;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.xdombinary10.internal.XDOMBinaryWriter;
+
+/**
+ * XDOM+Binary 1.0 renderer. Since printers only accept text, each byte of the format is printed as the char with the
+ * same value (i.e. the output is the ISO-8859-1 decoding of the bytes), which means the result should be stored using
+ * ISO-8859-1 (or any encoding of the full char range) to keep it compact.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("xdom+binary/1.0")
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class XDOMBinaryRenderer extends WrappingListener implements PrintRenderer
+{
+    /**
+     * Used to convert the meta data values which don't have a dedicated encoding.
+     */
+    @Inject
+    private ConverterManager converter;
+
+    /**
+     * @see #getPrinter()
+     */
+    private WikiPrinter printer;
+
+    @Override
+    public WikiPrinter getPrinter()
+    {
+        return this.printer;
+    }
+
+    @Override
+    public void setPrinter(WikiPrinter printer)
+    {
+        this.printer = printer;
+
+        setWrappedListener(new XDOMBinaryWriter(new PrinterOutputStream(printer), this.converter));
+    }
+
+    /**
+     * Prints each written byte as the char with the same value.
+     * 
+     * @version $Id$
+     */
+    private static class PrinterOutputStream extends OutputStream
+    {
+        /**
+         * The printer to print to.
+         */
+        private final WikiPrinter printer;
+
+        /**
+         * @param printer the printer to print to
+         */
+        PrinterOutputStream(WikiPrinter printer)
+        {
+            this.printer = printer;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            this.printer.print(String.valueOf((char) (b & 0xFF)));
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (bytes[offset + i] & 0xFF);
+            }
+
+            this.printer.print(new String(chars));
+        }
+    }
+}
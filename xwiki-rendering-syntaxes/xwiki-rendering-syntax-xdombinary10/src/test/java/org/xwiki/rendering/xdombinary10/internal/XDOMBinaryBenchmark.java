@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal;
+
+import java.io.StringReader;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+
+/**
+ * Compares the size and speed of the XDOM+Binary 1.0 and XDOM+XML formats. This is not a test so it's not executed by
+ * the build, run it with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=org.xwiki.rendering.xdombinary10.internal.XDOMBinaryBenchmark
+ * </pre>
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class XDOMBinaryBenchmark
+{
+    /**
+     * The hint of the XML format components.
+     */
+    private static final String XML = "xdom+xml/current";
+
+    /**
+     * The hint of the binary format components.
+     */
+    private static final String BINARY = "xdom+binary/1.0";
+
+    /**
+     * Utility class.
+     */
+    private XDOMBinaryBenchmark()
+    {
+    }
+
+    /**
+     * @param args not used
+     * @throws Exception if the parsing fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        EmbeddableComponentManager componentManager = new EmbeddableComponentManager();
+        componentManager.initialize(XDOMBinaryBenchmark.class.getClassLoader());
+        Parser xwikiParser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        Parser xmlParser = componentManager.getInstance(Parser.class, XML);
+        BlockRenderer xmlRenderer = componentManager.getInstance(BlockRenderer.class, XML);
+        Parser binaryParser = componentManager.getInstance(Parser.class, BINARY);
+        BlockRenderer binaryRenderer = componentManager.getInstance(BlockRenderer.class, BINARY);
+
+        // The XML serializer escapes each surrogate of a supplementary character separately, which is not valid XML
+        String source = XDOMBinaryTest.SOURCE.replace("\ud83d\ude00", "");
+        XDOM xdom = xwikiParser.parse(new StringReader(StringUtils.repeat(source + "\n\n", 500)));
+
+        String xml = render(xdom, xmlRenderer);
+        String binary = render(xdom, binaryRenderer);
+        System.out.println(String.format("XML: %d chars, Binary: %d chars", xml.length(), binary.length()));
+
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            render(xdom, xmlRenderer);
+            long xmlRender = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            xmlParser.parse(new StringReader(xml));
+            long xmlParse = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            render(xdom, binaryRenderer);
+            long binaryRender = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            binaryParser.parse(new StringReader(binary));
+            long binaryParse = System.nanoTime() - start;
+
+            System.out.println(String.format("XML: render %d ms, parse %d ms - Binary: render %d ms, parse %d ms",
+                xmlRender / 1000000, xmlParse / 1000000, binaryRender / 1000000, binaryParse / 1000000));
+        }
+    }
+
+    /**
+     * @param xdom the XDOM to render
+     * @param renderer the renderer to use
+     * @return the rendered XDOM
+     */
+    private static String render(XDOM xdom, BlockRenderer renderer)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        renderer.render(xdom, printer);
+        return printer.toString();
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xdombinary10.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.properties.ConverterManager;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.ListType;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.VoidListener;
+import org.xwiki.rendering.listener.reference.DocumentResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.syntax.SyntaxType;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for the XDOM+Binary 1.0 parser and renderer. Verifies that the events are kept as they are by comparing
+ * with the XDOM+XML format.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XDOMBinaryTest extends AbstractComponentTestCase
+{
+    static final String SOURCE = "= Title {{id name=\"anchor\"/}} =\n\n"
+        + "Some **bold**, //italic//, __underline__, --strike--, ^^sup^^ and ,,sub,, text.\n"
+        + "Symbols: @ # ~ and a new line\\\\\n\n"
+        + "[[label>>doc:Space.Page||class=\"link\" queryString=\"a=b\" anchor=\"Hanchor\"]] "
+        + "[[attach:Space.Page@file.txt]] [[http://xwiki.org]] http://www.xwiki.org [[mailto:john@doe.com]]\n\n"
+        + "[[image:Space.Page@image.png||width=\"100\"]]\n\n"
+        + "* item 1\n** item 1.1\n1. numbered\n\n; term\n: description\n\n"
+        + "|=head|=head 2\n|cell (% class=\"c\" %)|cell 2\n\n"
+        + "> quote\n>> nested quote\n\n"
+        + "(% style=\"color:red\" %)\n(((\ngroup\n)))\n\n"
+        + "{{{verbatim **not bold**}}} and {{{\nverbatim block\n}}}\n\n"
+        + "{{macro param=\"value\"}}content{{/macro}}\n\n"
+        + "{{inline/}} text\n\n----\n\n\n\n\nunicode \u00e9\u00e8 \u4e2d\u6587 \ud83d\ude00 end";
+
+    private Parser xwikiParser;
+
+    private Parser binaryParser;
+
+    private StreamParser binaryStreamParser;
+
+    private BlockRenderer binaryBlockRenderer;
+
+    private PrintRendererFactory binaryRendererFactory;
+
+    private StreamParser xmlStreamParser;
+
+    private BlockRenderer xmlBlockRenderer;
+
+    private PrintRendererFactory xmlRendererFactory;
+
+    private PrintRendererFactory eventRendererFactory;
+
+    private ConverterManager converter;
+
+    /**
+     * A resource reference implementation unknown to the binary format.
+     */
+    public static class CustomResourceReference extends ResourceReference
+    {
+        public CustomResourceReference(String reference)
+        {
+            super(reference, new ResourceType("custom"));
+        }
+    }
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.xwikiParser = getComponentManager().getInstance(Parser.class, "xwiki/2.1");
+        this.binaryParser = getComponentManager().getInstance(Parser.class, "xdom+binary/1.0");
+        this.binaryStreamParser = getComponentManager().getInstance(StreamParser.class, "xdom+binary/1.0");
+        this.binaryBlockRenderer = getComponentManager().getInstance(BlockRenderer.class, "xdom+binary/1.0");
+        this.binaryRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "xdom+binary/1.0");
+        this.xmlStreamParser = getComponentManager().getInstance(StreamParser.class, "xdom+xml/current");
+        this.xmlBlockRenderer = getComponentManager().getInstance(BlockRenderer.class, "xdom+xml/current");
+        this.xmlRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "xdom+xml/current");
+        this.eventRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "event/1.0");
+        this.converter = getComponentManager().getInstance(ConverterManager.class);
+    }
+
+    @Test
+    public void roundTripXDOM() throws Exception
+    {
+        XDOM xdom = this.xwikiParser.parse(new StringReader(SOURCE));
+
+        String binary = render(xdom, this.binaryBlockRenderer);
+
+        Assert.assertEquals(render(xdom, this.xmlBlockRenderer),
+            render(this.binaryParser.parse(new StringReader(binary)), this.xmlBlockRenderer));
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.binaryStreamParser.parse(new StringReader(binary), this.eventRendererFactory.createRenderer(printer));
+        Assert.assertEquals(render(xdom, this.eventRendererFactory), printer.toString());
+    }
+
+    @Test
+    public void roundTripXML() throws Exception
+    {
+        // The XML serializer escapes each surrogate of a supplementary character separately, which is not valid XML
+        String source = SOURCE.replace("\ud83d\ude00", "");
+        String xml = render(this.xwikiParser.parse(new StringReader(source)), this.xmlBlockRenderer);
+
+        // XML -> binary -> XML
+        WikiPrinter binaryPrinter = new DefaultWikiPrinter();
+        this.xmlStreamParser.parse(new StringReader(xml), this.binaryRendererFactory.createRenderer(binaryPrinter));
+        WikiPrinter xmlPrinter = new DefaultWikiPrinter();
+        this.binaryStreamParser.parse(new StringReader(binaryPrinter.toString()),
+            this.xmlRendererFactory.createRenderer(xmlPrinter));
+
+        Assert.assertEquals(xml, xmlPrinter.toString());
+    }
+
+    @Test
+    public void roundTripEvents() throws Exception
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put(MetaData.SYNTAX, new Syntax(new SyntaxType("custom", "Custom"), "1.0", "qualifier"));
+        values.put(MetaData.SOURCE, "Space.Page");
+        values.put("integer", -42);
+        values.put("long", Long.MIN_VALUE);
+        values.put("boolean", Boolean.TRUE);
+        values.put("date", new Date(0));
+        values.put("null", null);
+        MetaData metaData = new MetaData(values);
+
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("class", "value with \"quotes\" & <chars>");
+        parameters.put("null", null);
+
+        ResourceReference reference = new DocumentResourceReference("Page");
+        reference.setTyped(false);
+        reference.addBaseReference("wiki:Space.Base");
+        reference.addBaseReference("Other");
+        ResourceReference customReference = new CustomResourceReference("custom reference");
+        customReference.setParameter("name", "value");
+
+        String binary = sendEvents(this.binaryRendererFactory, metaData, parameters, reference, customReference);
+
+        // Values and references without a dedicated encoding are read back as strings and generic references
+        values.put("date", this.converter.<String>convert(String.class, new Date(0)));
+        ResourceReference genericReference = new ResourceReference("custom reference", new ResourceType("custom"));
+        genericReference.setParameter("name", "value");
+        String expected =
+            sendEvents(this.xmlRendererFactory, new MetaData(values), parameters, reference, genericReference);
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.binaryStreamParser.parse(new StringReader(binary), this.xmlRendererFactory.createRenderer(printer));
+
+        Assert.assertEquals(expected, printer.toString());
+    }
+
+    @Test
+    public void roundTripChars() throws Exception
+    {
+        final String word = "\u0000\u007f\u0080\u07ff\u0800\uffff\ud800 \udc00\ud83d\ude00";
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        XDOMBinaryWriter writer = new XDOMBinaryWriter(stream);
+        writer.onWord(word);
+        writer.onWord(word);
+
+        final List<String> words = new ArrayList<String>();
+        new XDOMBinaryReader(new ByteArrayInputStream(stream.toByteArray())).read(new VoidListener()
+        {
+            @Override
+            public void onWord(String value)
+            {
+                words.add(value);
+            }
+        });
+
+        Assert.assertEquals(Arrays.asList(word, word), words);
+    }
+
+    @Test
+    public void parseEmpty() throws Exception
+    {
+        XDOM xdom = this.binaryParser.parse(new StringReader(""));
+
+        Assert.assertTrue(xdom.getChildren().isEmpty());
+    }
+
+    @Test
+    public void parseTruncated() throws Exception
+    {
+        String binary = render(this.xwikiParser.parse(new StringReader(SOURCE)), this.binaryBlockRenderer);
+
+        try {
+            this.binaryParser.parse(new StringReader(binary.substring(0, binary.length() / 2)));
+            Assert.fail("Should have failed");
+        } catch (ParseException expected) {
+            // Expected
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseInvalid() throws Exception
+    {
+        this.binaryParser.parse(new StringReader("<?xml version=\"1.0\"?>"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseSerializedValue() throws Exception
+    {
+        // A meta data value with the type code which used to announce a Java serialized value
+        read(XDOMBinaryFormat.BEGIN_DOCUMENT, 2, XDOMBinaryFormat.STRING_NEW, 1, 'k', 6, 0xAC, 0xED, 0, 5);
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseReferenceClassName() throws Exception
+    {
+        // A resource reference with the kind which used to announce a class name to instantiate
+        byte[] className = "java.io.FileOutputStream".getBytes("US-ASCII");
+        int[] bytes = new int[className.length + 5];
+        bytes[0] = XDOMBinaryFormat.ON_IMAGE;
+        bytes[1] = 5;
+        bytes[2] = XDOMBinaryFormat.STRING_NEW;
+        bytes[3] = className.length;
+        for (int i = 0; i < className.length; i++) {
+            bytes[4 + i] = className[i];
+        }
+        bytes[bytes.length - 1] = XDOMBinaryFormat.STRING_NULL;
+
+        read(bytes);
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseNegativeLength() throws Exception
+    {
+        read(XDOMBinaryFormat.ON_WORD, XDOMBinaryFormat.STRING_NEW, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F, 'a');
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseHugeLength() throws Exception
+    {
+        // Integer.MAX_VALUE chars announced but only one available: fails on the end of the stream without
+        // allocating them
+        read(XDOMBinaryFormat.ON_WORD, XDOMBinaryFormat.STRING_NEW, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, 'a');
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseHugeMetaData() throws Exception
+    {
+        read(XDOMBinaryFormat.BEGIN_DOCUMENT, 0xFF, 0xFF, 0xFF, 0xFF, 0x07, XDOMBinaryFormat.STRING_NULL,
+            XDOMBinaryFormat.VALUE_NULL);
+    }
+
+    private void read(int... events) throws ParseException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(XDOMBinaryFormat.MAGIC, 0, XDOMBinaryFormat.MAGIC.length);
+        stream.write(XDOMBinaryFormat.VERSION);
+        for (int b : events) {
+            stream.write(b);
+        }
+
+        new XDOMBinaryReader(new ByteArrayInputStream(stream.toByteArray())).read(new VoidListener());
+    }
+
+    private String render(XDOM xdom, BlockRenderer renderer)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        renderer.render(xdom, printer);
+        return printer.toString();
+    }
+
+    private String render(XDOM xdom, PrintRendererFactory rendererFactory)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        xdom.traverse(rendererFactory.createRenderer(printer));
+        return printer.toString();
+    }
+
+    private String sendEvents(PrintRendererFactory rendererFactory, MetaData metaData,
+        Map<String, String> parameters, ResourceReference reference, ResourceReference customReference)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        PrintRenderer renderer = rendererFactory.createRenderer(printer);
+
+        renderer.beginDocument(metaData);
+        renderer.beginHeader(HeaderLevel.LEVEL2, "Hid", parameters);
+        renderer.onWord("header");
+        renderer.endHeader(HeaderLevel.LEVEL2, "Hid", parameters);
+        renderer.beginParagraph(Listener.EMPTY_PARAMETERS);
+        renderer.beginFormat(Format.MONOSPACE, parameters);
+        renderer.onWord("\ud83d\ude00\u00e9");
+        renderer.endFormat(Format.MONOSPACE, parameters);
+        renderer.onSpecialSymbol('@');
+        renderer.beginLink(reference, true, parameters);
+        renderer.onWord("label");
+        renderer.endLink(reference, true, parameters);
+        renderer.onImage(customReference, false, Collections.singletonMap("alt", "image"));
+        renderer.onRawText("<raw/>", Syntax.XHTML_1_0);
+        renderer.endParagraph(Listener.EMPTY_PARAMETERS);
+        renderer.beginList(ListType.BULLETED, parameters);
+        renderer.beginListItem();
+        renderer.onMacro("macro", parameters, null, true);
+        renderer.endListItem();
+        renderer.endList(ListType.BULLETED, parameters);
+        renderer.onEmptyLines(300);
+        renderer.onVerbatim(StringUtils.repeat("long verbatim ", 1000), false, parameters);
+        renderer.endDocument(metaData);
+
+        return printer.toString();
+    }
+}
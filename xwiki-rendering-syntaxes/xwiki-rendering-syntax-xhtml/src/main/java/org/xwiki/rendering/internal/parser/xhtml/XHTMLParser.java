@@ -26,8 +26,11 @@
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.xml.sax.XMLReader;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.rendering.internal.parser.wikimodel.AbstractWikiModelParser;
 import org.xwiki.rendering.internal.parser.wikimodel.XWikiGeneratorListener;
 import org.xwiki.rendering.internal.parser.xhtml.wikimodel.XHTMLXWikiGeneratorListener;
@@ -46,8 +49,10 @@
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.util.IdGenerator;
 import org.xwiki.rendering.wikimodel.IWikiParser;
+import org.xwiki.rendering.wikimodel.xhtml.XMLReaderPool;
 import org.xwiki.rendering.wikimodel.xhtml.XhtmlParser;
 import org.xwiki.rendering.wikimodel.xhtml.handler.TagHandler;
+import org.xwiki.rendering.wikimodel.xhtml.impl.XhtmlHandler;
 import org.xwiki.xml.XMLReaderFactory;
 
 /**
@@ -59,7 +64,7 @@
 @Component
 @Named("xhtml/1.0")
 @Singleton
-public class XHTMLParser extends AbstractWikiModelParser
+public class XHTMLParser extends AbstractWikiModelParser implements Initializable
 {
     /**
      * The parser used for the link label parsing. For (x)html parsing, this will be an xwiki 2.0 parser, since it's
@@ -110,6 +115,48 @@ public class XHTMLParser extends AbstractWikiModelParser
     @Named("xwiki")
     private XMLReaderFactory xmlReaderFactory;
 
+    /**
+     * The tag handlers used by all the parsings. The handlers don't keep any parsing state so they are created only
+     * once.
+     */
+    private Map<String, TagHandler> handlers;
+
+    /**
+     * The XML readers created with {@link #xmlReaderFactory}, reused from one parsing to another since creating a SAX
+     * parser and its filter chain is costly compared to the parsing of the small XHTML fragments we usually get.
+     */
+    private XMLReaderPool xmlReaderPool;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        // Override some of the WikiModel XHTML parser tag handlers to introduce our own logic.
+        Map<String, TagHandler> extraHandlers = new HashMap<String, TagHandler>();
+        TagHandler handler = new XWikiHeaderTagHandler();
+        extraHandlers.put("h1", handler);
+        extraHandlers.put("h2", handler);
+        extraHandlers.put("h3", handler);
+        extraHandlers.put("h4", handler);
+        extraHandlers.put("h5", handler);
+        extraHandlers.put("h6", handler);
+        extraHandlers.put("a", new XWikiReferenceTagHandler(this, this.xwikiSyntaxPrintRendererFactory));
+        extraHandlers.put("img", new XWikiImageTagHandler());
+        extraHandlers.put("span", new XWikiSpanTagHandler());
+        extraHandlers.put("div", new XWikiDivisionTagHandler());
+        extraHandlers.put("th", new XWikiTableDataTagHandler());
+        this.handlers = XhtmlHandler.createHandlers(extraHandlers);
+
+        // Construct our own XML filter chain since we want to use our own Comment filter.
+        this.xmlReaderPool = new XMLReaderPool()
+        {
+            @Override
+            protected XMLReader createXMLReader() throws Exception
+            {
+                return XHTMLParser.this.xmlReaderFactory.createXMLReader();
+            }
+        };
+    }
+
     @Override
     public Syntax getSyntax()
     {
@@ -125,32 +172,12 @@ public StreamParser getLinkLabelParser()
     @Override
     public IWikiParser createWikiModelParser() throws ParseException
     {
-        // Override some of the WikiModel XHTML parser tag handlers to introduce our own logic.
-        Map<String, TagHandler> handlers = new HashMap<String, TagHandler>();
-        TagHandler handler = new XWikiHeaderTagHandler();
-        handlers.put("h1", handler);
-        handlers.put("h2", handler);
-        handlers.put("h3", handler);
-        handlers.put("h4", handler);
-        handlers.put("h5", handler);
-        handlers.put("h6", handler);
-        handlers.put("a", new XWikiReferenceTagHandler(this, this.xwikiSyntaxPrintRendererFactory));
-        handlers.put("img", new XWikiImageTagHandler());
-        handlers.put("span", new XWikiSpanTagHandler());
-        handlers.put("div", new XWikiDivisionTagHandler());
-        handlers.put("th", new XWikiTableDataTagHandler());
-
         XhtmlParser parser = new XhtmlParser();
-        parser.setExtraHandlers(handlers);
+        parser.setHandlers(this.handlers);
+        // The comment handler keeps some state during the parsing so we need a new one each time.
         parser.setCommentHandler(new XWikiCommentHandler(this.componentManager, this,
             this.xwikiSyntaxPrintRendererFactory, this.xhtmlMarkerResourceReferenceParser));
-
-        // Construct our own XML filter chain since we want to use our own Comment filter.
-        try {
-            parser.setXmlReader(this.xmlReaderFactory.createXMLReader());
-        } catch (Exception e) {
-            throw new ParseException("Failed to create XML reader", e);
-        }
+        parser.setXmlReaderPool(this.xmlReaderPool);
 
         return parser;
     }
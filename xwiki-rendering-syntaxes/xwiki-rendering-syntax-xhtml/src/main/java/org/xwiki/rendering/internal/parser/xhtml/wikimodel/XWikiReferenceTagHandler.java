@@ -89,7 +89,7 @@ protected void begin(TagContext context)
                     removeMeaningfulParameters(context.getParams()));
             }
 
-            setAccumulateContent(false);
+            setAccumulateContent(context, false);
         } else if (!isFreeStandingReference(context)) {
             WikiParameter ref = context.getParams().getParameter("href");
 
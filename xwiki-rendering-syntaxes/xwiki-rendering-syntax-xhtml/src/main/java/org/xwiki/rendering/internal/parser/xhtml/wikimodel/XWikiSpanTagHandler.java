@@ -41,14 +41,14 @@ protected void begin(TagContext context)
         if (classParam != null) {
             if (classParam.getValue().contains("wikigeneratedlinkcontent"))
             {
-                setAccumulateContent(true);
+                setAccumulateContent(context, true);
             } else if (classParam.getValue().equals("wikilink") 
                 || classParam.getValue().equals("wikicreatelink")
                 || classParam.getValue().equals("wikiexternallink"))
             {
                 // Nothing to do 
             } else if (classParam.getValue().equals("xwikirenderingerror")) {
-                setAccumulateContent(true);
+                setAccumulateContent(context, true);
             } else  {
                 super.begin(context);
             }
@@ -64,14 +64,14 @@ protected void end(TagContext context)
         if (classParam != null) {
             if (classParam.getValue().contains("wikigeneratedlinkcontent"))
             {
-                setAccumulateContent(false);
+                setAccumulateContent(context, false);
             } else if (classParam.getValue().equals("wikilink") 
                 || classParam.getValue().equals("wikicreatelink")
                 || classParam.getValue().equals("wikiexternallink"))
             {
                 // Nothing to do 
             } else if (classParam.getValue().equals("xwikirenderingerror")) {
-                setAccumulateContent(false);
+                setAccumulateContent(context, false);
             } else {
                 super.end(context);
             }
@@ -19,9 +19,6 @@
  */
 package org.xwiki.rendering.internal.parser.xhtml.wikimodel;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXNotRecognizedException;
 import org.xml.sax.SAXNotSupportedException;
@@ -45,11 +42,6 @@ public class XWikiXHTMLWhitespaceXMLFilter extends XHTMLWhitespaceXMLFilter
     public static final String SAX_CONTAINS_WIKI_SYNTAX_PROPERTY =
         "http://xwiki.org/sax/properties/contains-wiki-syntax";
 
-    /**
-     * The leading and trailing white spaces matching pattern.
-     */
-    private static final Pattern HTML_WHITESPACE_BOUNDARIES_PATTERN = Pattern.compile("^\\s+|\\s+$");
-
     /**
      * Indicate if the element can contain wiki syntax.
      */
@@ -99,11 +91,23 @@ protected void cleanContentExtraWhiteSpaces()
     {
         // If the element texts can contain wiki syntax only clean whitespaces at beginning and end of texts.
         if (this.containsWikiSyntax) {
-            if (getContent().length() > 0) {
-                Matcher matcher = HTML_WHITESPACE_BOUNDARIES_PATTERN.matcher(getContent());
-                String result = matcher.replaceAll(" ");
-                getContent().setLength(0);
-                getContent().append(result);
+            int length = getContent().length();
+            if (length > 0) {
+                // Replace the leading and the trailing white spaces by a single space.
+                int leading = countLeadingWhiteSpaces(getContent());
+                if (leading == length) {
+                    getContent().setLength(0);
+                    getContent().append(' ');
+                } else {
+                    int trailing = countTrailingWhiteSpaces(getContent());
+                    if (trailing > 0) {
+                        getContent().setLength(length - trailing);
+                        getContent().append(' ');
+                    }
+                    if (leading > 0) {
+                        getContent().replace(0, leading, " ");
+                    }
+                }
             }
         } else {
             super.cleanContentExtraWhiteSpaces();
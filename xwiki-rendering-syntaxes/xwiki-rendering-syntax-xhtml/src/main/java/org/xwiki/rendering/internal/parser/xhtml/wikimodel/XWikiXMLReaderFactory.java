@@ -24,7 +24,6 @@
 import javax.inject.Singleton;
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.xwiki.rendering.wikimodel.xhtml.filter.AccumulationXMLFilter;
 import org.xwiki.rendering.wikimodel.xhtml.filter.DTDXMLFilter;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -75,13 +74,10 @@ public XMLReader createXMLReader() throws SAXException, ParserConfigurationExcep
             // Ignore SAX callbacks when the parser parses the DTD
             DTDXMLFilter dtdFilter = new DTDXMLFilter(xr);
 
-            // Add a XML Filter to accumulate onCharacters() calls since SAX
-            // parser may call it several times.
-            AccumulationXMLFilter accumulationFilter = new AccumulationXMLFilter(dtdFilter);
-
             // Add a XML Filter to remove non-semantic white spaces. We need to do that since all WikiModel
-            // events contain only semantic information.
-            XWikiXHTMLWhitespaceXMLFilter whitespaceFilter = new XWikiXHTMLWhitespaceXMLFilter(accumulationFilter);
+            // events contain only semantic information. This filter also accumulates onCharacters() calls (SAX
+            // parser may call it several times) so we don't need an AccumulationXMLFilter.
+            XWikiXHTMLWhitespaceXMLFilter whitespaceFilter = new XWikiXHTMLWhitespaceXMLFilter(dtdFilter);
 
             whitespaceFilter.setEntityResolver(this.entityResolver);
 
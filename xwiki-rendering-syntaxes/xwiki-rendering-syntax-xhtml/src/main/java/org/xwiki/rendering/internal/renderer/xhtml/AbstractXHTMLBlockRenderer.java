@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xhtml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.internal.renderer.AbstractBlockRenderer;
+import org.xwiki.rendering.internal.renderer.xhtml.link.DocumentAvailabilityAware;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.wiki.BatchWikiModel;
+import org.xwiki.rendering.wiki.WikiModel;
+
+/**
+ * Common code for the XHTML Block Renderers. When the {@link WikiModel} supports it, the existence of all the
+ * documents targeted by the links of the rendered blocks is resolved in a single
+ * {@link BatchWikiModel#areDocumentsAvailable(Collection)} call before the rendering starts.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class AbstractXHTMLBlockRenderer extends AbstractBlockRenderer
+{
+    /**
+     * Used to find the {@link WikiModel}, if any.
+     */
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Override
+    public void render(Collection<Block> blocks, WikiPrinter printer)
+    {
+        PrintRenderer renderer = getPrintRendererFactory().createRenderer(printer);
+
+        if (renderer instanceof DocumentAvailabilityAware) {
+            BatchWikiModel wikiModel = getBatchWikiModel();
+            if (wikiModel != null) {
+                Set<ResourceReference> references = new LinkedHashSet<ResourceReference>();
+                List<String> baseReferences = new ArrayList<String>();
+                for (Block block : blocks) {
+                    collectDocumentReferences(block, baseReferences, references);
+                }
+                if (!references.isEmpty()) {
+                    Map<ResourceReference, Boolean> documentAvailability = wikiModel.areDocumentsAvailable(references);
+                    ((DocumentAvailabilityAware) renderer).setDocumentAvailability(documentAvailability);
+                }
+            }
+        }
+
+        for (Block block : blocks) {
+            block.traverse(renderer);
+        }
+    }
+
+    /**
+     * @return the {@link WikiModel} if there's one and it supports batch existence checks, null otherwise
+     */
+    private BatchWikiModel getBatchWikiModel()
+    {
+        BatchWikiModel batchWikiModel = null;
+        try {
+            WikiModel wikiModel = this.componentManagerProvider.get().getInstance(WikiModel.class);
+            if (wikiModel instanceof BatchWikiModel) {
+                batchWikiModel = (BatchWikiModel) wikiModel;
+            }
+        } catch (ComponentLookupException e) {
+            // There's no WikiModel implementation available, links to documents are not resolved.
+        }
+        return batchWikiModel;
+    }
+
+    /**
+     * Collect the references of the documents targeted by the passed block and its descendants, as they will be
+     * passed to the {@link WikiModel} during the rendering (i.e. with the base references found in the enclosing
+     * {@link MetaDataBlock}s when they don't have any).
+     *
+     * @param block the block to look into
+     * @param baseReferences the base references declared by the enclosing meta data blocks
+     * @param references the collected references
+     */
+    private void collectDocumentReferences(Block block, List<String> baseReferences, Set<ResourceReference> references)
+    {
+        String baseReference = null;
+        if (block instanceof MetaDataBlock) {
+            baseReference = (String) ((MetaDataBlock) block).getMetaData().getMetaData(MetaData.BASE);
+            if (baseReference != null) {
+                baseReferences.add(baseReference);
+            }
+        } else if (block instanceof LinkBlock) {
+            ResourceReference reference = ((LinkBlock) block).getReference();
+            if (ResourceType.DOCUMENT.equals(reference.getType()) && !StringUtils.isEmpty(reference.getReference())) {
+                if (reference.getBaseReferences().isEmpty() && !baseReferences.isEmpty()) {
+                    reference = reference.clone();
+                    reference.addBaseReferences(baseReferences);
+                }
+                references.add(reference);
+            }
+        }
+
+        for (Block child : block.getChildren()) {
+            collectDocumentReferences(child, baseReferences, references);
+        }
+
+        if (baseReference != null) {
+            baseReferences.remove(baseReferences.size() - 1);
+        }
+    }
+}
@@ -24,7 +24,6 @@
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
-import org.xwiki.rendering.internal.renderer.AbstractBlockRenderer;
 import org.xwiki.rendering.renderer.PrintRendererFactory;
 
 /**
@@ -36,7 +35,7 @@
 @Component
 @Named("xhtml/1.0")
 @Singleton
-public class XHTMLBlockRenderer extends AbstractBlockRenderer
+public class XHTMLBlockRenderer extends AbstractXHTMLBlockRenderer
 {
     @Inject
     @Named("xhtml/1.0")
@@ -19,6 +19,8 @@
  */
 package org.xwiki.rendering.internal.renderer.xhtml;
 
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -28,11 +30,13 @@
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.rendering.internal.renderer.xhtml.image.XHTMLImageRenderer;
+import org.xwiki.rendering.internal.renderer.xhtml.link.DocumentAvailabilityAware;
 import org.xwiki.rendering.internal.renderer.xhtml.link.XHTMLLinkRenderer;
 import org.xwiki.rendering.listener.chaining.BlockStateChainingListener;
 import org.xwiki.rendering.listener.chaining.ListenerChain;
 import org.xwiki.rendering.listener.chaining.EmptyBlockChainingListener;
 import org.xwiki.rendering.listener.chaining.MetaDataStateChainingListener;
+import org.xwiki.rendering.listener.reference.ResourceReference;
 import org.xwiki.rendering.renderer.AbstractChainingPrintRenderer;
 
 /**
@@ -44,7 +48,8 @@
 @Component
 @Named("xhtml/1.0")
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class XHTMLRenderer extends AbstractChainingPrintRenderer implements Initializable
+public class XHTMLRenderer extends AbstractChainingPrintRenderer
+    implements Initializable, DocumentAvailabilityAware
 {
     /**
      * To render link events into XHTML. This is done so that it's pluggable because link rendering depends on how
@@ -62,6 +67,14 @@ public class XHTMLRenderer extends AbstractChainingPrintRenderer implements Init
     @Inject
     private XHTMLImageRenderer imageRenderer;
 
+    @Override
+    public void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability)
+    {
+        if (this.linkRenderer instanceof DocumentAvailabilityAware) {
+            ((DocumentAvailabilityAware) this.linkRenderer).setDocumentAvailability(documentAvailability);
+        }
+    }
+
     @Override
     public void initialize() throws InitializationException
     {
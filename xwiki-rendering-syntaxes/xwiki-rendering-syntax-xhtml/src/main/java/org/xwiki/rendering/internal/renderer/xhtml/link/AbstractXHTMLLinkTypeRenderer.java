@@ -36,7 +36,7 @@
  * @version $Id$
  * @since 2.5M2
  */
-public abstract class AbstractXHTMLLinkTypeRenderer implements XHTMLLinkTypeRenderer
+public abstract class AbstractXHTMLLinkTypeRenderer implements XHTMLLinkTypeRenderer, LinkLabelCacheAware
 {
     /**
      * The XHTML element <code>class</code> parameter.
@@ -65,6 +65,11 @@ public abstract class AbstractXHTMLLinkTypeRenderer implements XHTMLLinkTypeRend
      */
     private boolean hasLabel;
 
+    /**
+     * @see #setLinkLabelCache(LinkLabelCache)
+     */
+    private LinkLabelCache linkLabelCache;
+
     /**
      * @return See {@link #setHasLabel(boolean)}
      */
@@ -79,6 +84,12 @@ public void setHasLabel(boolean hasLabel)
         this.hasLabel = hasLabel;
     }
 
+    @Override
+    public void setLinkLabelCache(LinkLabelCache linkLabelCache)
+    {
+        this.linkLabelCache = linkLabelCache;
+    }
+
     @Override
     public void setXHTMLWikiPrinter(XHTMLWikiPrinter printer)
     {
@@ -116,16 +127,54 @@ protected String computeLabel(ResourceReference reference)
         // If there's no scheme separator then use the full reference as the label. Note that this can happen
         // when we're not in wiki mode (since all links are considered URIs when not in wiki mode).
         String label;
-        try {
-            URILabelGenerator uriLabelGenerator =
-                this.componentManager.getInstance(URILabelGenerator.class, reference.getType().getScheme());
+        URILabelGenerator uriLabelGenerator = getURILabelGenerator(reference.getType().getScheme());
+        if (uriLabelGenerator != null) {
             label = uriLabelGenerator.generateLabel(reference);
-        } catch (ComponentLookupException e) {
+        } else {
             label = reference.getReference();
         }
         return label;
     }
 
+    /**
+     * @param scheme the URI scheme
+     * @return the {@link URILabelGenerator} to use for the passed scheme, null if there's none
+     */
+    private URILabelGenerator getURILabelGenerator(String scheme)
+    {
+        URILabelGenerator uriLabelGenerator = null;
+        if (this.linkLabelCache != null) {
+            uriLabelGenerator = this.linkLabelCache.getURILabelGenerator(scheme, this.componentManager);
+        } else {
+            try {
+                uriLabelGenerator = this.componentManager.getInstance(URILabelGenerator.class, scheme);
+            } catch (ComponentLookupException e) {
+                // There's no generator for this scheme.
+            }
+        }
+        return uriLabelGenerator;
+    }
+
+    /**
+     * @param reference the reference of the link for which to compute the label
+     * @return the label computed for the passed reference, reused if it has already been computed during the current
+     *         rendering
+     */
+    private String getLabel(ResourceReference reference)
+    {
+        String label;
+        if (this.linkLabelCache != null) {
+            label = this.linkLabelCache.getLabel(reference);
+            if (label == null) {
+                label = computeLabel(reference);
+                this.linkLabelCache.setLabel(reference, label);
+            }
+        } else {
+            label = computeLabel(reference);
+        }
+        return label;
+    }
+
     @Override
     public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
     {
@@ -156,7 +205,7 @@ public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<
         // If there was no link content then generate it based on the passed reference
         if (!hasLabel()) {
             getXHTMLWikiPrinter().printXMLStartElement(SPAN, new String[][] {{CLASS, "wikigeneratedlinkcontent"}});
-            getXHTMLWikiPrinter().printXML(computeLabel(reference));
+            getXHTMLWikiPrinter().printXML(getLabel(reference));
             getXHTMLWikiPrinter().printXMLEndElement(SPAN);
         }
 
@@ -19,6 +19,7 @@
  */
 package org.xwiki.rendering.internal.renderer.xhtml.link;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -43,7 +44,7 @@
  */
 @Component
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class DefaultXHTMLLinkRenderer implements XHTMLLinkRenderer
+public class DefaultXHTMLLinkRenderer implements XHTMLLinkRenderer, DocumentAvailabilityAware
 {
     @Inject
     private XHTMLLinkTypeRenderer defaultLinkTypeRenderer;
@@ -62,12 +63,33 @@ public class DefaultXHTMLLinkRenderer implements XHTMLLinkRenderer
      */
     private boolean hasLabel;
 
+    /**
+     * @see #setDocumentAvailability(Map)
+     */
+    private Map<ResourceReference, Boolean> documentAvailability;
+
+    /**
+     * The labels generated for the links rendered by this renderer.
+     */
+    private LinkLabelCache linkLabelCache = new LinkLabelCache();
+
+    /**
+     * The link type renderer used for each link type, looked up the first time a link of this type is rendered.
+     */
+    private Map<String, XHTMLLinkTypeRenderer> linkTypeRenderers = new HashMap<String, XHTMLLinkTypeRenderer>();
+
     @Override
     public void setHasLabel(boolean hasLabel)
     {
         this.hasLabel = hasLabel;
     }
 
+    @Override
+    public void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability)
+    {
+        this.documentAvailability = documentAvailability;
+    }
+
     @Override
     public void setXHTMLWikiPrinter(XHTMLWikiPrinter printer)
     {
@@ -94,19 +116,27 @@ public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<
 
     private XHTMLLinkTypeRenderer getXHTMLLinkTypeRenderer(ResourceReference reference)
     {
-        XHTMLLinkTypeRenderer renderer;
-
-        // TODO: This is probably not very performant since it's called at each begin/endLink.
-        try {
-            renderer =
-                this.componentManagerProvider.get().getInstance(XHTMLLinkTypeRenderer.class,
-                    reference.getType().getScheme());
-        } catch (ComponentLookupException e) {
-            // There's no specific XHTML Link Type Renderer for the passed link type, use the default renderer.
-            renderer = this.defaultLinkTypeRenderer;
+        String scheme = reference.getType().getScheme();
+        XHTMLLinkTypeRenderer renderer = this.linkTypeRenderers.get(scheme);
+
+        if (renderer == null) {
+            try {
+                renderer = this.componentManagerProvider.get().getInstance(XHTMLLinkTypeRenderer.class, scheme);
+            } catch (ComponentLookupException e) {
+                // There's no specific XHTML Link Type Renderer for the passed link type, use the default renderer.
+                renderer = this.defaultLinkTypeRenderer;
+            }
+            if (renderer instanceof LinkLabelCacheAware) {
+                ((LinkLabelCacheAware) renderer).setLinkLabelCache(this.linkLabelCache);
+            }
+            this.linkTypeRenderers.put(scheme, renderer);
         }
+
         renderer.setHasLabel(this.hasLabel);
         renderer.setXHTMLWikiPrinter(getXHTMLWikiPrinter());
+        if (this.documentAvailability != null && renderer instanceof DocumentAvailabilityAware) {
+            ((DocumentAvailabilityAware) renderer).setDocumentAvailability(this.documentAvailability);
+        }
         return renderer;
     }
 }
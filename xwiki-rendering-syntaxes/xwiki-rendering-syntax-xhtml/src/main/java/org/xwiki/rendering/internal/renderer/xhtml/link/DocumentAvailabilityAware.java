@@ -0,0 +1,41 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xhtml.link;
+
+import java.util.Map;
+
+import org.xwiki.rendering.listener.reference.ResourceReference;
+
+/**
+ * Implemented by the XHTML renderers and link renderers which can use the existence of the linked documents when it
+ * has been resolved beforehand (for all the links of an XDOM at once), instead of asking the
+ * {@link org.xwiki.rendering.wiki.WikiModel} for each link.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface DocumentAvailabilityAware
+{
+    /**
+     * @param documentAvailability the already known existence of the linked documents, see
+     *        {@link org.xwiki.rendering.wiki.BatchWikiModel#areDocumentsAvailable(java.util.Collection)}
+     */
+    void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability);
+}
@@ -46,7 +46,8 @@
 @Component
 @Named("doc")
 @InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
-public class DocumentXHTMLLinkTypeRenderer extends AbstractXHTMLLinkTypeRenderer implements Initializable
+public class DocumentXHTMLLinkTypeRenderer extends AbstractXHTMLLinkTypeRenderer
+    implements Initializable, DocumentAvailabilityAware
 {
     /**
      * The class attribute 'wikilink'.
@@ -64,6 +65,11 @@ public class DocumentXHTMLLinkTypeRenderer extends AbstractXHTMLLinkTypeRenderer
     @Inject
     private LinkLabelGenerator linkLabelGenerator;
 
+    /**
+     * @see #setDocumentAvailability(Map)
+     */
+    private Map<ResourceReference, Boolean> documentAvailability;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -76,6 +82,12 @@ public void initialize() throws InitializationException
         }
     }
 
+    @Override
+    public void setDocumentAvailability(Map<ResourceReference, Boolean> documentAvailability)
+    {
+        this.documentAvailability = documentAvailability;
+    }
+
     @Override
     public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
     {
@@ -122,7 +134,7 @@ private void beginInternalLink(ResourceReference reference, boolean isFreeStandi
         if (StringUtils.isEmpty(reference.getReference())) {
             spanAttributes.put(CLASS, WIKILINK);
             renderAutoLink(reference, spanAttributes, anchorAttributes);
-        } else if (this.wikiModel.isDocumentAvailable(reference)) {
+        } else if (isDocumentAvailable(reference)) {
             spanAttributes.put(CLASS, WIKILINK);
             anchorAttributes.put(XHTMLLinkRenderer.HREF, this.wikiModel.getDocumentViewURL(reference));
         } else {
@@ -135,6 +147,22 @@ private void beginInternalLink(ResourceReference reference, boolean isFreeStandi
         getXHTMLWikiPrinter().printXMLStartElement(XHTMLLinkRenderer.ANCHOR, anchorAttributes);
     }
 
+    /**
+     * @param reference the reference to the document
+     * @return true if the document exists, using the existence resolved beforehand when available
+     */
+    private boolean isDocumentAvailable(ResourceReference reference)
+    {
+        if (this.documentAvailability != null) {
+            Boolean available = this.documentAvailability.get(reference);
+            if (available != null) {
+                return available;
+            }
+        }
+
+        return this.wikiModel.isDocumentAvailable(reference);
+    }
+
     /**
      * @param reference the reference to the link
      * @param spanAttributes the span element where to put the class
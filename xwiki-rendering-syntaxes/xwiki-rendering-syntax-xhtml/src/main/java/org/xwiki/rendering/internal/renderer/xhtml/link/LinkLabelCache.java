@@ -0,0 +1,88 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xhtml.link;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.renderer.reference.link.URILabelGenerator;
+
+/**
+ * Remembers the labels generated for the links without label, and the {@link URILabelGenerator} found for each URI
+ * scheme, during the rendering of a document. Navigation menus and other pages linking many times to the same
+ * resources thus generate each label only once. The cache is not shared between renderings since the generated labels
+ * can depend on the rendering context (e.g. the current document) and on the state of the linked resources (e.g. the
+ * title of a document).
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class LinkLabelCache
+{
+    /**
+     * The generated labels.
+     */
+    private final Map<ResourceReference, String> labels = new HashMap<ResourceReference, String>();
+
+    /**
+     * The {@link URILabelGenerator} found for each URI scheme, null when there's none.
+     */
+    private final Map<String, URILabelGenerator> uriLabelGenerators = new HashMap<String, URILabelGenerator>();
+
+    /**
+     * @param reference the reference of a link
+     * @return the label generated for the passed reference, null if it hasn't been generated yet
+     */
+    public String getLabel(ResourceReference reference)
+    {
+        return this.labels.get(reference);
+    }
+
+    /**
+     * @param reference the reference of a link
+     * @param label the label generated for the passed reference
+     */
+    public void setLabel(ResourceReference reference, String label)
+    {
+        this.labels.put(reference, label);
+    }
+
+    /**
+     * @param scheme the URI scheme
+     * @param componentManager the component manager used to look for the generator the first time
+     * @return the {@link URILabelGenerator} to use for the passed scheme, null if there's none
+     */
+    public URILabelGenerator getURILabelGenerator(String scheme, ComponentManager componentManager)
+    {
+        URILabelGenerator uriLabelGenerator = this.uriLabelGenerators.get(scheme);
+        if (uriLabelGenerator == null && !this.uriLabelGenerators.containsKey(scheme)) {
+            try {
+                uriLabelGenerator = componentManager.getInstance(URILabelGenerator.class, scheme);
+            } catch (ComponentLookupException e) {
+                // There's no generator for this scheme, remember it.
+            }
+            this.uriLabelGenerators.put(scheme, uriLabelGenerator);
+        }
+        return uriLabelGenerator;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xhtml;
+
+import java.io.StringReader;
+
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+
+/**
+ * Measures the time spent by the {@link XHTMLParser} on many small XHTML fragments, which is what the WYSIWYG editor
+ * does when saving. This is not a test so it's not executed by the build, run it with:
+ * 
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=org.xwiki.rendering.internal.parser.xhtml.XHTMLParserBenchmark
+ * </pre>
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class XHTMLParserBenchmark
+{
+    /**
+     * The number of fragments parsed in each run.
+     */
+    private static final int FRAGMENT_COUNT = 10000;
+
+    /**
+     * Utility class.
+     */
+    private XHTMLParserBenchmark()
+    {
+    }
+
+    /**
+     * @param args not used
+     * @throws Exception if the parsing fails
+     */
+    public static void main(String[] args) throws Exception
+    {
+        EmbeddableComponentManager componentManager = new EmbeddableComponentManager();
+        componentManager.initialize(XHTMLParserBenchmark.class.getClassLoader());
+        StreamParser parser = componentManager.getInstance(StreamParser.class, "xhtml/1.0");
+        PrintRendererFactory eventRendererFactory =
+            componentManager.getInstance(PrintRendererFactory.class, "event/1.0");
+
+        for (int run = 0; run < 5; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < FRAGMENT_COUNT; i++) {
+                String fragment = XHTMLParserTest.FRAGMENTS[i % XHTMLParserTest.FRAGMENTS.length];
+                parser.parse(new StringReader("<html>" + fragment + "</html>"),
+                    eventRendererFactory.createRenderer(new DefaultWikiPrinter()));
+            }
+            System.out.println(String.format("%d fragments parsed in %d ms", FRAGMENT_COUNT,
+                (System.nanoTime() - start) / 1000000));
+        }
+    }
+}
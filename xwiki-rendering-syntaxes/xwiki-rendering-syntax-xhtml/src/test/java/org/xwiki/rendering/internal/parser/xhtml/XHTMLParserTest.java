@@ -0,0 +1,126 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xhtml;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link XHTMLParser}, focused on the reuse of the XML readers and tag handlers between parsings.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XHTMLParserTest extends AbstractComponentTestCase
+{
+    static final String[] FRAGMENTS = new String[] {"<p>Hello <strong>world</strong></p>",
+        "<h1 id=\"Htitle\"><span>title</span></h1><p>text</p>",
+        "<p><span class=\"wikiexternallink\"><a href=\"http://xwiki.org\"><span class=\"wikigeneratedlinkcontent\">"
+            + "http://xwiki.org</span></a></span></p>",
+        "<ul><li>one</li><li>two<ul><li>three</li></ul></li></ul>",
+        "<table><tr><th>header</th></tr><tr><td>cell</td></tr></table>",
+        "<div><p>in   a    div</p><pre>  pre  </pre></div>",
+        "<p><span style=\"color:red\">red <strong style=\"background-color:blue\">and blue</strong></span></p>",
+        "<p><em style=\"color:red;font-size:10px\">a <strong style=\"color:green\">b <span style=\"margin:0\">"
+            + "c</span></strong></em></p>"};
+
+    private StreamParser parser;
+
+    private PrintRendererFactory eventRendererFactory;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.parser = getComponentManager().getInstance(StreamParser.class, "xhtml/1.0");
+        this.eventRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "event/1.0");
+    }
+
+    @Test
+    public void parseWithReusedReaders() throws Exception
+    {
+        List<String> expected = new ArrayList<String>();
+        for (String fragment : FRAGMENTS) {
+            expected.add(parse(fragment));
+        }
+
+        // Parse again, with a failing parsing in between, and verify we get the same results.
+        for (int i = 0; i < FRAGMENTS.length; i++) {
+            try {
+                parse("<p>unclosed");
+                Assert.fail("Should have failed");
+            } catch (Exception expectedException) {
+                // The XML reader used for this parsing should be dropped.
+            }
+            Assert.assertEquals(expected.get(i), parse(FRAGMENTS[i]));
+        }
+    }
+
+    @Test
+    public void parseConcurrently() throws Exception
+    {
+        final List<String> expected = new ArrayList<String>();
+        for (String fragment : FRAGMENTS) {
+            expected.add(parse(fragment));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                final int index = i % FRAGMENTS.length;
+                results.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call() throws Exception
+                    {
+                        return expected.get(index).equals(parse(FRAGMENTS[index]));
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String parse(String fragment) throws Exception
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        PrintRenderer renderer = this.eventRendererFactory.createRenderer(printer);
+        this.parser.parse(new StringReader("<html>" + fragment + "</html>"), renderer);
+        return printer.toString();
+    }
+}
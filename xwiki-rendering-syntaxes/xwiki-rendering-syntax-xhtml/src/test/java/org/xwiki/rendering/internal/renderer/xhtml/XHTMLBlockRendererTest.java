@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xhtml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.wiki.BatchWikiModel;
+import org.xwiki.rendering.wiki.WikiModel;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link XHTMLBlockRenderer}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XHTMLBlockRendererTest extends AbstractComponentTestCase
+{
+    private BlockRenderer renderer;
+
+    private BatchWikiModel mockWikiModel;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.mockWikiModel = getMockery().mock(BatchWikiModel.class);
+        DefaultComponentDescriptor<WikiModel> cd = new DefaultComponentDescriptor<WikiModel>();
+        cd.setRoleType(WikiModel.class);
+        getComponentManager().registerComponent(cd, this.mockWikiModel);
+
+        this.renderer = getComponentManager().getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    /**
+     * Verify that the existence of the linked documents is resolved with a single call to the wiki model, using the
+     * base references that are passed to the wiki model during the rendering.
+     */
+    @Test
+    public void renderResolvesDocumentAvailabilityAtOnce()
+    {
+        MetaData metaData = new MetaData();
+        metaData.addMetaData(MetaData.BASE, "base");
+        XDOM xdom = new XDOM(Arrays.asList((Block) new MetaDataBlock(Arrays.asList(createLink("Space.Existing"),
+            createLink("Space.Missing"), createLink("Space.Existing")), metaData)));
+
+        final ResourceReference existing = new ResourceReference("Space.Existing", ResourceType.DOCUMENT);
+        existing.addBaseReference("base");
+        final ResourceReference missing = new ResourceReference("Space.Missing", ResourceType.DOCUMENT);
+        missing.addBaseReference("base");
+
+        final Set<ResourceReference> references = new LinkedHashSet<ResourceReference>();
+        references.add(existing);
+        references.add(missing);
+        final Map<ResourceReference, Boolean> availability = new HashMap<ResourceReference, Boolean>();
+        availability.put(existing, true);
+        availability.put(missing, false);
+
+        getMockery().checking(new Expectations() {{
+            oneOf(mockWikiModel).areDocumentsAvailable(references);
+            will(returnValue(availability));
+            never(mockWikiModel).isDocumentAvailable(with(any(ResourceReference.class)));
+            exactly(2).of(mockWikiModel).getDocumentViewURL(existing);
+            will(returnValue("viewurl"));
+            oneOf(mockWikiModel).getDocumentEditURL(missing);
+            will(returnValue("editurl"));
+        }});
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.renderer.render(xdom, printer);
+
+        Assert.assertEquals("<span class=\"wikilink\"><a href=\"viewurl\">label</a></span>"
+            + "<span class=\"wikicreatelink\"><a href=\"editurl\">label</a></span>"
+            + "<span class=\"wikilink\"><a href=\"viewurl\">label</a></span>", printer.toString());
+    }
+
+    /**
+     * Verify that the wiki model is asked for the documents missing from the resolved availability.
+     */
+    @Test
+    public void renderFallsBackOnDocumentAvailabilityCheck()
+    {
+        XDOM xdom = new XDOM(Arrays.asList(createLink("Space.Page")));
+        final ResourceReference reference = new ResourceReference("Space.Page", ResourceType.DOCUMENT);
+
+        getMockery().checking(new Expectations() {{
+            oneOf(mockWikiModel).areDocumentsAvailable(new LinkedHashSet<ResourceReference>(Arrays.asList(reference)));
+            will(returnValue(new HashMap<ResourceReference, Boolean>()));
+            oneOf(mockWikiModel).isDocumentAvailable(reference);
+            will(returnValue(true));
+            oneOf(mockWikiModel).getDocumentViewURL(reference);
+            will(returnValue("viewurl"));
+        }});
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.renderer.render(xdom, printer);
+
+        Assert.assertEquals("<span class=\"wikilink\"><a href=\"viewurl\">label</a></span>", printer.toString());
+    }
+
+    private Block createLink(String reference)
+    {
+        return new LinkBlock(Arrays.asList((Block) new WordBlock("label")),
+            new ResourceReference(reference, ResourceType.DOCUMENT), false);
+    }
+}
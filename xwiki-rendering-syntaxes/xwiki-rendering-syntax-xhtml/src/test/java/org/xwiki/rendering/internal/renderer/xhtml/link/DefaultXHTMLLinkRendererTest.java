@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xhtml.link;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.jmock.Expectations;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.renderer.reference.link.LinkLabelGenerator;
+import org.xwiki.rendering.renderer.reference.link.URILabelGenerator;
+import org.xwiki.rendering.wiki.WikiModel;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link DefaultXHTMLLinkRenderer}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class DefaultXHTMLLinkRendererTest extends AbstractComponentTestCase
+{
+    private BlockRenderer renderer;
+
+    private WikiModel mockWikiModel;
+
+    private LinkLabelGenerator mockLinkLabelGenerator;
+
+    private URILabelGenerator mockURILabelGenerator;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.mockWikiModel = registerMockComponent(WikiModel.class);
+        this.mockLinkLabelGenerator = registerMockComponent(LinkLabelGenerator.class);
+        this.mockURILabelGenerator = registerMockComponent(URILabelGenerator.class, "mailto");
+
+        this.renderer = getComponentManager().getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    /**
+     * Verify that the label of links without label is generated only once per rendering for the same reference.
+     */
+    @Test
+    public void renderGeneratesLabelOncePerReference()
+    {
+        final ResourceReference document = new ResourceReference("Space.Page", ResourceType.DOCUMENT);
+        final ResourceReference mail = new ResourceReference("john@doe.com", ResourceType.MAILTO);
+        XDOM xdom = new XDOM(Arrays.asList(createLink(document), createLink(mail), createLink(document),
+            createLink(mail)));
+
+        getMockery().checking(new Expectations() {{
+            allowing(mockWikiModel).isDocumentAvailable(document);
+            will(returnValue(true));
+            allowing(mockWikiModel).getDocumentViewURL(document);
+            will(returnValue("viewurl"));
+            oneOf(mockLinkLabelGenerator).generate(document);
+            will(returnValue("Page"));
+            oneOf(mockURILabelGenerator).generateLabel(mail);
+            will(returnValue("john"));
+        }});
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.renderer.render(xdom, printer);
+
+        String documentLink = "<span class=\"wikilink\"><a href=\"viewurl\">"
+            + "<span class=\"wikigeneratedlinkcontent\">Page</span></a></span>";
+        String mailLink = "<span class=\"wikiexternallink\"><a href=\"mailto:john@doe.com\">"
+            + "<span class=\"wikigeneratedlinkcontent\">john</span></a></span>";
+        Assert.assertEquals(documentLink + mailLink + documentLink + mailLink, printer.toString());
+    }
+
+    private Block createLink(ResourceReference reference)
+    {
+        return new LinkBlock(Collections.<Block>emptyList(), reference, false);
+    }
+}
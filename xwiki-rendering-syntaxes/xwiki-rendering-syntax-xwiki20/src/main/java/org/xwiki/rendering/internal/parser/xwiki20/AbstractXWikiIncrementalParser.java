@@ -0,0 +1,396 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki20;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.EmptyLinesBlock;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.internal.parser.XDOMGeneratorListener;
+import org.xwiki.rendering.internal.parser.wikimodel.WikiModelStreamParser;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.parser.IncrementalParser;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.util.IdGenerator;
+import org.xwiki.rendering.wikimodel.IWikiParser;
+
+/**
+ * Common code for the XWiki Syntax 2.x incremental parsers. The source is split into top level chunks (see
+ * {@link XWikiSyntaxChunkScanner}) which are parsed independently by the WikiModel parser of the syntax and wrapped
+ * in a {@link MetaDataBlock} holding their offset and source. After an edit only the chunks touched by the edit are
+ * parsed again, until the chunk boundaries of the edited source match the previous ones.
+ * <p>
+ * Sections span several chunks so they are not taken from the chunk parsing: each top level header starts a chunk and
+ * the chunks are grouped in sections according to the level of these headers (see {@link XWikiSyntaxChunkSections}).
+ * <p>
+ * Header ids depend on the headers found before them in the document so when the edited chunks contain headers (before
+ * or after the edit) the whole document is parsed again.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class AbstractXWikiIncrementalParser implements IncrementalParser
+{
+    /**
+     * Top level chunk of the source.
+     */
+    private static class Chunk
+    {
+        /**
+         * The offset of the chunk in the source.
+         */
+        private final int offset;
+
+        /**
+         * The source of the chunk.
+         */
+        private final String text;
+
+        /**
+         * @param offset the offset of the chunk in the source
+         * @param text the source of the chunk
+         */
+        Chunk(int offset, String text)
+        {
+            this.offset = offset;
+            this.text = text;
+        }
+
+        /**
+         * @return the offset following the chunk in the source
+         */
+        int getEnd()
+        {
+            return this.offset + this.text.length();
+        }
+    }
+
+    /**
+     * @return the parser used to parse each chunk
+     */
+    protected abstract WikiModelStreamParser getWikiModelParser();
+
+    @Override
+    public Syntax getSyntax()
+    {
+        return getWikiModelParser().getSyntax();
+    }
+
+    @Override
+    public XDOM parse(Reader source) throws ParseException
+    {
+        String text;
+        try {
+            text = read(source);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read the source", e);
+        }
+
+        return parse(text);
+    }
+
+    @Override
+    public XDOM parse(XDOM previousXDOM, int offset, int removedLength, String insertedText) throws ParseException
+    {
+        List<MetaDataBlock> previousBlocks = XWikiSyntaxChunkSections.getChunkBlocks(previousXDOM.getChildren());
+        List<Chunk> chunks = getChunks(previousBlocks);
+        checkEdit(chunks, offset, removedLength);
+        if (chunks.isEmpty()) {
+            return parse(insertedText);
+        }
+
+        int first = getFirstEditedChunkIndex(chunks, offset);
+        int last = getChunkIndex(chunks, offset + removedLength);
+
+        // Apply the edit to the text of the affected chunks
+        int start = chunks.get(first).offset;
+        StringBuilder text = getText(chunks, first, last);
+        text.replace(offset - start, offset - start + removedLength, insertedText);
+
+        // Extend the parsed text until a new chunk boundary matches a previous one
+        XWikiSyntaxChunkScanner scanner = new XWikiSyntaxChunkScanner(text);
+        scanner.scan();
+        while (last + 1 < chunks.size() && !scanner.isAtBoundary()) {
+            text.append(chunks.get(++last).text);
+            scanner.scan();
+        }
+
+        List<MetaDataBlock> parsedBlocks = parseChunks(text.toString(), start, scanner.getBoundaries(),
+            last + 1 < chunks.size(), new IdGenerator());
+        if (containsHeader(previousBlocks.subList(first, last + 1)) || containsHeader(parsedBlocks)) {
+            StringBuilder source = getText(chunks, 0, first - 1);
+            source.append(text);
+            source.append(getText(chunks, last + 1, chunks.size() - 1));
+
+            return parse(source.toString());
+        }
+
+        List<MetaDataBlock> blocks = new ArrayList<MetaDataBlock>(previousBlocks.size());
+        for (int i = 0; i < first; i++) {
+            blocks.add((MetaDataBlock) previousBlocks.get(i).clone());
+        }
+        blocks.addAll(parsedBlocks);
+        int delta = insertedText.length() - removedLength;
+        for (int i = last + 1; i < chunks.size(); i++) {
+            MetaDataBlock block = (MetaDataBlock) previousBlocks.get(i).clone();
+            block.getMetaData().addMetaData(SOURCE_OFFSET, chunks.get(i).offset + delta);
+            blocks.add(block);
+        }
+
+        // The header ids didn't change but the new XDOM must not modify the id generator of the previous one
+        return new XDOM(XWikiSyntaxChunkSections.createSections(blocks),
+            new IdGenerator(previousXDOM.getIdGenerator()), createMetaData());
+    }
+
+    /**
+     * @param chunks the chunks of the source
+     * @param offset the offset of the edit in the source
+     * @param removedLength the length of the text removed by the edit
+     * @throws ParseException if the edit is outside of the source
+     */
+    private void checkEdit(List<Chunk> chunks, int offset, int removedLength) throws ParseException
+    {
+        int length = chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).getEnd();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new ParseException("The edit [" + offset + ", " + removedLength + "] is outside of the source");
+        }
+    }
+
+    /**
+     * @param text the whole source
+     * @return the chunks of the source, grouped in sections
+     * @throws ParseException if a chunk can't be parsed
+     */
+    private XDOM parse(String text) throws ParseException
+    {
+        XWikiSyntaxChunkScanner scanner = new XWikiSyntaxChunkScanner(text);
+        scanner.scan();
+
+        IdGenerator idGenerator = new IdGenerator();
+        List<MetaDataBlock> blocks = parseChunks(text, 0, scanner.getBoundaries(), false, idGenerator);
+
+        return new XDOM(XWikiSyntaxChunkSections.createSections(blocks), idGenerator, createMetaData());
+    }
+
+    /**
+     * @param text the text to parse
+     * @param offset the offset of the text in the source
+     * @param boundaries the offsets in the text where a chunk starts
+     * @param followed {@code true} if the text is followed by other chunks in the source
+     * @param idGenerator the generator used for header ids
+     * @return one {@link MetaDataBlock} per chunk
+     * @throws ParseException if a chunk can't be parsed
+     */
+    private List<MetaDataBlock> parseChunks(String text, int offset, List<Integer> boundaries, boolean followed,
+        IdGenerator idGenerator) throws ParseException
+    {
+        List<MetaDataBlock> blocks = new ArrayList<MetaDataBlock>(boundaries.size() + 1);
+        int chunkStart = 0;
+        for (int i = 0; i <= boundaries.size(); i++) {
+            int chunkEnd = i < boundaries.size() ? boundaries.get(i) : text.length();
+            String chunkText = text.substring(chunkStart, chunkEnd);
+
+            MetaData metaData = new MetaData();
+            metaData.addMetaData(SOURCE_OFFSET, offset + chunkStart);
+            metaData.addMetaData(SOURCE_TEXT, chunkText);
+            List<Block> chunkContent = parseChunk(chunkText, idGenerator);
+            if (followed || i < boundaries.size()) {
+                removeLastEmptyLine(chunkContent);
+            }
+            blocks.add(new MetaDataBlock(chunkContent, metaData));
+
+            chunkStart = chunkEnd;
+        }
+
+        return blocks;
+    }
+
+    /**
+     * @param text the source of the chunk
+     * @param idGenerator the generator used for header ids
+     * @return the blocks of the chunk, without sections
+     * @throws ParseException if the chunk can't be parsed
+     */
+    private List<Block> parseChunk(String text, IdGenerator idGenerator) throws ParseException
+    {
+        WikiModelStreamParser parser = getWikiModelParser();
+        XDOMGeneratorListener listener = new XDOMGeneratorListener();
+
+        IWikiParser wikiModelParser = parser.createWikiModelParser();
+        try {
+            wikiModelParser.parse(new StringReader(text), parser.createXWikiGeneratorListener(listener, idGenerator));
+        } catch (Exception e) {
+            throw new ParseException("Failed to parse input source", e);
+        }
+
+        // The sections are created for the whole document
+        return XWikiSyntaxChunkSections.removeSections(listener.getXDOM().getChildren());
+    }
+
+    /**
+     * The empty lines between two chunks are at the end of the first one, where the WikiModel parser counts the end of
+     * the chunk as one more empty line. The full parser doesn't since the empty lines are followed by the next chunk.
+     * 
+     * @param chunkContent the blocks of a chunk which is followed by another chunk
+     */
+    private void removeLastEmptyLine(List<Block> chunkContent)
+    {
+        int last = chunkContent.size() - 1;
+        if (last >= 0 && chunkContent.get(last) instanceof EmptyLinesBlock) {
+            EmptyLinesBlock emptyLines = (EmptyLinesBlock) chunkContent.get(last);
+            if (emptyLines.getEmptyLinesCount() > 1) {
+                emptyLines.setEmptyLinesCount(emptyLines.getEmptyLinesCount() - 1);
+            } else {
+                chunkContent.remove(last);
+            }
+        }
+    }
+
+    /**
+     * @return the metadata of the generated XDOMs
+     */
+    private MetaData createMetaData()
+    {
+        MetaData metaData = new MetaData();
+        metaData.addMetaData(MetaData.SYNTAX, getSyntax());
+
+        return metaData;
+    }
+
+    /**
+     * @param chunkBlocks the blocks of the chunks, in document order
+     * @return the chunks
+     * @throws ParseException if the blocks have not been generated by an incremental parser
+     */
+    private List<Chunk> getChunks(List<MetaDataBlock> chunkBlocks) throws ParseException
+    {
+        List<Chunk> chunks = new ArrayList<Chunk>(chunkBlocks.size());
+        int expectedOffset = 0;
+        for (MetaDataBlock block : chunkBlocks) {
+            Object offset = block.getMetaData().getMetaData(SOURCE_OFFSET);
+            Object text = block.getMetaData().getMetaData(SOURCE_TEXT);
+            if (!(offset instanceof Integer) || !(text instanceof String) || (Integer) offset != expectedOffset) {
+                throw new ParseException("The XDOM has not been generated by an incremental parser");
+            }
+
+            Chunk chunk = new Chunk((Integer) offset, (String) text);
+            chunks.add(chunk);
+            expectedOffset = chunk.getEnd();
+        }
+
+        return chunks;
+    }
+
+    /**
+     * @param chunks the chunks of the source
+     * @param first the index of the first chunk
+     * @param last the index of the last chunk
+     * @return the source of the chunks between the passed indexes, included
+     */
+    private StringBuilder getText(List<Chunk> chunks, int first, int last)
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i <= last; i++) {
+            text.append(chunks.get(i).text);
+        }
+
+        return text;
+    }
+
+    /**
+     * @param chunks the chunks of the source
+     * @param offset the offset of the edit in the source
+     * @return the index of the first chunk to parse again
+     */
+    private int getFirstEditedChunkIndex(List<Chunk> chunks, int offset)
+    {
+        int first = getChunkIndex(chunks, offset);
+        // An edit of the first line of a chunk can change whether the chunk is separated from the previous one
+        Chunk firstChunk = chunks.get(first);
+        int firstLineEnd = firstChunk.text.indexOf('\n');
+        if (first > 0 && (firstLineEnd < 0 || offset - firstChunk.offset <= firstLineEnd)) {
+            first--;
+        }
+
+        return first;
+    }
+
+    /**
+     * @param chunks the chunks of the source
+     * @param offset an offset in the source
+     * @return the index of the last chunk starting before or at the passed offset
+     */
+    private int getChunkIndex(List<Chunk> chunks, int offset)
+    {
+        int low = 0;
+        int high = chunks.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chunks.get(middle).offset <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @param blocks the blocks of some chunks
+     * @return {@code true} if the blocks contain a header
+     */
+    private boolean containsHeader(List< ? extends Block> blocks)
+    {
+        ClassBlockMatcher matcher = new ClassBlockMatcher(HeaderBlock.class);
+        for (Block block : blocks) {
+            if (block.getFirstBlock(matcher, Block.Axes.DESCENDANT) != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param source the source to read
+     * @return the content of the source
+     * @throws IOException if the source can't be read
+     */
+    private String read(Reader source) throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[4096];
+        for (int length = source.read(buffer); length != -1; length = source.read(buffer)) {
+            text.append(buffer, 0, length);
+        }
+
+        return text.toString();
+    }
+}
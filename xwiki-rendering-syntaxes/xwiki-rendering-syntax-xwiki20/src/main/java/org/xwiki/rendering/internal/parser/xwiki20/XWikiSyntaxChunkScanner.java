@@ -0,0 +1,491 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki20;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits XWiki Syntax 2.x source into top level chunks that can be parsed independently. A chunk starts at the
+ * beginning of a line following an empty line, when the line starts with a non white space character and is not
+ * inside a macro, verbatim, group, link or parameters block. A top level header line always starts a chunk, even
+ * without an empty line before it, so that the sections can be created from the chunks. When in doubt (e.g. an
+ * unclosed macro) the scanner doesn't split since a bigger chunk is always parsed the same way as the full source.
+ * <p>
+ * The scanner is incremental: text can be appended after an empty line and the scan resumed from where it stopped.
+ * The decisions taken by the scanner never depend on the text following the next empty line so that scanning a text
+ * in several steps gives the same chunks as scanning it at once.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+class XWikiSyntaxChunkScanner
+{
+    /**
+     * The kind of block the scanner is in.
+     */
+    private enum Frame
+    {
+        /**
+         * {@code (((...)))}.
+         */
+        GROUP(")))"),
+
+        /**
+         * {@code [[...]]}.
+         */
+        LINK("]]"),
+
+        /**
+         * {@code (%...%)}.
+         */
+        PARAMETERS("%)"),
+
+        /**
+         * <code>{{{...}}}</code>.
+         */
+        VERBATIM("}}}"),
+
+        /**
+         * <code>{{macro}}...{{/macro}}</code>, the end depends on the macro name.
+         */
+        MACRO(null);
+
+        /**
+         * The end of the block.
+         */
+        private final String end;
+
+        /**
+         * @param end the end of the block
+         */
+        private Frame(String end)
+        {
+            this.end = end;
+        }
+    }
+
+    /**
+     * Starts a verbatim block.
+     */
+    private static final String VERBATIM_START = "{{{";
+
+    /**
+     * Starts a macro start tag.
+     */
+    private static final String MACRO_START = "{{";
+
+    /**
+     * Starts a macro end tag.
+     */
+    private static final String MACRO_END = "{{/";
+
+    /**
+     * Ends a macro tag.
+     */
+    private static final String MACRO_TAG_END = "}}";
+
+    /**
+     * The text to scan.
+     */
+    private final CharSequence text;
+
+    /**
+     * The blocks the scanner is in, the innermost last.
+     */
+    private final List<Frame> frames = new ArrayList<Frame>();
+
+    /**
+     * The names of the macros the scanner is in, used to find the matching macro ends.
+     */
+    private final List<String> macroNames = new ArrayList<String>();
+
+    /**
+     * The offsets where a new chunk starts.
+     */
+    private final List<Integer> boundaries = new ArrayList<Integer>();
+
+    /**
+     * The offset of the next character to scan.
+     */
+    private int position;
+
+    /**
+     * Set when the scanner found a construct whose end it can't find, in which case it stops splitting.
+     */
+    private boolean blocked;
+
+    /**
+     * The offset of the start of the current line.
+     */
+    private int lineStart;
+
+    /**
+     * Whether the current line is empty so far.
+     */
+    private boolean emptyLine = true;
+
+    /**
+     * Whether the previous line is empty.
+     */
+    private boolean afterEmptyLine;
+
+    /**
+     * Whether the current chunk has content, a chunk can't be empty.
+     */
+    private boolean hasContent;
+
+    /**
+     * Whether the last non empty line ends with parameters, which apply to the following block.
+     */
+    private boolean afterParameters;
+
+    /**
+     * @param text the text to scan, can be appended to between two calls to {@link #scan()}
+     */
+    XWikiSyntaxChunkScanner(CharSequence text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * Scans the text from where the previous scan stopped up to its current end.
+     */
+    void scan()
+    {
+        int end = this.text.length();
+        while (this.position < end) {
+            char c = this.text.charAt(this.position);
+            if (c == '\n') {
+                endLine();
+                this.position++;
+            } else {
+                if (this.emptyLine && c != '\r') {
+                    startLine(c);
+                }
+                scanContent(c, end);
+            }
+        }
+    }
+
+    /**
+     * @return the offsets in the text where a new chunk starts, not including the first chunk (at offset 0)
+     */
+    List<Integer> getBoundaries()
+    {
+        return this.boundaries;
+    }
+
+    /**
+     * @return {@code true} if a line starting with a non white space character at the current end of the text would
+     *         start a new chunk
+     */
+    boolean isAtBoundary()
+    {
+        return this.position == this.lineStart && this.afterEmptyLine && canSplit();
+    }
+
+    /**
+     * @return {@code true} if a new chunk can start at the current position
+     */
+    private boolean canSplit()
+    {
+        return this.hasContent && !this.blocked && !this.afterParameters && this.frames.isEmpty();
+    }
+
+    /**
+     * @param c the first character of the line
+     */
+    private void startLine(char c)
+    {
+        if (this.position == this.lineStart && canSplit() && (isParagraphStart(c) || isHeaderLine())) {
+            this.boundaries.add(this.lineStart);
+        }
+        this.emptyLine = false;
+        this.hasContent = true;
+    }
+
+    /**
+     * @param c the first character of the line
+     * @return {@code true} if the line follows an empty line and starts with a non white space character
+     */
+    private boolean isParagraphStart(char c)
+    {
+        return this.afterEmptyLine && !Character.isWhitespace(c);
+    }
+
+    /**
+     * @return {@code true} if the first non white space character of the current line starts a header
+     */
+    private boolean isHeaderLine()
+    {
+        int i = this.lineStart;
+        while (i < this.text.length() && this.text.charAt(i) != '\n' && Character.isWhitespace(this.text.charAt(i))) {
+            i++;
+        }
+
+        return charAt(i) == '=';
+    }
+
+    /**
+     * Called at the end of each line.
+     */
+    private void endLine()
+    {
+        if (!this.emptyLine) {
+            int last = this.position - 1;
+            while (last > this.lineStart && Character.isWhitespace(this.text.charAt(last))) {
+                last--;
+            }
+            this.afterParameters =
+                last > this.lineStart && this.text.charAt(last) == ')' && this.text.charAt(last - 1) == '%';
+        }
+        this.afterEmptyLine = this.emptyLine;
+        this.emptyLine = true;
+        this.lineStart = this.position + 1;
+    }
+
+    /**
+     * @param c the character at the current position
+     * @param end the end of the text
+     */
+    private void scanContent(char c, int end)
+    {
+        Frame frame = this.frames.isEmpty() ? null : this.frames.get(this.frames.size() - 1);
+        if (frame == Frame.VERBATIM) {
+            scanVerbatim();
+        } else if (frame == Frame.MACRO) {
+            scanMacroContent();
+        } else if (c == '~') {
+            // Skip the escaped character, unless it's a new line
+            this.position += this.position + 1 < end && this.text.charAt(this.position + 1) != '\n' ? 2 : 1;
+        } else if (c == '{') {
+            scanCurlyBracket();
+        } else if (!scanFrameStart(c) && !scanFrameEnd(frame)) {
+            this.position++;
+        }
+    }
+
+    /**
+     * Scans a verbatim or macro start at the current position.
+     */
+    private void scanCurlyBracket()
+    {
+        if (startsWith(VERBATIM_START, this.position)) {
+            push(Frame.VERBATIM, VERBATIM_START.length());
+        } else if (startsWith(MACRO_START, this.position) && !startsWith(MACRO_END, this.position)) {
+            scanMacroStart();
+        } else {
+            this.position++;
+        }
+    }
+
+    /**
+     * @param c the character at the current position
+     * @return {@code true} if a group, link or parameters block starts at the current position
+     */
+    private boolean scanFrameStart(char c)
+    {
+        Frame frame = null;
+        int length = 0;
+        if (c == '(' && startsWith("(((", this.position)) {
+            frame = Frame.GROUP;
+            length = 3;
+        } else if (c == '[' && startsWith("[[", this.position)) {
+            frame = Frame.LINK;
+            length = 2;
+        } else if (c == '(' && startsWith("(%", this.position)) {
+            frame = Frame.PARAMETERS;
+            length = 2;
+        }
+        if (frame != null) {
+            push(frame, length);
+        }
+
+        return frame != null;
+    }
+
+    /**
+     * @param frame the group, link or parameters block the scanner is in, if any
+     * @return {@code true} if the block ends at the current position
+     */
+    private boolean scanFrameEnd(Frame frame)
+    {
+        boolean atEnd = frame != null && startsWith(frame.end, this.position);
+        if (atEnd) {
+            pop(frame.end.length());
+        }
+
+        return atEnd;
+    }
+
+    /**
+     * Scans the content of a verbatim block.
+     */
+    private void scanVerbatim()
+    {
+        if (startsWith(VERBATIM_START, this.position)) {
+            push(Frame.VERBATIM, VERBATIM_START.length());
+        } else if (startsWith(Frame.VERBATIM.end, this.position)) {
+            pop(Frame.VERBATIM.end.length());
+        } else {
+            this.position++;
+        }
+    }
+
+    /**
+     * Scans the content of a macro, looking for its end or for a nested macro with the same name.
+     */
+    private void scanMacroContent()
+    {
+        String name = this.macroNames.get(this.macroNames.size() - 1);
+        int nameEnd = this.position + MACRO_END.length() + name.length();
+        if (isMacroTag(MACRO_END, name) && startsWith(MACRO_TAG_END, nameEnd)) {
+            this.macroNames.remove(this.macroNames.size() - 1);
+            pop(nameEnd + MACRO_TAG_END.length() - this.position);
+        } else if (isMacroTag(MACRO_START, name) && !isMacroNameChar(charAt(nameEnd - 1))) {
+            // Nested macro with the same name
+            scanMacroStart();
+        } else {
+            this.position++;
+        }
+    }
+
+    /**
+     * @param tagStart the start of the macro tag
+     * @param name the name of the macro
+     * @return {@code true} if the passed tag start followed by the macro name is at the current position
+     */
+    private boolean isMacroTag(String tagStart, String name)
+    {
+        return startsWith(tagStart, this.position) && startsWith(name, this.position + tagStart.length());
+    }
+
+    /**
+     * Scans a macro start tag.
+     */
+    private void scanMacroStart()
+    {
+        int nameStart = this.position + MACRO_START.length();
+        int nameEnd = nameStart;
+        while (isMacroNameChar(charAt(nameEnd))) {
+            nameEnd++;
+        }
+
+        if (nameEnd == nameStart) {
+            // Not a macro
+            this.position++;
+        } else {
+            int tagEnd = indexOfMacroTagEnd(nameEnd);
+            if (tagEnd < 0) {
+                // We don't know where the macro starts so we stop splitting
+                this.blocked = true;
+                this.position++;
+            } else {
+                if (this.text.charAt(tagEnd - 1) != '/') {
+                    this.macroNames.add(this.text.subSequence(nameStart, nameEnd).toString());
+                    this.frames.add(Frame.MACRO);
+                }
+                this.position = tagEnd + MACRO_TAG_END.length();
+            }
+        }
+    }
+
+    /**
+     * @param from where to start searching
+     * @return the offset of the end of the macro start tag or -1 if it's not found before the next empty line
+     */
+    private int indexOfMacroTagEnd(int from)
+    {
+        int end = this.text.length();
+        for (int i = from; i < end; i++) {
+            char c = this.text.charAt(i);
+            if (c == '}' && startsWith(MACRO_TAG_END, i)) {
+                return i;
+            } else if (c == '\n') {
+                int next = i + 1;
+                while (next < end && this.text.charAt(next) == '\r') {
+                    next++;
+                }
+                if (next == end || this.text.charAt(next) == '\n') {
+                    break;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param frame the block starting at the current position
+     * @param length the length of the block start
+     */
+    private void push(Frame frame, int length)
+    {
+        this.frames.add(frame);
+        this.position += length;
+    }
+
+    /**
+     * @param length the length of the end of the current block
+     */
+    private void pop(int length)
+    {
+        this.frames.remove(this.frames.size() - 1);
+        this.position += length;
+    }
+
+    /**
+     * @param c a character
+     * @return {@code true} if the character can be part of a macro name
+     */
+    private boolean isMacroNameChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || "_-.:".indexOf(c) >= 0;
+    }
+
+    /**
+     * @param index an offset in the text
+     * @return the character at the passed offset or 0 if it's after the end of the text
+     */
+    private char charAt(int index)
+    {
+        return index < this.text.length() ? this.text.charAt(index) : 0;
+    }
+
+    /**
+     * @param prefix the prefix to look for
+     * @param index an offset in the text
+     * @return {@code true} if the text contains the prefix at the passed offset
+     */
+    private boolean startsWith(String prefix, int index)
+    {
+        if (index + prefix.length() > this.text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (this.text.charAt(index + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki20;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.parser.ParseException;
+
+/**
+ * Groups the chunks of an incremental parsing in sections. Sections span several chunks so they are created for the
+ * whole document instead of being taken from the parsing of each chunk, each top level header being at the start of
+ * a chunk (see {@link XWikiSyntaxChunkScanner}).
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+final class XWikiSyntaxChunkSections
+{
+    /**
+     * The top level blocks.
+     */
+    private final List<Block> blocks = new ArrayList<Block>();
+
+    /**
+     * The currently opened sections, the innermost first.
+     */
+    private final Deque<SectionBlock> sections = new ArrayDeque<SectionBlock>();
+
+    /**
+     * The levels of the currently opened sections.
+     */
+    private final Deque<Integer> levels = new ArrayDeque<Integer>();
+
+    /**
+     * Use {@link #createSections(List)}.
+     */
+    private XWikiSyntaxChunkSections()
+    {
+    }
+
+    /**
+     * @param chunkBlocks the chunks of the source, in document order
+     * @return the chunks grouped in sections, the same way the full parser groups the blocks following a header
+     */
+    static List<Block> createSections(List<MetaDataBlock> chunkBlocks)
+    {
+        XWikiSyntaxChunkSections sections = new XWikiSyntaxChunkSections();
+        for (MetaDataBlock chunkBlock : chunkBlocks) {
+            sections.add(chunkBlock);
+        }
+
+        return sections.blocks;
+    }
+
+    /**
+     * @param blocks the top level blocks of a chunk
+     * @return the blocks, with the sections replaced by their content
+     */
+    static List<Block> removeSections(List<Block> blocks)
+    {
+        List<Block> result = new ArrayList<Block>();
+        for (Block block : blocks) {
+            if (block instanceof SectionBlock) {
+                result.addAll(removeSections(block.getChildren()));
+            } else {
+                result.add(block);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param blocks the top level blocks of an XDOM generated by an incremental parser
+     * @return the blocks of the chunks, in document order
+     * @throws ParseException if the XDOM has not been generated by an incremental parser
+     */
+    static List<MetaDataBlock> getChunkBlocks(List<Block> blocks) throws ParseException
+    {
+        List<MetaDataBlock> chunkBlocks = new ArrayList<MetaDataBlock>();
+        for (Block block : blocks) {
+            if (block instanceof SectionBlock) {
+                chunkBlocks.addAll(getChunkBlocks(block.getChildren()));
+            } else if (block instanceof MetaDataBlock) {
+                chunkBlocks.add((MetaDataBlock) block);
+            } else {
+                throw new ParseException("The XDOM has not been generated by an incremental parser");
+            }
+        }
+
+        return chunkBlocks;
+    }
+
+    /**
+     * @param chunkBlock the next chunk of the source
+     */
+    private void add(MetaDataBlock chunkBlock)
+    {
+        List<Block> children = chunkBlock.getChildren();
+        if (!children.isEmpty() && children.get(0) instanceof HeaderBlock) {
+            int level = ((HeaderBlock) children.get(0)).getLevel().getAsInt();
+            while (!this.levels.isEmpty() && this.levels.peek() >= level) {
+                this.sections.pop();
+                this.levels.pop();
+            }
+            // Like the full parser, create the sections of the skipped levels
+            for (int i = this.levels.isEmpty() ? 1 : this.levels.peek() + 1; i <= level; i++) {
+                SectionBlock section = new SectionBlock(new ArrayList<Block>());
+                addBlock(section);
+                this.sections.push(section);
+                this.levels.push(i);
+            }
+        }
+        addBlock(chunkBlock);
+    }
+
+    /**
+     * @param block the block to add to the innermost opened section
+     */
+    private void addBlock(Block block)
+    {
+        if (this.sections.isEmpty()) {
+            this.blocks.add(block);
+        } else {
+            this.sections.peek().addChild(block);
+        }
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.rendering.internal.renderer.xwiki20;
 
+import java.nio.CharBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,20 +38,48 @@
 {
     public static final Pattern STARLISTEND_PATTERN = Pattern.compile("(\\**([:;]*|1+\\.)?\\p{Blank})");
 
-    private static final Pattern LIST_PATTERN = Pattern
-        .compile("\\p{Blank}*((\\*+[:;]*)|([1*]+\\.[:;]*)|([:;]+))\\p{Blank}+");
+    /**
+     * The beginnings of lines that could be confused with list items, headers, tables or quotations.
+     */
+    private static final LineStart[] LINE_STARTS = new LineStart[] {LineStart.LIST, LineStart.HEADER,
+        LineStart.TABLE, LineStart.QUOTE};
+
+    /**
+     * Characters which are part of the symbols always escaped.
+     */
+    private static final int BASE_TRIGGER = 1;
 
-    private static final Pattern QUOTE_PATTERN = Pattern.compile("(\\>+)");
+    /**
+     * Characters escaped in tables.
+     */
+    private static final int TABLE_TRIGGER = 2;
 
-    private static final Pattern HEADER_PATTERN = Pattern.compile("\\p{Blank}*(=+)");
+    /**
+     * Characters escaped in headers.
+     */
+    private static final int HEADER_TRIGGER = 4;
 
-    private static final Pattern TABLE_PATTERN = Pattern.compile("\\p{Blank}*(\\||!!)");
+    /**
+     * Characters escaped in link labels.
+     */
+    private static final int LINK_TRIGGER = 8;
 
     /**
-     * Note that we take care to not match if the first character is preceded by an escape (i.e. '~).
+     * For each US-ASCII character, the contexts in which it can be escaped. A text without any of these characters is
+     * left as is (unless it matches one of the line start patterns).
      */
-    private static final Pattern DOUBLE_CHARS_PATTERN = Pattern.compile(
-        "(?<!~)\\/\\/|(?<!~)\\*\\*|(?<!~)__|(?<!~)--|(?<!~)\\^\\^|(?<!~),,|(?<!~)##|(?<!~)\\\\\\\\");
+    private static final int[] TRIGGERS = new int[128];
+
+    static {
+        for (char c : "~(%{)/*_-^,#\\:[".toCharArray()) {
+            TRIGGERS[c] |= BASE_TRIGGER;
+        }
+        TRIGGERS['|'] |= TABLE_TRIGGER | LINK_TRIGGER;
+        TRIGGERS['!'] |= TABLE_TRIGGER;
+        TRIGGERS['='] |= HEADER_TRIGGER;
+        TRIGGERS[']'] |= LINK_TRIGGER;
+        TRIGGERS['>'] |= LINK_TRIGGER;
+    }
 
     public static final String ESCAPE_CHAR = "~";
 
@@ -56,6 +87,24 @@
 
     private boolean onNewLine = true;
 
+    /**
+     * The characters of the text being escaped.
+     */
+    private char[] characters = new char[64];
+
+    /**
+     * The escaped text.
+     */
+    private final StringBuilder result = new StringBuilder();
+
+    /**
+     * The chains of escaping rules already created, indexed by the pattern passed to
+     * {@link #escape(StringBuffer, boolean, boolean, boolean, int, boolean, Pattern)} and then by the other parameters
+     * (see {@link #getConfiguration(boolean, boolean, boolean, int, boolean)}). The stages are reset at the end of
+     * each text so a chain can be reused for all the texts escaped with the same configuration.
+     */
+    private final Map<Pattern, Map<Integer, EscapeStage>> stages = new HashMap<Pattern, Map<Integer, EscapeStage>>();
+
     public void setOnNewLine(boolean onNewLine)
     {
         this.onNewLine = onNewLine;
@@ -71,93 +120,212 @@ public void escape(StringBuffer accumulatedBuffer, XWikiSyntaxListenerChain list
     {
         BlockStateChainingListener blockStateListener = listenerChain.getBlockStateChainingListener();
 
-        // Escape tilde symbol (i.e. the escape character).
-        // Note: This needs to be the first replacement since other replacements below also use the tilde symbol
-        replaceAll(accumulatedBuffer, ESCAPE_CHAR, ESCAPE_CHAR + ESCAPE_CHAR);
+        escape(accumulatedBuffer, blockStateListener.isInLine() && isOnNewLine(), blockStateListener.isInTable(),
+            blockStateListener.isInHeader(), getLinkLevel(listenerChain), escapeLastChar, escapeFirstIfMatching);
+    }
 
-        // Escape anything that looks like starting of custom parameters
-        replaceAll(accumulatedBuffer, "(%", ESCAPE_CHAR + "(%");
+    /**
+     * Escape the passed text in a single scan: the escaping rules are chained {@link EscapeStage}s, each one
+     * receiving the characters produced by the previous one, so that the result is the same as applying the rules
+     * one after the other on the whole text.
+     * 
+     * @param accumulatedBuffer the text to escape, replaced by the escaped text
+     * @param escapeLineStart true if the text is at the beginning of a line inside a paragraph, in which case symbols
+     *            that could be confused with list items, headers, tables or quotations are escaped
+     * @param inTable true if the text is inside a table
+     * @param inHeader true if the text is inside a header
+     * @param linkLevel the number of links containing the text
+     * @param escapeLastChar true if the last character should be escaped
+     * @param escapeFirstIfMatching if not null, the first character of the first group is escaped when the beginning
+     *            of the text matches this pattern
+     */
+    void escape(StringBuffer accumulatedBuffer, boolean escapeLineStart, boolean inTable, boolean inHeader,
+        int linkLevel, boolean escapeLastChar, Pattern escapeFirstIfMatching)
+    {
+        int length = accumulatedBuffer.length();
+        if (this.characters.length < length) {
+            this.characters = new char[Math.max(length, this.characters.length * 2)];
+        }
+        accumulatedBuffer.getChars(0, length, this.characters, 0);
 
-        // When in a paragraph we need to escape symbols that are at beginning of lines and that could be confused
-        // with list items, headers or tables.
-        if (blockStateListener.isInLine() && isOnNewLine()) {
+        if (!escapeLastChar && !needsEscaping(length, escapeLineStart, inTable, inHeader, linkLevel,
+            escapeFirstIfMatching)) {
+            return;
+        }
 
-            // Look for list pattern at beginning of line and escape the first character only (it's enough)
-            escapeFirstMatchedCharacter(LIST_PATTERN, accumulatedBuffer);
+        EscapeStage stage = getStages(escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar,
+            escapeFirstIfMatching);
+        for (int i = 0; i < length; i++) {
+            stage.append(this.characters[i]);
+        }
+        stage.end();
 
-            // Look for header pattern at beginning of line and escape the first character only (it's enough)
-            escapeFirstMatchedCharacter(HEADER_PATTERN, accumulatedBuffer);
+        accumulatedBuffer.setLength(0);
+        accumulatedBuffer.append(this.result);
+        this.result.setLength(0);
+    }
 
-            // Look for table character patterns at beginning of line and escape the first character only (it's enough)
-            escapeFirstMatchedCharacter(TABLE_PATTERN, accumulatedBuffer);
+    /**
+     * @return false if none of the escaping rules applies to the text, in which case it's left as is
+     */
+    private boolean needsEscaping(int length, boolean escapeLineStart, boolean inTable, boolean inHeader,
+        int linkLevel, Pattern escapeFirstIfMatching)
+    {
+        int mask = BASE_TRIGGER;
+        if (inTable) {
+            mask |= TABLE_TRIGGER;
+        }
+        if (inHeader) {
+            mask |= HEADER_TRIGGER;
+        }
+        if (linkLevel > 0) {
+            mask |= LINK_TRIGGER;
+        }
 
-            // Look for quote pattern at beginning of line and escape the first character only (it's enough)
-            escapeFirstMatchedCharacter(QUOTE_PATTERN, accumulatedBuffer);
+        for (int i = 0; i < length; i++) {
+            char c = this.characters[i];
+            if (c < TRIGGERS.length && (TRIGGERS[c] & mask) != 0) {
+                return true;
+            }
         }
 
-        // Escape table characters
-        if (blockStateListener.isInTable()) {
-            replaceAll(accumulatedBuffer, "|", ESCAPE_CHAR + "|");
-            replaceAll(accumulatedBuffer, "!!", ESCAPE_CHAR + "!!");
+        // None of the characters is modified by the replacements so the line starts are tested on the original text.
+        if (escapeLineStart) {
+            for (LineStart lineStart : LINE_STARTS) {
+                if (lineStart.getEscapeIndex(this.characters, length) >= 0) {
+                    return true;
+                }
+            }
         }
 
-        if (escapeFirstIfMatching != null) {
-            escapeFirstMatchedCharacter(escapeFirstIfMatching, accumulatedBuffer);
+        if (escapeFirstIfMatching == STARLISTEND_PATTERN) {
+            return LineStart.STARLISTEND.getEscapeIndex(this.characters, length) >= 0;
         }
 
-        // When in a header we need to escape "=" symbols since otherwise they would be confused for end of section
-        // characters.
-        if (blockStateListener.isInHeader()) {
-            replaceAll(accumulatedBuffer, "=", ESCAPE_CHAR + "=");
+        return escapeFirstIfMatching != null
+            && escapeFirstIfMatching.matcher(CharBuffer.wrap(this.characters, 0, length)).lookingAt();
+    }
+
+    /**
+     * @return the first stage of the chain applying the escaping rules in order, created the first time the
+     *         configuration is used
+     */
+    private EscapeStage getStages(boolean escapeLineStart, boolean inTable, boolean inHeader, int linkLevel,
+        boolean escapeLastChar, Pattern escapeFirstIfMatching)
+    {
+        Map<Integer, EscapeStage> patternStages = this.stages.get(escapeFirstIfMatching);
+        if (patternStages == null) {
+            patternStages = new HashMap<Integer, EscapeStage>();
+            this.stages.put(escapeFirstIfMatching, patternStages);
         }
 
-        // Escape verbatim "{{{"
-        replaceAll(accumulatedBuffer, "{{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{");
+        Integer configuration = getConfiguration(escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar);
+        EscapeStage stage = patternStages.get(configuration);
+        if (stage == null) {
+            stage = createStages(escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar, escapeFirstIfMatching);
+            patternStages.put(configuration, stage);
+        }
 
-        // Escape "{{"
-        replaceAll(accumulatedBuffer, "{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{");
+        return stage;
+    }
 
-        // Escape groups
-        replaceAll(accumulatedBuffer, "(((", ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(");
-        replaceAll(accumulatedBuffer, ")))", ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")");
+    /**
+     * @return a number identifying the escaping configuration
+     */
+    private Integer getConfiguration(boolean escapeLineStart, boolean inTable, boolean inHeader, int linkLevel,
+        boolean escapeLastChar)
+    {
+        int configuration = Math.max(linkLevel, 0);
+        configuration = configuration * 2 + (escapeLineStart ? 1 : 0);
+        configuration = configuration * 2 + (inTable ? 1 : 0);
+        configuration = configuration * 2 + (inHeader ? 1 : 0);
+        configuration = configuration * 2 + (escapeLastChar ? 1 : 0);
 
-        // Escape reserved keywords
-        Matcher matcher = DOUBLE_CHARS_PATTERN.matcher(accumulatedBuffer.toString());
-        for (int i = 0; matcher.find(); i = i + 2) {
-            accumulatedBuffer.replace(matcher.start() + i, matcher.end() + i, ESCAPE_CHAR + matcher.group().charAt(0)
-                + ESCAPE_CHAR + matcher.group().charAt(1));
+        return configuration;
+    }
+
+    /**
+     * @return the first stage of the chain applying the escaping rules in order
+     */
+    private EscapeStage createStages(boolean escapeLineStart, boolean inTable, boolean inHeader, int linkLevel,
+        boolean escapeLastChar, Pattern escapeFirstIfMatching)
+    {
+        EscapeStage stage = new ResultStage(this.result);
+
+        // Escape link label
+        if (linkLevel > 0) {
+            // This need to be done after anything else because link label add another level of escaping (escaped as
+            // link label and then escaped as wiki content).
+            String escape = StringUtils.repeat(ESCAPE_CHAR, linkLevel);
+            stage = new ReplaceStage("||", escape + "|" + escape + "|", stage);
+            stage = new ReplaceStage(">>", escape + ">" + escape + ">", stage);
+            stage = new ReplaceStage("]]", escape + "]" + escape + "]", stage);
+            stage = new ReplaceStage(ESCAPE_CHAR, escape + ESCAPE_CHAR, stage);
         }
 
-        // Escape ":" in "image:something", "attach:something" and "mailto:something"
-        // Note: even though there are some restriction in the URI specification as to what character is valid after
-        // the ":" character following the scheme we only check for characters greater than the space symbol for
-        // simplicity.
-        escapeURI(accumulatedBuffer, "image:");
-        escapeURI(accumulatedBuffer, "attach:");
-        escapeURI(accumulatedBuffer, "mailto:");
+        // Escape begin link
+        stage = new ReplaceStage("[[", ESCAPE_CHAR + "[" + ESCAPE_CHAR + "[", stage);
 
         // Escape last character if we're told to do so. This is to handle cases such as:
         // - onWord("hello:") followed by onFormat(ITALIC) which would lead to "hello://" if the ":" wasn't escaped
         // - onWord("{") followed by onMacro() which would lead to "{{{" if the "{" wasn't escaped
         if (escapeLastChar) {
-            accumulatedBuffer.insert(accumulatedBuffer.length() - 1, '~');
+            stage = new LastCharStage(stage);
         }
 
-        // Escape begin link
-        replaceAll(accumulatedBuffer, "[[", ESCAPE_CHAR + "[" + ESCAPE_CHAR + "[");
+        // Escape ":" in "image:something", "attach:something" and "mailto:something"
+        // Note: even though there are some restriction in the URI specification as to what character is valid after
+        // the ":" character following the scheme we only check for characters greater than the space symbol for
+        // simplicity.
+        stage = new URIStage("mailto:", stage);
+        stage = new URIStage("attach:", stage);
+        stage = new URIStage("image:", stage);
 
-        // Escape link label
-        int linkLevel = getLinkLevel(listenerChain);
+        // Escape reserved keywords
+        stage = new DoubleCharsStage(stage);
 
-        if (linkLevel > 0) {
-            // This need to be done after anything else because link label add another level of escaping (escaped as
-            // link label and then escaped as wiki content).
-            String escape = StringUtils.repeat(ESCAPE_CHAR, linkLevel);
-            replaceAll(accumulatedBuffer, ESCAPE_CHAR, escape + ESCAPE_CHAR);
-            replaceAll(accumulatedBuffer, "]]", escape + "]" + escape + "]");
-            replaceAll(accumulatedBuffer, ">>", escape + ">" + escape + ">");
-            replaceAll(accumulatedBuffer, "||", escape + "|" + escape + "|");
+        // Escape groups
+        stage = new ReplaceStage(")))", ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")", stage);
+        stage = new ReplaceStage("(((", ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(", stage);
+
+        // Escape "{{"
+        stage = new ReplaceStage("{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{", stage);
+
+        // Escape verbatim "{{{"
+        stage = new ReplaceStage("{{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{", stage);
+
+        // When in a header we need to escape "=" symbols since otherwise they would be confused for end of section
+        // characters.
+        if (inHeader) {
+            stage = new ReplaceStage("=", ESCAPE_CHAR + "=", stage);
+        }
+
+        if (escapeFirstIfMatching == STARLISTEND_PATTERN) {
+            stage = new LineStartStage(LineStart.STARLISTEND, stage);
+        } else if (escapeFirstIfMatching != null) {
+            stage = new PatternStage(escapeFirstIfMatching, stage);
+        }
+
+        // Escape table characters
+        if (inTable) {
+            stage = new ReplaceStage("!!", ESCAPE_CHAR + "!!", stage);
+            stage = new ReplaceStage("|", ESCAPE_CHAR + "|", stage);
+        }
+
+        // When in a paragraph we need to escape symbols that are at beginning of lines and that could be confused
+        // with list items, headers, tables or quotations. Only the first character is escaped (it's enough).
+        if (escapeLineStart) {
+            for (int i = LINE_STARTS.length - 1; i >= 0; i--) {
+                stage = new LineStartStage(LINE_STARTS[i], stage);
+            }
         }
+
+        // Escape anything that looks like starting of custom parameters
+        stage = new ReplaceStage("(%", ESCAPE_CHAR + "(%", stage);
+
+        // Escape tilde symbol (i.e. the escape character).
+        // Note: This needs to be the first replacement since other replacements above also use the tilde symbol
+        return new ReplaceStage(ESCAPE_CHAR, ESCAPE_CHAR + ESCAPE_CHAR, stage);
     }
 
     private int getLinkLevel(XWikiSyntaxListenerChain listenerChain)
@@ -176,30 +344,570 @@ public void setBeforeLink(boolean beforeLink)
         this.beforeLink = beforeLink;
     }
 
-    private void escapeURI(StringBuffer accumulatedBuffer, String match)
+    /**
+     * A step of the escaping, receiving the characters one by one and sending the escaped characters to the next step.
+     */
+    private abstract static class EscapeStage
+    {
+        /**
+         * The next step, null for the last one.
+         */
+        protected final EscapeStage next;
+
+        /**
+         * @param next the next step
+         */
+        protected EscapeStage(EscapeStage next)
+        {
+            this.next = next;
+        }
+
+        /**
+         * @param c the next character of the text
+         */
+        public abstract void append(char c);
+
+        /**
+         * Called at the end of the text.
+         */
+        public void end()
+        {
+            this.next.end();
+        }
+
+        /**
+         * @param text the characters to send to the next step
+         */
+        protected void appendNext(char[] text)
+        {
+            for (char c : text) {
+                this.next.append(c);
+            }
+        }
+    }
+
+    /**
+     * Collects the escaped text.
+     */
+    private static class ResultStage extends EscapeStage
+    {
+        /**
+         * @see #ResultStage(StringBuilder)
+         */
+        private final StringBuilder result;
+
+        /**
+         * @param result where to put the escaped text
+         */
+        ResultStage(StringBuilder result)
+        {
+            super(null);
+            this.result = result;
+        }
+
+        @Override
+        public void append(char c)
+        {
+            this.result.append(c);
+        }
+
+        @Override
+        public void end()
+        {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Replaces all the occurrences of a string, from left to right.
+     */
+    private static class ReplaceStage extends EscapeStage
+    {
+        /**
+         * The string to replace.
+         */
+        private final char[] match;
+
+        /**
+         * The replacement.
+         */
+        private final char[] replacement;
+
+        /**
+         * The last characters received, which are the beginning of the string to replace, stored as a ring buffer
+         * starting at {@link #pendingStart}.
+         */
+        private final char[] pending;
+
+        /**
+         * The index of the first pending character.
+         */
+        private int pendingStart;
+
+        /**
+         * The number of pending characters.
+         */
+        private int pendingLength;
+
+        /**
+         * @param match the string to replace
+         * @param replacement the replacement
+         * @param next the next step
+         */
+        ReplaceStage(String match, String replacement, EscapeStage next)
+        {
+            super(next);
+            this.match = match.toCharArray();
+            this.replacement = replacement.toCharArray();
+            this.pending = new char[this.match.length];
+        }
+
+        @Override
+        public void append(char c)
+        {
+            if (this.pendingLength == 0 && c != this.match[0]) {
+                // Most characters are not the beginning of a match.
+                this.next.append(c);
+                return;
+            }
+
+            this.pending[(this.pendingStart + this.pendingLength++) % this.pending.length] = c;
+
+            // Send the characters which can't be the beginning of a match anymore.
+            while (this.pendingLength > 0 && !isMatchBeginning()) {
+                this.next.append(this.pending[this.pendingStart]);
+                this.pendingStart = (this.pendingStart + 1) % this.pending.length;
+                this.pendingLength--;
+            }
+
+            if (this.pendingLength == this.match.length) {
+                replace();
+            }
+        }
+
+        /**
+         * Called when the pending characters are a complete match.
+         */
+        protected void replace()
+        {
+            appendNext(this.replacement);
+            this.pendingStart = 0;
+            this.pendingLength = 0;
+        }
+
+        @Override
+        public void end()
+        {
+            for (int i = 0; i < this.pendingLength; i++) {
+                this.next.append(this.pending[(this.pendingStart + i) % this.pending.length]);
+            }
+            this.pendingStart = 0;
+            this.pendingLength = 0;
+            super.end();
+        }
+
+        /**
+         * @return true if the pending characters are the beginning of the string to replace
+         */
+        private boolean isMatchBeginning()
+        {
+            for (int i = 0; i < this.pendingLength; i++) {
+                if (this.pending[(this.pendingStart + i) % this.pending.length] != this.match[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Escapes the ":" of the first occurrence of an URI scheme.
+     */
+    private static class URIStage extends ReplaceStage
+    {
+        /**
+         * True once the scheme has been found.
+         */
+        private boolean found;
+
+        /**
+         * @param scheme the URI scheme, including the ":" symbol
+         * @param next the next step
+         */
+        URIStage(String scheme, EscapeStage next)
+        {
+            super(scheme, scheme.substring(0, scheme.length() - 1) + ESCAPE_CHAR + ':', next);
+        }
+
+        @Override
+        public void append(char c)
+        {
+            if (this.found) {
+                this.next.append(c);
+            } else {
+                super.append(c);
+            }
+        }
+
+        @Override
+        protected void replace()
+        {
+            super.replace();
+            this.found = true;
+        }
+
+        @Override
+        public void end()
+        {
+            this.found = false;
+            super.end();
+        }
+    }
+
+    /**
+     * Escapes the doubled characters having a meaning in XWiki syntax (e.g. "**" for bold) when they're not already
+     * preceded by the escape character.
+     */
+    private static class DoubleCharsStage extends EscapeStage
     {
-        int pos = accumulatedBuffer.indexOf(match);
-        if (pos > -1) {
-            // Escape the ":" symbol
-            accumulatedBuffer.insert(pos + match.length() - 1, '~');
+        /**
+         * The doubled characters to escape.
+         */
+        private static final String CHARACTERS = "/*_-^,#\\";
+
+        /**
+         * The last character received.
+         */
+        private char last;
+
+        /**
+         * True if the last character received is waiting to know if it's doubled.
+         */
+        private boolean pending;
+
+        /**
+         * @param next the next step
+         */
+        DoubleCharsStage(EscapeStage next)
+        {
+            super(next);
+        }
+
+        @Override
+        public void append(char c)
+        {
+            if (this.pending) {
+                this.pending = false;
+                if (c == this.last) {
+                    this.next.append('~');
+                    this.next.append(c);
+                    this.next.append('~');
+                    this.next.append(c);
+                    return;
+                }
+                this.next.append(this.last);
+            }
+
+            if (this.last != '~' && CHARACTERS.indexOf(c) >= 0) {
+                this.pending = true;
+            } else {
+                this.next.append(c);
+            }
+            this.last = c;
+        }
+
+        @Override
+        public void end()
+        {
+            if (this.pending) {
+                this.next.append(this.last);
+                this.pending = false;
+            }
+            this.last = 0;
+            super.end();
         }
     }
 
-    private void replaceAll(StringBuffer accumulatedBuffer, String match, String replacement)
+    /**
+     * The beginnings of text escaped by {@link LineStartStage}. Each one is the hand written equivalent of a pattern
+     * whose first group starts with the character to escape.
+     */
+    private enum LineStart
     {
-        int pos = -replacement.length();
-        while ((pos + replacement.length() < accumulatedBuffer.length())
-            && ((pos = accumulatedBuffer.indexOf(match, pos + replacement.length())) != -1)) {
-            accumulatedBuffer.replace(pos, pos + match.length(), replacement);
+        /**
+         * List items: {@code \p{Blank}*((\*+[:;]*)|([1*]+\.[:;]*)|([:;]+))\p{Blank}+}.
+         */
+        LIST
+        {
+            @Override
+            int getEscapeIndex(char[] text, int length)
+            {
+                int start = skip(text, 0, length, " \t");
+
+                // "*" list item
+                int index = skip(text, start, length, "*");
+                if (index > start && isBlank(text, skip(text, index, length, ":;"), length)) {
+                    return start;
+                }
+
+                // "1." list item
+                index = skip(text, start, length, "1*");
+                if (index > start && index < length && text[index] == '.'
+                    && isBlank(text, skip(text, index + 1, length, ":;"), length)) {
+                    return start;
+                }
+
+                // Definition list
+                index = skip(text, start, length, ":;");
+                if (index > start && isBlank(text, index, length)) {
+                    return start;
+                }
+
+                return -1;
+            }
+        },
+
+        /**
+         * Headers: {@code \p{Blank}*(=+)}.
+         */
+        HEADER
+        {
+            @Override
+            int getEscapeIndex(char[] text, int length)
+            {
+                int start = skip(text, 0, length, " \t");
+
+                return start < length && text[start] == '=' ? start : -1;
+            }
+        },
+
+        /**
+         * Table cells: {@code \p{Blank}*(\||!!)}.
+         */
+        TABLE
+        {
+            @Override
+            int getEscapeIndex(char[] text, int length)
+            {
+                int start = skip(text, 0, length, " \t");
+                if (start < length
+                    && (text[start] == '|' || (text[start] == '!' && start + 1 < length && text[start + 1] == '!'))) {
+                    return start;
+                }
+
+                return -1;
+            }
+        },
+
+        /**
+         * Quotations: {@code (\>+)}.
+         */
+        QUOTE
+        {
+            @Override
+            int getEscapeIndex(char[] text, int length)
+            {
+                return length > 0 && text[0] == '>' ? 0 : -1;
+            }
+        },
+
+        /**
+         * The end of a "*" list item, see {@link XWikiSyntaxEscapeHandler#STARLISTEND_PATTERN}.
+         */
+        STARLISTEND
+        {
+            @Override
+            int getEscapeIndex(char[] text, int length)
+            {
+                int index = skip(text, 0, length, "*");
+                if (index < length && text[index] == '1') {
+                    index = skip(text, index, length, "1");
+                    if (index == length || text[index] != '.') {
+                        return -1;
+                    }
+                    index++;
+                } else {
+                    index = skip(text, index, length, ":;");
+                }
+
+                return isBlank(text, index, length) ? 0 : -1;
+            }
+        };
+
+        /**
+         * @param text the text to escape
+         * @param length the length of the text
+         * @return the index of the character to escape, -1 if the beginning of the text doesn't need to be escaped
+         */
+        abstract int getEscapeIndex(char[] text, int length);
+
+        /**
+         * @param text the text to escape
+         * @param index where to start
+         * @param length the length of the text
+         * @param characters the characters to skip
+         * @return the index of the first character from {@code index} which is not one of the passed characters
+         */
+        private static int skip(char[] text, int index, int length, String characters)
+        {
+            int i = index;
+            while (i < length && characters.indexOf(text[i]) >= 0) {
+                i++;
+            }
+
+            return i;
+        }
+
+        /**
+         * @param text the text to escape
+         * @param index the index of the character
+         * @param length the length of the text
+         * @return true if the character at the passed index is a space or a tab
+         */
+        private static boolean isBlank(char[] text, int index, int length)
+        {
+            return index < length && (text[index] == ' ' || text[index] == '\t');
         }
     }
 
-    private void escapeFirstMatchedCharacter(Pattern pattern, StringBuffer accumulatedBuffer)
+    /**
+     * Escapes the first character of the beginning of the text when it could be confused with some syntax.
+     */
+    private static class LineStartStage extends EscapeStage
     {
-        Matcher matcher = pattern.matcher(accumulatedBuffer);
-        if (matcher.lookingAt()) {
-            // Escape the first character
-            accumulatedBuffer.replace(matcher.start(1), matcher.start(1) + 1, ESCAPE_CHAR + matcher.group(1).charAt(0));
+        /**
+         * The beginning of text to escape.
+         */
+        private final LineStart lineStart;
+
+        /**
+         * The text received so far since the beginning of text to escape can be made of an unbounded number of
+         * characters.
+         */
+        private char[] text = new char[64];
+
+        /**
+         * The number of characters received so far.
+         */
+        private int length;
+
+        /**
+         * @param lineStart the beginning of text to escape
+         * @param next the next step
+         */
+        LineStartStage(LineStart lineStart, EscapeStage next)
+        {
+            super(next);
+            this.lineStart = lineStart;
+        }
+
+        @Override
+        public void append(char c)
+        {
+            if (this.length == this.text.length) {
+                char[] newText = new char[this.length * 2];
+                System.arraycopy(this.text, 0, newText, 0, this.length);
+                this.text = newText;
+            }
+            this.text[this.length++] = c;
+        }
+
+        @Override
+        public void end()
+        {
+            int escapeIndex = getEscapeIndex(this.text, this.length);
+            for (int i = 0; i < this.length; i++) {
+                if (i == escapeIndex) {
+                    this.next.append('~');
+                }
+                this.next.append(this.text[i]);
+            }
+            this.length = 0;
+            super.end();
+        }
+
+        /**
+         * @param characters the text received
+         * @param textLength the number of characters received
+         * @return the index of the character to escape, -1 if the beginning of the text doesn't need to be escaped
+         */
+        protected int getEscapeIndex(char[] characters, int textLength)
+        {
+            return this.lineStart.getEscapeIndex(characters, textLength);
+        }
+    }
+
+    /**
+     * Escapes the first character of the first group of a pattern when the beginning of the text matches it.
+     */
+    private static class PatternStage extends LineStartStage
+    {
+        /**
+         * The pattern to look for at the beginning of the text.
+         */
+        private final Pattern pattern;
+
+        /**
+         * @param pattern the pattern to look for at the beginning of the text
+         * @param next the next step
+         */
+        PatternStage(Pattern pattern, EscapeStage next)
+        {
+            super(null, next);
+            this.pattern = pattern;
+        }
+
+        @Override
+        protected int getEscapeIndex(char[] characters, int textLength)
+        {
+            Matcher matcher = this.pattern.matcher(CharBuffer.wrap(characters, 0, textLength));
+
+            return matcher.lookingAt() ? matcher.start(1) : -1;
+        }
+    }
+
+    /**
+     * Escapes the last character of the text.
+     */
+    private static class LastCharStage extends EscapeStage
+    {
+        /**
+         * The last character received.
+         */
+        private char last;
+
+        /**
+         * True if at least one character has been received.
+         */
+        private boolean started;
+
+        /**
+         * @param next the next step
+         */
+        LastCharStage(EscapeStage next)
+        {
+            super(next);
+        }
+
+        @Override
+        public void append(char c)
+        {
+            if (this.started) {
+                this.next.append(this.last);
+            }
+            this.last = c;
+            this.started = true;
+        }
+
+        @Override
+        public void end()
+        {
+            if (this.started) {
+                this.next.append('~');
+                this.next.append(this.last);
+                this.started = false;
+            }
+            super.end();
         }
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki20;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.parser.IncrementalParser;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.PrintRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link XWiki20IncrementalParser}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XWiki20IncrementalParserTest extends AbstractComponentTestCase
+{
+    private static final String SOURCE = "= Title =\n\nfirst **paragraph**\n\n{{code}}\ncode\n\nmore code\n{{/code}}\n\n"
+        + "(((\ngroup\n\nparagraph in group\n)))\n\nlast paragraph";
+
+    private IncrementalParser parser;
+
+    private Parser fullParser;
+
+    private PrintRendererFactory eventRendererFactory;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.parser = getComponentManager().getInstance(IncrementalParser.class, "xwiki/2.0");
+        this.fullParser = getComponentManager().getInstance(Parser.class, "xwiki/2.0");
+        this.eventRendererFactory = getComponentManager().getInstance(PrintRendererFactory.class, "event/1.0");
+    }
+
+    @Test
+    public void parseSplitsTopLevelChunks() throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader(SOURCE));
+
+        List<Block> chunks = getChunks(xdom);
+        Assert.assertEquals(5, chunks.size());
+        assertChunk(chunks.get(0), 0, "= Title =\n\n");
+        assertChunk(chunks.get(1), 11, "first **paragraph**\n\n");
+        assertChunk(chunks.get(2), 32, "{{code}}\ncode\n\nmore code\n{{/code}}\n\n");
+        assertChunk(chunks.get(3), 68, "(((\ngroup\n\nparagraph in group\n)))\n\n");
+        assertChunk(chunks.get(4), 103, "last paragraph");
+        Assert.assertEquals("HTitle", ((HeaderBlock) chunks.get(0).getChildren().get(0)).getId());
+        // The content following the header is in its section
+        Assert.assertEquals(1, xdom.getChildren().size());
+        Assert.assertTrue(xdom.getChildren().get(0) instanceof SectionBlock);
+        Assert.assertEquals(chunks, xdom.getChildren().get(0).getChildren());
+    }
+
+    @Test
+    public void parseNestsSections() throws Exception
+    {
+        String source = "before\n\n= A =\n\nparagraph\n=== C ===\ntext\n\n== B ==\n\nmore\n\n= D =";
+        XDOM xdom = assertParse(source);
+        List<Block> chunks = getChunks(xdom);
+        Assert.assertEquals(7, chunks.size());
+        assertChunk(chunks.get(3), 25, "=== C ===\ntext\n\n");
+        Assert.assertEquals(3, xdom.getChildren().size());
+
+        // Adding a header in the middle of the text
+        assertEdit(xdom, source.indexOf("more"), 0, "== E ==\n");
+
+        // Starting with a sub level
+        assertParse("== A ==\n\n==== B ====\n\n= C =");
+    }
+
+    @Test
+    public void parseSeveralEmptyLinesBetweenChunks() throws Exception
+    {
+        XDOM xdom = assertParse("a\n\n\n\nb");
+        assertChunk(getChunks(xdom).get(0), 0, "a\n\n\n\n");
+
+        assertParse("a\n\n\nb");
+        assertParse("= A =\n\n\n\n== B ==\n\n\n\n\ntext\n\n\n");
+        assertParse("{{code}}\ncode\n{{/code}}\n\n\n(((\ngroup\n\n\n\ninside\n)))\n\n\n\n\n\nend");
+        assertParse("a\r\n\r\n\r\n\r\nb");
+
+        // Adding and removing empty lines between chunks
+        // "a\n\n\n\n\n\nb"
+        xdom = assertEdit(xdom, 2, 0, "\n\n");
+        // "a\n\n\nb"
+        xdom = assertEdit(xdom, 2, 3, "");
+        // "a\n\n\nb\n\n\nc\n\n"
+        xdom = assertEdit(xdom, 5, 0, "\n\n\nc\n\n");
+        // "a\n\n\nb\n\nc\n\n"
+        assertEdit(xdom, 6, 1, "");
+    }
+
+    @Test
+    public void parseEditInsideChunk() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        XDOM xdom = assertEdit(previous, SOURCE.indexOf("more"), "more".length(), "other");
+
+        List<Block> chunks = getChunks(xdom);
+        Assert.assertEquals(5, chunks.size());
+        assertChunk(chunks.get(2), 32, "{{code}}\ncode\n\nother code\n{{/code}}\n\n");
+        assertChunk(chunks.get(4), 104, "last paragraph");
+        // The previous XDOM is left untouched
+        assertChunk(getChunks(previous).get(4), 103, "last paragraph");
+        // The id generator is copied so that generating ids for one XDOM doesn't affect the other
+        Assert.assertNotSame(previous.getIdGenerator(), xdom.getIdGenerator());
+        Assert.assertEquals("HTitle-1", xdom.getIdGenerator().generateUniqueId("H", "Title"));
+        Assert.assertEquals("HTitle-1", previous.getIdGenerator().generateUniqueId("H", "Title"));
+    }
+
+    @Test
+    public void parseEditMergingChunks() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        XDOM xdom = assertEdit(previous, SOURCE.indexOf("\n\nlast"), 2, " ");
+
+        Assert.assertEquals(4, getChunks(xdom).size());
+    }
+
+    @Test
+    public void parseEditOpeningMacro() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        // The macro now includes all the following content
+        XDOM xdom = assertEdit(previous, SOURCE.indexOf("first"), 0, "{{info}}");
+
+        Assert.assertEquals(2, getChunks(xdom).size());
+
+        // And is closed again
+        assertEdit(xdom, SOURCE.indexOf("first"), "{{info}}".length(), "");
+    }
+
+    @Test
+    public void parseEditAddingHeader() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        XDOM xdom = assertEdit(previous, 0, 0, "= Title =\n\n");
+
+        List<HeaderBlock> headers = xdom.getBlocks(new ClassBlockMatcher(HeaderBlock.class), Block.Axes.DESCENDANT);
+        Assert.assertEquals("HTitle", headers.get(0).getId());
+        Assert.assertEquals("HTitle-1", headers.get(1).getId());
+        Assert.assertNotSame(previous.getIdGenerator(), xdom.getIdGenerator());
+    }
+
+    @Test
+    public void parseEditAtEnd() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        XDOM xdom = assertEdit(previous, SOURCE.length(), 0, "\n\nnew paragraph");
+
+        List<Block> chunks = getChunks(xdom);
+        Assert.assertEquals(6, chunks.size());
+        Assert.assertTrue(chunks.get(5).getChildren().get(0) instanceof ParagraphBlock);
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseEditWithXDOMNotGeneratedByIncrementalParser() throws Exception
+    {
+        this.parser.parse(new XDOM(Collections.<Block> singletonList(new ParagraphBlock(
+            Collections.<Block> emptyList()))), 0, 0, "text");
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseEditOutsideOfSource() throws Exception
+    {
+        XDOM previous = this.parser.parse(new StringReader(SOURCE));
+
+        this.parser.parse(previous, SOURCE.length(), 1, "text");
+    }
+
+    /**
+     * Parses the source and verifies the result is the same as with the XWiki Syntax 2.0 parser, the chunks being
+     * ignored.
+     */
+    private XDOM assertParse(String source) throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader(source));
+
+        XDOM expected = this.fullParser.parse(new StringReader(source));
+        Assert.assertEquals(render(expected.getChildren()), render(getChunkContents(xdom)));
+
+        return xdom;
+    }
+
+    /**
+     * Applies an edit and verifies the result is the same as parsing the edited source with the XWiki Syntax 2.0
+     * parser, the chunks being ignored.
+     */
+    private XDOM assertEdit(XDOM previous, int offset, int removedLength, String insertedText) throws Exception
+    {
+        StringBuilder source = new StringBuilder();
+        for (Block chunk : getChunks(previous)) {
+            source.append(((MetaDataBlock) chunk).getMetaData().getMetaData(IncrementalParser.SOURCE_TEXT));
+        }
+        source.replace(offset, offset + removedLength, insertedText);
+
+        XDOM xdom = this.parser.parse(previous, offset, removedLength, insertedText);
+
+        XDOM expected = this.fullParser.parse(new StringReader(source.toString()));
+        Assert.assertEquals(render(expected.getChildren()), render(getChunkContents(xdom)));
+
+        return xdom;
+    }
+
+    private void assertChunk(Block block, int offset, String text)
+    {
+        MetaDataBlock chunk = (MetaDataBlock) block;
+        Assert.assertEquals(offset, chunk.getMetaData().getMetaData(IncrementalParser.SOURCE_OFFSET));
+        Assert.assertEquals(text, chunk.getMetaData().getMetaData(IncrementalParser.SOURCE_TEXT));
+    }
+
+    /**
+     * @return the chunks of the XDOM, in document order
+     */
+    private List<Block> getChunks(Block block)
+    {
+        List<Block> chunks = new ArrayList<Block>();
+        for (Block child : block.getChildren()) {
+            if (child instanceof SectionBlock) {
+                chunks.addAll(getChunks(child));
+            } else {
+                chunks.add(child);
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * @return the top level blocks of the XDOM with the chunks replaced by their content
+     */
+    private List<Block> getChunkContents(XDOM xdom)
+    {
+        XDOM contents = xdom.clone();
+        for (Block chunk : getChunks(contents)) {
+            chunk.getParent().replaceChild(chunk.getChildren(), chunk);
+        }
+
+        return contents.getChildren();
+    }
+
+    private String render(List<Block> blocks)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        PrintRenderer renderer = this.eventRendererFactory.createRenderer(printer);
+        for (Block block : blocks) {
+            block.traverse(renderer);
+        }
+
+        return printer.toString();
+    }
+}
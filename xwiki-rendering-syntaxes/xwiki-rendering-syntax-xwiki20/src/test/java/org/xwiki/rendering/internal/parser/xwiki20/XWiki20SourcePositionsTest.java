@@ -0,0 +1,193 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki20;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.parser.SourcePositionParser;
+import org.xwiki.rendering.util.SourcePositions;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Verifies the positions of the blocks in the source recorded by {@link XWiki20Parser}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XWiki20SourcePositionsTest extends AbstractComponentTestCase
+{
+    private SourcePositionParser parser;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.parser = (SourcePositionParser) getComponentManager().getInstance(Parser.class, "xwiki/2.0");
+    }
+
+    @Test
+    public void parseWithoutTrackingPositions() throws Exception
+    {
+        Assert.assertNull(this.parser.parse(new StringReader("Hello")).getSourcePositions());
+        Assert.assertNull(this.parser.parse(new StringReader("Hello"), false).getSourcePositions());
+    }
+
+    @Test
+    public void parseParagraphs() throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader("Hello\n\nWorld"), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        assertPosition(0, 12, xdom, positions);
+        Block paragraph = xdom.getChildren().get(0);
+        assertPosition(0, 5, paragraph, positions);
+        assertPosition(0, 5, paragraph.getChildren().get(0), positions);
+        assertPosition(7, 12, xdom.getChildren().get(1), positions);
+        assertPosition(7, 12, xdom.getChildren().get(1).getChildren().get(0), positions);
+
+        // Cloned blocks have no position
+        Assert.assertEquals(SourcePositions.UNKNOWN, positions.getBegin(paragraph.clone()));
+    }
+
+    @Test
+    public void parseInlineFormatting() throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader("a **bold** c **d**//e//"), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        List<Block> blocks = xdom.getChildren().get(0).getChildren();
+        // a, space, bold, space, c, space, d, e
+        assertPosition(0, 1, blocks.get(0), positions);
+        assertPosition(1, 2, blocks.get(1), positions);
+        assertPosition(2, 10, blocks.get(2), positions);
+        assertPosition(4, 8, blocks.get(2).getChildren().get(0), positions);
+        assertPosition(10, 11, blocks.get(3), positions);
+        assertPosition(11, 12, blocks.get(4), positions);
+        assertPosition(12, 13, blocks.get(5), positions);
+        assertPosition(13, 18, blocks.get(6), positions);
+        assertPosition(15, 16, blocks.get(6).getChildren().get(0), positions);
+        assertPosition(18, 23, blocks.get(7), positions);
+        assertPosition(20, 21, blocks.get(7).getChildren().get(0), positions);
+    }
+
+    @Test
+    public void parseLinksAndMacros() throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader("x [[label>>Page]] {{m/}} {{m}}c{{/m}} ~* {{{v}}}"), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        List<Block> blocks = xdom.getChildren().get(0).getChildren();
+        Assert.assertTrue(blocks.get(2) instanceof LinkBlock);
+        assertPosition(2, 17, blocks.get(2), positions);
+        // The label is parsed separately, its content is located at the whole link
+        assertPosition(2, 17, blocks.get(2).getChildren().get(0), positions);
+        assertPosition(17, 18, blocks.get(3), positions);
+        Assert.assertTrue(blocks.get(4) instanceof MacroBlock);
+        assertPosition(18, 24, blocks.get(4), positions);
+        assertPosition(25, 37, blocks.get(6), positions);
+        // Escaped character
+        assertPosition(38, 40, blocks.get(8), positions);
+        // Verbatim
+        assertPosition(41, 48, blocks.get(10), positions);
+    }
+
+    @Test
+    public void parseHeaders() throws Exception
+    {
+        String source = "= Title **x** =\n\n{{m}}\nc\n{{/m}}\n\npara";
+        XDOM xdom = this.parser.parse(new StringReader(source), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        Block section = xdom.getFirstBlock(new ClassBlockMatcher(SectionBlock.class), Block.Axes.DESCENDANT);
+        assertPosition(0, source.length(), section, positions);
+
+        // The header content is buffered until the header ends, to generate the header id
+        HeaderBlock header = (HeaderBlock) section.getChildren().get(0);
+        assertPosition(0, 15, header, positions);
+        assertPosition(2, 7, header.getChildren().get(0), positions);
+        assertPosition(7, 8, header.getChildren().get(1), positions);
+        assertPosition(8, 13, header.getChildren().get(2), positions);
+        assertPosition(10, 11, header.getChildren().get(2).getChildren().get(0), positions);
+
+        Block macro = section.getChildren().get(1);
+        Assert.assertTrue(macro instanceof MacroBlock);
+        assertPosition(17, 31, macro, positions);
+        assertPosition(33, 37, section.getChildren().get(2), positions);
+    }
+
+    @Test
+    public void parseListsAndTables() throws Exception
+    {
+        XDOM xdom = this.parser.parse(new StringReader("* item\n* two\n\n|a|b\n|c|d"), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        Block list = xdom.getChildren().get(0);
+        assertPosition(0, 12, list, positions);
+        assertPosition(0, 6, list.getChildren().get(0), positions);
+        assertPosition(7, 12, list.getChildren().get(1), positions);
+
+        Block table = xdom.getChildren().get(1);
+        assertPosition(14, 23, table, positions);
+        assertPosition(14, 18, table.getChildren().get(0), positions);
+        assertPosition(14, 16, table.getChildren().get(0).getChildren().get(0), positions);
+        assertPosition(16, 18, table.getChildren().get(0).getChildren().get(1), positions);
+        assertPosition(19, 23, table.getChildren().get(1), positions);
+    }
+
+    @Test
+    public void parseWithTabulationsAndWindowsNewLines() throws Exception
+    {
+        String source = "a\tb\r\n\r\n= Title =\r\n\r\n\t\tc";
+        XDOM xdom = this.parser.parse(new StringReader(source), true);
+        SourcePositions positions = xdom.getSourcePositions();
+
+        List<Block> blocks = xdom.getChildren().get(0).getChildren();
+        assertPosition(1, 2, blocks.get(1), positions);
+        assertPosition(2, 3, blocks.get(2), positions);
+
+        HeaderBlock header = xdom.getFirstBlock(new ClassBlockMatcher(HeaderBlock.class), Block.Axes.DESCENDANT);
+        assertPosition(7, 16, header, positions);
+
+        List<ParagraphBlock> paragraphs =
+            xdom.getBlocks(new ClassBlockMatcher(ParagraphBlock.class), Block.Axes.DESCENDANT);
+        List<Block> lastBlocks = paragraphs.get(paragraphs.size() - 1).getChildren();
+        // One space per white space character
+        assertPosition(20, 21, lastBlocks.get(0), positions);
+        assertPosition(21, 22, lastBlocks.get(1), positions);
+        assertPosition(22, 23, lastBlocks.get(lastBlocks.size() - 1), positions);
+    }
+
+    private void assertPosition(int begin, int end, Block block, SourcePositions positions)
+    {
+        Assert.assertEquals("Wrong begin of " + block, begin, positions.getBegin(block));
+        Assert.assertEquals("Wrong end of " + block, end, positions.getEnd(block));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.renderer.xwiki20;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link XWikiSyntaxEscapeHandler}. The escaping is compared to a reference implementation applying
+ * the escaping rules one after the other on the whole text, which is the way the text was escaped before the rules
+ * were applied in a single scan.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XWikiSyntaxEscapeHandlerTest
+{
+    private static final Pattern LIST_PATTERN = Pattern
+        .compile("\\p{Blank}*((\\*+[:;]*)|([1*]+\\.[:;]*)|([:;]+))\\p{Blank}+");
+
+    private static final Pattern QUOTE_PATTERN = Pattern.compile("(\\>+)");
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile("\\p{Blank}*(=+)");
+
+    private static final Pattern TABLE_PATTERN = Pattern.compile("\\p{Blank}*(\\||!!)");
+
+    private static final Pattern DOUBLE_CHARS_PATTERN = Pattern.compile(
+        "(?<!~)\\/\\/|(?<!~)\\*\\*|(?<!~)__|(?<!~)--|(?<!~)\\^\\^|(?<!~),,|(?<!~)##|(?<!~)\\\\\\\\");
+
+    private static final String ESCAPE_CHAR = "~";
+
+    private static final String CHARACTERS = "~(%|!={}()/*_-^,#\\:[]>< \t1.;a\n";
+
+    private static final String[] SYMBOLS = new String[] {"image:", "attach:", "mailto:", "{{{", "(((", ")))", "[[",
+        "]]", ">>", "||", "!!", "(%", "**", "~~"};
+
+    private static final Pattern CUSTOM_PATTERN = Pattern.compile("\\p{Blank}*(a+|\\[\\[)");
+
+    private XWikiSyntaxEscapeHandler handler = new XWikiSyntaxEscapeHandler();
+
+    @Test
+    public void escape()
+    {
+        Assert.assertEquals("text", escape("text", false, false, false, 0, false, null));
+        Assert.assertEquals("~~ ~*~*bold~*~* ~{~{macro}}", escape("~ **bold** {{macro}}", false, false, false, 0,
+            false, null));
+        Assert.assertEquals("~* item", escape("* item", true, false, false, 0, false, null));
+        Assert.assertEquals("~|a~|b~!!", escape("|a|b!!", false, true, false, 0, false, null));
+        Assert.assertEquals("a~=b", escape("a=b", false, false, true, 0, false, null));
+        Assert.assertEquals("image~:a image:b", escape("image:a image:b", false, false, false, 0, false, null));
+        Assert.assertEquals("hello~:", escape("hello:", false, false, false, 0, true, null));
+        Assert.assertEquals("~~~~a~]~]", escape("~a]]", false, false, false, 1, false, null));
+    }
+
+    @Test
+    public void escapeLineStart()
+    {
+        Assert.assertEquals(" ~** item", escape(" ** item", true, false, false, 0, false, null));
+        Assert.assertEquals("~1*.; item", escape("1*.; item", true, false, false, 0, false, null));
+        Assert.assertEquals("~;: term", escape(";: term", true, false, false, 0, false, null));
+        Assert.assertEquals("*item", escape("*item", true, false, false, 0, false, null));
+        Assert.assertEquals("\t~== title", escape("\t== title", true, false, false, 0, false, null));
+        Assert.assertEquals(" ~!!", escape(" !!", true, false, false, 0, false, null));
+        Assert.assertEquals(" !", escape(" !", true, false, false, 0, false, null));
+        Assert.assertEquals("~>> quote", escape(">> quote", true, false, false, 0, false, null));
+        Assert.assertEquals(" > quote", escape(" > quote", true, false, false, 0, false, null));
+
+        Assert.assertEquals("~*; a", escape("*; a", false, false, false, 0, false,
+            XWikiSyntaxEscapeHandler.STARLISTEND_PATTERN));
+        Assert.assertEquals("~111. a", escape("111. a", false, false, false, 0, false,
+            XWikiSyntaxEscapeHandler.STARLISTEND_PATTERN));
+        Assert.assertEquals("1: a", escape("1: a", false, false, false, 0, false,
+            XWikiSyntaxEscapeHandler.STARLISTEND_PATTERN));
+        Assert.assertEquals(" ~aa", escape(" aa", false, false, false, 0, false, CUSTOM_PATTERN));
+    }
+
+    @Test
+    public void escapeIsSameAsApplyingRulesOneAfterTheOther()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder text = new StringBuilder();
+            // Some texts are longer than the buffers of the escaping rules.
+            int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 100 : 20);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(5) == 0) {
+                    text.append(SYMBOLS[random.nextInt(SYMBOLS.length)]);
+                } else {
+                    text.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+                }
+            }
+
+            boolean escapeLineStart = random.nextBoolean();
+            boolean inTable = random.nextBoolean();
+            boolean inHeader = random.nextBoolean();
+            int linkLevel = random.nextInt(4) - 1;
+            boolean escapeLastChar = random.nextBoolean();
+            Pattern escapeFirstIfMatching = null;
+            int pattern = random.nextInt(4);
+            if (pattern == 1) {
+                escapeFirstIfMatching = XWikiSyntaxEscapeHandler.STARLISTEND_PATTERN;
+            } else if (pattern == 2) {
+                escapeFirstIfMatching = CUSTOM_PATTERN;
+            }
+
+            Assert.assertEquals("Wrong escaping for [" + text + "]",
+                escapeWithReference(text.toString(), escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar,
+                    escapeFirstIfMatching),
+                escape(text.toString(), escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar,
+                    escapeFirstIfMatching));
+        }
+    }
+
+    private String escape(String text, boolean escapeLineStart, boolean inTable, boolean inHeader, int linkLevel,
+        boolean escapeLastChar, Pattern escapeFirstIfMatching)
+    {
+        StringBuffer buffer = new StringBuffer(text);
+        this.handler.escape(buffer, escapeLineStart, inTable, inHeader, linkLevel, escapeLastChar,
+            escapeFirstIfMatching);
+        return buffer.toString();
+    }
+
+    private String escapeWithReference(String text, boolean escapeLineStart, boolean inTable, boolean inHeader,
+        int linkLevel, boolean escapeLastChar, Pattern escapeFirstIfMatching)
+    {
+        StringBuffer accumulatedBuffer = new StringBuffer(text);
+
+        replaceAll(accumulatedBuffer, ESCAPE_CHAR, ESCAPE_CHAR + ESCAPE_CHAR);
+        replaceAll(accumulatedBuffer, "(%", ESCAPE_CHAR + "(%");
+
+        if (escapeLineStart) {
+            escapeFirstMatchedCharacter(LIST_PATTERN, accumulatedBuffer);
+            escapeFirstMatchedCharacter(HEADER_PATTERN, accumulatedBuffer);
+            escapeFirstMatchedCharacter(TABLE_PATTERN, accumulatedBuffer);
+            escapeFirstMatchedCharacter(QUOTE_PATTERN, accumulatedBuffer);
+        }
+
+        if (inTable) {
+            replaceAll(accumulatedBuffer, "|", ESCAPE_CHAR + "|");
+            replaceAll(accumulatedBuffer, "!!", ESCAPE_CHAR + "!!");
+        }
+
+        if (escapeFirstIfMatching != null) {
+            escapeFirstMatchedCharacter(escapeFirstIfMatching, accumulatedBuffer);
+        }
+
+        if (inHeader) {
+            replaceAll(accumulatedBuffer, "=", ESCAPE_CHAR + "=");
+        }
+
+        replaceAll(accumulatedBuffer, "{{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{");
+        replaceAll(accumulatedBuffer, "{{", ESCAPE_CHAR + "{" + ESCAPE_CHAR + "{");
+        replaceAll(accumulatedBuffer, "(((", ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(" + ESCAPE_CHAR + "(");
+        replaceAll(accumulatedBuffer, ")))", ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")" + ESCAPE_CHAR + ")");
+
+        Matcher matcher = DOUBLE_CHARS_PATTERN.matcher(accumulatedBuffer.toString());
+        for (int i = 0; matcher.find(); i = i + 2) {
+            accumulatedBuffer.replace(matcher.start() + i, matcher.end() + i, ESCAPE_CHAR + matcher.group().charAt(0)
+                + ESCAPE_CHAR + matcher.group().charAt(1));
+        }
+
+        escapeURI(accumulatedBuffer, "image:");
+        escapeURI(accumulatedBuffer, "attach:");
+        escapeURI(accumulatedBuffer, "mailto:");
+
+        if (escapeLastChar) {
+            accumulatedBuffer.insert(accumulatedBuffer.length() - 1, '~');
+        }
+
+        replaceAll(accumulatedBuffer, "[[", ESCAPE_CHAR + "[" + ESCAPE_CHAR + "[");
+
+        if (linkLevel > 0) {
+            String escape = StringUtils.repeat(ESCAPE_CHAR, linkLevel);
+            replaceAll(accumulatedBuffer, ESCAPE_CHAR, escape + ESCAPE_CHAR);
+            replaceAll(accumulatedBuffer, "]]", escape + "]" + escape + "]");
+            replaceAll(accumulatedBuffer, ">>", escape + ">" + escape + ">");
+            replaceAll(accumulatedBuffer, "||", escape + "|" + escape + "|");
+        }
+
+        return accumulatedBuffer.toString();
+    }
+
+    private void escapeURI(StringBuffer accumulatedBuffer, String match)
+    {
+        int pos = accumulatedBuffer.indexOf(match);
+        if (pos > -1) {
+            accumulatedBuffer.insert(pos + match.length() - 1, '~');
+        }
+    }
+
+    private void replaceAll(StringBuffer accumulatedBuffer, String match, String replacement)
+    {
+        int pos = -replacement.length();
+        while ((pos + replacement.length() < accumulatedBuffer.length())
+            && ((pos = accumulatedBuffer.indexOf(match, pos + replacement.length())) != -1)) {
+            accumulatedBuffer.replace(pos, pos + match.length(), replacement);
+        }
+    }
+
+    private void escapeFirstMatchedCharacter(Pattern pattern, StringBuffer accumulatedBuffer)
+    {
+        Matcher matcher = pattern.matcher(accumulatedBuffer);
+        if (matcher.lookingAt()) {
+            accumulatedBuffer.replace(matcher.start(1), matcher.start(1) + 1, ESCAPE_CHAR + matcher.group(1).charAt(0));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.parser.xwiki21;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.internal.parser.wikimodel.WikiModelStreamParser;
+import org.xwiki.rendering.internal.parser.xwiki20.AbstractXWikiIncrementalParser;
+import org.xwiki.rendering.parser.IncrementalParser;
+import org.xwiki.rendering.parser.Parser;
+
+/**
+ * Incremental parser for XWiki Syntax 2.1.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component(roles = IncrementalParser.class)
+@Named("xwiki/2.1")
+@Singleton
+public class XWiki21IncrementalParser extends AbstractXWikiIncrementalParser
+{
+    /**
+     * The parser used to parse each chunk of the source.
+     */
+    @Inject
+    @Named("xwiki/2.1")
+    private Parser parser;
+
+    @Override
+    protected WikiModelStreamParser getWikiModelParser()
+    {
+        return (WikiModelStreamParser) this.parser;
+    }
+}
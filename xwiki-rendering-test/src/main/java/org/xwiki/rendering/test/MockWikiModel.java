@@ -19,6 +19,8 @@
  */
 package org.xwiki.rendering.test;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 
 import org.xwiki.component.descriptor.ComponentDescriptor;
@@ -26,6 +28,7 @@
 import org.xwiki.rendering.listener.reference.AttachmentResourceReference;
 import org.xwiki.rendering.listener.reference.DocumentResourceReference;
 import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.wiki.BatchWikiModel;
 import org.xwiki.rendering.wiki.WikiModel;
 
 /**
@@ -34,7 +37,7 @@
  * @version $Id$
  * @since 2.0M1
  */
-public class MockWikiModel implements WikiModel
+public class MockWikiModel implements BatchWikiModel
 {
     /**
      * Question Mark symbol.
@@ -93,4 +96,14 @@ public boolean isDocumentAvailable(ResourceReference documentReference)
     {
         return "Space.ExistingPage".equals(documentReference.getReference());
     }
+
+    @Override
+    public Map<ResourceReference, Boolean> areDocumentsAvailable(Collection<ResourceReference> documentReferences)
+    {
+        Map<ResourceReference, Boolean> result = new HashMap<ResourceReference, Boolean>();
+        for (ResourceReference documentReference : documentReferences) {
+            result.put(documentReference, isDocumentAvailable(documentReference));
+        }
+        return result;
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.icon;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.SpecialSymbolBlock;
+import org.xwiki.rendering.block.WordBlock;
+
+/**
+ * Aho-Corasick automaton built from the icon mappings. The alphabet is made of inline tokens: the text of a
+ * {@link WordBlock}, the character of a {@link SpecialSymbolBlock} and {@link SpaceBlock}. Once compiled, the automaton
+ * finds all the icon symbols of a list of sibling blocks in a single pass, whatever the number of mappings.
+ * <p>
+ * The automaton must not be modified once {@link #compile()} has been called; it can then be used by several threads
+ * at the same time.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class IconAutomaton
+{
+    /**
+     * The token used for all the spaces.
+     */
+    private static final Object SPACE = new Object();
+
+    /**
+     * A state of the automaton.
+     */
+    public static final class State
+    {
+        /**
+         * The next states, indexed by token.
+         */
+        private final Map<Object, State> transitions = new HashMap<Object, State>();
+
+        /**
+         * The number of tokens needed to reach this state from the root state.
+         */
+        private final int depth;
+
+        /**
+         * The state to fallback to when there's no transition for a token, i.e. the state matching the longest proper
+         * suffix of this state.
+         */
+        private State failure;
+
+        /**
+         * The name of the icon matched when reaching this state, either because this state ends a mapping or because
+         * one of its suffixes does, or null if there's none.
+         */
+        private String iconName;
+
+        /**
+         * The number of tokens of the symbol of the matched icon.
+         */
+        private int matchLength;
+
+        /**
+         * @param depth the number of tokens needed to reach this state from the root state
+         */
+        private State(int depth)
+        {
+            this.depth = depth;
+        }
+
+        /**
+         * @return the name of the icon matched when reaching this state or null if there's none
+         */
+        public String getIconName()
+        {
+            return this.iconName;
+        }
+
+        /**
+         * @return the number of blocks (ending with the last one) forming the matched icon symbol
+         */
+        public int getMatchLength()
+        {
+            return this.matchLength;
+        }
+    }
+
+    /**
+     * The initial state.
+     */
+    private final State root = new State(0);
+
+    /**
+     * @param block the block to convert
+     * @return the token corresponding to the passed block or null if the block can't be part of an icon symbol
+     */
+    private static Object getToken(Block block)
+    {
+        Object token;
+        if (block instanceof WordBlock) {
+            token = ((WordBlock) block).getWord();
+        } else if (block instanceof SpecialSymbolBlock) {
+            token = Character.valueOf(((SpecialSymbolBlock) block).getSymbol());
+        } else if (block instanceof SpaceBlock) {
+            token = SPACE;
+        } else {
+            token = null;
+        }
+
+        return token;
+    }
+
+    /**
+     * Adds a mapping to the automaton. Should be called before {@link #compile()}.
+     *
+     * @param symbolBlocks the blocks forming the icon symbol
+     * @param iconName the name of the icon to display when the symbol is found
+     * @return false if the symbol contains a block that can't be matched (in which case the mapping is ignored), true
+     *         otherwise
+     */
+    public boolean addMapping(List<Block> symbolBlocks, String iconName)
+    {
+        boolean added = false;
+
+        Object[] tokens = new Object[symbolBlocks.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = getToken(symbolBlocks.get(i));
+            if (tokens[i] == null) {
+                tokens = null;
+                break;
+            }
+        }
+
+        if (tokens != null && tokens.length > 0) {
+            State state = this.root;
+            for (Object token : tokens) {
+                State next = state.transitions.get(token);
+                if (next == null) {
+                    next = new State(state.depth + 1);
+                    state.transitions.put(token, next);
+                }
+                state = next;
+            }
+            state.iconName = iconName;
+            state.matchLength = state.depth;
+            added = true;
+        }
+
+        return added;
+    }
+
+    /**
+     * Computes the failure transitions. Should be called once all the mappings have been added.
+     */
+    public void compile()
+    {
+        Queue<State> queue = new LinkedList<State>();
+        for (State child : this.root.transitions.values()) {
+            child.failure = this.root;
+            queue.add(child);
+        }
+
+        // Breadth first so that the failure state of a state is always computed before the state itself
+        while (!queue.isEmpty()) {
+            State state = queue.remove();
+            for (Map.Entry<Object, State> entry : state.transitions.entrySet()) {
+                State child = entry.getValue();
+                child.failure = next(state.failure, entry.getKey());
+                if (child.iconName == null) {
+                    child.iconName = child.failure.iconName;
+                    child.matchLength = child.failure.matchLength;
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return true if no mapping has been added
+     */
+    public boolean isEmpty()
+    {
+        return this.root.transitions.isEmpty();
+    }
+
+    /**
+     * @return the initial state, to use when starting a new list of blocks or after a match
+     */
+    public State getRoot()
+    {
+        return this.root;
+    }
+
+    /**
+     * @param state the current state
+     * @param block the next block
+     * @return the new state
+     */
+    public State next(State state, Block block)
+    {
+        Object token = getToken(block);
+
+        return token != null ? next(state, token) : this.root;
+    }
+
+    /**
+     * @param state the current state
+     * @param token the next token
+     * @return the new state
+     */
+    private State next(State state, Object token)
+    {
+        State current = state;
+        State next = current.transitions.get(token);
+        while (next == null && current != this.root) {
+            current = current.failure;
+            next = current.transitions.get(token);
+        }
+
+        return next != null ? next : this.root;
+    }
+}
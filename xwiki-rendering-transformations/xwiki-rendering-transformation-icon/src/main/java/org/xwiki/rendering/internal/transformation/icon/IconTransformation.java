@@ -25,18 +25,15 @@
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.ImageBlock;
-import org.xwiki.rendering.block.WordBlock;
-import org.xwiki.rendering.block.SpecialSymbolBlock;
 import org.xwiki.rendering.block.XDOM;
-import org.xwiki.rendering.internal.block.ProtectedBlockFilter;
 import org.xwiki.rendering.listener.reference.ResourceReference;
 import org.xwiki.rendering.listener.reference.ResourceType;
 import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.parser.Parser;
-import org.xwiki.rendering.transformation.AbstractTransformation;
 import org.xwiki.rendering.transformation.TransformationContext;
-import org.xwiki.rendering.transformation.TransformationException;
 import org.xwiki.rendering.transformation.icon.IconTransformationConfiguration;
+import org.xwiki.rendering.transformation.inline.AbstractInlineTextRewritingTransformation;
+import org.xwiki.rendering.transformation.inline.InlineTextMatcher;
 import org.xwiki.rendering.util.ParserUtils;
 
 import java.io.StringReader;
@@ -58,8 +55,53 @@
 @Component
 @Named("icon")
 @Singleton
-public class IconTransformation extends AbstractTransformation implements Initializable
+public class IconTransformation extends AbstractInlineTextRewritingTransformation implements Initializable
 {
+    /**
+     * Matches the suites of blocks representing icons, using the automaton compiled from the mappings.
+     */
+    private static final class IconMatcher implements InlineTextMatcher
+    {
+        /**
+         * The automaton used to find the icon symbols.
+         */
+        private final IconAutomaton automaton;
+
+        /**
+         * The current state in the automaton.
+         */
+        private IconAutomaton.State state;
+
+        /**
+         * @param automaton the automaton used to find the icon symbols
+         */
+        IconMatcher(IconAutomaton automaton)
+        {
+            this.automaton = automaton;
+            this.state = automaton.getRoot();
+        }
+
+        @Override
+        public void reset()
+        {
+            this.state = this.automaton.getRoot();
+        }
+
+        @Override
+        public int next(Block block)
+        {
+            this.state = this.automaton.next(this.state, block);
+            return this.state.getIconName() != null ? this.state.getMatchLength() : 0;
+        }
+
+        @Override
+        public List<Block> getReplacement(List<Block> blocks)
+        {
+            return Collections.<Block>singletonList(new ImageBlock(new ResourceReference(this.state.getIconName(),
+                ResourceType.ICON), true));
+        }
+    }
+
     /**
      * Used to get the icon mapping information (suite of characters mapped to an icon name).
      */
@@ -67,7 +109,7 @@ public class IconTransformation extends AbstractTransformation implements Initia
     private IconTransformationConfiguration configuration;
 
     /**
-     * Used to parse the mapping suite of characters into a XDOM tree for fast matching.
+     * Used to parse the mapping suite of characters into blocks for fast matching.
      */
     @Inject
     @Named("plain/1.0")
@@ -85,19 +127,14 @@ public class IconTransformation extends AbstractTransformation implements Initia
     private ParserUtils parserUtils = new ParserUtils();
 
     /**
-     * The computed tree used to perform the fast mapping.
-     */
-    private XDOM mappingTree;
-
-    /**
-     * Used to filter protected blocks (code macro marker block, etc).
+     * The automaton compiled from the mappings and used to find the icon symbols.
      */
-    private ProtectedBlockFilter filter = new ProtectedBlockFilter();
+    private IconAutomaton automaton;
 
     @Override
     public void initialize() throws InitializationException
     {
-        this.mappingTree = new XDOM(Collections.<Block>emptyList());
+        IconAutomaton iconAutomaton = new IconAutomaton();
 
         // Transform mappings into Blocks
         for (Map.Entry<Object, Object> entry : this.configuration.getMappings().entrySet()) {
@@ -105,157 +142,23 @@ public void initialize() throws InitializationException
                 XDOM xdom = this.plainTextParser.parse(new StringReader((String) entry.getKey()));
                 // Remove top level paragraph
                 this.parserUtils.removeTopLevelParagraph(xdom.getChildren());
-                mergeTree(this.mappingTree, convertToDeepTree(xdom, (String) entry.getValue()));
+                if (!iconAutomaton.addMapping(xdom.getChildren(), (String) entry.getValue())) {
+                    this.logger.warn("Unsupported icon symbols [" + entry.getKey() + "]. Only words, spaces and "
+                        + "special symbols are supported.");
+                }
             } catch (ParseException e) {
                 this.logger.warn("Failed to parse icon symbols [" + entry.getKey() + "]. Reason = ["
                     + e.getMessage() + "]");
             }
         }
-    }
-
-    @Override
-    public void transform(Block source, TransformationContext context) throws TransformationException
-    {
-        List<Block> filteredBlocks = this.filter.filter(source.getChildren());
-        if (!this.mappingTree.getChildren().isEmpty() && !filteredBlocks.isEmpty()) {
-            parseTree(filteredBlocks);
-        }
-    }
 
-    /**
-     * Converts a standard XDOM tree into a deep tree: sibling are transformed into parent/child relationships and
-     * the leaf node is an Image node referencing the passed icon name.
-     *
-     * @param sourceTree the source tree to modify
-     * @param iconName the name of the icon to display when a match is found
-     * @return the modified tree
-     */
-    private Block convertToDeepTree(Block sourceTree, String iconName)
-    {
-        XDOM targetTree = new XDOM(Collections.<Block>emptyList());
-        Block pointer = targetTree;
-        for (Block block : sourceTree.getChildren()) {
-            pointer.addChild(block);
-            pointer = block;
-        }
-        // Add an image block as the last block
-        pointer.addChild(new ImageBlock(new ResourceReference(iconName, ResourceType.ICON), true));
-        return targetTree;
+        iconAutomaton.compile();
+        this.automaton = iconAutomaton;
     }
 
-    /**
-     * Merged two XDOM trees.
-     *
-     * @param targetTree the tree to merge into
-     * @param sourceTree the tree to merge
-     */
-    private void mergeTree(Block targetTree, Block sourceTree)
-    {
-        for (Block block : sourceTree.getChildren()) {
-            // Check if the current block exists in the target tree at the same place in the tree
-            int pos = indexOf(targetTree.getChildren(), block);
-            if (pos > -1) {
-                Block foundBlock = targetTree.getChildren().get(pos);
-                mergeTree(foundBlock, block);
-            } else {
-                targetTree.addChild(block);
-            }
-        }
-    }
-
-    /**
-     * Shallow indexOf implementation that only compares nodes based on their data and not their children data.
-     *
-     * @param targetBlocks the list of blocks to look into
-     * @param block the block to look for in the list of passed blocks
-     * @return the position of the block in the list of target blocks  and -1 if not found
-     */
-    private int indexOf(List<Block> targetBlocks, Block block)
-    {
-        int pos = 0;
-        for (Block targetBlock : targetBlocks) {
-            // Test a non deep equality
-            if (blockEquals(targetBlock, block)) {
-                return pos;
-            }
-            pos++;
-        }
-        return -1;
-    }
-
-    /**
-     * Compares two nodes in a shallow manner (children data are not compared).
-     *
-     * @param target the target node to compare
-     * @param source the source node to compare
-     * @return true if the two blocks are equals in a shallow manner (children data are not compared)
-     */
-    private boolean blockEquals(Block target, Block source)
-    {
-        boolean found = false;
-        if (source instanceof SpecialSymbolBlock && target instanceof SpecialSymbolBlock) {
-            if (((SpecialSymbolBlock) target).getSymbol() == ((SpecialSymbolBlock) source).getSymbol()) {
-                found = true;
-            }
-        } else if (source instanceof WordBlock && target instanceof WordBlock) {
-            if (((WordBlock) target).getWord().equals(((WordBlock) source).getWord())) {
-                found = true;
-            }
-        } else if (source.equals(target)) {
-            found = true;
-        }
-        return found;
-    }
-
-    /**
-     * Parse a list of blocks and replace suite of Blocks matching the icon mapping definitions by image blocks.
-     *
-     * @param sourceBlocks the blocks to parse
-     */
-    private void parseTree(List<Block> sourceBlocks)
+    @Override
+    public InlineTextMatcher createMatcher(TransformationContext context)
     {
-        Block matchStartBlock = null;
-        int count = 0;
-        Block mappingCursor = this.mappingTree.getChildren().get(0);
-        Block sourceBlock = sourceBlocks.get(0);
-        while (sourceBlock != null) {
-            while (mappingCursor != null) {
-                if (blockEquals(sourceBlock, mappingCursor)) {
-                    if (matchStartBlock == null) {
-                        matchStartBlock = sourceBlock;
-                    }
-                    count++;
-                    mappingCursor = mappingCursor.getChildren().get(0);
-                    // If we reach the Image Block then we've found a match!
-                    if (mappingCursor instanceof ImageBlock) {
-                        // Replace the first source block with the image block and remove all other blocks...
-                        for (int i = 0; i < count - 1; i++) {
-                            matchStartBlock.getParent().removeBlock(matchStartBlock.getNextSibling());
-                        }
-                        sourceBlock = mappingCursor.clone();
-                        matchStartBlock.getParent().replaceChild(sourceBlock, matchStartBlock);
-                        mappingCursor = null;
-                        matchStartBlock = null;
-                        count = 0;
-                    } else {
-                        // Look for next block match
-                        break;
-                    }
-                } else {
-                    mappingCursor = mappingCursor.getNextSibling();
-                }
-            }
-            // Look for a match in children of the source block
-            List<Block> filteredSourceBlocks = this.filter.filter(sourceBlock.getChildren());
-            if (filteredSourceBlocks.size() > 0) {
-                parseTree(filteredSourceBlocks);
-            } else if (mappingCursor == null) {
-                // No match has been found, reset state variables
-                mappingCursor = this.mappingTree.getChildren().get(0);
-                count = 0;
-                matchStartBlock = null;
-            }
-            sourceBlock = this.filter.getNextSibling(sourceBlock);
-        }
+        return this.automaton.isEmpty() ? null : new IconMatcher(this.automaton);
     }
 }
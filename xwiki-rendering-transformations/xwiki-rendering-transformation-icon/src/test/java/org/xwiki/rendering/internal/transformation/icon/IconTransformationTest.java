@@ -133,4 +133,29 @@ public void testTransformWhenIncompleteMatchExistsFollowedByMatch() throws Excep
         eventBlockRenderer.render(xdom, printer);
         Assert.assertEquals(expected, printer.toString());
     }
+
+    @Test
+    public void testTransformWhenMatchStartsInsideIncompleteMatchAndInFormatting() throws Exception
+    {
+        String expected = "beginDocument [[syntax]=[XWiki 2.1]]\n"
+            + "beginParagraph\n"
+            + "onSpecialSymbol [(]\n"
+            + "onImage [Typed = [true] Type = [icon] Reference = [emoticon_smile]] [true]\n"
+            + "onSpace\n"
+            + "beginFormat [BOLD]\n"
+            + "onWord [on]\n"
+            + "onImage [Typed = [true] Type = [icon] Reference = [lightbulb]] [true]\n"
+            + "endFormat [BOLD]\n"
+            + "endParagraph\n"
+            + "endDocument [[syntax]=[XWiki 2.1]]";
+
+        Parser parser = getComponentManager().getInstance(Parser.class, "xwiki/2.1");
+        XDOM xdom = parser.parse(new StringReader("(:) **on(on)**"));
+        getMockedComponent().transform(xdom, new TransformationContext());
+
+        WikiPrinter printer = new DefaultWikiPrinter();
+        BlockRenderer eventBlockRenderer = getComponentManager().getInstance(BlockRenderer.class, "event/1.0");
+        eventBlockRenderer.render(xdom, printer);
+        Assert.assertEquals(expected, printer.toString());
+    }
 }
@@ -22,18 +22,25 @@
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.rendering.transformation.linkchecker.LinkCheckerTransformationConfiguration;
 
 /**
- * Default implementation using Apache Http Client.
+ * Default implementation using Apache Http Client. Links are first checked with a {@code HEAD} request, which doesn't
+ * download the content of the target, and then with a {@code GET} request if the {@code HEAD} request failed (some
+ * sites don't support {@code HEAD} requests or answer them differently).
  *
  * @version $Id$
  * @since 3.3M1
@@ -48,6 +55,12 @@ public class DefaultHTTPChecker implements HTTPChecker, Initializable
     @Inject
     private Logger logger;
 
+    /**
+     * Used to get the maximum number of connections.
+     */
+    @Inject
+    private LinkCheckerTransformationConfiguration configuration;
+
     /**
      * The client to connect to the remote site using HTTP.
      * <p/>
@@ -59,22 +72,50 @@ public class DefaultHTTPChecker implements HTTPChecker, Initializable
     @Override
     public void initialize() throws InitializationException
     {
-        this.httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        // Make sure the connection pool doesn't make the checker threads wait
+        HttpConnectionManagerParams connectionParams = connectionManager.getParams();
+        connectionParams.setDefaultMaxConnectionsPerHost(this.configuration.getMaxConnectionsPerHost());
+        connectionParams.setMaxTotalConnections(this.configuration.getCheckerThreads());
+        this.httpClient = new HttpClient(connectionManager);
 
         // Set our user agent to be a good citizen.
         this.httpClient.getParams().setParameter(HttpMethodParams.USER_AGENT, "XWikiLinkChecker");
         // Ignore cookies since this can cause errors in logs and we don't need cookies when checking sites.
         this.httpClient.getParams().setCookiePolicy(CookiePolicy.IGNORE_COOKIES);
+        // Pooled connections can be closed by the server while they're idle, which is only noticed once the request
+        // has been sent. HEAD and GET requests are idempotent so they can be safely retried in this case.
+        this.httpClient.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
+            new DefaultHttpMethodRetryHandler(3, true));
     }
 
     @Override
     public int check(String url)
+    {
+        int responseCode = check(url, true);
+
+        // Some servers don't support HEAD requests (or don't support them properly). Note that we don't retry when
+        // there's a transport error (response code 0) since a GET request would fail the same way.
+        if (responseCode != 0 && (responseCode < 200 || responseCode > 299)) {
+            responseCode = check(url, false);
+        }
+
+        return responseCode;
+    }
+
+    /**
+     * @param url the URL to check
+     * @param head true to execute a {@code HEAD} request, false to execute a {@code GET} request
+     * @return the HTTP response code or 0 if an error happened in the transport or if the passed URL is invalid
+     */
+    private int check(String url, boolean head)
     {
         int responseCode;
 
-        GetMethod method = null;
+        HttpMethod method = null;
         try {
-            method = new GetMethod(url);
+            method = head ? new HeadMethod(url) : new GetMethod(url);
+            method.setFollowRedirects(true);
 
             // Execute the method.
             responseCode = this.httpClient.executeMethod(method);
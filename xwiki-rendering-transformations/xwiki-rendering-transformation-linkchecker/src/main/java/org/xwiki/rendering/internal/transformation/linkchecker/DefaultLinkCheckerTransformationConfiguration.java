@@ -19,6 +19,8 @@
  */
 package org.xwiki.rendering.internal.transformation.linkchecker;
 
+import java.io.File;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -48,11 +50,56 @@ public class DefaultLinkCheckerTransformationConfiguration implements LinkChecke
      */
     private static final long TIMEOUT = 3600000L;
 
+    /**
+     * Check 4 links at the same time.
+     */
+    private static final int CHECKER_THREADS = 4;
+
+    /**
+     * Don't check more than 2 links of the same host at the same time.
+     */
+    private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+    /**
+     * Keep at most 10000 links waiting to be checked.
+     */
+    private static final int QUEUE_SIZE = 10000;
+
+    /**
+     * Keep the states of at most 100000 links.
+     */
+    private static final int MAX_LINK_STATES = 100000;
+
     /**
      * Overridden default timeout to be used if set.
      */
     private Long checkTimeout;
 
+    /**
+     * Overridden default number of checker threads to be used if set.
+     */
+    private Integer checkerThreads;
+
+    /**
+     * Overridden default maximum number of connections per host to be used if set.
+     */
+    private Integer maxConnectionsPerHost;
+
+    /**
+     * Overridden default queue size to be used if set.
+     */
+    private Integer queueSize;
+
+    /**
+     * Overridden default maximum number of link states to be used if set.
+     */
+    private Integer maxLinkStates;
+
+    /**
+     * Overridden states file to be used if set.
+     */
+    private File statesFile;
+
     /**
      * Used to dynamically lookup a ConfigurationSource implementation since we want to make it work even if there's
      * none available.
@@ -60,6 +107,27 @@ public class DefaultLinkCheckerTransformationConfiguration implements LinkChecke
     @Inject
     private ComponentManager componentManager;
 
+    /**
+     * @param key the name of the property, without the prefix
+     * @param defaultValue the value to return if the property isn't set or if there's no configuration source
+     * @param <T> the type of the property value
+     * @return the value of the property
+     */
+    private <T> T getProperty(String key, T defaultValue)
+    {
+        T result;
+
+        ConfigurationSource source;
+        try {
+            source = this.componentManager.getInstance(ConfigurationSource.class);
+            result = source.getProperty(PREFIX + key, defaultValue);
+        } catch (ComponentLookupException e) {
+            result = defaultValue;
+        }
+
+        return result;
+    }
+
     @Override
     public long getCheckTimeout()
     {
@@ -68,13 +136,7 @@ public long getCheckTimeout()
         if (this.checkTimeout != null) {
             result = this.checkTimeout;
         } else {
-            ConfigurationSource source;
-            try {
-                source = this.componentManager.getInstance(ConfigurationSource.class);
-                result = source.getProperty(PREFIX + "timeout", TIMEOUT);
-            } catch (ComponentLookupException e) {
-                result = TIMEOUT;
-            }
+            result = getProperty("timeout", TIMEOUT);
         }
 
         return result;
@@ -88,4 +150,105 @@ public void setCheckTimeout(long checkTimeout)
     {
         this.checkTimeout = checkTimeout;
     }
+
+    @Override
+    public int getCheckerThreads()
+    {
+        int result;
+
+        if (this.checkerThreads != null) {
+            result = this.checkerThreads;
+        } else {
+            result = getProperty("threads", CHECKER_THREADS);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setCheckerThreads(int checkerThreads)
+    {
+        this.checkerThreads = checkerThreads;
+    }
+
+    @Override
+    public int getMaxConnectionsPerHost()
+    {
+        int result;
+
+        if (this.maxConnectionsPerHost != null) {
+            result = this.maxConnectionsPerHost;
+        } else {
+            result = getProperty("maxConnectionsPerHost", MAX_CONNECTIONS_PER_HOST);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+    {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    @Override
+    public int getQueueSize()
+    {
+        int result;
+
+        if (this.queueSize != null) {
+            result = this.queueSize;
+        } else {
+            result = getProperty("queueSize", QUEUE_SIZE);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setQueueSize(int queueSize)
+    {
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public int getMaxLinkStates()
+    {
+        int result;
+
+        if (this.maxLinkStates != null) {
+            result = this.maxLinkStates;
+        } else {
+            result = getProperty("maxLinkStates", MAX_LINK_STATES);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setMaxLinkStates(int maxLinkStates)
+    {
+        this.maxLinkStates = maxLinkStates;
+    }
+
+    @Override
+    public File getStatesFile()
+    {
+        File result;
+
+        if (this.statesFile != null) {
+            result = this.statesFile;
+        } else {
+            String path = getProperty("statesFile", "");
+            result = path.length() > 0 ? new File(path) : null;
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setStatesFile(File statesFile)
+    {
+        this.statesFile = statesFile;
+    }
 }
@@ -19,33 +19,344 @@
  */
 package org.xwiki.rendering.internal.transformation.linkchecker;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.rendering.transformation.linkchecker.LinkCheckerTransformationConfiguration;
 import org.xwiki.rendering.transformation.linkchecker.LinkState;
 import org.xwiki.rendering.transformation.linkchecker.LinkStateManager;
 
 /**
  * Default implementation of {@link LinkStateManager} which supports multithreaded access to the link states.
+ * <p/>
+ * The states are not kept forever: the states which haven't been updated for twice the
+ * {@link LinkCheckerTransformationConfiguration#getCheckTimeout() check timeout} are removed (the link hasn't been
+ * rendered since it would have been checked again) and the states of the links checked the longest time ago are
+ * removed when there's more than {@link LinkCheckerTransformationConfiguration#getMaxLinkStates()} links. If a
+ * {@link LinkCheckerTransformationConfiguration#getStatesFile() states file} is configured the states are regularly
+ * saved in it and loaded from it when starting so that the links don't all have to be checked again after a restart.
+ * Note that the context data of the states are not saved.
+ * <p/>
+ * The removal of the states and the saving of the states file are done in a background thread so that they don't slow
+ * down the threads setting the states.
  *
  * @version $Id$
  * @since 3.3M1
  */
 @Component
 @Singleton
-public class DefaultLinkStateManager implements LinkStateManager
+public class DefaultLinkStateManager implements LinkStateManager, Initializable, Disposable
 {
+    /**
+     * The minimum time between two removals of the expired states (and two saves of the states file).
+     */
+    private static final long MAINTENANCE_INTERVAL = 60000L;
+
+    /**
+     * When there's too many links we remove the oldest ones till there's only this percentage of the maximum left so
+     * that we don't have to do it again for each new link.
+     */
+    private static final int EVICTION_PERCENTAGE = 90;
+
+    /**
+     * Used to get the check timeout, the maximum number of links and the states file.
+     */
+    @Inject
+    private LinkCheckerTransformationConfiguration configuration;
+
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
     /**
      * @see #getLinkStates() to understand the map structure
      */
-    private Map<String, Map<String, LinkState>> linkStates = new ConcurrentHashMap<String, Map<String, LinkState>>();
+    private ConcurrentMap<String, Map<String, LinkState>> linkStates =
+        new ConcurrentHashMap<String, Map<String, LinkState>>();
+
+    /**
+     * The thread doing the maintenance.
+     */
+    private ExecutorService maintenanceExecutor;
+
+    /**
+     * Make sure only one maintenance is scheduled at a time.
+     */
+    private AtomicBoolean maintenanceRunning = new AtomicBoolean();
+
+    /**
+     * The time of the last maintenance.
+     */
+    private volatile long lastMaintenance = System.currentTimeMillis();
+
+    /**
+     * True if the states have been modified since they were last saved.
+     */
+    private volatile boolean modified;
+
+    /**
+     * Remove the states which are too old or when there's too many and save the states when needed.
+     */
+    private class Maintenance implements Runnable
+    {
+        /**
+         * True if the expired states should be removed and the states saved.
+         */
+        private final boolean timeToMaintain;
+
+        /**
+         * @param timeToMaintain true if the expired states should be removed and the states saved
+         */
+        Maintenance(boolean timeToMaintain)
+        {
+            this.timeToMaintain = timeToMaintain;
+        }
+
+        @Override
+        public void run()
+        {
+            try {
+                maintain(this.timeToMaintain);
+            } finally {
+                maintenanceRunning.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.maintenanceExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Link States Maintenance Thread");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        File file = this.configuration.getStatesFile();
+        if (file != null && file.exists()) {
+            try {
+                load(file);
+            } catch (IOException e) {
+                this.logger.warn("Failed to load the link states from [{}]: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.maintenanceExecutor.shutdown();
+    }
 
     @Override
     public Map<String, Map<String, LinkState>> getLinkStates()
     {
         return this.linkStates;
     }
+
+    @Override
+    public LinkState getLinkState(String linkReference, String contentReference)
+    {
+        Map<String, LinkState> contentReferences = this.linkStates.get(linkReference);
+
+        return contentReferences != null ? contentReferences.get(contentReference) : null;
+    }
+
+    @Override
+    public void setLinkState(String linkReference, String contentReference, LinkState state)
+    {
+        boolean added;
+        do {
+            Map<String, LinkState> contentReferences = this.linkStates.get(linkReference);
+            if (contentReferences == null) {
+                Map<String, LinkState> newContentReferences = new ConcurrentHashMap<String, LinkState>();
+                contentReferences = this.linkStates.putIfAbsent(linkReference, newContentReferences);
+                if (contentReferences == null) {
+                    contentReferences = newContentReferences;
+                }
+            }
+            // The expired content references are removed while holding the same lock (see #removeExpiredStates) so
+            // the new state can't be added to content references which are being removed
+            synchronized (contentReferences) {
+                added = this.linkStates.get(linkReference) == contentReferences;
+                if (added) {
+                    contentReferences.put(contentReference, state);
+                }
+            }
+            // Do it again with new content references if they have been removed in the meantime (when expired)
+        } while (!added);
+
+        this.modified = true;
+
+        scheduleMaintenance();
+    }
+
+    /**
+     * Have the maintenance done in the background if it's time for it or if there's too many states.
+     */
+    private void scheduleMaintenance()
+    {
+        boolean timeToMaintain = System.currentTimeMillis() - this.lastMaintenance > MAINTENANCE_INTERVAL;
+        if ((timeToMaintain || this.linkStates.size() > getMaxLinkStates())
+            && this.maintenanceRunning.compareAndSet(false, true)) {
+            try {
+                this.maintenanceExecutor.execute(new Maintenance(timeToMaintain));
+            } catch (RejectedExecutionException e) {
+                // The component has been disposed
+                this.maintenanceRunning.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of links
+     */
+    private int getMaxLinkStates()
+    {
+        return Math.max(1, this.configuration.getMaxLinkStates());
+    }
+
+    /**
+     * Remove the states which are too old or when there's too many and save the states when needed.
+     *
+     * @param timeToMaintain true if the expired states should be removed and the states saved
+     */
+    private void maintain(boolean timeToMaintain)
+    {
+        long now = System.currentTimeMillis();
+        int maxLinkStates = getMaxLinkStates();
+
+        if (timeToMaintain) {
+            this.lastMaintenance = now;
+            removeExpiredStates(now - 2 * this.configuration.getCheckTimeout());
+        }
+        if (this.linkStates.size() > maxLinkStates) {
+            removeOldestStates((int) ((long) maxLinkStates * EVICTION_PERCENTAGE / 100));
+        }
+        if (timeToMaintain && this.modified) {
+            save();
+        }
+    }
+
+    /**
+     * @param expirationTime the states checked before this time are removed
+     */
+    private void removeExpiredStates(long expirationTime)
+    {
+        for (Map.Entry<String, Map<String, LinkState>> entry : this.linkStates.entrySet()) {
+            Map<String, LinkState> contentReferences = entry.getValue();
+            for (Map.Entry<String, LinkState> contentEntry : contentReferences.entrySet()) {
+                if (contentEntry.getValue().getLastCheckedTime() < expirationTime) {
+                    contentReferences.remove(contentEntry.getKey());
+                }
+            }
+            // Check and remove atomically with respect to #setLinkState() so that a state added in the meantime is
+            // not lost
+            synchronized (contentReferences) {
+                if (contentReferences.isEmpty()) {
+                    this.linkStates.remove(entry.getKey(), contentReferences);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param size the number of links to keep
+     */
+    private void removeOldestStates(int size)
+    {
+        List<Map.Entry<String, Long>> links = new ArrayList<Map.Entry<String, Long>>(this.linkStates.size());
+        for (Map.Entry<String, Map<String, LinkState>> entry : this.linkStates.entrySet()) {
+            long lastCheckedTime = 0;
+            for (LinkState state : entry.getValue().values()) {
+                lastCheckedTime = Math.max(lastCheckedTime, state.getLastCheckedTime());
+            }
+            links.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), lastCheckedTime));
+        }
+
+        Collections.sort(links, new Comparator<Map.Entry<String, Long>>()
+        {
+            @Override
+            public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2)
+            {
+                return entry1.getValue().compareTo(entry2.getValue());
+            }
+        });
+
+        for (int i = 0; i < links.size() - size; ++i) {
+            String linkReference = links.get(i).getKey();
+            Map<String, LinkState> contentReferences = this.linkStates.get(linkReference);
+            if (contentReferences != null) {
+                // Remove atomically with respect to #setLinkState() like in #removeExpiredStates()
+                synchronized (contentReferences) {
+                    this.linkStates.remove(linkReference, contentReferences);
+                }
+            }
+        }
+    }
+
+    /**
+     * Save the states in the states file, if any.
+     */
+    private void save()
+    {
+        File file = this.configuration.getStatesFile();
+        if (file != null) {
+            this.modified = false;
+            try {
+                new LinkStatesFile(file).save(this.linkStates);
+            } catch (IOException e) {
+                this.logger.warn("Failed to save the link states in [{}]: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param file the file from where to load the states
+     * @throws IOException when failing to read the file
+     */
+    private void load(File file) throws IOException
+    {
+        long expirationTime = System.currentTimeMillis() - 2 * this.configuration.getCheckTimeout();
+
+        for (Map.Entry<String, Map<String, LinkState>> entry : new LinkStatesFile(file).load().entrySet()) {
+            for (Map.Entry<String, LinkState> stateEntry : entry.getValue().entrySet()) {
+                if (stateEntry.getValue().getLastCheckedTime() >= expirationTime) {
+                    setLinkState(entry.getKey(), stateEntry.getKey(), stateEntry.getValue());
+                }
+            }
+        }
+
+        this.modified = false;
+    }
 }
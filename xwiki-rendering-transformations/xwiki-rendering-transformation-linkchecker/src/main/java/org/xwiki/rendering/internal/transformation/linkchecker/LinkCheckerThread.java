@@ -20,11 +20,17 @@
 package org.xwiki.rendering.internal.transformation.linkchecker;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
@@ -37,9 +43,10 @@
 import org.xwiki.rendering.transformation.linkchecker.LinkStateManager;
 
 /**
- * Thread that regularly check for Links to be checked on a Queue, and for each link tries to connect to it and 
- * save the result in the {@link LinkStateManager}. In order to have good performance we only recheck a link if it's
- * not been checked for a certain time.
+ * Thread that waits for Links to be checked on a Queue, and for each link has it checked by a pool of checker threads
+ * which try to connect to it and save the result in the {@link LinkStateManager}. In order to have good performance
+ * we only recheck a link if it's not been checked for a certain time, a link waiting to be checked is only checked
+ * once even if it's been queued several times, and we don't check too many links of a same host at the same time.
  * 
  * @version $Id$
  * @since 3.3M1
@@ -47,6 +54,11 @@
 // TODO: If the LinkCheckerTransformation component is unregistered, then stop the thread.
 public class LinkCheckerThread extends Thread
 {
+    /**
+     * The time to wait for a link in the queue before checking if the thread should stop.
+     */
+    private static final long POLL_TIMEOUT = 300L;
+
     /**
      * The Component Manager to use to locate other components. For example we use it to dynamically look up an
      * Observation Manager so that this transformation works even if there isn't one available.
@@ -63,6 +75,22 @@ public class LinkCheckerThread extends Thread
      */
     private long timeout;
 
+    /**
+     * The number of threads checking links.
+     */
+    private int checkerThreads;
+
+    /**
+     * The maximum number of links of a same host checked at the same time.
+     */
+    private int maxConnectionsPerHost;
+
+    /**
+     * The maximum number of links being checked or waiting for their host to be available. When it's reached we stop
+     * reading the queue, which ends up being full, which makes the transformation ignore new links.
+     */
+    private int maxPendingLinks;
+
     /**
      * The HTTP checker used to connect to links to verify their validity.
      */
@@ -71,19 +99,100 @@ public class LinkCheckerThread extends Thread
     /**
      * The queue containing links to check.
      */
-    private Queue<LinkQueueItem> linkQueue;
+    private BlockingQueue<LinkQueueItem> linkQueue;
+
+    /**
+     * The threads checking the links.
+     */
+    private ExecutorService checkers;
+
+    /**
+     * Protects {@link #pendingLinks}, {@link #hostConnections} and {@link #waitingLinks}.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The links being checked or waiting to be checked, with the queue items which asked for them.
+     */
+    private Map<String, List<LinkQueueItem>> pendingLinks = new HashMap<String, List<LinkQueueItem>>();
+
+    /**
+     * The number of links being checked for each host.
+     */
+    private Map<String, Integer> hostConnections = new HashMap<String, Integer>();
+
+    /**
+     * The links waiting for their host to have less than {@link #maxConnectionsPerHost} links being checked.
+     */
+    private Map<String, Queue<String>> waitingLinks = new HashMap<String, Queue<String>>();
 
     /**
      * Allows to stop this thread, used in {@link #stopProcessing()}.
      */
     private volatile boolean shouldStop;
 
+    /**
+     * Check a link and save the result.
+     */
+    private class LinkCheck implements Runnable
+    {
+        /**
+         * The link to check.
+         */
+        private final String linkReference;
+
+        /**
+         * @param linkReference the link to check
+         */
+        LinkCheck(String linkReference)
+        {
+            this.linkReference = linkReference;
+        }
+
+        @Override
+        public void run()
+        {
+            checkLink(this.linkReference);
+        }
+    }
+
+    /**
+     * Creates the threads checking the links.
+     */
+    private class CheckerThreadFactory implements ThreadFactory
+    {
+        /**
+         * The number of threads created so far, used to name them.
+         */
+        private int counter;
+
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // The checker threads also need to be initialized since they save the link states and send the
+                    // events.
+                    initializeThread();
+                    runnable.run();
+                }
+            });
+            thread.setName(getName() + " " + ++this.counter);
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
     /**
      * @param componentManager the Component Manager to use to locate other components
      * @param linkQueue the queue containing links to check.
      * @throws InitializationException when it fails to lookup needed components
      */
-    public LinkCheckerThread(ComponentManager componentManager, Queue<LinkQueueItem> linkQueue)
+    public LinkCheckerThread(ComponentManager componentManager, BlockingQueue<LinkQueueItem> linkQueue)
         throws InitializationException
     {
         try {
@@ -92,6 +201,9 @@ public LinkCheckerThread(ComponentManager componentManager, Queue<LinkQueueItem>
             LinkCheckerTransformationConfiguration configuration =
                 componentManager.getInstance(LinkCheckerTransformationConfiguration.class);
             this.timeout = configuration.getCheckTimeout();
+            this.checkerThreads = Math.max(1, configuration.getCheckerThreads());
+            this.maxConnectionsPerHost = Math.max(1, configuration.getMaxConnectionsPerHost());
+            this.maxPendingLinks = Math.max(this.checkerThreads, configuration.getQueueSize());
         } catch (ComponentLookupException e) {
             throw new InitializationException("Failed to initialize the Link Checker Thread. "
                 + "External link states won't be checked.", e);
@@ -105,6 +217,30 @@ public void run()
     {
         // Allow external code to perform initialization of this thread.
         // This is useful for example if externa lcode needs to initialize the Execution Context.
+        initializeThread();
+
+        this.checkers = Executors.newFixedThreadPool(this.checkerThreads, new CheckerThreadFactory());
+
+        try {
+            while (!this.shouldStop) {
+                try {
+                    processLinkQueue();
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        } finally {
+            synchronized (this.lock) {
+                this.checkers.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Run the {@link LinkCheckerThreadInitializer}s in the current thread.
+     */
+    private void initializeThread()
+    {
         try {
             List<LinkCheckerThreadInitializer> initializers =
                 this.componentManager.getInstanceList((Type) LinkCheckerThreadInitializer.class);
@@ -115,15 +251,6 @@ public void run()
             // Failed to run thread initialization. This is critical, stop the thread.
             throw new RuntimeException("Failed to initialize Link Checker Thread", e);
         }
-
-        while (!this.shouldStop) {
-            try {
-                Thread.sleep(300L);
-            } catch (InterruptedException e) {
-                break;
-            }
-            processLinkQueue();
-        }
     }
 
     /**
@@ -137,65 +264,226 @@ public void stopProcessing()
     }
 
     /**
-     * Read the queue and find links to process, removing links that have already been checked out recently.
+     * Wait for a link on the queue and have it checked if it needs to be.
+     *
+     * @throws InterruptedException if the thread is stopped while waiting
      */
-    private void processLinkQueue()
+    private void processLinkQueue() throws InterruptedException
     {
-        // Unqueue till we find an item that needs to be processed. We process an item if:
-        // - it isn't present in the state map
-        // - it is present but not enough time has elapsed since its last check time
-        LinkQueueItem queueItem = null;
-        boolean shouldBeChecked = false;
-
-        while (!this.linkQueue.isEmpty() && !shouldBeChecked) {
-            queueItem = this.linkQueue.poll();
-            shouldBeChecked = true;
-            Map<String, LinkState> contentReferences =
-                this.linkStateManager.getLinkStates().get(queueItem.getLinkReference());
-            if (contentReferences != null) {
-                LinkState state = contentReferences.get(queueItem.getContentReference());
-                if (state != null) {
-                    if (System.currentTimeMillis() - state.getLastCheckedTime() <= this.timeout) {
-                        shouldBeChecked = false;
+        // Don't take more links from the queue while there's too many links waiting to be checked, the queue will
+        // make the transformation ignore new links when it's full.
+        synchronized (this.lock) {
+            while (this.pendingLinks.size() >= this.maxPendingLinks) {
+                this.lock.wait();
+            }
+        }
+
+        LinkQueueItem queueItem = this.linkQueue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        if (queueItem != null) {
+            synchronized (this.lock) {
+                List<LinkQueueItem> queueItems = this.pendingLinks.get(queueItem.getLinkReference());
+                if (queueItems != null) {
+                    // The link is already going to be checked, no need to check it again
+                    if (!containsContentReference(queueItems, queueItem.getContentReference())) {
+                        queueItems.add(queueItem);
                     }
+                } else if (shouldBeChecked(queueItem)) {
+                    queueItems = new ArrayList<LinkQueueItem>();
+                    queueItems.add(queueItem);
+                    this.pendingLinks.put(queueItem.getLinkReference(), queueItems);
+
+                    scheduleLink(queueItem.getLinkReference());
                 }
             }
         }
+    }
 
-        if (queueItem != null) {
-            checkLink(queueItem);
+    /**
+     * @param queueItems the queue items
+     * @param contentReference the content reference to look for
+     * @return true if one of the passed queue items has the passed content reference
+     */
+    private boolean containsContentReference(List<LinkQueueItem> queueItems, String contentReference)
+    {
+        boolean result = false;
+
+        for (int i = 0; i < queueItems.size() && !result; ++i) {
+            result = queueItems.get(i).getContentReference().equals(contentReference);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decides if a link needs to be checked. We check an item if:
+     * <ul>
+     * <li>it isn't present in the state map</li>
+     * <li>it is present but enough time has elapsed since its last check time</li>
+     * </ul>
+     *
+     * @param queueItem the item to check
+     * @return true if the link should be checked
+     */
+    private boolean shouldBeChecked(LinkQueueItem queueItem)
+    {
+        boolean shouldBeChecked = true;
+
+        LinkState state =
+            this.linkStateManager.getLinkState(queueItem.getLinkReference(), queueItem.getContentReference());
+        if (state != null) {
+            if (System.currentTimeMillis() - state.getLastCheckedTime() <= this.timeout) {
+                shouldBeChecked = false;
+            }
         }
+
+        return shouldBeChecked;
     }
 
     /**
-     * Perform the HTTP connection and save the result in the {@link LinkStateManager}.
+     * Give the link to a checker thread or make it wait if too many links of the same host are being checked. Must be
+     * called while holding {@link #lock}.
      *
-     * @param queueItem the link to check
+     * @param linkReference the link to check
      */
-    private void checkLink(LinkQueueItem queueItem)
+    private void scheduleLink(String linkReference)
     {
-        int responseCode = this.httpChecker.check(queueItem.getLinkReference());
+        String host = getHost(linkReference);
+
+        Integer connections = this.hostConnections.get(host);
+        if (connections == null) {
+            connections = 0;
+        }
 
-        Map<String, LinkState> contentReferences =
-            this.linkStateManager.getLinkStates().get(queueItem.getLinkReference());
-        if (contentReferences == null) {
-            contentReferences = new ConcurrentHashMap<String, LinkState>();
+        if (connections < this.maxConnectionsPerHost) {
+            this.hostConnections.put(host, connections + 1);
+            this.checkers.execute(new LinkCheck(linkReference));
+        } else {
+            Queue<String> hostWaitingLinks = this.waitingLinks.get(host);
+            if (hostWaitingLinks == null) {
+                hostWaitingLinks = new LinkedList<String>();
+                this.waitingLinks.put(host, hostWaitingLinks);
+            }
+            hostWaitingLinks.add(linkReference);
+        }
+    }
+
+    /**
+     * Check the next link waiting for the passed host, if any. Must be called while holding {@link #lock}.
+     *
+     * @param host the host of the link which has just been checked
+     */
+    private void scheduleNextLink(String host)
+    {
+        Queue<String> hostWaitingLinks = this.waitingLinks.get(host);
+
+        // Note: the checkers are shut down when the thread is stopped
+        if (hostWaitingLinks != null && !this.checkers.isShutdown()) {
+            this.checkers.execute(new LinkCheck(hostWaitingLinks.poll()));
+            if (hostWaitingLinks.isEmpty()) {
+                this.waitingLinks.remove(host);
+            }
+        } else {
+            int connections = this.hostConnections.get(host) - 1;
+            if (connections > 0) {
+                this.hostConnections.put(host, connections);
+            } else {
+                this.hostConnections.remove(host);
+            }
+        }
+    }
+
+    /**
+     * @param linkReference the link
+     * @return the host (and port) of the link or the empty String if it can't be found
+     */
+    static String getHost(String linkReference)
+    {
+        int start = linkReference.indexOf("://");
+        if (start < 0) {
+            return "";
+        }
+        start += 3;
+
+        int end = start;
+        while (end < linkReference.length() && "/?#".indexOf(linkReference.charAt(end)) < 0) {
+            ++end;
+        }
+
+        return linkReference.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * Perform the HTTP connection and save the result in the {@link LinkStateManager} for all the queue items which
+     * asked for the link.
+     *
+     * @param linkReference the link to check
+     */
+    private void checkLink(String linkReference)
+    {
+        // If the check fails unexpectedly the link is considered as unreachable so that it doesn't stay pending
+        // forever and the connection to its host is released
+        int responseCode = 0;
+        List<LinkQueueItem> queueItems = new ArrayList<LinkQueueItem>();
+        List<LinkState> states = new ArrayList<LinkState>();
+        try {
+            responseCode = this.httpChecker.check(linkReference);
+        } finally {
+            saveLinkStates(linkReference, responseCode, queueItems, states);
         }
-        LinkState state = new LinkState(responseCode, System.currentTimeMillis(), queueItem.getContextData());
-        contentReferences.put(queueItem.getContentReference(), state);
-        this.linkStateManager.getLinkStates().put(queueItem.getLinkReference(), contentReferences);
 
         // If there's an error, then send an Observation Event so that anyone interested can listen to it.
         if (responseCode < 200 || responseCode > 299) {
-            Map<String, Object> eventSource = new HashMap<String, Object>();
-            eventSource.put("url", queueItem.getLinkReference());
-            eventSource.put("source", queueItem.getContentReference());
-            eventSource.put("state", state);
-            eventSource.put("contextData", queueItem.getContextData());
-            sendEvent(queueItem.getLinkReference(), eventSource);
+            for (int i = 0; i < queueItems.size(); ++i) {
+                LinkQueueItem queueItem = queueItems.get(i);
+                Map<String, Object> eventSource = new HashMap<String, Object>();
+                eventSource.put("url", queueItem.getLinkReference());
+                eventSource.put("source", queueItem.getContentReference());
+                eventSource.put("state", states.get(i));
+                eventSource.put("contextData", queueItem.getContextData());
+                sendEvent(queueItem.getLinkReference(), eventSource);
+            }
         }
     }
 
+    /**
+     * Save the state of the checked link for all the queue items which asked for it and check the next link of the
+     * same host.
+     *
+     * @param linkReference the checked link
+     * @param responseCode the result of the check
+     * @param queueItems filled with the queue items which asked for the link
+     * @param states filled with the states saved for the queue items
+     */
+    private void saveLinkStates(String linkReference, int responseCode, List<LinkQueueItem> queueItems,
+        List<LinkState> states)
+    {
+        long checkedTime = System.currentTimeMillis();
+
+        // The states are saved without holding the lock. Since queue items can be added for the link in the meantime,
+        // the link stays pending until the states of all its queue items are saved so that it is not checked again.
+        List<LinkQueueItem> newQueueItems;
+        do {
+            synchronized (this.lock) {
+                List<LinkQueueItem> pendingQueueItems = this.pendingLinks.get(linkReference);
+                newQueueItems = new ArrayList<LinkQueueItem>(
+                    pendingQueueItems.subList(queueItems.size(), pendingQueueItems.size()));
+                if (newQueueItems.isEmpty()) {
+                    this.pendingLinks.remove(linkReference);
+                    scheduleNextLink(getHost(linkReference));
+                    this.lock.notifyAll();
+                }
+            }
+
+            for (LinkQueueItem queueItem : newQueueItems) {
+                LinkState state = new LinkState(responseCode, checkedTime, queueItem.getContextData());
+                this.linkStateManager.setLinkState(linkReference, queueItem.getContentReference(), state);
+                queueItems.add(queueItem);
+                states.add(state);
+            }
+        } while (!newQueueItems.isEmpty());
+    }
+
     /**
      * Send an {@link InvalidURLEvent} event.
      *
@@ -22,13 +22,14 @@
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
@@ -37,14 +38,16 @@
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.LinkBlock;
 import org.xwiki.rendering.block.MetaDataBlock;
-import org.xwiki.rendering.block.match.ClassBlockMatcher;
 import org.xwiki.rendering.block.match.MetadataBlockMatcher;
 import org.xwiki.rendering.listener.MetaData;
 import org.xwiki.rendering.listener.reference.ResourceType;
 import org.xwiki.rendering.transformation.AbstractTransformation;
 import org.xwiki.rendering.transformation.TransformationContext;
 import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rendering.transformation.linkchecker.LinkCheckerTransformationConfiguration;
 import org.xwiki.rendering.transformation.linkchecker.LinkContextDataProvider;
+import org.xwiki.rendering.transformation.linkchecker.LinkState;
+import org.xwiki.rendering.transformation.linkchecker.LinkStateManager;
 
 /**
  * Looks for external URLs in links and verify their status (ok, broken, etc). In order to get good performances
@@ -64,17 +67,91 @@ public class LinkCheckerTransformation extends AbstractTransformation implements
     @Inject
     private ComponentManager componentManager;
 
+    /**
+     * Used to get the size of the link queue.
+     */
+    @Inject
+    private LinkCheckerTransformationConfiguration configuration;
+
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
     /**
      * The link queue that the checker thread will use to check links. We use a separate checked thread and a queue
-     * in order to have good performance so that this transformation doesn't slow down the rendering of content.
+     * in order to have good performance so that this transformation doesn't slow down the rendering of content. The
+     * queue is bounded so that it doesn't grow forever when links are added faster than they can be checked.
      */
-    private Queue<LinkQueueItem> linkQueue = new ConcurrentLinkedQueue<LinkQueueItem>();
+    private BlockingQueue<LinkQueueItem> linkQueue;
+
+    /**
+     * Used to not queue links which have been checked recently.
+     */
+    @Inject
+    private LinkStateManager linkStateManager;
 
     /**
      * The thread used to check out links.
      */
     private LinkCheckerThread checkerThread;
 
+    /**
+     * Queues the links found during a transformation.
+     */
+    private class LinkCollector
+    {
+        /**
+         * The time after which a link is checked again.
+         */
+        private final long checkTimeout;
+
+        /**
+         * The time of the transformation.
+         */
+        private final long time = System.currentTimeMillis();
+
+        /**
+         * The providers of context data, resolved when the first link needs to be queued.
+         */
+        private List<LinkContextDataProvider> linkContextDataProviders;
+
+        /**
+         * @param checkTimeout the time after which a link is checked again
+         */
+        LinkCollector(long checkTimeout)
+        {
+            this.checkTimeout = checkTimeout;
+        }
+
+        /**
+         * Queue the link, unless it's been checked recently.
+         *
+         * @param linkReference the reference to the link to check
+         * @param contentReference the reference to the content containing the link to check
+         */
+        void add(String linkReference, String contentReference)
+        {
+            // Don't bother the checker thread (and the context data providers) with links which won't be checked
+            LinkState state = linkStateManager.getLinkState(linkReference, contentReference);
+            if (state == null || this.time - state.getLastCheckedTime() > this.checkTimeout) {
+                if (this.linkContextDataProviders == null) {
+                    this.linkContextDataProviders = getLinkContextDataProviders(linkReference, contentReference);
+                }
+
+                // Add Link Context Data
+                Map<String, Object> linkContextData =
+                    createLinkContextData(linkReference, contentReference, this.linkContextDataProviders);
+                if (!linkQueue.offer(new LinkQueueItem(linkReference, contentReference, linkContextData))) {
+                    // Don't slow down the rendering: the link will be queued again the next time the content is
+                    // rendered.
+                    logger.debug("Link checker queue is full, ignoring link [{}]", linkReference);
+                }
+            }
+        }
+    }
+
     /**
      * Start a Thread in charge of reading links to check from the Checking queue and checking them.
      * @throws InitializationException not used
@@ -82,6 +159,7 @@ public class LinkCheckerTransformation extends AbstractTransformation implements
     @Override
     public void initialize() throws InitializationException
     {
+        this.linkQueue = new LinkedBlockingQueue<LinkQueueItem>(Math.max(1, this.configuration.getQueueSize()));
         this.checkerThread = new LinkCheckerThread(this.componentManager, this.linkQueue);
         this.checkerThread.setName("Link Checker Thread");
         this.checkerThread.start();
@@ -90,21 +168,43 @@ public void initialize() throws InitializationException
     @Override
     public void transform(Block source, TransformationContext context) throws TransformationException
     {
-        for (LinkBlock linkBlock : source.<LinkBlock>getBlocks(
-            new ClassBlockMatcher(LinkBlock.class), Block.Axes.DESCENDANT))
-        {
-            if (linkBlock.getReference().getType().equals(ResourceType.URL)) {
-                // This is a link pointing to an external URL, add it to the queue for processing (i.e. checking).
-                String linkReference = linkBlock.getReference().getReference();
-                String contentReference = extractSourceContentReference(linkBlock);
-                // If there's no content reference then use a default name of "default"
-                if (contentReference == null) {
-                    contentReference = "default";
+        // Find the source content reference of the passed block once and then update it while going down the tree
+        // instead of looking for it in the ancestors of each link.
+        String contentReference;
+        if (source instanceof MetaDataBlock && ((MetaDataBlock) source).getMetaData().contains(MetaData.SOURCE)) {
+            contentReference = getSourceContentReference((MetaDataBlock) source);
+        } else {
+            contentReference = extractSourceContentReference(source);
+        }
+
+        transform(source.getChildren(), contentReference, new LinkCollector(this.configuration.getCheckTimeout()));
+    }
+
+    /**
+     * @param blocks the blocks in which to look for links to check
+     * @param contentReference the reference of the content containing the passed blocks or null if none is known
+     * @param collector the state of the current transformation
+     */
+    private void transform(List<Block> blocks, String contentReference, LinkCollector collector)
+    {
+        for (Block block : blocks) {
+            String blockContentReference = contentReference;
+            if (block instanceof MetaDataBlock) {
+                MetaDataBlock metaDataBlock = (MetaDataBlock) block;
+                if (metaDataBlock.getMetaData().contains(MetaData.SOURCE)) {
+                    blockContentReference = getSourceContentReference(metaDataBlock);
+                }
+            } else if (block instanceof LinkBlock) {
+                LinkBlock linkBlock = (LinkBlock) block;
+                if (linkBlock.getReference().getType().equals(ResourceType.URL)) {
+                    // This is a link pointing to an external URL, add it to the queue for processing (i.e. checking).
+                    // If there's no content reference then use a default name of "default"
+                    collector.add(linkBlock.getReference().getReference(),
+                        contentReference != null ? contentReference : "default");
                 }
-                // Add Link Context Data
-                Map<String, Object> linkContextData = createLinkContextData(linkReference, contentReference);
-                this.linkQueue.add(new LinkQueueItem(linkReference, contentReference, linkContextData));
             }
+
+            transform(block.getChildren(), blockContentReference, collector);
         }
     }
 
@@ -122,35 +222,54 @@ public void stopLinkCheckerThread() throws InterruptedException
     /**
      * @param linkReference the reference to the link to check (usually a URL)
      * @param contentReference the reference to the content containing the link to check
+     * @param linkContextDataProviders the providers of context data
      * @return context data to provide more information about the link being checked (for example it could be useful
      *         in some situations to store the HTTP request leading to the link being checked since there could be
      *         HTTP query string parameters useful to see to understand why such a link was generated in the content)
      */
-    private Map<String, Object> createLinkContextData(String linkReference, String contentReference)
+    private Map<String, Object> createLinkContextData(String linkReference, String contentReference,
+        List<LinkContextDataProvider> linkContextDataProviders)
     {
         // For performance reason we don't want to store an empty map in the Link state cache when there are no
         // context data.
         Map<String, Object> linkContextData = null;
-        try {
-            List<LinkContextDataProvider> linkContextDataProviders = 
-                this.componentManager.getInstanceList(LinkContextDataProvider.class);
-            for (LinkContextDataProvider linkContextDataProvider : linkContextDataProviders) {
-                Map<String, Object> contextData =
-                    linkContextDataProvider.getContextData(linkReference, contentReference);
-                if (linkContextData == null) {
-                    linkContextData = new LinkedHashMap<String, Object>(contextData.size());
-                }
-                linkContextData.putAll(contextData);
+        for (LinkContextDataProvider linkContextDataProvider : linkContextDataProviders) {
+            Map<String, Object> contextData = linkContextDataProvider.getContextData(linkReference, contentReference);
+            if (linkContextData == null) {
+                linkContextData = new LinkedHashMap<String, Object>(contextData.size());
             }
+            linkContextData.putAll(contextData);
+        }
+        return linkContextData;
+    }
+
+    /**
+     * @param linkReference the reference to the link to check, only used in the error message
+     * @param contentReference the reference to the content containing the link to check, only used in the error
+     *            message
+     * @return the providers of context data
+     */
+    private List<LinkContextDataProvider> getLinkContextDataProviders(String linkReference, String contentReference)
+    {
+        try {
+            return this.componentManager.getInstanceList(LinkContextDataProvider.class);
         } catch (ComponentLookupException e) {
             // Shouldn't happen
             throw new RuntimeException(String.format(
                 "Failed to locate Link Context Data Provider for link [%s] in [%s]", linkReference, contentReference),
                 e);
         }
-        return linkContextData;
     }
-    
+
+    /**
+     * @param metaDataBlock a block containing the source content reference
+     * @return the source content reference
+     */
+    private String getSourceContentReference(MetaDataBlock metaDataBlock)
+    {
+        return (String) metaDataBlock.getMetaData().getMetaData(MetaData.SOURCE);
+    }
+
     /**
      * @param source the blocks from where to try to extract the source content
      * @return the source content reference or null if none is found
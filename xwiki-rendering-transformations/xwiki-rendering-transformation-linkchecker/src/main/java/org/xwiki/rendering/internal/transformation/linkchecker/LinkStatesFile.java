@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.linkchecker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.rendering.transformation.linkchecker.LinkState;
+
+/**
+ * The file where {@link DefaultLinkStateManager} saves the link states. The context data of the states are not saved.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class LinkStatesFile
+{
+    /**
+     * The version of the format of the file.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The encoding of the strings in the file.
+     */
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * The file.
+     */
+    private final File file;
+
+    /**
+     * @param file the file
+     */
+    public LinkStatesFile(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @param linkStates the link states to save, indexed by link reference and content reference
+     * @throws IOException when failing to write the file
+     */
+    public void save(Map<String, Map<String, LinkState>> linkStates) throws IOException
+    {
+        // Write a temporary file first so that we don't end up with a partial file if something goes wrong
+        File temporaryFile = new File(this.file.getPath() + ".tmp");
+        DataOutputStream output =
+            new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            output.writeInt(VERSION);
+            for (Map.Entry<String, Map<String, LinkState>> entry : linkStates.entrySet()) {
+                // Copy the states since they can be modified while we're writing them
+                List<Map.Entry<String, LinkState>> states =
+                    new ArrayList<Map.Entry<String, LinkState>>(entry.getValue().entrySet());
+                output.writeBoolean(true);
+                writeString(output, entry.getKey());
+                output.writeInt(states.size());
+                for (Map.Entry<String, LinkState> stateEntry : states) {
+                    writeString(output, stateEntry.getKey());
+                    output.writeInt(stateEntry.getValue().getResponseCode());
+                    output.writeLong(stateEntry.getValue().getLastCheckedTime());
+                }
+            }
+            output.writeBoolean(false);
+        } finally {
+            output.close();
+        }
+
+        if (!temporaryFile.renameTo(this.file) && !(this.file.delete() && temporaryFile.renameTo(this.file))) {
+            throw new IOException("Failed to rename [" + temporaryFile + "]");
+        }
+    }
+
+    /**
+     * @return the link states read from the file, indexed by link reference and content reference
+     * @throws IOException when failing to read the file
+     */
+    public Map<String, Map<String, LinkState>> load() throws IOException
+    {
+        Map<String, Map<String, LinkState>> linkStates = new HashMap<String, Map<String, LinkState>>();
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if (input.readInt() != VERSION) {
+                throw new IOException("Unsupported file version");
+            }
+            while (input.readBoolean()) {
+                String linkReference = readString(input);
+                int size = input.readInt();
+                Map<String, LinkState> states = new HashMap<String, LinkState>();
+                for (int i = 0; i < size; ++i) {
+                    String contentReference = readString(input);
+                    states.put(contentReference, new LinkState(input.readInt(), input.readLong()));
+                }
+                linkStates.put(linkReference, states);
+            }
+        } finally {
+            input.close();
+        }
+
+        return linkStates;
+    }
+
+    /**
+     * Write a string as its length followed by its bytes since {@link DataOutputStream#writeUTF(String)} doesn't
+     * support strings longer than 64KB.
+     *
+     * @param output the stream where to write the string
+     * @param value the string to write
+     * @throws IOException when failing to write the string
+     */
+    private void writeString(DataOutputStream output, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(ENCODING);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * @param input the stream from where to read the string
+     * @return the string written by {@link #writeString(DataOutputStream, String)}
+     * @throws IOException when failing to read the string
+     */
+    private String readString(DataInputStream input) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length [" + length + "]");
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+
+        return new String(bytes, ENCODING);
+    }
+}
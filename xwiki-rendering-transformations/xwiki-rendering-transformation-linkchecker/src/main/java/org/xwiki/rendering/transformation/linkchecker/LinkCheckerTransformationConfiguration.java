@@ -19,6 +19,8 @@
  */
 package org.xwiki.rendering.transformation.linkchecker;
 
+import java.io.File;
+
 import org.xwiki.component.annotation.Role;
 
 /**
@@ -39,4 +41,67 @@
      * @param checkTimeout the time after which a link should be checked again for validity
      */
     void setCheckTimeout(long checkTimeout);
+
+    /**
+     * @return the number of threads checking links concurrently
+     * @since 5.2M1
+     */
+    int getCheckerThreads();
+
+    /**
+     * @param checkerThreads the number of threads checking links concurrently
+     * @since 5.2M1
+     */
+    void setCheckerThreads(int checkerThreads);
+
+    /**
+     * @return the maximum number of links of a same host checked concurrently, so that we don't flood a remote site
+     * @since 5.2M1
+     */
+    int getMaxConnectionsPerHost();
+
+    /**
+     * @param maxConnectionsPerHost the maximum number of links of a same host checked concurrently
+     * @since 5.2M1
+     */
+    void setMaxConnectionsPerHost(int maxConnectionsPerHost);
+
+    /**
+     * @return the maximum number of links waiting to be checked; new links are ignored when it's reached (they will be
+     *         queued again the next time the content containing them is rendered)
+     * @since 5.2M1
+     */
+    int getQueueSize();
+
+    /**
+     * @param queueSize the maximum number of links waiting to be checked
+     * @since 5.2M1
+     */
+    void setQueueSize(int queueSize);
+
+    /**
+     * @return the maximum number of links for which the states are kept; the states of the links checked the longest
+     *         time ago are removed when it's reached
+     * @since 5.2M1
+     */
+    int getMaxLinkStates();
+
+    /**
+     * @param maxLinkStates the maximum number of links for which the states are kept
+     * @since 5.2M1
+     */
+    void setMaxLinkStates(int maxLinkStates);
+
+    /**
+     * @return the file where the link states are saved so that they're not lost when restarting, or null if they
+     *         shouldn't be saved
+     * @since 5.2M1
+     */
+    File getStatesFile();
+
+    /**
+     * @param statesFile the file where the link states are saved, or null if they shouldn't be saved
+     * @since 5.2M1
+     */
+    void setStatesFile(File statesFile);
 }
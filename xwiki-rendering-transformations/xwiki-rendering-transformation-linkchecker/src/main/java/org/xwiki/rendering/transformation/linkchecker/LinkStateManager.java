@@ -37,4 +37,24 @@
      *         key is the content reference
      */
     Map<String, Map<String, LinkState>> getLinkStates();
+
+    /**
+     * @param linkReference the reference of the link (usually a URL)
+     * @param contentReference the reference of the content containing the link
+     * @return the state of the link in the passed content or null if the link hasn't been checked (or if its state has
+     *         expired)
+     * @since 5.2M1
+     */
+    LinkState getLinkState(String linkReference, String contentReference);
+
+    /**
+     * Atomically set the state of a link in a content, without losing the states of the link in other contents when
+     * several threads set states of the same link at the same time.
+     *
+     * @param linkReference the reference of the link (usually a URL)
+     * @param contentReference the reference of the content containing the link
+     * @param state the new state of the link in the passed content
+     * @since 5.2M1
+     */
+    void setLinkState(String linkReference, String contentReference, LinkState state);
 }
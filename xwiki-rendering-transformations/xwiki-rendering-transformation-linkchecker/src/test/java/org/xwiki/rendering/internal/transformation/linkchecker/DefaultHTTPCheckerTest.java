@@ -0,0 +1,137 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.linkchecker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for {@link DefaultHTTPChecker}, using a local HTTP server.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class DefaultHTTPCheckerTest extends AbstractComponentTestCase
+{
+    private HttpServer server;
+
+    private String baseURL;
+
+    /**
+     * The requests received by the server, as "method path".
+     */
+    private List<String> requests = new CopyOnWriteArrayList<String>();
+
+    private HTTPChecker checker;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String path = exchange.getRequestURI().getPath();
+                boolean head = "HEAD".equals(exchange.getRequestMethod());
+                requests.add(exchange.getRequestMethod() + " " + path);
+
+                int code;
+                if (path.equals("/ok")) {
+                    code = 200;
+                } else if (path.equals("/nohead")) {
+                    code = head ? 405 : 200;
+                } else if (path.equals("/redirect")) {
+                    exchange.getResponseHeaders().add("Location", baseURL + "/ok");
+                    code = 302;
+                } else {
+                    code = 404;
+                }
+
+                if (head) {
+                    exchange.sendResponseHeaders(code, -1);
+                } else {
+                    byte[] content = "content".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(code, content.length);
+                    exchange.getResponseBody().write(content);
+                }
+                exchange.close();
+            }
+        });
+        this.server.start();
+        this.baseURL = "http://localhost:" + this.server.getAddress().getPort();
+
+        this.checker = getComponentManager().getInstance(HTTPChecker.class);
+    }
+
+    @After
+    public void stopServer()
+    {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void checkWithHEAD() throws Exception
+    {
+        Assert.assertEquals(200, this.checker.check(this.baseURL + "/ok"));
+        Assert.assertEquals(Arrays.asList("HEAD /ok"), this.requests);
+    }
+
+    @Test
+    public void checkFallbackToGET() throws Exception
+    {
+        Assert.assertEquals(200, this.checker.check(this.baseURL + "/nohead"));
+        Assert.assertEquals(Arrays.asList("HEAD /nohead", "GET /nohead"), this.requests);
+    }
+
+    @Test
+    public void checkRedirect() throws Exception
+    {
+        Assert.assertEquals(200, this.checker.check(this.baseURL + "/redirect"));
+        Assert.assertEquals(Arrays.asList("HEAD /redirect", "HEAD /ok"), this.requests);
+    }
+
+    @Test
+    public void checkNotFound() throws Exception
+    {
+        Assert.assertEquals(404, this.checker.check(this.baseURL + "/missing"));
+        Assert.assertEquals(Arrays.asList("HEAD /missing", "GET /missing"), this.requests);
+    }
+
+    @Test
+    public void checkInvalidURL() throws Exception
+    {
+        Assert.assertEquals(0, this.checker.check("invalid"));
+        Assert.assertTrue(this.requests.isEmpty());
+    }
+}
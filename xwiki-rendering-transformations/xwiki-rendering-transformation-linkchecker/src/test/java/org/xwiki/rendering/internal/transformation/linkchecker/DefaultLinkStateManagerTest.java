@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.linkchecker;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.rendering.transformation.linkchecker.LinkCheckerTransformationConfiguration;
+import org.xwiki.rendering.transformation.linkchecker.LinkState;
+import org.xwiki.rendering.transformation.linkchecker.LinkStateManager;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link DefaultLinkStateManager}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class DefaultLinkStateManagerTest extends AbstractComponentTestCase
+{
+    private static final long TIMEOUT = 3600000L;
+
+    private LinkCheckerTransformationConfiguration configuration;
+
+    private LinkStateManager linkStateManager;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.configuration = getComponentManager().getInstance(LinkCheckerTransformationConfiguration.class);
+        this.configuration.setCheckTimeout(TIMEOUT);
+        this.linkStateManager = getComponentManager().getInstance(LinkStateManager.class);
+    }
+
+    @Test
+    public void setLinkState()
+    {
+        LinkState state1 = new LinkState(200, System.currentTimeMillis());
+        LinkState state2 = new LinkState(404, System.currentTimeMillis());
+        this.linkStateManager.setLinkState("http://ok", "page1", state1);
+        this.linkStateManager.setLinkState("http://ok", "page2", state2);
+
+        Assert.assertSame(state1, this.linkStateManager.getLinkState("http://ok", "page1"));
+        Assert.assertSame(state2, this.linkStateManager.getLinkState("http://ok", "page2"));
+        Assert.assertSame(state2, this.linkStateManager.getLinkStates().get("http://ok").get("page2"));
+        Assert.assertNull(this.linkStateManager.getLinkState("http://ok", "page3"));
+        Assert.assertNull(this.linkStateManager.getLinkState("http://other", "page1"));
+    }
+
+    @Test
+    public void setLinkStateRemovesOldestLinksWhenTooMany() throws Exception
+    {
+        this.configuration.setMaxLinkStates(10);
+
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < 11; ++i) {
+            this.linkStateManager.setLinkState("http://link" + i, "page", new LinkState(200, time + i));
+        }
+        waitForMaintenance(this.linkStateManager);
+
+        Assert.assertTrue(this.linkStateManager.getLinkStates().size() <= 10);
+        Assert.assertNull(this.linkStateManager.getLinkState("http://link0", "page"));
+        Assert.assertNotNull(this.linkStateManager.getLinkState("http://link10", "page"));
+    }
+
+    @Test
+    public void setLinkStateRemovesExpiredStates() throws Exception
+    {
+        long time = System.currentTimeMillis();
+        this.linkStateManager.setLinkState("http://expired", "page", new LinkState(200, time - 3 * TIMEOUT));
+        this.linkStateManager.setLinkState("http://ok", "page1", new LinkState(200, time - 3 * TIMEOUT));
+        this.linkStateManager.setLinkState("http://ok", "page2", new LinkState(200, time));
+
+        // Force the maintenance
+        ReflectionUtils.setFieldValue(this.linkStateManager, "lastMaintenance", 0L);
+        this.linkStateManager.setLinkState("http://new", "page", new LinkState(200, time));
+        waitForMaintenance(this.linkStateManager);
+
+        Assert.assertNull(this.linkStateManager.getLinkStates().get("http://expired"));
+        Assert.assertNull(this.linkStateManager.getLinkState("http://ok", "page1"));
+        Assert.assertNotNull(this.linkStateManager.getLinkState("http://ok", "page2"));
+        Assert.assertNotNull(this.linkStateManager.getLinkState("http://new", "page"));
+    }
+
+    @Test
+    public void saveAndLoadStates() throws Exception
+    {
+        File file = File.createTempFile("linkstates", ".bin");
+        file.delete();
+        file.deleteOnExit();
+        this.configuration.setStatesFile(file);
+
+        long time = System.currentTimeMillis();
+        this.linkStateManager.setLinkState("http://expired", "page", new LinkState(200, time - 3 * TIMEOUT));
+        this.linkStateManager.setLinkState("http://ok", "page\u00e9", new LinkState(200, time));
+        // Longer than what DataOutputStream#writeUTF() supports
+        String longLink = "http://long/" + StringUtils.repeat('a', 70000);
+        this.linkStateManager.setLinkState(longLink, "page", new LinkState(200, time));
+
+        // Force the maintenance, which saves the states
+        ReflectionUtils.setFieldValue(this.linkStateManager, "lastMaintenance", 0L);
+        this.linkStateManager.setLinkState("http://notfound", "page", new LinkState(404, time));
+        waitForMaintenance(this.linkStateManager);
+        Assert.assertTrue(file.exists());
+
+        DefaultLinkStateManager loadedManager = new DefaultLinkStateManager();
+        ReflectionUtils.setFieldValue(loadedManager, "configuration", this.configuration);
+        ReflectionUtils.setFieldValue(loadedManager, "logger", LoggerFactory.getLogger(DefaultLinkStateManager.class));
+        loadedManager.initialize();
+
+        Assert.assertNull(loadedManager.getLinkStates().get("http://expired"));
+        Assert.assertEquals(new LinkState(200, time), loadedManager.getLinkState("http://ok", "page\u00e9"));
+        Assert.assertEquals(new LinkState(404, time), loadedManager.getLinkState("http://notfound", "page"));
+        Assert.assertEquals(new LinkState(200, time), loadedManager.getLinkState(longLink, "page"));
+
+        file.delete();
+    }
+
+    /**
+     * Wait for the maintenance scheduled so far to be done.
+     */
+    private void waitForMaintenance(LinkStateManager manager) throws Exception
+    {
+        Field field = ReflectionUtils.getField(DefaultLinkStateManager.class, "maintenanceExecutor");
+        field.setAccessible(true);
+        ((ExecutorService) field.get(manager)).submit(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // The executor runs the tasks in order so the previous ones are done when this one is
+            }
+        }).get();
+    }
+}
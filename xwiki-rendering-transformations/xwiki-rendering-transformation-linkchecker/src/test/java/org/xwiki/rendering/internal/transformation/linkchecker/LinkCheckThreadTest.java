@@ -20,15 +20,21 @@
 package org.xwiki.rendering.internal.transformation.linkchecker;
 
 import java.util.Arrays;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jmock.Expectations;
+import org.junit.Assert;
 import org.junit.Test;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.rendering.transformation.linkchecker.LinkCheckerThreadInitializer;
 import org.xwiki.rendering.transformation.linkchecker.LinkCheckerTransformationConfiguration;
+import org.xwiki.rendering.transformation.linkchecker.LinkState;
 import org.xwiki.rendering.transformation.linkchecker.LinkStateManager;
 import org.xwiki.test.jmock.AbstractComponentTestCase;
 
@@ -45,7 +51,7 @@ public class LinkCheckThreadTest extends AbstractComponentTestCase
     public void runWithInitializer() throws Exception
     {
         final ComponentManager componentManager = getMockery().mock(ComponentManager.class);
-        Queue<LinkQueueItem> queue = new ConcurrentLinkedQueue<LinkQueueItem>();
+        BlockingQueue<LinkQueueItem> queue = new LinkedBlockingQueue<LinkQueueItem>();
         final LinkCheckerTransformationConfiguration configuration =
             getMockery().mock(LinkCheckerTransformationConfiguration.class);
 
@@ -63,6 +69,12 @@ public void runWithInitializer() throws Exception
                 will(returnValue(configuration));
                 oneOf(configuration).getCheckTimeout();
                 will(returnValue(3600000L));
+                oneOf(configuration).getCheckerThreads();
+                will(returnValue(4));
+                oneOf(configuration).getMaxConnectionsPerHost();
+                will(returnValue(2));
+                oneOf(configuration).getQueueSize();
+                will(returnValue(100));
 
                 // This is the test:
                 oneOf(componentManager).getInstanceList(LinkCheckerThreadInitializer.class);
@@ -75,4 +87,124 @@ public void runWithInitializer() throws Exception
         ReflectionUtils.setFieldValue(thread, "shouldStop", true);
         thread.run();
     }
+
+    /**
+     * Verify that a link is checked only once even if it's queued several times and that we don't check more links of
+     * a same host at the same time than allowed.
+     */
+    @Test
+    public void runWithSeveralCheckerThreads() throws Exception
+    {
+        final Map<String, AtomicInteger> checks = new ConcurrentHashMap<String, AtomicInteger>();
+        final Map<String, AtomicInteger> hostConnections = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger maxHostConnections = new AtomicInteger();
+        HTTPChecker httpChecker = new HTTPChecker()
+        {
+            @Override
+            public int check(String url)
+            {
+                checks.get(url).incrementAndGet();
+
+                AtomicInteger connections = hostConnections.get(LinkCheckerThread.getHost(url));
+                int current = connections.incrementAndGet();
+                if (current > maxHostConnections.get()) {
+                    maxHostConnections.set(current);
+                }
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                    // Stop waiting
+                }
+                connections.decrementAndGet();
+
+                return 200;
+            }
+        };
+        DefaultComponentDescriptor<HTTPChecker> descriptor = new DefaultComponentDescriptor<HTTPChecker>();
+        descriptor.setRoleType(HTTPChecker.class);
+        getComponentManager().registerComponent(descriptor, httpChecker);
+
+        LinkCheckerTransformationConfiguration configuration =
+            getComponentManager().getInstance(LinkCheckerTransformationConfiguration.class);
+        configuration.setCheckerThreads(4);
+        configuration.setMaxConnectionsPerHost(1);
+
+        BlockingQueue<LinkQueueItem> queue = new LinkedBlockingQueue<LinkQueueItem>();
+        for (String url : Arrays.asList("http://host1/a", "http://host1/b", "http://host2/a", "http://host2/b")) {
+            checks.put(url, new AtomicInteger());
+            queue.add(new LinkQueueItem(url, "page1", null));
+        }
+        queue.add(new LinkQueueItem("http://host1/a", "page2", null));
+        queue.add(new LinkQueueItem("http://host1/a", "page1", null));
+        hostConnections.put("host1", new AtomicInteger());
+        hostConnections.put("host2", new AtomicInteger());
+
+        LinkCheckerThread thread = new LinkCheckerThread(getComponentManager(), queue);
+        thread.start();
+
+        LinkStateManager linkStateManager = getComponentManager().getInstance(LinkStateManager.class);
+        Map<String, Map<String, LinkState>> states = linkStateManager.getLinkStates();
+        long time = System.currentTimeMillis();
+        while (states.size() != 4 || states.get("http://host1/a").size() != 2) {
+            Thread.sleep(50L);
+            Assert.assertTrue("Killed thread since it took too much time", System.currentTimeMillis() - time < 10000L);
+        }
+
+        thread.stopProcessing();
+        thread.join();
+
+        for (AtomicInteger count : checks.values()) {
+            Assert.assertEquals(1, count.get());
+        }
+        Assert.assertEquals(1, maxHostConnections.get());
+        Assert.assertEquals(200, states.get("http://host1/a").get("page2").getResponseCode());
+    }
+
+    /**
+     * Verify that a link whose check fails unexpectedly doesn't prevent the other links of the same host from being
+     * checked.
+     */
+    @Test
+    public void runWithFailingCheck() throws Exception
+    {
+        HTTPChecker httpChecker = new HTTPChecker()
+        {
+            @Override
+            public int check(String url)
+            {
+                if (url.endsWith("/failing")) {
+                    throw new IllegalStateException("Failing check");
+                }
+
+                return 200;
+            }
+        };
+        DefaultComponentDescriptor<HTTPChecker> descriptor = new DefaultComponentDescriptor<HTTPChecker>();
+        descriptor.setRoleType(HTTPChecker.class);
+        getComponentManager().registerComponent(descriptor, httpChecker);
+
+        LinkCheckerTransformationConfiguration configuration =
+            getComponentManager().getInstance(LinkCheckerTransformationConfiguration.class);
+        configuration.setMaxConnectionsPerHost(1);
+
+        BlockingQueue<LinkQueueItem> queue = new LinkedBlockingQueue<LinkQueueItem>();
+        queue.add(new LinkQueueItem("http://host/failing", "page", null));
+        queue.add(new LinkQueueItem("http://host/ok", "page", null));
+
+        LinkCheckerThread thread = new LinkCheckerThread(getComponentManager(), queue);
+        thread.start();
+
+        LinkStateManager linkStateManager = getComponentManager().getInstance(LinkStateManager.class);
+        long time = System.currentTimeMillis();
+        while (linkStateManager.getLinkState("http://host/ok", "page") == null) {
+            Thread.sleep(50L);
+            Assert.assertTrue("Killed thread since it took too much time", System.currentTimeMillis() - time < 10000L);
+        }
+
+        thread.stopProcessing();
+        thread.join();
+
+        Assert.assertEquals(0, linkStateManager.getLinkState("http://host/failing", "page").getResponseCode());
+        Assert.assertEquals(200, linkStateManager.getLinkState("http://host/ok", "page").getResponseCode());
+    }
 }
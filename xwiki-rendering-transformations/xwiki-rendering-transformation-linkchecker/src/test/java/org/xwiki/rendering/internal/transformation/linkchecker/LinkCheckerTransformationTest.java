@@ -20,9 +20,15 @@
 package org.xwiki.rendering.internal.transformation.linkchecker;
 
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
 
 import org.jmock.Expectations;
 import org.jmock.States;
@@ -30,8 +36,14 @@
 import org.junit.Assert;
 import org.junit.Test;
 import org.xwiki.observation.ObservationManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
 import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
 import org.xwiki.rendering.parser.Parser;
 import org.xwiki.rendering.transformation.Transformation;
 import org.xwiki.rendering.transformation.TransformationContext;
@@ -74,10 +86,11 @@ public void transform() throws Exception
         {{
             oneOf(httpChecker).check("http://ok"); will(returnValue(200));
             oneOf(httpChecker).check("invalid"); will(returnValue(0));
+            oneOf(httpChecker).check("unsupportedrotocol://invalid"); will(returnValue(0));
         }});
 
         LinkStateManager linkStateManager = getComponentManager().getInstance(LinkStateManager.class);
-        parseAndwait(input, linkStateManager, 2);
+        parseAndwait(input, linkStateManager, 3);
 
         // Verify we can access the link states through the Script Service
         LinkCheckerScriptService service = 
@@ -88,6 +101,8 @@ public void transform() throws Exception
         Assert.assertEquals(200, state1.getResponseCode());
         LinkState state2 = states.get("invalid").get("default");
         Assert.assertEquals(0, state2.getResponseCode());
+        LinkState state3 = states.get("unsupportedrotocol://invalid").get("default");
+        Assert.assertEquals(0, state3.getResponseCode());
     }
 
     /**
@@ -266,6 +281,81 @@ public void transformWithLinkContextDataProvider() throws Exception
         Assert.assertEquals("contextValue", linkState.getContextData().get("contextKey"));
     }
     
+    /**
+     * Verify that links which have been checked recently are not even queued, while links which have never been
+     * checked or whose state has expired are.
+     */
+    @Test
+    public void transformQueuesOnlyLinksNotCheckedRecently() throws Exception
+    {
+        LinkCheckerTransformation transformation =
+            (LinkCheckerTransformation) getComponentManager().getInstance(Transformation.class, "linkchecker");
+        // Stop the thread so that the queued links stay in the queue.
+        transformation.stopLinkCheckerThread();
+
+        LinkCheckerTransformationConfiguration configuration =
+            getComponentManager().getInstance(LinkCheckerTransformationConfiguration.class);
+        long now = System.currentTimeMillis();
+        LinkStateManager linkStateManager = getComponentManager().getInstance(LinkStateManager.class);
+        linkStateManager.setLinkState("http://fresh", "default", new LinkState(200, now));
+        linkStateManager.setLinkState("http://expired", "default",
+            new LinkState(200, now - configuration.getCheckTimeout() - 1000L));
+
+        Parser parser = getComponentManager().getInstance(Parser.class, "xwiki/2.0");
+        XDOM xdom = parser.parse(new StringReader("[[http://fresh]] [[http://expired]] [[http://new]]"));
+        transformation.transform(xdom, new TransformationContext());
+
+        Assert.assertEquals(Arrays.asList("http://expired in default", "http://new in default"),
+            getQueuedLinks(transformation));
+    }
+
+    /**
+     * Verify that the content reference of a link is taken from the nearest enclosing {@link MetaData#SOURCE}.
+     */
+    @Test
+    public void transformUsesNearestSourceMetaData() throws Exception
+    {
+        LinkCheckerTransformation transformation =
+            (LinkCheckerTransformation) getComponentManager().getInstance(Transformation.class, "linkchecker");
+        // Stop the thread so that the queued links stay in the queue.
+        transformation.stopLinkCheckerThread();
+
+        Block innerParagraph = new ParagraphBlock(Arrays.asList(createLink("http://inner")));
+        Block inner = new MetaDataBlock(Arrays.asList(innerParagraph), MetaData.SOURCE, "inner");
+        Block other = new MetaDataBlock(Arrays.asList(createLink("http://other")), MetaData.SYNTAX, "xwiki/2.0");
+        XDOM xdom = new XDOM(Arrays.asList(createLink("http://before"), inner, other, createLink("http://after")),
+            new MetaData(Collections.<String, Object>singletonMap(MetaData.SOURCE, "outer")));
+
+        transformation.transform(xdom, new TransformationContext());
+
+        Assert.assertEquals(Arrays.asList("http://before in outer", "http://inner in inner", "http://other in outer",
+            "http://after in outer"), getQueuedLinks(transformation));
+
+        // When transforming a part of the XDOM the content reference is taken from its ancestors.
+        transformation.transform(innerParagraph, new TransformationContext());
+
+        Assert.assertEquals(Arrays.asList("http://inner in inner"), getQueuedLinks(transformation));
+    }
+
+    private Block createLink(String url)
+    {
+        return new LinkBlock(Collections.<Block>emptyList(), new ResourceReference(url, ResourceType.URL), true);
+    }
+
+    /**
+     * @return the links in the queue of the passed transformation, which is emptied
+     */
+    private List<String> getQueuedLinks(LinkCheckerTransformation transformation) throws Exception
+    {
+        @SuppressWarnings("unchecked")
+        Queue<LinkQueueItem> queue = (Queue<LinkQueueItem>) FieldUtils.readField(transformation, "linkQueue", true);
+        List<String> links = new ArrayList<String>();
+        for (LinkQueueItem item = queue.poll(); item != null; item = queue.poll()) {
+            links.add(item.getLinkReference() + " in " + item.getContentReference());
+        }
+        return links;
+    }
+
     private void parseAndwait(String input, LinkStateManager linkStateManager, int numberOfItemsToWaitFor)
         throws Exception
     {
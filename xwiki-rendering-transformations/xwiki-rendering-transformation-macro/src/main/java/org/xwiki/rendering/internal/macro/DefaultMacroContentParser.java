@@ -31,6 +31,8 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.Block.Axes;
 import org.xwiki.rendering.block.MacroBlock;
@@ -40,10 +42,12 @@
 import org.xwiki.rendering.listener.MetaData;
 import org.xwiki.rendering.macro.MacroContentParser;
 import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.parser.Parser;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
 import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration;
 import org.xwiki.rendering.util.ParserUtils;
 
 /**
@@ -54,7 +58,7 @@
  */
 @Component
 @Singleton
-public class DefaultMacroContentParser implements MacroContentParser
+public class DefaultMacroContentParser implements MacroContentParser, Initializable
 {
     /**
      * Used to look up the syntax parser to use for parsing the content.
@@ -62,11 +66,40 @@ public class DefaultMacroContentParser implements MacroContentParser
     @Inject
     private ComponentManager componentManager;
 
+    /**
+     * Used to get the size of the parsed content cache.
+     */
+    @Inject
+    private MacroTransformationConfiguration configuration;
+
+    /**
+     * The parsed contents, null if disabled.
+     */
+    private ParsedContentCache cache;
+
     /**
      * Utility to remove the top level paragraph.
      */
     private ParserUtils parserUtils = new ParserUtils();
 
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int cacheSize = this.configuration.getContentCacheSize();
+        if (cacheSize > 0) {
+            this.cache = new ParsedContentCache(cacheSize);
+        }
+    }
+
+    /**
+     * @return the cache of parsed contents (mostly to monitor its hit rate), null if disabled
+     * @since 5.2M1
+     */
+    public ParsedContentCache getCache()
+    {
+        return this.cache;
+    }
+
     @Override
     public XDOM parse(String content, MacroTransformationContext macroContext, boolean transform, boolean inline)
         throws MacroExecutionException
@@ -84,7 +117,7 @@ public XDOM parse(String content, MacroTransformationContext macroContext, boole
         }
 
         try {
-            XDOM result = getSyntaxParser(syntax).parse(new StringReader(content));
+            XDOM result = parse(content, syntax);
 
             if (transform && macroContext.getTransformation() != null) {
                 TransformationContext txContext = new TransformationContext(result, syntax);
@@ -106,6 +139,29 @@ public XDOM parse(String content, MacroTransformationContext macroContext, boole
         }
     }
 
+    /**
+     * Parse the content or get a copy of it from the cache.
+     * 
+     * @param content the content to parse
+     * @param syntax the syntax of the content
+     * @return the parsed content, which can be modified
+     * @throws ParseException when failing to parse the content
+     * @throws MacroExecutionException when failing to find the parser for the syntax
+     */
+    private XDOM parse(String content, Syntax syntax) throws ParseException, MacroExecutionException
+    {
+        XDOM xdom = this.cache != null ? this.cache.get(content, syntax) : null;
+
+        if (xdom == null) {
+            xdom = getSyntaxParser(syntax).parse(new StringReader(content));
+            if (this.cache != null) {
+                this.cache.put(content, syntax, xdom);
+            }
+        }
+
+        return xdom;
+    }
+
     /**
      * @param xdom the {@link XDOM} to convert
      * @return an inline version of the passed {@link XDOM}
@@ -0,0 +1,208 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.util.IdGenerator;
+
+/**
+ * Bounded cache of parsed macro contents, used by {@link DefaultMacroContentParser} to avoid parsing identical contents
+ * again and again. The least recently used contents are evicted first. The cached {@link XDOM}s are never returned,
+ * only clones of them, so that they can be modified (transformed) safely.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ParsedContentCache
+{
+    /**
+     * The key of a parsed content.
+     */
+    private static final class Key
+    {
+        /**
+         * The parsed content.
+         */
+        private final String content;
+
+        /**
+         * The syntax of the content.
+         */
+        private final Syntax syntax;
+
+        /**
+         * @param content the parsed content
+         * @param syntax the syntax of the content
+         */
+        Key(String content, Syntax syntax)
+        {
+            this.content = content;
+            this.syntax = syntax;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            boolean equals;
+            if (obj == this) {
+                equals = true;
+            } else if (obj instanceof Key) {
+                Key key = (Key) obj;
+                equals = this.content.equals(key.content) && this.syntax.equals(key.syntax);
+            } else {
+                equals = false;
+            }
+
+            return equals;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * this.content.hashCode() + this.syntax.hashCode();
+        }
+    }
+
+    /**
+     * The cached contents, in access order.
+     */
+    private final Map<Key, XDOM> contents;
+
+    /**
+     * The number of times a content has been found in the cache.
+     */
+    private long hitCount;
+
+    /**
+     * The number of times a content has not been found in the cache.
+     */
+    private long missCount;
+
+    /**
+     * @param maxSize the maximum number of parsed contents to keep
+     */
+    public ParsedContentCache(final int maxSize)
+    {
+        this.contents = new LinkedHashMap<Key, XDOM>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, XDOM> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param content the content
+     * @param syntax the syntax of the content
+     * @return a copy of the parsed content or null if it's not in the cache
+     */
+    public XDOM get(String content, Syntax syntax)
+    {
+        XDOM xdom;
+        synchronized (this) {
+            xdom = this.contents.get(new Key(content, syntax));
+            if (xdom != null) {
+                this.hitCount++;
+            } else {
+                this.missCount++;
+            }
+        }
+
+        // The cached XDOM is never modified so it can be cloned outside of the lock
+        return xdom != null ? copy(xdom) : null;
+    }
+
+    /**
+     * @param content the content
+     * @param syntax the syntax of the content
+     * @param xdom the parsed content, it's copied so it can be modified afterwards
+     */
+    public void put(String content, Syntax syntax, XDOM xdom)
+    {
+        XDOM copy = copy(xdom);
+        synchronized (this) {
+            this.contents.put(new Key(content, syntax), copy);
+        }
+    }
+
+    /**
+     * @param xdom the XDOM to copy
+     * @return a copy of the passed XDOM, independent from it (including the ids it generated)
+     */
+    private XDOM copy(XDOM xdom)
+    {
+        XDOM copy = xdom.clone();
+        if (xdom.getIdGenerator() != null) {
+            copy.setIdGenerator(new IdGenerator(xdom.getIdGenerator()));
+        }
+
+        return copy;
+    }
+
+    /**
+     * @return the number of parsed contents currently in the cache
+     */
+    public synchronized int getSize()
+    {
+        return this.contents.size();
+    }
+
+    /**
+     * @return the number of times a content has been found in the cache
+     */
+    public synchronized long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of times a content has not been found in the cache
+     */
+    public synchronized long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * @return the ratio of the lookups which found the content in the cache, between 0 and 1
+     */
+    public synchronized double getHitRate()
+    {
+        long requestCount = this.hitCount + this.missCount;
+
+        return requestCount > 0 ? (double) this.hitCount / requestCount : 0;
+    }
+
+    /**
+     * Removes all the parsed contents from the cache.
+     */
+    public synchronized void clear()
+    {
+        this.contents.clear();
+    }
+}
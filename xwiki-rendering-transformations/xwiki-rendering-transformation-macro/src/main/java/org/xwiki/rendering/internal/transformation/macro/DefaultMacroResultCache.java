@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.macro;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.transformation.macro.MacroResultCache;
+import org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration;
+
+/**
+ * Keeps the macro results in memory. When there are more results than
+ * {@link MacroTransformationConfiguration#getResultCacheSize()} the least recently used ones are evicted. Expired
+ * results are removed when they are looked up.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultMacroResultCache implements MacroResultCache, Initializable
+{
+    /**
+     * A cached result.
+     */
+    private static final class Entry
+    {
+        /**
+         * The blocks generated by the macro.
+         */
+        private final List<Block> result;
+
+        /**
+         * The time (as returned by {@link System#currentTimeMillis()}) after which the result can't be used anymore.
+         */
+        private final long expirationTime;
+
+        /**
+         * @param result the blocks generated by the macro
+         * @param expirationTime the time after which the result can't be used anymore
+         */
+        Entry(List<Block> result, long expirationTime)
+        {
+            this.result = result;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    /**
+     * Used to get the maximum number of results to keep.
+     */
+    @Inject
+    private MacroTransformationConfiguration configuration;
+
+    /**
+     * The cached results, in access order.
+     */
+    private Map<String, Entry> results;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        final int maxSize = this.configuration.getResultCacheSize();
+        this.results = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized List<Block> get(String key)
+    {
+        List<Block> result = null;
+
+        Entry entry = this.results.get(key);
+        if (entry != null) {
+            if (entry.expirationTime > System.currentTimeMillis()) {
+                result = entry.result;
+            } else {
+                this.results.remove(key);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized void put(String key, List<Block> result, long timeToLive)
+    {
+        if (timeToLive > 0) {
+            this.results.put(key, new Entry(result, System.currentTimeMillis() + timeToLive));
+        }
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        this.results.clear();
+    }
+}
@@ -42,6 +42,21 @@ public class DefaultMacroTransformationConfiguration implements MacroTransformat
      */
     private Properties macroCategories = new Properties();
 
+    /**
+     * @see #getContentCacheSize()
+     */
+    private int contentCacheSize;
+
+    /**
+     * @see #getResultCacheSize()
+     */
+    private int resultCacheSize = 1000;
+
+    /**
+     * @see #getAsyncMacroTimeout()
+     */
+    private long asyncMacroTimeout = 60000L;
+
     @Override
     public Properties getCategories()
     {
@@ -58,4 +73,49 @@ public void addCategory(MacroId macroId, String category)
         // to work even without a configuration store.
         this.macroCategories.setProperty(macroId.toString(), category);
     }
+
+    @Override
+    public int getContentCacheSize()
+    {
+        return this.contentCacheSize;
+    }
+
+    /**
+     * @param contentCacheSize the maximum number of parsed macro contents to keep in memory, 0 to disable the cache
+     * @since 5.2M1
+     */
+    public void setContentCacheSize(int contentCacheSize)
+    {
+        this.contentCacheSize = contentCacheSize;
+    }
+
+    @Override
+    public int getResultCacheSize()
+    {
+        return this.resultCacheSize;
+    }
+
+    /**
+     * @param resultCacheSize the maximum number of cacheable macro results kept in memory
+     * @since 5.2M1
+     */
+    public void setResultCacheSize(int resultCacheSize)
+    {
+        this.resultCacheSize = resultCacheSize;
+    }
+
+    @Override
+    public long getAsyncMacroTimeout()
+    {
+        return this.asyncMacroTimeout;
+    }
+
+    /**
+     * @param asyncMacroTimeout the maximum time (in milliseconds) to wait for the result of an asynchronous macro
+     * @since 5.2M1
+     */
+    public void setAsyncMacroTimeout(long asyncMacroTimeout)
+    {
+        this.asyncMacroTimeout = asyncMacroTimeout;
+    }
 }
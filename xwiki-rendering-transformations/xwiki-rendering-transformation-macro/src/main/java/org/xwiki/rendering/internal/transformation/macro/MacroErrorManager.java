@@ -66,6 +66,35 @@
      * @param description the long description of the error to display to the user in place of the macro result
      */
     public void generateError(MacroBlock macroToReplace, String message, String description)
+    {
+        List<Block> errorBlocks = createErrorBlocks(macroToReplace.isInline(), message, description);
+
+        macroToReplace.getParent().replaceChild(wrapInMacroMarker(macroToReplace, errorBlocks), macroToReplace);
+    }
+
+    /**
+     * Generates Blocks to signify that the passed Macro Block has failed to execute.
+     *
+     * @param macroToReplace the block for the macro that failed to execute and that we'll replace with Block
+     *        showing to the user that macro has failed
+     * @param message the message to display to the user in place of the macro result
+     * @param throwable the exception for the failed macro execution to display to the user in place of the macro result
+     */
+    public void generateError(MacroBlock macroToReplace, String message, Throwable throwable)
+    {
+        generateError(macroToReplace, message, getStackTrace(throwable));
+    }
+
+    /**
+     * Generates Blocks to display in place of the result of a macro that failed to execute.
+     *
+     * @param isInline true if the macro is located in an inline content (like paragraph, etc.)
+     * @param message the message to display to the user in place of the macro result
+     * @param description the long description of the error to display to the user in place of the macro result
+     * @return the error blocks
+     * @since 5.2M1
+     */
+    public List<Block> createErrorBlocks(boolean isInline, String message, String description)
     {
         List<Block> errorBlocks = new ArrayList<Block>();
 
@@ -73,9 +102,9 @@ public void generateError(MacroBlock macroToReplace, String message, String desc
         Map<String, String> errorDescriptionBlockParams =
                 Collections.singletonMap(CLASS_PARAMETER_NAME, "xwikirenderingerrordescription hidden");
 
-        Block descriptionBlock = new VerbatimBlock(description, macroToReplace.isInline());
+        Block descriptionBlock = new VerbatimBlock(description, isInline);
 
-        if (macroToReplace.isInline()) {
+        if (isInline) {
             errorBlocks.add(new FormatBlock(Arrays.<Block> asList(new WordBlock(message)), Format.NONE,
                     errorBlockParams));
             errorBlocks.add(new FormatBlock(Arrays.asList(descriptionBlock), Format.NONE, errorDescriptionBlockParams));
@@ -84,22 +113,21 @@ public void generateError(MacroBlock macroToReplace, String message, String desc
             errorBlocks.add(new GroupBlock(Arrays.asList(descriptionBlock), errorDescriptionBlockParams));
         }
 
-        macroToReplace.getParent().replaceChild(wrapInMacroMarker(macroToReplace, errorBlocks), macroToReplace);
+        return errorBlocks;
     }
 
     /**
-     * Generates Blocks to signify that the passed Macro Block has failed to execute.
+     * Generates Blocks to display in place of the result of a macro that failed to execute.
      *
-     * @param macroToReplace the block for the macro that failed to execute and that we'll replace with Block
-     *        showing to the user that macro has failed
+     * @param isInline true if the macro is located in an inline content (like paragraph, etc.)
      * @param message the message to display to the user in place of the macro result
      * @param throwable the exception for the failed macro execution to display to the user in place of the macro result
+     * @return the error blocks
+     * @since 5.2M1
      */
-    public void generateError(MacroBlock macroToReplace, String message, Throwable throwable)
+    public List<Block> createErrorBlocks(boolean isInline, String message, Throwable throwable)
     {
-        StringWriter writer = new StringWriter();
-        throwable.printStackTrace(new PrintWriter(writer));
-        generateError(macroToReplace, message, writer.getBuffer().toString());
+        return createErrorBlocks(isInline, message, getStackTrace(throwable));
     }
 
     /**
@@ -124,6 +152,17 @@ public boolean containsError(XDOM xdom)
         return foundError;
     }
 
+    /**
+     * @param throwable the exception to display
+     * @return the stack trace of the passed exception
+     */
+    private String getStackTrace(Throwable throwable)
+    {
+        StringWriter writer = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(writer));
+        return writer.getBuffer().toString();
+    }
+
     /**
      * Wrap the output of a macro block with a {@link org.xwiki.rendering.block.MacroMarkerBlock}.
      *
@@ -22,6 +22,12 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -31,10 +37,14 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.properties.BeanManager;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FutureBlock;
 import org.xwiki.rendering.block.MacroBlock;
 import org.xwiki.rendering.block.MacroMarkerBlock;
 import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.macro.AsyncMacro;
+import org.xwiki.rendering.macro.CacheableMacro;
 import org.xwiki.rendering.macro.Macro;
+import org.xwiki.rendering.macro.MacroExecutionException;
 import org.xwiki.rendering.macro.MacroId;
 import org.xwiki.rendering.macro.MacroLookupException;
 import org.xwiki.rendering.macro.MacroManager;
@@ -44,6 +54,8 @@
 import org.xwiki.rendering.transformation.AbstractTransformation;
 import org.xwiki.rendering.transformation.TransformationContext;
 import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rendering.transformation.macro.MacroResultCache;
+import org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration;
 
 /**
  * Look for all {@link org.xwiki.rendering.block.MacroBlock} blocks in the passed {@link Block} and iteratively execute
@@ -79,6 +91,18 @@ public class MacroTransformation extends AbstractTransformation
     @Inject
     private BeanManager beanManager;
 
+    /**
+     * Used to reuse the results of the cacheable macros.
+     */
+    @Inject
+    private MacroResultCache resultCache;
+
+    /**
+     * Used to get the timeout of the asynchronous macros.
+     */
+    @Inject
+    private MacroTransformationConfiguration configuration;
+
     /**
      * The logger to log.
      */
@@ -109,6 +133,92 @@ public int compareTo(MacroHolder holder)
         }
     }
 
+    /**
+     * The result of an asynchronous macro execution, which generates error blocks if the execution fails or times out.
+     * Since the result is only known once the transformation is done, the macros it would contain would never be
+     * executed: such a result is rejected and error blocks are generated instead.
+     */
+    private class AsyncMacroResult implements Future<List<Block>>
+    {
+        private final Future<List<Block>> future;
+
+        private final MacroBlock macroBlock;
+
+        public AsyncMacroResult(Future<List<Block>> future, MacroBlock macroBlock)
+        {
+            this.future = future;
+            this.macroBlock = macroBlock;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            return this.future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled()
+        {
+            return this.future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return this.future.isDone();
+        }
+
+        @Override
+        public List<Block> get() throws InterruptedException
+        {
+            try {
+                return checkResult(this.future.get());
+            } catch (ExecutionException e) {
+                return generateError(e.getCause() != null ? e.getCause() : e);
+            } catch (CancellationException e) {
+                return generateError(e);
+            }
+        }
+
+        @Override
+        public List<Block> get(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            try {
+                return checkResult(this.future.get(timeout, unit));
+            } catch (ExecutionException e) {
+                return generateError(e.getCause() != null ? e.getCause() : e);
+            } catch (CancellationException e) {
+                return generateError(e);
+            } catch (TimeoutException e) {
+                // Don't keep computing a result that won't be used
+                this.future.cancel(true);
+                return generateError(new TimeoutException(String.format(
+                    "The macro didn't complete its execution in %s %s", timeout, unit.toString().toLowerCase())));
+            }
+        }
+
+        private List<Block> checkResult(List<Block> blocks)
+        {
+            for (Block block : blocks) {
+                if (block instanceof MacroBlock
+                    || block.getFirstBlock(new ClassBlockMatcher(MacroBlock.class), Block.Axes.DESCENDANT) != null) {
+                    return generateError(new MacroExecutionException(
+                        "The result of an asynchronous macro can't contain macros since they wouldn't be executed"));
+                }
+            }
+
+            return blocks;
+        }
+
+        private List<Block> generateError(Throwable e)
+        {
+            MacroTransformation.this.logger.debug("Failed to execute the [{}] macro. Internal error [{}]",
+                this.macroBlock.getId(), e.getMessage());
+            return MacroTransformation.this.macroErrorManager.createErrorBlocks(this.macroBlock.isInline(),
+                String.format("Failed to execute the [%s] macro", this.macroBlock.getId()), e);
+        }
+    }
+
     @Override
     public int getPriority()
     {
@@ -188,8 +298,11 @@ private boolean transformOnce(Block rootBlock, MacroTransformationContext contex
                 return false;
             }
 
-            newBlocks = ((Macro<Object>) macroHolder.macro).execute(
-                macroParameters, macroHolder.macroBlock.getContent(), context);
+            if (macroHolder.macro instanceof AsyncMacro) {
+                newBlocks = executeAsync(macroHolder, macroParameters, context);
+            } else {
+                newBlocks = execute(macroHolder, macroParameters, context);
+            }
         } catch (Throwable e) {
             // The Macro failed to execute.
             // The macro will not be executed and we generate an error message instead of the macro
@@ -213,6 +326,121 @@ private boolean transformOnce(Block rootBlock, MacroTransformationContext contex
         return result;
     }
 
+    /**
+     * Execute the macro, or reuse a previous execution result if the macro is cacheable.
+     * 
+     * @param macroHolder the macro to execute
+     * @param macroParameters the populated macro parameters
+     * @param context the macro transformation context
+     * @return the blocks generated by the macro
+     * @throws MacroExecutionException when the macro fails to execute
+     */
+    private List<Block> execute(MacroHolder macroHolder, Object macroParameters, MacroTransformationContext context)
+        throws MacroExecutionException
+    {
+        String content = macroHolder.macroBlock.getContent();
+
+        String cacheKey = null;
+        if (macroHolder.macro instanceof CacheableMacro) {
+            String macroCacheKey =
+                ((CacheableMacro<Object>) macroHolder.macro).getCacheKey(macroParameters, content, context);
+            if (macroCacheKey != null) {
+                cacheKey = getCacheKey(macroHolder.macroBlock, context, macroCacheKey);
+            }
+        }
+
+        List<Block> result = null;
+        if (cacheKey != null) {
+            List<Block> cachedResult = this.resultCache.get(cacheKey);
+            if (cachedResult != null) {
+                result = cloneBlocks(cachedResult);
+            }
+        }
+
+        if (result == null) {
+            result = ((Macro<Object>) macroHolder.macro).execute(macroParameters, content, context);
+
+            if (cacheKey != null) {
+                long timeToLive =
+                    ((CacheableMacro<Object>) macroHolder.macro).getCacheTimeToLive(macroParameters, content, context);
+                if (timeToLive > 0) {
+                    this.resultCache.put(cacheKey, cloneBlocks(result), timeToLive);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Start the execution of an asynchronous macro.
+     * 
+     * @param macroHolder the macro to execute
+     * @param macroParameters the populated macro parameters
+     * @param context the macro transformation context
+     * @return a block waiting for the result of the macro execution when rendered
+     * @throws MacroExecutionException when the macro fails to start its execution
+     */
+    private List<Block> executeAsync(MacroHolder macroHolder, Object macroParameters,
+        MacroTransformationContext context) throws MacroExecutionException
+    {
+        Future<List<Block>> future = ((AsyncMacro<Object>) macroHolder.macro).executeAsync(macroParameters,
+            macroHolder.macroBlock.getContent(), context);
+
+        return Collections.<Block>singletonList(new FutureBlock(new AsyncMacroResult(future, macroHolder.macroBlock),
+            this.configuration.getAsyncMacroTimeout(), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @param macroBlock the macro block being executed
+     * @param context the macro transformation context
+     * @param macroCacheKey the cache key provided by the macro
+     * @return the key identifying the macro execution result in the cache
+     */
+    private String getCacheKey(MacroBlock macroBlock, MacroTransformationContext context, String macroCacheKey)
+    {
+        // Each part is prefixed by its length so that the key is not ambiguous
+        StringBuilder key = new StringBuilder();
+        appendCacheKeyPart(macroBlock.getId(), key);
+        appendCacheKeyPart(context.getSyntax() != null ? context.getSyntax().toIdString() : null, key);
+        appendCacheKeyPart(String.valueOf(macroBlock.isInline()), key);
+        for (Map.Entry<String, String> parameter : macroBlock.getParameters().entrySet()) {
+            appendCacheKeyPart(parameter.getKey(), key);
+            appendCacheKeyPart(parameter.getValue(), key);
+        }
+        appendCacheKeyPart(macroBlock.getContent(), key);
+        appendCacheKeyPart(macroCacheKey, key);
+
+        return key.toString();
+    }
+
+    /**
+     * @param part the part to append
+     * @param key the key to append to
+     */
+    private void appendCacheKeyPart(String part, StringBuilder key)
+    {
+        if (part != null) {
+            key.append(part.length()).append(':').append(part);
+        } else {
+            key.append('-');
+        }
+    }
+
+    /**
+     * @param blocks the blocks to clone
+     * @return clones of the passed blocks
+     */
+    private List<Block> cloneBlocks(List<Block> blocks)
+    {
+        List<Block> clones = new ArrayList<Block>(blocks.size());
+        for (Block block : blocks) {
+            clones.add(block.clone());
+        }
+
+        return clones;
+    }
+
     /**
      * @return the macro with the highest priority for the passed syntax or null if no macro is found
      */
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.macro;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+/**
+ * Implemented by the macros whose execution can be done concurrently with the execution of the other macros and with
+ * the rendering of the content located before them (for example macros waiting for an external system). The Macro
+ * Transformation calls {@link #executeAsync(Object, String, MacroTransformationContext)} instead of
+ * {@link Macro#execute(Object, String, MacroTransformationContext)} and puts a
+ * {@link org.xwiki.rendering.block.FutureBlock} in place of the macro, which waits for the macro result when it's
+ * rendered.
+ * <p>
+ * Since the macro result is only known when rendering, it's not transformed and it's not visible to the other macros
+ * and transformations (for example the table of contents doesn't see the headers it contains). A result containing
+ * macros is thus rejected, since they would never be executed, and an error is rendered in place of it, like when the
+ * future fails. The rendering waits for the future at most the time configured with
+ * {@link org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration#getAsyncMacroTimeout()}, after which
+ * the future is cancelled and an error is rendered too.
+ * 
+ * @param <P> the type of the macro parameters bean
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface AsyncMacro<P>
+{
+    /**
+     * Starts the execution of the macro. Note that the passed context should not be used by the asynchronous execution
+     * since it's modified by the execution of the following macros.
+     * 
+     * @param parameters the macro parameters in the form of a bean defined by the {@link Macro} implementation
+     * @param content the content of the macro
+     * @param context the context of the macros transformation process
+     * @return the computation of the Blocks generated by the macro execution
+     * @throws MacroExecutionException error when starting the macro execution
+     */
+    Future<List<Block>> executeAsync(P parameters, String content, MacroTransformationContext context)
+        throws MacroExecutionException;
+}
@@ -0,0 +1,55 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.macro;
+
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+/**
+ * Implemented by the macros whose execution result can be reused as long as their inputs don't change (for example
+ * macros fetching data from an external system). Before executing such a macro, the Macro Transformation looks for a
+ * result cached for the same macro id, syntax, inline mode, parameters, content and cache key, and uses a copy of it
+ * instead of executing the macro. The macro result is cached after the macro execution.
+ * 
+ * @param <P> the type of the macro parameters bean
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface CacheableMacro<P>
+{
+    /**
+     * @param parameters the macro parameters in the form of a bean defined by the {@link Macro} implementation
+     * @param content the content of the macro
+     * @param context the context of the macros transformation process
+     * @return the part of the cache key that depends on something else than the macro id, the syntax, the inline mode,
+     *         the parameters and the content (which are always part of the key), for example the current user. Can be
+     *         empty when the result only depends on these inputs. Null means that the result of this execution must
+     *         not be cached.
+     */
+    String getCacheKey(P parameters, String content, MacroTransformationContext context);
+
+    /**
+     * @param parameters the macro parameters in the form of a bean defined by the {@link Macro} implementation
+     * @param content the content of the macro
+     * @param context the context of the macros transformation process
+     * @return the number of milliseconds during which the result of this execution can be reused, 0 or less to not
+     *         cache it
+     */
+    long getCacheTimeToLive(P parameters, String content, MacroTransformationContext context);
+}
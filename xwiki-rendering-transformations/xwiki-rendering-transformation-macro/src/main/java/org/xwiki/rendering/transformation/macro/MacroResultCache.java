@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.transformation.macro;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Stores the execution results of {@link org.xwiki.rendering.macro.CacheableMacro cacheable macros}. The default
+ * implementation keeps them in memory, other implementations can be provided to change where they are stored or how
+ * they are evicted.
+ * <p>
+ * The blocks given to and returned by the cache are never modified by the Macro Transformation (it works on copies of
+ * them) so implementations don't need to copy them.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface MacroResultCache
+{
+    /**
+     * @param key the key of the result
+     * @return the cached result or null if there's none or it has expired
+     */
+    List<Block> get(String key);
+
+    /**
+     * @param key the key of the result
+     * @param result the blocks generated by the macro execution
+     * @param timeToLive the number of milliseconds during which the result can be reused
+     */
+    void put(String key, List<Block> result, long timeToLive);
+
+    /**
+     * Remove all the cached results.
+     */
+    void clear();
+}
@@ -42,4 +42,27 @@
      *         descriptor (ie defined by the macro author) will be used
      */
     Properties getCategories();
+
+    /**
+     * @return the maximum number of parsed macro contents to keep in memory so that identical contents (for example
+     *         the content of box or message macros repeated in a page or in several pages) are not parsed again, 0 to
+     *         disable the cache
+     * @since 5.2M1
+     */
+    int getContentCacheSize();
+
+    /**
+     * @return the maximum number of {@link org.xwiki.rendering.macro.CacheableMacro cacheable macro} results kept in
+     *         memory by the default {@link MacroResultCache}
+     * @since 5.2M1
+     */
+    int getResultCacheSize();
+
+    /**
+     * @return the maximum time (in milliseconds) the rendering waits for the result of an
+     *         {@link org.xwiki.rendering.macro.AsyncMacro asynchronous macro}, after which an error is rendered in
+     *         place of the macro result
+     * @since 5.2M1
+     */
+    long getAsyncMacroTimeout();
 }
@@ -20,6 +20,8 @@
 package org.xwiki.rendering.internal.macro;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.Reader;
@@ -35,11 +37,13 @@
 import org.xwiki.rendering.block.ParagraphBlock;
 import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
 import org.xwiki.rendering.macro.MacroContentParser;
 import org.xwiki.rendering.parser.Parser;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.syntax.SyntaxType;
 import org.xwiki.rendering.transformation.MacroTransformationContext;
+import org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration;
 import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentManagerRule;
 
@@ -53,6 +57,8 @@
 
     private Parser mockParser;
 
+    private MacroTransformationConfiguration configuration;
+
     private MacroContentParser macroContentParser;
 
     @Before
@@ -65,6 +71,8 @@ public void setUp() throws Exception
 
         this.mockParser = this.componentManager.registerMockComponent(Parser.class, testSyntax.toIdString());
 
+        this.configuration = this.componentManager.registerMockComponent(MacroTransformationConfiguration.class);
+
         this.macroContentParser = this.componentManager.getInstance(MacroContentParser.class);
     }
 
@@ -90,4 +98,36 @@ public void testParseInlineWithStandaloneMacro() throws Exception
             new XDOM(Arrays.<Block> asList(new MacroBlock("macro", Collections.EMPTY_MAP, null, true))),
             this.macroContentParser.parse("content", this.macroContext, false, true));
     }
+
+    @Test
+    public void testParseWithCache() throws Exception
+    {
+        when(this.configuration.getContentCacheSize()).thenReturn(1);
+        DefaultMacroContentParser parser = (DefaultMacroContentParser) this.macroContentParser;
+        parser.initialize();
+
+        when(mockParser.parse(any(Reader.class))).thenReturn(
+            new XDOM(Arrays.<Block> asList(new ParagraphBlock(Arrays.<Block> asList(new WordBlock("word"))))));
+
+        XDOM first = parser.parse("content", this.macroContext, false, false);
+        // Modify the result to verify that the cached content is not affected
+        first.getFirstBlock(new ClassBlockMatcher(WordBlock.class), Block.Axes.DESCENDANT).getParent()
+            .addChild(new WordBlock("modified"));
+        first.getIdGenerator().generateUniqueId("text");
+
+        XDOM second = parser.parse("content", this.macroContext, false, true);
+
+        Assert.assertEquals(new XDOM(Arrays.<Block> asList(new WordBlock("word"))), second);
+        Assert.assertEquals("Itext", second.getIdGenerator().generateUniqueId("text"));
+        verify(this.mockParser, times(1)).parse(any(Reader.class));
+        Assert.assertEquals(1, parser.getCache().getHitCount());
+        Assert.assertEquals(1, parser.getCache().getMissCount());
+        Assert.assertEquals(0.5, parser.getCache().getHitRate(), 0);
+
+        // The cache only keeps one content
+        parser.parse("other content", this.macroContext, false, false);
+        parser.parse("content", this.macroContext, false, false);
+        verify(this.mockParser, times(3)).parse(any(Reader.class));
+        Assert.assertEquals(1, parser.getCache().getSize());
+    }
 }
@@ -19,10 +19,12 @@
  */
 package org.xwiki.rendering.internal.transformation.macro;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
@@ -30,14 +32,21 @@
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.FutureBlock;
 import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.macro.Macro;
 import org.xwiki.rendering.renderer.BlockRenderer;
 import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.rendering.renderer.printer.WriterWikiPrinter;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.transformation.Transformation;
 import org.xwiki.rendering.transformation.TransformationContext;
+import org.xwiki.rendering.transformation.macro.MacroTransformationConfiguration;
 import org.xwiki.test.ComponentManagerRule;
 import org.xwiki.test.annotation.AllComponents;
 
@@ -265,4 +274,163 @@ public void macroWithSamePriorityExecuteOnPageOrder() throws Exception
             + "endDocument";
         Assert.assertEquals(expected, printer.toString());
     }
+
+    @Test
+    public void transformCacheableMacro() throws Exception
+    {
+        String expected = "beginDocument\n"
+            + "beginMacroMarkerStandalone [testcacheablemacro] [] [content]\n"
+            + "beginParagraph\n"
+            + "onWord [content]\n"
+            + "endParagraph\n"
+            + "endMacroMarkerStandalone [testcacheablemacro] [] [content]\n"
+            + "endDocument";
+
+        TestCacheableMacro macro = this.componentManager.getInstance(Macro.class, "testcacheablemacro");
+        BlockRenderer eventBlockRenderer =
+            this.componentManager.getInstance(BlockRenderer.class, Syntax.EVENT_1_0.toIdString());
+
+        for (int i = 0; i < 2; i++) {
+            XDOM dom = new XDOM(Arrays.asList((Block) new MacroBlock("testcacheablemacro",
+                Collections.<String, String>emptyMap(), "content", false)));
+            this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+
+            WikiPrinter printer = new DefaultWikiPrinter();
+            eventBlockRenderer.render(dom, printer);
+            Assert.assertEquals(expected, printer.toString());
+
+            // Modify the result to verify that the cached result is not affected
+            dom.getChildren().get(0).getChildren().get(0).addChild(new WordBlock("modified"));
+        }
+        Assert.assertEquals(1, macro.getExecutionCount());
+
+        // Different content
+        XDOM dom = new XDOM(Arrays.asList((Block) new MacroBlock("testcacheablemacro",
+            Collections.<String, String>emptyMap(), "other", false)));
+        this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+        Assert.assertEquals(2, macro.getExecutionCount());
+
+        // Not cached execution
+        for (int i = 0; i < 2; i++) {
+            dom = new XDOM(Arrays.asList((Block) new MacroBlock("testcacheablemacro",
+                Collections.<String, String>emptyMap(), "nocache", false)));
+            this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+        }
+        Assert.assertEquals(4, macro.getExecutionCount());
+    }
+
+    @Test
+    public void transformAsyncMacro() throws Exception
+    {
+        String expected = "beginDocument\n"
+            + "beginMacroMarkerStandalone [testasyncmacro] [] [content]\n"
+            + "beginParagraph\n"
+            + "onWord [content]\n"
+            + "endParagraph\n"
+            + "endMacroMarkerStandalone [testasyncmacro] [] [content]\n"
+            + "beginMacroMarkerStandalone [testasyncmacro] [] [fail]\n"
+            + "beginGroup [[class]=[xwikirenderingerror]]\n"
+            + "onWord [Failed to execute the [testasyncmacro] macro]\n"
+            + "endGroup [[class]=[xwikirenderingerror]]\n";
+
+        XDOM dom = new XDOM(Arrays.asList((Block) new MacroBlock("testasyncmacro",
+            Collections.<String, String>emptyMap(), "content", false), new MacroBlock("testasyncmacro",
+            Collections.<String, String>emptyMap(), "fail", false)));
+        this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+
+        // The macro result is only known when rendering
+        Block futureBlock = dom.getChildren().get(0).getChildren().get(0);
+        Assert.assertTrue(futureBlock instanceof FutureBlock);
+
+        BlockRenderer eventBlockRenderer =
+            this.componentManager.getInstance(BlockRenderer.class, Syntax.EVENT_1_0.toIdString());
+        StringWriter writer = new StringWriter();
+        eventBlockRenderer.render(dom, new WriterWikiPrinter(writer));
+        Assert.assertTrue(writer.toString().startsWith(expected));
+        Assert.assertEquals(1, futureBlock.getChildren().size());
+    }
+
+    @Test
+    public void transformAsyncMacroRendersContentBeforeWhilePending() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        TestAsyncMacro macro = this.componentManager.getInstance(Macro.class, "testasyncmacro");
+        macro.setLatch(latch);
+
+        XDOM dom = new XDOM(Arrays.<Block>asList(
+            new ParagraphBlock(Arrays.<Block>asList(new WordBlock("before"), new SpaceBlock(),
+                new MacroBlock("testasyncmacro", Collections.<String, String>emptyMap(), "async", true),
+                new SpaceBlock(), new WordBlock("after"))),
+            new MacroBlock("testsimplemacro", Collections.<String, String>emptyMap(), false)));
+        this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+
+        // The macros located after the asynchronous macro are executed while it's still pending
+        FutureBlock futureBlock = (FutureBlock) dom.getChildren().get(0).getChildren().get(2).getChildren().get(0);
+        Assert.assertFalse(futureBlock.getFuture().isDone());
+        Assert.assertEquals("simplemacro2",
+            ((WordBlock) dom.getChildren().get(1).getChildren().get(0).getChildren().get(0)).getWord());
+
+        // Release the asynchronous macro only once the content located before it has been flushed
+        final List<String> flushed = new ArrayList<String>();
+        StringWriter writer = new StringWriter()
+        {
+            @Override
+            public void flush()
+            {
+                flushed.add(toString());
+                latch.countDown();
+            }
+        };
+
+        BlockRenderer xhtmlBlockRenderer =
+            this.componentManager.getInstance(BlockRenderer.class, Syntax.XHTML_1_0.toIdString());
+        xhtmlBlockRenderer.render(dom, new WriterWikiPrinter(writer));
+
+        Assert.assertEquals(Arrays.asList("<p>before"), flushed.subList(0, 1));
+        Assert.assertEquals("<p>before async after</p><p>simplemacro2</p>", writer.toString());
+    }
+
+    @Test
+    public void transformAsyncMacroWhenTimeout() throws Exception
+    {
+        DefaultMacroTransformationConfiguration configuration =
+            this.componentManager.getInstance(MacroTransformationConfiguration.class);
+        configuration.setAsyncMacroTimeout(10);
+        TestAsyncMacro macro = this.componentManager.getInstance(Macro.class, "testasyncmacro");
+        macro.setLatch(new CountDownLatch(1));
+
+        XDOM dom = new XDOM(Arrays.asList((Block) new MacroBlock("testasyncmacro",
+            Collections.<String, String>emptyMap(), "content", false)));
+        this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+
+        BlockRenderer eventBlockRenderer =
+            this.componentManager.getInstance(BlockRenderer.class, Syntax.EVENT_1_0.toIdString());
+        StringWriter writer = new StringWriter();
+        eventBlockRenderer.render(dom, new WriterWikiPrinter(writer));
+        Assert.assertTrue(writer.toString().startsWith("beginDocument\n"
+            + "beginMacroMarkerStandalone [testasyncmacro] [] [content]\n"
+            + "beginGroup [[class]=[xwikirenderingerror]]\n"
+            + "onWord [Failed to execute the [testasyncmacro] macro]\n"));
+        Assert.assertTrue(
+            ((FutureBlock) dom.getChildren().get(0).getChildren().get(0)).getFuture().isCancelled());
+    }
+
+    @Test
+    public void transformAsyncMacroWithMacroInResult() throws Exception
+    {
+        XDOM dom = new XDOM(Arrays.asList((Block) new MacroBlock("testasyncmacro",
+            Collections.<String, String>emptyMap(), "macro", false)));
+        this.transformation.transform(dom, new TransformationContext(dom, Syntax.XWIKI_2_0));
+
+        // The macro contained in the result would never be executed
+        BlockRenderer eventBlockRenderer =
+            this.componentManager.getInstance(BlockRenderer.class, Syntax.EVENT_1_0.toIdString());
+        StringWriter writer = new StringWriter();
+        eventBlockRenderer.render(dom, new WriterWikiPrinter(writer));
+        Assert.assertTrue(writer.toString().startsWith("beginDocument\n"
+            + "beginMacroMarkerStandalone [testasyncmacro] [] [macro]\n"
+            + "beginGroup [[class]=[xwikirenderingerror]]\n"
+            + "onWord [Failed to execute the [testasyncmacro] macro]\n"));
+        Assert.assertFalse(writer.toString().contains("onMacro"));
+    }
 }
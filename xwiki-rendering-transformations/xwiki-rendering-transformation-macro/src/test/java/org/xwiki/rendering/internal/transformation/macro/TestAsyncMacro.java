@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.macro;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.macro.AbstractNoParameterMacro;
+import org.xwiki.rendering.macro.AsyncMacro;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+@Component
+@Named("testasyncmacro")
+@Singleton
+public class TestAsyncMacro extends AbstractNoParameterMacro implements AsyncMacro<Object>, Disposable
+{
+    /**
+     * Executes the macros.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * When set, the executions wait for it to be released before returning their result.
+     */
+    private volatile CountDownLatch latch;
+
+    public TestAsyncMacro()
+    {
+        super("Async Macro");
+    }
+
+    public void setLatch(CountDownLatch latch)
+    {
+        this.latch = latch;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Override
+    public boolean supportsInlineMode()
+    {
+        return true;
+    }
+
+    @Override
+    public List<Block> execute(Object parameters, String content, MacroTransformationContext context)
+        throws MacroExecutionException
+    {
+        throw new MacroExecutionException("Should be executed asynchronously");
+    }
+
+    @Override
+    public Future<List<Block>> executeAsync(Object parameters, final String content,
+        MacroTransformationContext context) throws MacroExecutionException
+    {
+        final CountDownLatch executionLatch = this.latch;
+        final boolean inline = context.isInline();
+        return this.executor.submit(new Callable<List<Block>>()
+        {
+            @Override
+            public List<Block> call() throws Exception
+            {
+                if (executionLatch != null) {
+                    executionLatch.await(10, TimeUnit.SECONDS);
+                }
+                if ("fail".equals(content)) {
+                    throw new MacroExecutionException("Asynchronous execution error");
+                }
+                if ("macro".equals(content)) {
+                    return Arrays.<Block>asList(new MacroBlock("testsimplemacro",
+                        Collections.<String, String>emptyMap(), inline));
+                }
+                if (inline) {
+                    return Arrays.<Block>asList(new WordBlock(content));
+                }
+                return Arrays.<Block>asList(new ParagraphBlock(Arrays.<Block>asList(new WordBlock(content))));
+            }
+        });
+    }
+}
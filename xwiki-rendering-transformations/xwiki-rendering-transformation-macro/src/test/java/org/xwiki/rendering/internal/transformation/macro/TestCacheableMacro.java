@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.transformation.macro;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.macro.AbstractNoParameterMacro;
+import org.xwiki.rendering.macro.CacheableMacro;
+import org.xwiki.rendering.macro.MacroExecutionException;
+import org.xwiki.rendering.transformation.MacroTransformationContext;
+
+@Component
+@Named("testcacheablemacro")
+@Singleton
+public class TestCacheableMacro extends AbstractNoParameterMacro implements CacheableMacro<Object>
+{
+    private int executionCount;
+
+    public TestCacheableMacro()
+    {
+        super("Cacheable Macro");
+    }
+
+    @Override
+    public boolean supportsInlineMode()
+    {
+        return false;
+    }
+
+    @Override
+    public List<Block> execute(Object parameters, String content, MacroTransformationContext context)
+        throws MacroExecutionException
+    {
+        this.executionCount++;
+        return Arrays.<Block>asList(new ParagraphBlock(Arrays.<Block>asList(new WordBlock(content))));
+    }
+
+    @Override
+    public String getCacheKey(Object parameters, String content, MacroTransformationContext context)
+    {
+        return "nocache".equals(content) ? null : "";
+    }
+
+    @Override
+    public long getCacheTimeToLive(Object parameters, String content, MacroTransformationContext context)
+    {
+        return 60000;
+    }
+
+    public int getExecutionCount()
+    {
+        return this.executionCount;
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.xwiki.rendering.internal.transformation.wikiword;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,12 +31,11 @@
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.LinkBlock;
 import org.xwiki.rendering.block.WordBlock;
-import org.xwiki.rendering.internal.block.ProtectedBlockFilter;
 import org.xwiki.rendering.listener.reference.DocumentResourceReference;
 import org.xwiki.rendering.listener.reference.ResourceReference;
-import org.xwiki.rendering.transformation.AbstractTransformation;
 import org.xwiki.rendering.transformation.TransformationContext;
-import org.xwiki.rendering.transformation.TransformationException;
+import org.xwiki.rendering.transformation.inline.AbstractInlineTextRewritingTransformation;
+import org.xwiki.rendering.transformation.inline.InlineTextMatcher;
 
 /**
  * Automatically replace words representing Wiki Words with a link.
@@ -45,7 +46,7 @@
 @Component
 @Named("wikiword")
 @Singleton
-public class WikiWordTransformation extends AbstractTransformation
+public class WikiWordTransformation extends AbstractInlineTextRewritingTransformation
 {
     /**
      * Regex Pattern to recognize a WikiWord.
@@ -54,21 +55,43 @@ public class WikiWordTransformation extends AbstractTransformation
         "\\p{javaUpperCase}+\\p{javaLowerCase}+(\\p{javaUpperCase}\\p{javaLowerCase}*)+");
 
     /**
-     * Used to filter protected blocks (code macro marker block, etc).
+     * Matches the words representing Wiki Words.
      */
-    private ProtectedBlockFilter filter = new ProtectedBlockFilter();
-
-    @Override
-    public void transform(Block block, TransformationContext transformationContext) throws TransformationException
+    private static final class WikiWordMatcher implements InlineTextMatcher
     {
-        // Find all Word blocks and for each of them check if they're a wiki word or not
-        for (WordBlock wordBlock : this.filter.getChildrenByType(block, WordBlock.class, true)) {
-            Matcher matcher = WIKIWORD_PATTERN.matcher(wordBlock.getWord());
-            if (matcher.matches()) {
-                ResourceReference linkReference = new DocumentResourceReference(wordBlock.getWord());
-                wordBlock.getParent().replaceChild(new LinkBlock(wordBlock.getChildren(), linkReference, false),
-                    wordBlock);
+        /**
+         * Used to check the words, reused from one word to another.
+         */
+        private final Matcher matcher = WIKIWORD_PATTERN.matcher("");
+
+        @Override
+        public void reset()
+        {
+            // Each word is checked independently of the previous ones
+        }
+
+        @Override
+        public int next(Block block)
+        {
+            int matchLength = 0;
+            if (block instanceof WordBlock && this.matcher.reset(((WordBlock) block).getWord()).matches()) {
+                matchLength = 1;
             }
+            return matchLength;
         }
+
+        @Override
+        public List<Block> getReplacement(List<Block> blocks)
+        {
+            WordBlock wordBlock = (WordBlock) blocks.get(0);
+            ResourceReference linkReference = new DocumentResourceReference(wordBlock.getWord());
+            return Collections.<Block>singletonList(new LinkBlock(wordBlock.getChildren(), linkReference, false));
+        }
+    }
+
+    @Override
+    public InlineTextMatcher createMatcher(TransformationContext context)
+    {
+        return new WikiWordMatcher();
     }
 }
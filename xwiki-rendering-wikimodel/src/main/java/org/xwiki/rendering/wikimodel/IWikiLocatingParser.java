@@ -0,0 +1,40 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.wikimodel;
+
+/**
+ * A parser able to tell where in the source the events it generates come
+ * from. The tracking of the positions is disabled by default since it has a
+ * (small) cost.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface IWikiLocatingParser extends IWikiParser
+{
+    /**
+     * Enables the tracking of the source positions for the next parsings
+     * done with this parser.
+     *
+     * @return the locator giving the position of the current event during
+     *         the parsings
+     */
+    IWikiSourceLocator enableSourceLocator();
+}
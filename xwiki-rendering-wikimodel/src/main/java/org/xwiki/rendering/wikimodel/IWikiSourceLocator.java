@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.wikimodel;
+
+/**
+ * Gives the position in the parsed source of the event currently sent to the
+ * listener, i.e. the span of the last token consumed by the scanner when the
+ * event was generated.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public interface IWikiSourceLocator
+{
+    /**
+     * @return the offset (in characters) in the source where the current
+     *         event starts
+     */
+    int getBeginOffset();
+
+    /**
+     * @return the offset (in characters) in the source where the current
+     *         event ends
+     */
+    int getEndOffset();
+
+    /**
+     * @param offset an offset in the source, before the end of the last
+     *        consumed token
+     * @return the character at the passed offset
+     */
+    char getChar(int offset);
+}
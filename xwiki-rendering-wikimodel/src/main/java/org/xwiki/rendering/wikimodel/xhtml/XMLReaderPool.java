@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.wikimodel.xhtml;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.xml.sax.XMLReader;
+import org.xwiki.rendering.wikimodel.xhtml.filter.DefaultXMLFilter;
+
+/**
+ * Keeps a bounded number of XML readers (and their filter chain) so that
+ * they can be reused from one parsing to another instead of creating a new
+ * SAX parser each time. A reader is never used by two parsings at the same
+ * time: when the pool is empty a new reader is created and when the pool is
+ * full the released reader is simply dropped.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class XMLReaderPool
+{
+    /**
+     * The default maximum number of idle readers.
+     */
+    public static final int DEFAULT_SIZE = 16;
+
+    private final BlockingQueue<XMLReader> fReaders;
+
+    public XMLReaderPool()
+    {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size the maximum number of idle readers kept in the pool
+     */
+    public XMLReaderPool(int size)
+    {
+        fReaders = new ArrayBlockingQueue<XMLReader>(size);
+    }
+
+    /**
+     * @return a new XML reader, ready to parse a document
+     * @throws Exception if the reader can't be created
+     */
+    protected abstract XMLReader createXMLReader() throws Exception;
+
+    /**
+     * @return an idle reader or a new one if there's none
+     * @throws Exception if a new reader can't be created
+     */
+    public XMLReader acquire() throws Exception
+    {
+        XMLReader reader = fReaders.poll();
+        if (reader == null) {
+            reader = createXMLReader();
+        }
+
+        return reader;
+    }
+
+    /**
+     * Gives back a reader once the parsing is done. The reader should not be
+     * released when the parsing failed since it might be in an inconsistent
+     * state.
+     *
+     * @param reader the reader to put back in the pool
+     */
+    public void release(XMLReader reader)
+    {
+        // Don't keep a reference to the handlers (and thus to the generated
+        // content) of the last parsing
+        reader.setContentHandler(null);
+        try {
+            reader.setProperty(
+                DefaultXMLFilter.SAX_LEXICAL_HANDLER_PROPERTY,
+                null);
+        } catch (Exception e) {
+            // The reader doesn't support resetting the lexical handler so we
+            // don't reuse it
+            return;
+        }
+
+        fReaders.offer(reader);
+    }
+}
@@ -33,7 +33,6 @@
 import org.xwiki.rendering.wikimodel.IWikiParser;
 import org.xwiki.rendering.wikimodel.WikiParserException;
 import org.xwiki.rendering.wikimodel.impl.WikiScannerContext;
-import org.xwiki.rendering.wikimodel.xhtml.filter.AccumulationXMLFilter;
 import org.xwiki.rendering.wikimodel.xhtml.filter.DTDXMLFilter;
 import org.xwiki.rendering.wikimodel.xhtml.filter.XHTMLWhitespaceXMLFilter;
 import org.xwiki.rendering.wikimodel.xhtml.handler.CommentHandler;
@@ -47,8 +46,25 @@
  */
 public class XhtmlParser implements IWikiParser
 {
+    /**
+     * The readers used when no XML reader or XML reader pool is specified.
+     */
+    private static final XMLReaderPool DEFAULT_XML_READER_POOL = new XMLReaderPool()
+    {
+        @Override
+        protected XMLReader createXMLReader() throws Exception
+        {
+            return createDefaultXMLReader();
+        }
+    };
+
     private Map<String, TagHandler> fExtraHandlers;
 
+    /**
+     * The complete set of handlers to use, if specified.
+     */
+    private Map<String, TagHandler> fHandlers;
+
     private CommentHandler fCommentHandler;
 
     /**
@@ -57,6 +73,12 @@ public class XhtmlParser implements IWikiParser
      */
     private XMLReader fXmlReader;
 
+    /**
+     * The pool where to take the XML readers from when no XML reader is
+     * specified.
+     */
+    private XMLReaderPool fXmlReaderPool = DEFAULT_XML_READER_POOL;
+
     public XhtmlParser()
     {
         fExtraHandlers = Collections.<String, TagHandler>emptyMap();
@@ -68,6 +90,17 @@ public void setExtraHandlers(Map<String, TagHandler> extraHandlers)
         fExtraHandlers = extraHandlers;
     }
 
+    /**
+     * @param handlers the complete set of tag handlers to use, usually created
+     *        once with {@link XhtmlHandler#createHandlers(Map)} and shared by
+     *        all the parsers
+     * @since 5.2M1
+     */
+    public void setHandlers(Map<String, TagHandler> handlers)
+    {
+        fHandlers = handlers;
+    }
+
     public void setCommentHandler(CommentHandler commentHandler)
     {
         fCommentHandler = commentHandler;
@@ -78,6 +111,16 @@ public void setXmlReader(XMLReader xmlReader)
         fXmlReader = xmlReader;
     }
 
+    /**
+     * @param xmlReaderPool the pool where to take the XML readers from when
+     *        no XML reader is specified
+     * @since 5.2M1
+     */
+    public void setXmlReaderPool(XMLReaderPool xmlReaderPool)
+    {
+        fXmlReaderPool = xmlReaderPool;
+    }
+
     /**
      * @param listener the listener object wich will be used to report about all
      * structural elements on the wiki page.
@@ -88,10 +131,15 @@ public void setXmlReader(XMLReader xmlReader)
     public DefaultHandler getHandler(IWemListener listener)
     {
         WikiScannerContext context = new WikiScannerContext(listener);
-        XhtmlHandler handler = new XhtmlHandler(
-            context,
-            fExtraHandlers,
-            fCommentHandler);
+        XhtmlHandler handler;
+        if (fHandlers != null) {
+            handler = new XhtmlHandler(context, fCommentHandler, fHandlers);
+        } else {
+            handler = new XhtmlHandler(
+                context,
+                fExtraHandlers,
+                fCommentHandler);
+        }
         return handler;
     }
 
@@ -102,9 +150,15 @@ public DefaultHandler getHandler(IWemListener listener)
     public void parse(Reader reader, IWemListener listener)
         throws WikiParserException
     {
+        XMLReader xmlReader;
         try {
-            XMLReader xmlReader = getXMLReader();
+            xmlReader = fXmlReader != null ? fXmlReader : fXmlReaderPool
+                .acquire();
+        } catch (Exception e) {
+            throw new WikiParserException(e);
+        }
 
+        try {
             // The WikiModel-specific handler
             DefaultHandler handler = getHandler(listener);
 
@@ -121,36 +175,28 @@ public void parse(Reader reader, IWemListener listener)
         } catch (Exception e) {
             throw new WikiParserException(e);
         }
-    }
 
-    private XMLReader getXMLReader() throws Exception
-    {
-        XMLReader reader;
-
-        if (fXmlReader != null) {
-            reader = fXmlReader;
-        } else {
-            SAXParserFactory parserFactory = SAXParserFactory.newInstance();
-            SAXParser parser = parserFactory.newSAXParser();
-            XMLReader xmlReader = parser.getXMLReader();
-
-            // Ignore SAX callbacks when the parser parses the DTD
-            DTDXMLFilter dtdFilter = new DTDXMLFilter(xmlReader);
-
-            // Add a XML Filter to accumulate onCharacters() calls since SAX
-            // parser may call it several times.
-            AccumulationXMLFilter accumulationFilter = new AccumulationXMLFilter(
-                dtdFilter);
-
-            // Add a XML Filter to remove non-semantic white spaces. We need to
-            // do that since all WikiModel
-            // events contain only semantic information.
-            XHTMLWhitespaceXMLFilter whitespaceFilter = new XHTMLWhitespaceXMLFilter(
-                accumulationFilter);
-
-            reader = whitespaceFilter;
+        // Only reuse the reader if the parsing went well since it could be in
+        // an inconsistent state otherwise
+        if (xmlReader != fXmlReader) {
+            fXmlReaderPool.release(xmlReader);
         }
+    }
 
-        return reader;
+    private static XMLReader createDefaultXMLReader() throws Exception
+    {
+        SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+        SAXParser parser = parserFactory.newSAXParser();
+        XMLReader xmlReader = parser.getXMLReader();
+
+        // Ignore SAX callbacks when the parser parses the DTD
+        DTDXMLFilter dtdFilter = new DTDXMLFilter(xmlReader);
+
+        // Add a XML Filter to remove non-semantic white spaces. We need to
+        // do that since all WikiModel
+        // events contain only semantic information. Note that this filter
+        // also accumulates onCharacters() calls (SAX parser may call it
+        // several times) so there's no need for an AccumulationXMLFilter.
+        return new XHTMLWhitespaceXMLFilter(dtdFilter);
     }
 }
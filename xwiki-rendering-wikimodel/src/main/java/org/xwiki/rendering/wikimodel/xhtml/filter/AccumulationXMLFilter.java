@@ -35,7 +35,12 @@
  */
 public class AccumulationXMLFilter extends DefaultXMLFilter
 {
-    private StringBuffer fAccumulationBuffer = new StringBuffer();
+    private StringBuilder fAccumulationBuffer = new StringBuilder();
+
+    /**
+     * Buffer reused to send the accumulated characters.
+     */
+    private char[] fCharacters = new char[256];
 
     public AccumulationXMLFilter()
     {
@@ -47,6 +52,14 @@ public AccumulationXMLFilter(XMLReader reader)
         super(reader);
     }
 
+    @Override
+    public void startDocument() throws SAXException
+    {
+        // The filter can be reused for several documents
+        fAccumulationBuffer.setLength(0);
+        super.startDocument();
+    }
+
     /**
      * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
      */
@@ -110,12 +123,14 @@ public void endCDATA() throws SAXException
 
     private void flushAccumulationBuffer() throws SAXException
     {
-        if (fAccumulationBuffer.length() > 0) {
-            super.characters(
-                fAccumulationBuffer.toString().toCharArray(),
-                0,
-                fAccumulationBuffer.length());
+        int length = fAccumulationBuffer.length();
+        if (length > 0) {
+            if (fCharacters.length < length) {
+                fCharacters = new char[Math.max(length, fCharacters.length * 2)];
+            }
+            fAccumulationBuffer.getChars(0, length, fCharacters, 0);
+            fAccumulationBuffer.setLength(0);
+            super.characters(fCharacters, 0, length);
         }
-        fAccumulationBuffer.setLength(0);
     }
 }
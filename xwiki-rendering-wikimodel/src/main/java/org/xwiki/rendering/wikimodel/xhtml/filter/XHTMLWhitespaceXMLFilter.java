@@ -24,9 +24,6 @@
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
@@ -52,20 +49,19 @@
  * <li><b>UC5</b>: Visible empty element like img count as text when grouping
  * white spaces</li>
  * <li><b>UC6</b>: Semantic comment count as text when grouping white spaces</li>
+ * </ul>
+ * <p>
+ * The characters are accumulated until the next element, comment or CDATA
+ * event so there's no need to put an {@link AccumulationXMLFilter} before this
+ * filter. White spaces are the ones matched by the <code>\s</code> regular
+ * expression class.
  *
  * @version $Id$
  * @since 4.0M1
  */
 public class XHTMLWhitespaceXMLFilter extends DefaultXMLFilter
 {
-    private static final Pattern HTML_WHITESPACE_DUPLICATES_PATTERN = Pattern
-        .compile("\\s{2,}|[\\t\\n\\x0B\\f\\r]+");
-
-    private static final Pattern HTML_WHITESPACE_HEAD_PATTERN = Pattern
-        .compile("^\\s+");
-
-    private static final Pattern HTML_WHITESPACE_TAIL_PATTERN = Pattern
-        .compile("\\s+$");
+    private static final String VERBATIM_CLASS = "wikimodel-verbatim";
 
     private static final Set<String> NONINLINE_ELEMENTS = new HashSet<String>(
         Arrays.asList("address", "blockquote", "div", "dl", "dt", "dd",
@@ -102,12 +98,18 @@ public class XHTMLWhitespaceXMLFilter extends DefaultXMLFilter
     private StringBuffer fContent = new StringBuffer();
 
     /**
-     * Bufferized current inline text. It contains only text (and no inline
-     * start/end element, comment or CDATA) to be able know if a leading space
-     * has to be remove because the previous text ends with it or if there is no
-     * previous text.
+     * Indicate if there's some current inline text. The inline text contains
+     * only text (and no inline start/end element, comment or CDATA); we only
+     * need to know if there is any and what is its last character to know if a
+     * leading space has to be removed because the previous text ends with it
+     * or because there is no previous text.
      */
-    private StringBuffer fPreviousInlineText = new StringBuffer();
+    private boolean fHasPreviousInlineText;
+
+    /**
+     * The last character of the current inline text.
+     */
+    private char fPreviousInlineTextLastChar;
 
     /**
      * The previous content to send. Buffurized waiting to know if its trailing
@@ -122,7 +124,22 @@ public class XHTMLWhitespaceXMLFilter extends DefaultXMLFilter
      */
     private List<Event> fPreviousElements = new ArrayList<Event>();
 
-    private Stack<Attributes> fAttributes = new Stack<Attributes>();
+    /**
+     * For each opened element, indicate if its inline content is preserved
+     * (see {@link #preservedInlineContent(String, Attributes)}). We don't keep
+     * the attributes themselves to avoid copying them for each element.
+     */
+    private boolean[] fPreservedInlineContent = new boolean[32];
+
+    /**
+     * The number of opened elements.
+     */
+    private int fDepth;
+
+    /**
+     * Buffer reused to send the content and to clean it.
+     */
+    private char[] fBuffer = new char[256];
 
     public XHTMLWhitespaceXMLFilter()
     {
@@ -134,6 +151,21 @@ public XHTMLWhitespaceXMLFilter(XMLReader reader)
         super(reader);
     }
 
+    @Override
+    public void startDocument() throws SAXException
+    {
+        // The filter can be reused for several documents so make sure nothing
+        // is left from the previous one
+        fNoCleanUpLevel = 0;
+        fContent.setLength(0);
+        fHasPreviousInlineText = false;
+        fPreviousContent = null;
+        fPreviousElements.clear();
+        fDepth = 0;
+
+        super.startDocument();
+    }
+
     @Override
     public void characters(char[] ch, int start, int length)
         throws SAXException
@@ -145,7 +177,7 @@ public void characters(char[] ch, int start, int length)
     public void startElement(String uri, String localName, String qName,
         Attributes atts) throws SAXException
     {
-        Attributes clonedAtts = fAttributes.push(new AttributesImpl(atts));
+        boolean preserved = false;
 
         if (NONVISIBLE_ELEMENTS.contains(localName)) {
             startNonVisibleElement();
@@ -169,6 +201,8 @@ public void startElement(String uri, String localName, String qName,
 
                 super.startElement(uri, localName, qName, atts);
             } else if (preservedInlineContent(localName, atts)) {
+                preserved = true;
+
                 // Flush previous content and print current one
                 flushContent(false);
 
@@ -177,9 +211,20 @@ public void startElement(String uri, String localName, String qName,
                 // send start element event
                 super.startElement(uri, localName, qName, atts);
             } else {
-                appendInlineEvent(new Event(uri, localName, qName, clonedAtts));
+                appendInlineEvent(new Event(uri, localName, qName, atts));
             }
         }
+
+        pushPreservedInlineContent(preserved);
+    }
+
+    private void pushPreservedInlineContent(boolean preserved)
+    {
+        if (fDepth == fPreservedInlineContent.length) {
+            fPreservedInlineContent = Arrays.copyOf(fPreservedInlineContent,
+                fDepth * 2);
+        }
+        fPreservedInlineContent[fDepth++] = preserved;
     }
 
     @Override
@@ -207,7 +252,7 @@ public void endElement(String uri, String localName, String qName)
                 endEmptyVisibleElement();
 
                 super.endElement(uri, localName, qName);
-            } else if (preservedInlineContent(localName, fAttributes.peek())) {
+            } else if (fDepth > 0 && fPreservedInlineContent[fDepth - 1]) {
                 // Flush previous content and print current one
                 flushContent();
 
@@ -219,7 +264,9 @@ public void endElement(String uri, String localName, String qName)
             }
         }
 
-        fAttributes.pop();
+        if (fDepth > 0) {
+            --fDepth;
+        }
     }
 
     private boolean preservedInlineContent(String localName, Attributes atts)
@@ -230,14 +277,34 @@ private boolean preservedInlineContent(String localName, Attributes atts)
             String value = atts.getValue("class");
 
             if (value != null) {
-                preserved = Arrays.asList(value.split(" ")).contains(
-                    "wikimodel-verbatim");
+                preserved = containsClass(value, VERBATIM_CLASS);
             }
         }
 
         return preserved;
     }
 
+    /**
+     * @return {@code true} if the passed class name is one of the space
+     *         separated class names
+     */
+    private static boolean containsClass(String classes, String className)
+    {
+        int length = className.length();
+        int index = classes.indexOf(className);
+        while (index >= 0) {
+            if ((index == 0 || classes.charAt(index - 1) == ' ')
+                && (index + length == classes.length() || classes
+                .charAt(index + length) == ' '))
+            {
+                return true;
+            }
+            index = classes.indexOf(className, index + 1);
+        }
+
+        return false;
+    }
+
     @Override
     public void startCDATA() throws SAXException
     {
@@ -298,7 +365,7 @@ protected void sendPreviousContent(boolean trimTrailing)
                 fPreviousContent = trimTrailingWhiteSpaces(fPreviousContent);
             }
 
-            sendCharacters(fPreviousContent.toCharArray());
+            sendCharacters(fPreviousContent);
             fPreviousContent = null;
         }
 
@@ -316,8 +383,10 @@ protected void sendInlineEvent(Event event) throws SAXException
         } else if (event.type == Event.Type.END_ELEMENT) {
             super.endElement(event.uri, event.localName, event.qName);
         } else if (event.type == Event.Type.COMMENT) {
-            super.comment(event.content.toCharArray(), 0, event.content
-                .length());
+            int length = event.content.length();
+            char[] buffer = getBuffer(length);
+            event.content.getChars(0, length, buffer, 0);
+            super.comment(buffer, 0, length);
         }
     }
 
@@ -347,13 +416,10 @@ protected void flushContent(boolean trimTrailing) throws SAXException
         sendPreviousContent(getContent().length() == 0);
 
         // Send current content
-        if (getContent().length() > 0) {
-            sendCharacters(getContent().toString().toCharArray());
-            getContent().setLength(0);
-        }
+        sendContent();
 
         // Reinit inline text buffer
-        fPreviousInlineText.setLength(0);
+        fHasPreviousInlineText = false;
     }
 
     /**
@@ -368,24 +434,23 @@ protected void appendInlineEvent(Event event) throws SAXException
         if (getContent().length() > 0) {
             sendPreviousContent(false);
 
-            fPreviousInlineText.append(getContent());
+            appendPreviousInlineText(getContent());
 
-            if (getContent().charAt(getContent().length() - 1) == ' ') {
+            if (fPreviousInlineTextLastChar == ' ') {
                 fPreviousContent = getContent().toString();
-                fPreviousElements.add(event);
+                fPreviousElements.add(event.retain());
+                getContent().setLength(0);
             } else {
-                sendCharacters(getContent().toString().toCharArray());
+                sendContent();
                 sendInlineEvent(event);
             }
-
-            getContent().setLength(0);
         } else {
-            if (fPreviousInlineText.length() == 0) {
+            if (!fHasPreviousInlineText) {
                 // There is no inline text before this inline element
                 sendInlineEvent(event);
             } else {
                 // The last inline text ends with a space
-                fPreviousElements.add(event);
+                fPreviousElements.add(event.retain());
             }
         }
     }
@@ -399,22 +464,17 @@ protected void startEmptyVisibleElement() throws SAXException
         sendPreviousContent(false);
 
         // Send content
-        sendCharacters(getContent().toString().toCharArray());
-        fPreviousInlineText.append(getContent());
+        sendContent();
 
         // Add visible element as part of the inline text
-        fPreviousInlineText.append("EmptyVisibleElement");
-
-        getContent().setLength(0);
+        fHasPreviousInlineText = true;
+        fPreviousInlineTextLastChar = 't';
     }
 
     protected void endEmptyVisibleElement() throws SAXException
     {
         // Send current content
-        if (getContent().length() > 0) {
-            sendCharacters(getContent().toString().toCharArray());
-            getContent().setLength(0);
-        }
+        sendContent();
     }
 
     /**
@@ -429,12 +489,12 @@ protected void startNonVisibleElement() throws SAXException
             if (getContent().length() > 0) {
                 sendPreviousContent(false);
 
-                fPreviousInlineText.append(getContent());
+                appendPreviousInlineText(getContent());
 
-                if (getContent().charAt(getContent().length() - 1) == ' ') {
+                if (fPreviousInlineTextLastChar == ' ') {
                     fPreviousContent = getContent().toString();
                 } else {
-                    sendCharacters(getContent().toString().toCharArray());
+                    sendContent();
                 }
             }
 
@@ -448,7 +508,7 @@ protected void startNonVisibleElement() throws SAXException
             }
         } else {
             // Send current content
-            sendCharacters(getContent().toString().toCharArray());
+            sendContent();
         }
 
         getContent().setLength(0);
@@ -463,9 +523,49 @@ protected void startNonVisibleElement() throws SAXException
     protected void endNonVisibleElement() throws SAXException
     {
         // Send current content
-        if (getContent().length() > 0) {
-            sendCharacters(getContent().toString().toCharArray());
+        sendContent();
+    }
+
+    /**
+     * Send the current content and empty it.
+     */
+    private void sendContent() throws SAXException
+    {
+        int length = getContent().length();
+        if (length > 0) {
+            char[] buffer = getBuffer(length);
+            getContent().getChars(0, length, buffer, 0);
             getContent().setLength(0);
+            sendCharacters(buffer, 0, length);
+        }
+    }
+
+    private void sendCharacters(String content) throws SAXException
+    {
+        int length = content.length();
+        char[] buffer = getBuffer(length);
+        content.getChars(0, length, buffer, 0);
+        sendCharacters(buffer, 0, length);
+    }
+
+    /**
+     * @return the reusable buffer, big enough to contain the passed number of
+     *         characters
+     */
+    private char[] getBuffer(int length)
+    {
+        if (fBuffer.length < length) {
+            fBuffer = new char[Math.max(length, fBuffer.length * 2)];
+        }
+
+        return fBuffer;
+    }
+
+    private void appendPreviousInlineText(CharSequence text)
+    {
+        if (text.length() > 0) {
+            fHasPreviousInlineText = true;
+            fPreviousInlineTextLastChar = text.charAt(text.length() - 1);
         }
     }
 
@@ -492,10 +592,7 @@ protected void sendCharacters(char ch[], int start, int length)
     private void cleanContentLeadingSpaces()
     {
         if (getContent().length() > 0) {
-            if (fPreviousInlineText.length() == 0
-                || fPreviousInlineText
-                .charAt(fPreviousInlineText.length() - 1) == ' ')
-            {
+            if (!fHasPreviousInlineText || fPreviousInlineTextLastChar == ' ') {
                 trimLeadingWhiteSpaces();
             }
         }
@@ -506,13 +603,33 @@ private void cleanContentLeadingSpaces()
      */
     protected void cleanContentExtraWhiteSpaces()
     {
-        if (getContent().length() > 0) {
-            if (shouldRemoveWhiteSpaces()) {
-                Matcher matcher = HTML_WHITESPACE_DUPLICATES_PATTERN
-                    .matcher(getContent());
-                String result = matcher.replaceAll(" ");
+        int length = getContent().length();
+        if (length > 0 && shouldRemoveWhiteSpaces()) {
+            char[] buffer = getBuffer(length);
+            getContent().getChars(0, length, buffer, 0);
+
+            int cleanedLength = 0;
+            boolean modified = false;
+            boolean inWhiteSpaces = false;
+            for (int i = 0; i < length; i++) {
+                char c = buffer[i];
+                if (isWhiteSpace(c)) {
+                    if (inWhiteSpaces) {
+                        modified = true;
+                    } else {
+                        modified |= c != ' ';
+                        buffer[cleanedLength++] = ' ';
+                        inWhiteSpaces = true;
+                    }
+                } else {
+                    buffer[cleanedLength++] = c;
+                    inWhiteSpaces = false;
+                }
+            }
+
+            if (modified) {
                 getContent().setLength(0);
-                getContent().append(result);
+                getContent().append(buffer, 0, cleanedLength);
             }
         }
     }
@@ -522,9 +639,10 @@ protected void cleanContentExtraWhiteSpaces()
     protected void trimLeadingWhiteSpaces()
     {
         if (shouldRemoveWhiteSpaces() && getContent().length() > 0) {
-            String result = trimLeadingWhiteSpaces(getContent());
-            getContent().setLength(0);
-            getContent().append(result);
+            int count = countLeadingWhiteSpaces(getContent());
+            if (count > 0) {
+                getContent().delete(0, count);
+            }
         }
     }
 
@@ -533,8 +651,9 @@ protected String trimLeadingWhiteSpaces(CharSequence content)
         String trimedContent;
 
         if (shouldRemoveWhiteSpaces() && content.length() > 0) {
-            Matcher matcher = HTML_WHITESPACE_HEAD_PATTERN.matcher(content);
-            trimedContent = matcher.replaceAll("");
+            trimedContent = content.subSequence(
+                countLeadingWhiteSpaces(content),
+                content.length()).toString();
         } else {
             trimedContent = content.toString();
         }
@@ -545,9 +664,9 @@ protected String trimLeadingWhiteSpaces(CharSequence content)
     protected void trimTrailingWhiteSpaces()
     {
         if (shouldRemoveWhiteSpaces() && getContent().length() > 0) {
-            String result = trimTrailingWhiteSpaces(getContent());
-            getContent().setLength(0);
-            getContent().append(result);
+            getContent().setLength(
+                getContent().length()
+                    - countTrailingWhiteSpaces(getContent()));
         }
     }
 
@@ -556,8 +675,9 @@ protected String trimTrailingWhiteSpaces(CharSequence content)
         String trimedContent;
 
         if (shouldRemoveWhiteSpaces() && content.length() > 0) {
-            Matcher matcher = HTML_WHITESPACE_TAIL_PATTERN.matcher(content);
-            trimedContent = matcher.replaceAll("");
+            trimedContent = content.subSequence(0,
+                content.length() - countTrailingWhiteSpaces(content))
+                .toString();
         } else {
             trimedContent = content.toString();
         }
@@ -565,6 +685,45 @@ protected String trimTrailingWhiteSpaces(CharSequence content)
         return trimedContent;
     }
 
+    /**
+     * @param c the character to check
+     * @return {@code true} if the character is a white space, i.e. if it's
+     *         matched by the <code>\s</code> regular expression class
+     */
+    protected static boolean isWhiteSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+            || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @return the number of white spaces at the beginning of the passed text
+     */
+    protected static int countLeadingWhiteSpaces(CharSequence content)
+    {
+        int count = 0;
+        while (count < content.length() && isWhiteSpace(content.charAt(count))) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of white spaces at the end of the passed text
+     */
+    protected static int countTrailingWhiteSpaces(CharSequence content)
+    {
+        int count = 0;
+        while (count < content.length()
+            && isWhiteSpace(content.charAt(content.length() - count - 1)))
+        {
+            count++;
+        }
+
+        return count;
+    }
+
     protected StringBuffer getContent()
     {
         return fContent;
@@ -623,5 +782,20 @@ public Event(String content)
             this.type = Type.COMMENT;
             this.content = content;
         }
+
+        /**
+         * The attributes passed to startElement() are only valid during the
+         * call so we need to copy them when the event is sent later.
+         *
+         * @return this event
+         */
+        public Event retain()
+        {
+            if (this.atts != null) {
+                this.atts = new AttributesImpl(this.atts);
+            }
+
+            return this;
+        }
     }
 }
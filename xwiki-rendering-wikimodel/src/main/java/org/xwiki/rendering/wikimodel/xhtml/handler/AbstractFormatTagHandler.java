@@ -45,13 +45,6 @@ public abstract class AbstractFormatTagHandler extends TagHandler
 
     private final WikiStyle style;
 
-    /**
-     * The object used to parse the style attribute. Explicitly specify the
-     * parser to use, since otherwise cssparser overrides the default parser
-     * used in the JVM, breaking css4j.
-     */
-    private final CSSOMParser cssParser = new CSSOMParser(new SACParserCSS21());
-
     public AbstractFormatTagHandler()
     {
         this(null);
@@ -123,11 +116,17 @@ private CSSStyleDeclarationImpl mergeStyle(
         CSSStyleDeclarationImpl parentStyle, String parentStyleValue,
         String styleValue)
     {
+        // The parser is not thread safe and the handlers are shared by all the
+        // parsings. Explicitly specify the parser to use, since otherwise
+        // cssparser overrides the default parser used in the JVM, breaking
+        // css4j.
+        CSSOMParser cssParser = new CSSOMParser(new SACParserCSS21());
+
         CSSStyleDeclarationImpl currentStyle = new CSSStyleDeclarationImpl();
 
         if (parentStyle == null) {
             try {
-                this.cssParser.parseStyleDeclaration(currentStyle,
+                cssParser.parseStyleDeclaration(currentStyle,
                     new InputSource(new StringReader(parentStyleValue)));
             } catch (Exception e) {
                 return parentStyle;
@@ -137,7 +136,7 @@ private CSSStyleDeclarationImpl mergeStyle(
         }
 
         try {
-            this.cssParser.parseStyleDeclaration(currentStyle, new InputSource(
+            cssParser.parseStyleDeclaration(currentStyle, new InputSource(
                 new StringReader(styleValue)));
         } catch (Exception e) {
             return parentStyle;
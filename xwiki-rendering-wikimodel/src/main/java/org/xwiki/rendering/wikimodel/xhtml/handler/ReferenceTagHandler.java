@@ -40,7 +40,7 @@ public ReferenceTagHandler()
     @Override
     protected void begin(TagContext context)
     {
-        setAccumulateContent(true);
+        setAccumulateContent(context, true);
     }
 
     @Override
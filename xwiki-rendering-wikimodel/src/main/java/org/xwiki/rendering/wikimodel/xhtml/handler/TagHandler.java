@@ -131,16 +131,44 @@ public boolean requiresDocument()
         return fRequiresDocument;
     }
 
+    /**
+     * @deprecated since 5.2M1 the flag is shared by all the parsings using this handler, use
+     *             {@link #setAccumulateContent(XhtmlHandler.TagStack.TagContext, boolean)} instead
+     */
+    @Deprecated
     public void setAccumulateContent(boolean accumulateContent)
     {
         fAccumulateContent = accumulateContent;
     }
 
+    /**
+     * @deprecated since 5.2M1 use {@link #isAccumulateContent(XhtmlHandler.TagStack.TagContext)} instead
+     */
+    @Deprecated
     public boolean isAccumulateContent()
     {
         return fAccumulateContent;
     }
 
+    /**
+     * Indicate if the content of the elements handled by this handler should be accumulated for the current parsing.
+     * The flag is stored in the tag stack so that the handler can be shared between parsers.
+     *
+     * @since 5.2M1
+     */
+    public void setAccumulateContent(XhtmlHandler.TagStack.TagContext context, boolean accumulateContent)
+    {
+        context.getTagStack().setAccumulateContent(this, accumulateContent);
+    }
+
+    /**
+     * @since 5.2M1
+     */
+    public boolean isAccumulateContent(XhtmlHandler.TagStack.TagContext context)
+    {
+        return fAccumulateContent || context.getTagStack().isAccumulateContent(this);
+    }
+
     /**
      * Check if we need to emit an onEmptyLines() event.
      */
@@ -20,9 +20,12 @@
 package org.xwiki.rendering.wikimodel.xhtml.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import org.xml.sax.Attributes;
@@ -99,7 +102,7 @@ public TagContext(
 
             public boolean appendContent(String content)
             {
-                if (fHandler == null || !fHandler.isAccumulateContent()) {
+                if (fHandler == null || !fHandler.isAccumulateContent(this)) {
                     return false;
                 }
                 if (fContent == null) {
@@ -173,7 +176,18 @@ public boolean isTag(String string)
             }
         }
 
-        private Map<String, TagHandler> fMap = new HashMap<String, TagHandler>();
+        private Map<String, TagHandler> fMap = Collections.<String, TagHandler>emptyMap();
+
+        /**
+         * Indicate if {@link #fMap} is shared with other tag stacks, in which case it's copied before being modified.
+         */
+        private boolean fSharedMap = true;
+
+        /**
+         * The handlers for which the content is currently accumulated. It's stored here and not in the handlers so
+         * that the handlers can be shared between several parsings.
+         */
+        private final Set<TagHandler> fAccumulatingHandlers = new HashSet<TagHandler>();
 
         private CommentHandler fCommentHandler;
 
@@ -186,12 +200,52 @@ public boolean isTag(String string)
 
         public void add(String tag, TagHandler handler)
         {
-            fMap.put(tag, handler);
+            getModifiableMap().put(tag, handler);
         }
 
         public void addAll(Map<String, TagHandler> handlers)
         {
-            fMap.putAll(handlers);
+            getModifiableMap().putAll(handlers);
+        }
+
+        /**
+         * @param handlers the handlers to use, they are not copied so they can be shared with other tag stacks
+         * @since 5.2M1
+         */
+        public void setHandlers(Map<String, TagHandler> handlers)
+        {
+            fMap = handlers;
+            fSharedMap = true;
+        }
+
+        private Map<String, TagHandler> getModifiableMap()
+        {
+            if (fSharedMap) {
+                fMap = new HashMap<String, TagHandler>(fMap);
+                fSharedMap = false;
+            }
+
+            return fMap;
+        }
+
+        /**
+         * @since 5.2M1
+         */
+        public void setAccumulateContent(TagHandler handler, boolean accumulateContent)
+        {
+            if (accumulateContent) {
+                fAccumulatingHandlers.add(handler);
+            } else {
+                fAccumulatingHandlers.remove(handler);
+            }
+        }
+
+        /**
+         * @since 5.2M1
+         */
+        public boolean isAccumulateContent(TagHandler handler)
+        {
+            return !fAccumulatingHandlers.isEmpty() && fAccumulatingHandlers.contains(handler);
         }
 
         public void setCommentHandler(CommentHandler handler)
@@ -461,6 +515,11 @@ public Object popStackParameter(String name)
         }
     }
 
+    /**
+     * The default handlers. They don't hold any parsing state so they are shared by all the handlers.
+     */
+    private static final Map<String, TagHandler> DEFAULT_HANDLERS = createDefaultHandlers();
+
     protected String fDocumentSectionUri;
 
     protected String fDocumentUri;
@@ -483,68 +542,107 @@ public XhtmlHandler(
         WikiScannerContext context,
         Map<String, TagHandler> extraHandlers,
         CommentHandler commentHandler)
+    {
+        this(context, commentHandler, extraHandlers.isEmpty()
+            ? DEFAULT_HANDLERS : createHandlers(extraHandlers));
+    }
+
+    /**
+     * @param context the scanner context
+     * @param commentHandler the comment handler to use
+     * @param handlers the complete set of tag handlers to use (see
+     *        {@link #createHandlers(Map)}); it's not copied so it can be
+     *        shared by several handlers as long as the tag handlers it
+     *        contains don't keep any parsing state
+     * @since 5.2M1
+     */
+    public XhtmlHandler(
+        WikiScannerContext context,
+        CommentHandler commentHandler,
+        Map<String, TagHandler> handlers)
     {
         fStack = new TagStack(context);
         fStack.setCommentHandler(commentHandler);
+        fStack.setHandlers(handlers);
+
+        // Allow each handler to have some initialization
+        for (TagHandler tagElementHandler : fStack.fMap.values()) {
+            tagElementHandler.initialize(fStack);
+        }
+    }
 
-        // Register default handlers
-        fStack.add("p", new ParagraphTagHandler());
-        fStack.add("table", new TableTagHandler());
-        fStack.add("tr", new TableRowTagHandler());
+    /**
+     * @param extraHandlers the handlers to use in addition to (or in place
+     *        of) the default handlers
+     * @return an unmodifiable map containing the default handlers overridden
+     *         by the passed handlers, that can be reused for all the parsings
+     * @since 5.2M1
+     */
+    public static Map<String, TagHandler> createHandlers(
+        Map<String, TagHandler> extraHandlers)
+    {
+        Map<String, TagHandler> handlers = new HashMap<String, TagHandler>(
+            DEFAULT_HANDLERS);
+        handlers.putAll(extraHandlers);
+
+        return Collections.unmodifiableMap(handlers);
+    }
+
+    private static Map<String, TagHandler> createDefaultHandlers()
+    {
+        Map<String, TagHandler> handlers = new HashMap<String, TagHandler>();
+
+        handlers.put("p", new ParagraphTagHandler());
+        handlers.put("table", new TableTagHandler());
+        handlers.put("tr", new TableRowTagHandler());
         TagHandler handler = new TableDataTagHandler();
-        fStack.add("td", handler);
-        fStack.add("th", handler);
+        handlers.put("td", handler);
+        handlers.put("th", handler);
         handler = new ListTagHandler();
-        fStack.add("ul", handler);
-        fStack.add("ol", handler);
-        fStack.add("dl", handler);
+        handlers.put("ul", handler);
+        handlers.put("ol", handler);
+        handlers.put("dl", handler);
         handler = new ListItemTagHandler();
-        fStack.add("li", handler);
-        fStack.add("dt", new DefinitionTermTagHandler());
-        fStack.add("dd", new DefinitionDescriptionTagHandler());
+        handlers.put("li", handler);
+        handlers.put("dt", new DefinitionTermTagHandler());
+        handlers.put("dd", new DefinitionDescriptionTagHandler());
         handler = new HeaderTagHandler();
-        fStack.add("h1", handler);
-        fStack.add("h2", handler);
-        fStack.add("h3", handler);
-        fStack.add("h4", handler);
-        fStack.add("h5", handler);
-        fStack.add("h6", handler);
-        fStack.add("hr", new HorizontalLineTagHandler());
-        fStack.add("pre", new PreserveTagHandler());
+        handlers.put("h1", handler);
+        handlers.put("h2", handler);
+        handlers.put("h3", handler);
+        handlers.put("h4", handler);
+        handlers.put("h5", handler);
+        handlers.put("h6", handler);
+        handlers.put("hr", new HorizontalLineTagHandler());
+        handlers.put("pre", new PreserveTagHandler());
         handler = new ReferenceTagHandler();
-        fStack.add("a", handler);
+        handlers.put("a", handler);
         handler = new ImgTagHandler();
-        fStack.add("img", handler);
+        handlers.put("img", handler);
         handler = new BoldTagHandler();
-        fStack.add("strong", handler);
-        fStack.add("b", handler);
+        handlers.put("strong", handler);
+        handlers.put("b", handler);
         handler = new UnderlineTagHandler();
-        fStack.add("ins", handler);
-        fStack.add("u", handler);
+        handlers.put("ins", handler);
+        handlers.put("u", handler);
         handler = new StrikedOutTagHandler();
-        fStack.add("del", handler);
-        fStack.add("strike", handler);
-        fStack.add("s", handler);
+        handlers.put("del", handler);
+        handlers.put("strike", handler);
+        handlers.put("s", handler);
         handler = new ItalicTagHandler();
-        fStack.add("em", handler);
-        fStack.add("i", handler);
-        fStack.add("sup", new SuperScriptTagHandler());
-        fStack.add("sub", new SubScriptTagHandler());
-        fStack.add("tt", new TeletypeTagHandler());
-        fStack.add("br", new BreakTagHandler());
-        fStack.add("div", new DivisionTagHandler());
+        handlers.put("em", handler);
+        handlers.put("i", handler);
+        handlers.put("sup", new SuperScriptTagHandler());
+        handlers.put("sub", new SubScriptTagHandler());
+        handlers.put("tt", new TeletypeTagHandler());
+        handlers.put("br", new BreakTagHandler());
+        handlers.put("div", new DivisionTagHandler());
         handler = new QuoteTagHandler();
-        fStack.add("blockquote", handler);
-        fStack.add("quote", handler);
-        fStack.add("span", new SpanTagHandler());
+        handlers.put("blockquote", handler);
+        handlers.put("quote", handler);
+        handlers.put("span", new SpanTagHandler());
 
-        // Register extra handlers
-        fStack.addAll(extraHandlers);
-
-        // Allow each handler to have some initialization
-        for (TagHandler tagElementHandler : fStack.fMap.values()) {
-            tagElementHandler.initialize(fStack);
-        }
+        return Collections.unmodifiableMap(handlers);
     }
 
     /**
@@ -22,7 +22,8 @@
 import java.io.Reader;
 
 import org.xwiki.rendering.wikimodel.IWemListener;
-import org.xwiki.rendering.wikimodel.IWikiParser;
+import org.xwiki.rendering.wikimodel.IWikiLocatingParser;
+import org.xwiki.rendering.wikimodel.IWikiSourceLocator;
 import org.xwiki.rendering.wikimodel.WikiParserException;
 import org.xwiki.rendering.wikimodel.impl.WikiScannerContext;
 import org.xwiki.rendering.wikimodel.xwiki.xwiki20.javacc.ParseException;
@@ -32,8 +33,15 @@
  * @version $Id$
  * @since 4.0M1
  */
-public class XWikiParser implements IWikiParser
+public class XWikiParser implements IWikiLocatingParser
 {
+    /**
+     * The scanner of the current parsing, used to locate the events.
+     */
+    private XWikiScanner fScanner;
+
+    private XWikiSourceLocator fSourceLocator;
+
     public XWikiParser()
     {
         super();
@@ -47,11 +55,54 @@ public void parse(Reader reader, IWemListener listener)
         throws WikiParserException
     {
         try {
-            XWikiScanner scanner = new XWikiScanner(reader);
+            if (fSourceLocator != null) {
+                fScanner = new XWikiScanner(fSourceLocator.track(reader));
+            } else {
+                fScanner = new XWikiScanner(reader);
+            }
             WikiScannerContext context = new WikiScannerContext(listener);
-            scanner.parse(context);
+            fScanner.parse(context);
         } catch (ParseException e) {
             throw new WikiParserException(e);
+        } finally {
+            fScanner = null;
+        }
+    }
+
+    /**
+     * @see org.xwiki.rendering.wikimodel.IWikiLocatingParser#enableSourceLocator()
+     */
+    public IWikiSourceLocator enableSourceLocator()
+    {
+        if (fSourceLocator == null) {
+            fSourceLocator = new XWikiSourceLocator()
+            {
+                @Override
+                protected int getTokenBeginLine()
+                {
+                    return fScanner != null ? fScanner.token.beginLine : 0;
+                }
+
+                @Override
+                protected int getTokenBeginColumn()
+                {
+                    return fScanner.token.beginColumn;
+                }
+
+                @Override
+                protected int getTokenEndLine()
+                {
+                    return fScanner != null ? fScanner.token.endLine : 0;
+                }
+
+                @Override
+                protected int getTokenEndColumn()
+                {
+                    return fScanner.token.endColumn;
+                }
+            };
         }
+
+        return fSourceLocator;
     }
 }
@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.wikimodel.xwiki.xwiki20;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.xwiki.rendering.wikimodel.IWikiSourceLocator;
+
+/**
+ * Converts the lines and columns where the last token consumed by a JavaCC
+ * scanner starts and ends into offsets in the source. The source has to be
+ * read through the reader returned by {@link #track(Reader)} which records
+ * the read characters and where the lines (and the tabulations, which JavaCC
+ * expands to the next tab stop) start.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+public abstract class XWikiSourceLocator implements IWikiSourceLocator
+{
+    /**
+     * The tabulation size used by the JavaCC char stream to compute the
+     * columns.
+     */
+    private static final int TAB_SIZE = 8;
+
+    private char[] fChars = new char[1024];
+
+    private int[] fLineStarts = new int[64];
+
+    private int fLineCount;
+
+    private int[] fTabs = new int[16];
+
+    private int fTabCount;
+
+    private int fOffset;
+
+    private boolean fPreviousCR;
+
+    /**
+     * @return the line (starting at 1) where the last consumed token starts, 0
+     *         if no token has been consumed yet
+     */
+    protected abstract int getTokenBeginLine();
+
+    /**
+     * @return the column (starting at 1) where the last consumed token starts
+     */
+    protected abstract int getTokenBeginColumn();
+
+    /**
+     * @return the line (starting at 1) where the last consumed token ends, 0
+     *         if no token has been consumed yet
+     */
+    protected abstract int getTokenEndLine();
+
+    /**
+     * @return the column (starting at 1) where the last consumed token ends
+     */
+    protected abstract int getTokenEndColumn();
+
+    /**
+     * @param reader the source to parse
+     * @return the reader to pass to the scanner
+     */
+    public Reader track(Reader reader)
+    {
+        fLineStarts[0] = 0;
+        fLineCount = 1;
+        fTabCount = 0;
+        fOffset = 0;
+        fPreviousCR = false;
+
+        return new FilterReader(reader)
+        {
+            @Override
+            public int read() throws IOException
+            {
+                int c = super.read();
+                if (c != -1) {
+                    onChar((char) c);
+                }
+                return c;
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException
+            {
+                int count = super.read(cbuf, off, len);
+                for (int i = 0; i < count; i++) {
+                    onChar(cbuf[off + i]);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * @see org.xwiki.rendering.wikimodel.IWikiSourceLocator#getBeginOffset()
+     */
+    public int getBeginOffset()
+    {
+        int line = getTokenBeginLine();
+        if (line < 1 || line > fLineCount) {
+            return 0;
+        }
+
+        return getOffset(fLineStarts[line - 1], getTokenBeginColumn());
+    }
+
+    /**
+     * @see org.xwiki.rendering.wikimodel.IWikiSourceLocator#getEndOffset()
+     */
+    public int getEndOffset()
+    {
+        int line = getTokenEndLine();
+        if (line < 1 || line > fLineCount) {
+            return 0;
+        }
+
+        return getOffset(fLineStarts[line - 1], getTokenEndColumn()) + 1;
+    }
+
+    /**
+     * @see org.xwiki.rendering.wikimodel.IWikiSourceLocator#getChar(int)
+     */
+    public char getChar(int offset)
+    {
+        return fChars[offset];
+    }
+
+    /**
+     * @param lineStart the offset of the line start
+     * @param target a column in the line
+     * @return the offset of the character at the passed column
+     */
+    private int getOffset(int lineStart, int target)
+    {
+        int position = lineStart;
+        int column = 0;
+        int tab = Arrays.binarySearch(fTabs, 0, fTabCount, position);
+        if (tab < 0) {
+            tab = -tab - 1;
+        }
+        for (; tab < fTabCount; tab++) {
+            int tabOffset = fTabs[tab];
+            if (target <= column + tabOffset - position) {
+                break;
+            }
+            column += tabOffset - position;
+            column += TAB_SIZE - (column % TAB_SIZE);
+            position = tabOffset + 1;
+            if (column >= target) {
+                return tabOffset;
+            }
+        }
+
+        return position + target - column - 1;
+    }
+
+    private void onChar(char c)
+    {
+        // Same line breaks as the JavaCC char stream
+        if (fPreviousCR && c != '\n') {
+            addLineStart(fOffset);
+        }
+        fPreviousCR = false;
+        if (c == '\n') {
+            addLineStart(fOffset + 1);
+        } else if (c == '\r') {
+            fPreviousCR = true;
+        } else if (c == '\t') {
+            if (fTabCount == fTabs.length) {
+                fTabs = Arrays.copyOf(fTabs, fTabCount * 2);
+            }
+            fTabs[fTabCount++] = fOffset;
+        }
+        if (fOffset == fChars.length) {
+            fChars = Arrays.copyOf(fChars, fOffset * 2);
+        }
+        fChars[fOffset++] = c;
+    }
+
+    private void addLineStart(int offset)
+    {
+        if (fLineCount == fLineStarts.length) {
+            fLineStarts = Arrays.copyOf(fLineStarts, fLineCount * 2);
+        }
+        fLineStarts[fLineCount++] = offset;
+    }
+}
@@ -157,6 +157,20 @@ public void testWhiteSpaceStrippingForBlockElements() throws Exception
         assertCleanedHTML("<table></table><p></p>", "<table></table> <p></p>");
     }
 
+    public void testWhiteSpaceStrippingEdgeCases() throws Exception
+    {
+        // Non breaking spaces are not white spaces
+        assertCleanedHTML(
+            "<p>\u00A0one \u00A0two\u00A0</p>",
+            "<p>\u00A0one \u00A0two\u00A0 </p>");
+        assertCleanedHTML(
+            "<p>toto <tt>\n  one  \n</tt></p>",
+            "<p>toto <tt class=\"some wikimodel-verbatim other\">\n  one  \n</tt></p>");
+        assertCleanedHTML(
+            "<p>toto <tt>one</tt></p>",
+            "<p>toto <tt class=\"wikimodel-verbatimx\">\n  one  \n</tt></p>");
+    }
+
     private void assertCleanedHTML(String expected, String originalContent)
         throws Exception
     {
@@ -597,4 +597,23 @@ public void testMisc() throws WikiParserException
             "<html><p><a id=\"foo\">bar</a></p></html>",
             "<p></p>");
     }
+
+    /**
+     * Verify that the XML readers reused from one parsing to another don't
+     * keep any state from the previous parsing, even a failed one.
+     */
+    public void testReuseXMLReader() throws WikiParserException
+    {
+        for (int i = 0; i < 3; i++) {
+            test(
+                "<html><p>one <em>two</em>  <a href=\"ref\">three</a></p></html>",
+                "<p>one <em>two</em> <a href='ref'>three</a></p>");
+            try {
+                test("<html><p><pre>unclosed");
+                fail("Should have thrown an exception");
+            } catch (WikiParserException expected) {
+                // The reader of this parsing should not be reused
+            }
+        }
+    }
 }
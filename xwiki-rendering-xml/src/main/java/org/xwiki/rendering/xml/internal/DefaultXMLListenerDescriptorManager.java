@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.listener.descriptor.ListenerDescriptor;
+import org.xwiki.rendering.listener.descriptor.ListenerDescriptorManager;
+
+/**
+ * Default implementation of {@link XMLListenerDescriptorManager}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultXMLListenerDescriptorManager implements XMLListenerDescriptorManager
+{
+    /**
+     * The events supported by the listener.
+     */
+    @Inject
+    private ListenerDescriptorManager descriptorManager;
+
+    /**
+     * The already computed descriptors, by listener descriptor.
+     */
+    private Map<ListenerDescriptor, XMLListenerDescriptor> descriptors =
+        new ConcurrentHashMap<ListenerDescriptor, XMLListenerDescriptor>();
+
+    @Override
+    public XMLListenerDescriptor getListenerDescriptor(Class< ? > type)
+    {
+        ListenerDescriptor listenerDescriptor = this.descriptorManager.getListenerDescriptor(type);
+
+        XMLListenerDescriptor descriptor = this.descriptors.get(listenerDescriptor);
+        if (descriptor == null) {
+            descriptor = new XMLListenerDescriptor(listenerDescriptor);
+            this.descriptors.put(listenerDescriptor, descriptor);
+        }
+
+        return descriptor;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xwiki.rendering.listener.descriptor.ListenerDescriptor;
+import org.xwiki.rendering.listener.descriptor.ListenerElement;
+
+/**
+ * The {@link XMLListenerElement}s of a {@link ListenerDescriptor}, indexed by name and by event method.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XMLListenerDescriptor
+{
+    /**
+     * The descriptor of the listener.
+     */
+    private final ListenerDescriptor descriptor;
+
+    /**
+     * The elements, indexed by lower case name.
+     */
+    private final Map<String, XMLListenerElement> elements = new HashMap<String, XMLListenerElement>();
+
+    /**
+     * The elements, indexed by listener method.
+     */
+    private final Map<Method, XMLListenerElement> elementsByMethod = new HashMap<Method, XMLListenerElement>();
+
+    /**
+     * @param descriptor the descriptor of the listener
+     */
+    public XMLListenerDescriptor(ListenerDescriptor descriptor)
+    {
+        this.descriptor = descriptor;
+
+        for (Map.Entry<String, ListenerElement> entry : descriptor.getElements().entrySet()) {
+            ListenerElement listenerElement = entry.getValue();
+            XMLListenerElement element = new XMLListenerElement(listenerElement);
+
+            this.elements.put(entry.getKey(), element);
+            for (Method method : new Method[] {listenerElement.getBeginMethod(), listenerElement.getEndMethod(),
+                listenerElement.getOnMethod()}) {
+                if (method != null) {
+                    this.elementsByMethod.put(method, element);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the descriptor of the listener
+     */
+    public ListenerDescriptor getListenerDescriptor()
+    {
+        return this.descriptor;
+    }
+
+    /**
+     * @param name the name of the element (case insensitive)
+     * @return the element or null if there's none with this name
+     */
+    public XMLListenerElement getElement(String name)
+    {
+        XMLListenerElement element = this.elements.get(name);
+        if (element == null) {
+            element = this.elements.get(name.toLowerCase());
+        }
+
+        return element;
+    }
+
+    /**
+     * @param method one of the event methods of the listener
+     * @return the element corresponding to the method or null if it's not an event method
+     */
+    public XMLListenerElement getElement(Method method)
+    {
+        return this.elementsByMethod.get(method);
+    }
+}
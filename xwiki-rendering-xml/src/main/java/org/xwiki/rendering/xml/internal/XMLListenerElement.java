@@ -0,0 +1,271 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.rendering.listener.descriptor.ListenerElement;
+
+/**
+ * Everything the XML parser and serializer need to know about a {@link ListenerElement}, computed once instead of for
+ * each event.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XMLListenerElement
+{
+    /**
+     * Used to check if the element name can be used as XML element name.
+     */
+    private static final Pattern VALID_ELEMENTNAME = Pattern.compile("[A-Za-z][A-Za-z0-9:_.-]*");
+
+    /**
+     * The described listener element.
+     */
+    private final ListenerElement element;
+
+    /**
+     * Whether the element name can be used as XML element name.
+     */
+    private final boolean validElementName;
+
+    /**
+     * The classes of the parameters.
+     */
+    private final Class< ? >[] parameterClasses;
+
+    /**
+     * Whether each parameter is serialized as a simple XML attribute.
+     */
+    private final boolean[] simpleParameters;
+
+    /**
+     * The default value of each parameter, used when the parameter is not in the XML.
+     */
+    private final Object[] defaultParameters;
+
+    /**
+     * The default value of each parameter of primitive type, {@code null} for the other parameters.
+     */
+    private final Object[] primitiveDefaultParameters;
+
+    /**
+     * The begin method of the element, if any.
+     */
+    private final Method beginMethod;
+
+    /**
+     * The end method of the element, if any.
+     */
+    private final Method endMethod;
+
+    /**
+     * The on method of the element, if any.
+     */
+    private final Method onMethod;
+
+    /**
+     * @param element the element to describe
+     */
+    public XMLListenerElement(ListenerElement element)
+    {
+        this.element = element;
+        this.validElementName = VALID_ELEMENTNAME.matcher(element.getName()).matches();
+
+        List<Type> parameters = element.getParameters();
+        this.parameterClasses = new Class< ? >[parameters.size()];
+        this.simpleParameters = new boolean[parameters.size()];
+        this.defaultParameters = new Object[parameters.size()];
+        this.primitiveDefaultParameters = new Object[parameters.size()];
+        for (int i = 0; i < parameters.size(); ++i) {
+            Type type = parameters.get(i);
+            this.parameterClasses[i] = ReflectionUtils.getTypeClass(type);
+            this.simpleParameters[i] = XMLUtils.isSimpleType(type);
+            if (this.parameterClasses[i] != null) {
+                this.defaultParameters[i] = XMLUtils.defaultValue(this.parameterClasses[i]);
+                if (this.parameterClasses[i].isPrimitive()) {
+                    this.primitiveDefaultParameters[i] = this.defaultParameters[i];
+                }
+            }
+        }
+
+        this.beginMethod = accessible(element.getBeginMethod());
+        this.endMethod = accessible(element.getEndMethod());
+        this.onMethod = accessible(element.getOnMethod());
+    }
+
+    /**
+     * @param method the method, can be null
+     * @return the same method, made accessible when possible
+     */
+    private static Method accessible(Method method)
+    {
+        if (method != null) {
+            try {
+                // Skip the access check on each call
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                // The check will be done on each call
+            }
+        }
+
+        return method;
+    }
+
+    /**
+     * @return the described element
+     */
+    public ListenerElement getListenerElement()
+    {
+        return this.element;
+    }
+
+    /**
+     * @return the name of the element
+     */
+    public String getName()
+    {
+        return this.element.getName();
+    }
+
+    /**
+     * @return true if the name of the element can be used as XML element name
+     */
+    public boolean isValidElementName()
+    {
+        return this.validElementName;
+    }
+
+    /**
+     * @return true if the element is a container (has begin and end events)
+     */
+    public boolean isContainer()
+    {
+        return this.onMethod == null;
+    }
+
+    /**
+     * @return the number of parameters of the events
+     */
+    public int getParameterCount()
+    {
+        return this.parameterClasses.length;
+    }
+
+    /**
+     * @param index the index of the parameter
+     * @return the type of the parameter
+     */
+    public Type getParameterType(int index)
+    {
+        return this.element.getParameters().get(index);
+    }
+
+    /**
+     * @param index the index of the parameter
+     * @return the class of the parameter
+     */
+    public Class< ? > getParameterClass(int index)
+    {
+        return this.parameterClasses[index];
+    }
+
+    /**
+     * @param index the index of the parameter
+     * @return true if the parameter can be converted to a simple String
+     * @see XMLUtils#isSimpleType(Type)
+     */
+    public boolean isSimpleParameter(int index)
+    {
+        return this.simpleParameters[index];
+    }
+
+    /**
+     * @param index the index of the parameter
+     * @return the default value of the parameter
+     * @see XMLUtils#defaultValue(Class)
+     */
+    public Object getDefaultParameter(int index)
+    {
+        return this.defaultParameters[index];
+    }
+
+    /**
+     * @return a new table of parameters, containing the default values of the primitive parameters (and null for the
+     *         others) so that it can be used to call the events as is
+     */
+    public Object[] newParameters()
+    {
+        return this.primitiveDefaultParameters.clone();
+    }
+
+    /**
+     * @param method the method
+     * @return true if the passed method is the begin event of this element
+     */
+    public boolean isBeginMethod(Method method)
+    {
+        return method.equals(this.beginMethod);
+    }
+
+    /**
+     * @param method the method
+     * @return true if the passed method is the end event of this element
+     */
+    public boolean isEndMethod(Method method)
+    {
+        return method.equals(this.endMethod);
+    }
+
+    /**
+     * @param listener the listener to send the event to
+     * @param parameters the parameters of the event, as returned by {@link #newParameters()}
+     * @throws Exception when failing to send the event
+     */
+    public void fireBeginEvent(Object listener, Object[] parameters) throws Exception
+    {
+        this.beginMethod.invoke(listener, parameters);
+    }
+
+    /**
+     * @param listener the listener to send the event to
+     * @param parameters the parameters of the event, as returned by {@link #newParameters()}
+     * @throws Exception when failing to send the event
+     */
+    public void fireEndEvent(Object listener, Object[] parameters) throws Exception
+    {
+        this.endMethod.invoke(listener, parameters);
+    }
+
+    /**
+     * @param listener the listener to send the event to
+     * @param parameters the parameters of the event, as returned by {@link #newParameters()}
+     * @throws Exception when failing to send the event
+     */
+    public void fireOnEvent(Object listener, Object[] parameters) throws Exception
+    {
+        this.onMethod.invoke(listener, parameters);
+    }
+}
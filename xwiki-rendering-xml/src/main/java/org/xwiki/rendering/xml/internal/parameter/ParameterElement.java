@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal.parameter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A lightweight in memory representation of the XML of a serialized parameter, much cheaper to build than a DOM
+ * element and which can be replayed as SAX events when a DOM element is needed anyway.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ParameterElement
+{
+    /**
+     * The namespace URI of the element.
+     */
+    private final String uri;
+
+    /**
+     * The local name of the element.
+     */
+    private final String localName;
+
+    /**
+     * The qualified name of the element.
+     */
+    private final String qName;
+
+    /**
+     * The attributes of the element.
+     */
+    private final Attributes attributes;
+
+    /**
+     * The child elements and texts, in document order.
+     */
+    private List<Object> children;
+
+    /**
+     * @param uri the namespace URI of the element
+     * @param localName the local name of the element
+     * @param qName the qualified name of the element
+     * @param attributes the attributes of the element
+     */
+    public ParameterElement(String uri, String localName, String qName, Attributes attributes)
+    {
+        this.uri = uri;
+        this.localName = localName;
+        this.qName = qName;
+        this.attributes =
+            attributes == null || attributes.getLength() == 0 ? null : new AttributesImpl(attributes);
+    }
+
+    /**
+     * @return the qualified name of the element
+     */
+    public String getName()
+    {
+        return this.qName;
+    }
+
+    /**
+     * @return true if the element has attributes
+     */
+    public boolean hasAttributes()
+    {
+        return this.attributes != null;
+    }
+
+    /**
+     * @param name the qualified name of the attribute
+     * @return the value of the attribute or null if there's no such attribute
+     */
+    public String getAttribute(String name)
+    {
+        return this.attributes != null ? this.attributes.getValue(name) : null;
+    }
+
+    /**
+     * @return the number of attributes
+     */
+    public int getAttributeCount()
+    {
+        return this.attributes != null ? this.attributes.getLength() : 0;
+    }
+
+    /**
+     * @return true if the element contains any text or element
+     */
+    public boolean hasChildNodes()
+    {
+        return this.children != null;
+    }
+
+    /**
+     * @param element the child element to add
+     */
+    public void addElement(ParameterElement element)
+    {
+        addChild(element);
+    }
+
+    /**
+     * @param text the text to add
+     */
+    public void addText(String text)
+    {
+        if (text.length() > 0) {
+            addChild(text);
+        }
+    }
+
+    /**
+     * @param child the child element or text to add
+     */
+    private void addChild(Object child)
+    {
+        if (this.children == null) {
+            this.children = new ArrayList<Object>();
+        }
+
+        this.children.add(child);
+    }
+
+    /**
+     * @return the child elements or null if the element contains non whitespace text
+     */
+    public List<ParameterElement> getElements()
+    {
+        if (this.children == null) {
+            return Collections.emptyList();
+        }
+
+        List<ParameterElement> elements = new ArrayList<ParameterElement>(this.children.size());
+        for (Object child : this.children) {
+            if (child instanceof ParameterElement) {
+                elements.add((ParameterElement) child);
+            } else if (!StringUtils.isWhitespace((String) child)) {
+                return null;
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * @return the text of the element or null if it contains elements
+     */
+    public String getText()
+    {
+        if (this.children == null) {
+            return "";
+        }
+
+        if (this.children.size() == 1 && this.children.get(0) instanceof String) {
+            return (String) this.children.get(0);
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (Object child : this.children) {
+            if (child instanceof ParameterElement) {
+                return null;
+            }
+            text.append((String) child);
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Send the element and its content as SAX events.
+     * 
+     * @param handler the handler to send the events to
+     * @throws SAXException when the handler fails
+     */
+    public void send(ContentHandler handler) throws SAXException
+    {
+        handler.startElement(this.uri, this.localName, this.qName,
+            this.attributes != null ? this.attributes : new AttributesImpl());
+
+        if (this.children != null) {
+            for (Object child : this.children) {
+                if (child instanceof ParameterElement) {
+                    ((ParameterElement) child).send(handler);
+                } else {
+                    String text = (String) child;
+                    handler.characters(text.toCharArray(), 0, text.length());
+                }
+            }
+        }
+
+        handler.endElement(this.uri, this.localName, this.qName);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal.parameter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Build a {@link ParameterElement} from SAX events.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ParameterElementBuilder
+{
+    /**
+     * The currently opened elements, the innermost first.
+     */
+    private final Deque<ParameterElement> elements = new ArrayDeque<ParameterElement>();
+
+    /**
+     * The text received since the last element event.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * The first element.
+     */
+    private ParameterElement rootElement;
+
+    /**
+     * @param uri the namespace URI of the element
+     * @param localName the local name of the element
+     * @param qName the qualified name of the element
+     * @param attributes the attributes of the element
+     */
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+    {
+        ParameterElement element = new ParameterElement(uri, localName, qName, attributes);
+
+        if (this.elements.isEmpty()) {
+            this.rootElement = element;
+        } else {
+            flushText();
+            this.elements.peek().addElement(element);
+        }
+
+        this.elements.push(element);
+    }
+
+    /**
+     * Ends the current element.
+     */
+    public void endElement()
+    {
+        flushText();
+        this.elements.pop();
+    }
+
+    /**
+     * @param ch the characters
+     * @param start the start position in the array
+     * @param length the number of characters to read from the array
+     */
+    public void characters(char[] ch, int start, int length)
+    {
+        if (!this.elements.isEmpty()) {
+            this.text.append(ch, start, length);
+        }
+    }
+
+    /**
+     * Add the text accumulated since the last element event to the current element.
+     */
+    private void flushText()
+    {
+        if (this.text.length() > 0) {
+            this.elements.peek().addText(this.text.toString());
+            this.text.setLength(0);
+        }
+    }
+
+    /**
+     * @return the built element
+     */
+    public ParameterElement getRootElement()
+    {
+        return this.rootElement;
+    }
+}
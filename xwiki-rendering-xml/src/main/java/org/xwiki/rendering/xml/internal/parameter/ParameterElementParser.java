@@ -0,0 +1,585 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal.parameter;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.syntax.SyntaxType;
+import org.xwiki.rendering.xml.internal.XMLUtils;
+
+/**
+ * Convert directly the XML produced by XStream for the most common parameter types (String, enumerations,
+ * {@code Map<String, String>}, {@link ResourceReference}, {@link Syntax} and {@link MetaData}) without going through
+ * DOM and XStream. Anything unexpected (attributes like {@code class} or {@code reference}, unknown fields, values of
+ * other types, etc.) makes the conversion give up so that XStream can take care of it.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ParameterElementParser
+{
+    /**
+     * Returned when the element can't be converted directly.
+     */
+    public static final Object UNSUPPORTED = new Object();
+
+    /**
+     * The name of the element containing a string in a collection.
+     */
+    private static final String ELEMENT_STRING = "string";
+
+    /**
+     * The name of the element representing a {@code null} value in a collection.
+     */
+    private static final String ELEMENT_NULL = "null";
+
+    /**
+     * The name of the element containing an entry of a map.
+     */
+    private static final String ELEMENT_ENTRY = "entry";
+
+    /**
+     * The name of the field containing the type in {@link ResourceReference} and {@link Syntax}.
+     */
+    private static final String ELEMENT_TYPE = "type";
+
+    /**
+     * The name of the field containing the meta data in {@link MetaData}.
+     */
+    private static final String ELEMENT_METADATA = "metadata";
+
+    /**
+     * The attribute containing the class of the value when it's not the expected one.
+     */
+    private static final String ATTRIBUTE_CLASS = "class";
+
+    /**
+     * The alias of {@link java.util.LinkedHashMap} in XStream.
+     */
+    private static final String CLASS_LINKEDHASHMAP = "linked-hash-map";
+
+    /**
+     * The name of the element containing a {@link Syntax} meta data value.
+     */
+    private static final String ELEMENT_SYNTAX = Syntax.class.getName();
+
+    /**
+     * The name of the field indicating if a {@link ResourceReference} is typed.
+     */
+    private static final String FIELD_TYPED = "isTyped";
+
+    /**
+     * The name of the field containing the parameters of a {@link ResourceReference}.
+     */
+    private static final String FIELD_PARAMETERS = "parameters";
+
+    /**
+     * The name of the field containing the version of a {@link Syntax}.
+     */
+    private static final String FIELD_VERSION = "version";
+
+    /**
+     * The name of the field containing the qualifier of a {@link Syntax}.
+     */
+    private static final String FIELD_QUALIFIER = "qualifier";
+
+    /**
+     * The name of the field containing the id of a {@link SyntaxType}.
+     */
+    private static final String FIELD_ID = "id";
+
+    /**
+     * The name of the field containing the name of a {@link SyntaxType}.
+     */
+    private static final String FIELD_NAME = "name";
+
+    /**
+     * @param type the type of the parameter
+     * @param rootElement the element containing the serialized parameter
+     * @return the value or {@link #UNSUPPORTED} if the element can't be converted directly
+     */
+    public Object parse(Type type, ParameterElement rootElement)
+    {
+        Class< ? > typeClass = ReflectionUtils.getTypeClass(type);
+        if (typeClass == null || rootElement.hasAttributes()) {
+            return UNSUPPORTED;
+        }
+
+        // Same behavior as XStreamParameterManager
+        if (!rootElement.hasChildNodes()) {
+            Object value = XMLUtils.defaultValue(typeClass);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        return parseValue(typeClass, rootElement);
+    }
+
+    /**
+     * @param typeClass the class of the parameter
+     * @param rootElement the element containing the serialized parameter
+     * @return the value or {@link #UNSUPPORTED} if the element can't be converted directly
+     */
+    private Object parseValue(Class< ? > typeClass, ParameterElement rootElement)
+    {
+        Object value;
+        if (typeClass == String.class) {
+            value = parseString(rootElement);
+        } else if (typeClass.isEnum()) {
+            value = parseEnum(typeClass, rootElement);
+        } else if (typeClass == Map.class) {
+            value = parseStringMap(rootElement);
+        } else if (typeClass == ResourceReference.class) {
+            value = parseResourceReference(rootElement);
+        } else if (typeClass == Syntax.class) {
+            value = parseSyntax(rootElement);
+        } else if (typeClass == MetaData.class) {
+            value = parseMetaData(rootElement);
+        } else {
+            value = UNSUPPORTED;
+        }
+
+        return value;
+    }
+
+    /**
+     * @param element an element containing only text
+     * @return the text
+     */
+    private Object parseString(ParameterElement element)
+    {
+        String text = element.getText();
+
+        return text != null && !element.hasAttributes() ? text : UNSUPPORTED;
+    }
+
+    /**
+     * @param enumClass the type of enumeration
+     * @param element an element containing the name of the enumeration value
+     * @return the enumeration value
+     */
+    private Object parseEnum(Class< ? > enumClass, ParameterElement element)
+    {
+        String text = element.getText();
+        if (text != null) {
+            for (Object constant : enumClass.getEnumConstants()) {
+                if (((Enum< ? >) constant).name().equals(text)) {
+                    return constant;
+                }
+            }
+        }
+
+        return UNSUPPORTED;
+    }
+
+    /**
+     * @param element a {@code <string>} or {@code <null/>} element
+     * @return the string
+     */
+    private Object parseStringOrNull(ParameterElement element)
+    {
+        if (element.hasAttributes()) {
+            return UNSUPPORTED;
+        }
+
+        if (element.getName().equals(ELEMENT_STRING)) {
+            return parseString(element);
+        } else if (element.getName().equals(ELEMENT_NULL) && !element.hasChildNodes()) {
+            return null;
+        }
+
+        return UNSUPPORTED;
+    }
+
+    /**
+     * @param element the element containing the {@code <entry>} elements
+     * @return the map
+     */
+    private Object parseStringMap(ParameterElement element)
+    {
+        List<ParameterElement> entries = element.getElements();
+        if (entries == null) {
+            return UNSUPPORTED;
+        }
+
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (ParameterElement entry : entries) {
+            List<ParameterElement> keyValue = getKeyValue(entry);
+            if (keyValue == null) {
+                return UNSUPPORTED;
+            }
+
+            Object key = parseStringOrNull(keyValue.get(0));
+            Object value = parseStringOrNull(keyValue.get(1));
+            if (key == UNSUPPORTED || value == UNSUPPORTED) {
+                return UNSUPPORTED;
+            }
+
+            map.put((String) key, (String) value);
+        }
+
+        return map;
+    }
+
+    /**
+     * @param element the element containing the {@code <string>} and {@code <null/>} elements
+     * @return the strings as an array
+     */
+    private Object parseStringList(ParameterElement element)
+    {
+        List<ParameterElement> items = element.getElements();
+        if (items == null || element.hasAttributes()) {
+            return UNSUPPORTED;
+        }
+
+        String[] list = new String[items.size()];
+        for (int i = 0; i < list.length; ++i) {
+            Object item = parseStringOrNull(items.get(i));
+            if (item == UNSUPPORTED) {
+                return UNSUPPORTED;
+            }
+            list[i] = (String) item;
+        }
+
+        return list;
+    }
+
+    /**
+     * @param element the element containing the fields of the {@link ResourceReference}
+     * @return the reference
+     */
+    private Object parseResourceReference(ParameterElement element)
+    {
+        List<ParameterElement> fields = element.getElements();
+        if (fields == null) {
+            return UNSUPPORTED;
+        }
+
+        ResourceReference reference = new ResourceReference(null, null);
+        Set<String> names = new HashSet<String>();
+        for (ParameterElement field : fields) {
+            if (!parseResourceReferenceField(field, reference)) {
+                return UNSUPPORTED;
+            }
+            names.add(field.getName());
+        }
+
+        // XStream does not call the constructor so these fields would not have their default value
+        return names.contains(FIELD_TYPED) && names.contains(FIELD_PARAMETERS) ? reference : UNSUPPORTED;
+    }
+
+    /**
+     * @param field the element containing a field of the {@link ResourceReference}
+     * @param reference the reference to fill
+     * @return {@code false} if the field can't be converted directly
+     */
+    private boolean parseResourceReferenceField(ParameterElement field, ResourceReference reference)
+    {
+        String name = field.getName();
+        String text = field.hasAttributes() ? null : field.getText();
+
+        boolean supported = true;
+        if (name.equals(FIELD_TYPED) && text != null) {
+            reference.setTyped(Boolean.parseBoolean(text));
+        } else if (name.equals("reference") && text != null) {
+            reference.setReference(text);
+        } else if (name.equals(ELEMENT_TYPE)) {
+            supported = parseResourceReferenceType(field, reference);
+        } else if (name.equals(FIELD_PARAMETERS)) {
+            supported = parseResourceReferenceParameters(field, reference);
+        } else if (name.equals("baseReferences")) {
+            supported = parseBaseReferences(field, reference);
+        } else {
+            supported = false;
+        }
+
+        return supported;
+    }
+
+    /**
+     * @param field the element containing the {@link ResourceType}
+     * @param reference the reference to fill
+     * @return {@code false} if the field can't be converted directly
+     */
+    private boolean parseResourceReferenceType(ParameterElement field, ResourceReference reference)
+    {
+        Object resourceType = parseResourceType(field);
+        if (resourceType == UNSUPPORTED) {
+            return false;
+        }
+
+        reference.setType((ResourceType) resourceType);
+
+        return true;
+    }
+
+    /**
+     * @param field the element containing the parameters of the reference
+     * @param reference the reference to fill
+     * @return {@code false} if the field can't be converted directly
+     */
+    private boolean parseResourceReferenceParameters(ParameterElement field, ResourceReference reference)
+    {
+        Object map = field.hasAttributes() ? UNSUPPORTED : parseStringMap(field);
+        if (map == UNSUPPORTED) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String> referenceParameters = (Map<String, String>) map;
+        reference.setParameters(referenceParameters);
+
+        return true;
+    }
+
+    /**
+     * @param field the element containing the base references of the reference
+     * @param reference the reference to fill
+     * @return {@code false} if the field can't be converted directly
+     */
+    private boolean parseBaseReferences(ParameterElement field, ResourceReference reference)
+    {
+        Object baseReferences = parseStringList(field);
+        if (baseReferences == UNSUPPORTED) {
+            return false;
+        }
+
+        for (String baseReference : (String[]) baseReferences) {
+            reference.addBaseReference(baseReference);
+        }
+
+        return true;
+    }
+
+    /**
+     * @param element the element containing the fields of the {@link ResourceType}
+     * @return the resource type
+     */
+    private Object parseResourceType(ParameterElement element)
+    {
+        List<ParameterElement> fields = element.getElements();
+        if (element.hasAttributes() || fields == null || fields.size() > 1) {
+            return UNSUPPORTED;
+        }
+
+        ResourceType type = new ResourceType(null);
+        if (!fields.isEmpty()) {
+            ParameterElement scheme = fields.get(0);
+            String text = scheme.hasAttributes() ? null : scheme.getText();
+            if (!scheme.getName().equals("scheme") || text == null) {
+                return UNSUPPORTED;
+            }
+            type.setScheme(text);
+        }
+
+        return type;
+    }
+
+    /**
+     * @param element the element containing the fields of the {@link Syntax}
+     * @return the syntax
+     */
+    private Object parseSyntax(ParameterElement element)
+    {
+        List<ParameterElement> fields = element.getElements();
+        if (fields == null) {
+            return UNSUPPORTED;
+        }
+
+        SyntaxType type = null;
+        List<ParameterElement> textFields = new ArrayList<ParameterElement>(fields.size());
+        for (ParameterElement field : fields) {
+            if (field.getName().equals(ELEMENT_TYPE)) {
+                Object syntaxType = parseSyntaxType(field);
+                if (syntaxType == UNSUPPORTED) {
+                    return UNSUPPORTED;
+                }
+                type = (SyntaxType) syntaxType;
+            } else {
+                textFields.add(field);
+            }
+        }
+
+        Map<String, String> texts = parseTextFields(textFields, FIELD_VERSION, FIELD_QUALIFIER);
+
+        return texts != null ? new Syntax(type, texts.get(FIELD_VERSION), texts.get(FIELD_QUALIFIER)) : UNSUPPORTED;
+    }
+
+    /**
+     * @param element the element containing the fields of the {@link SyntaxType}
+     * @return the syntax type
+     */
+    private Object parseSyntaxType(ParameterElement element)
+    {
+        List<ParameterElement> fields = element.getElements();
+        if (element.hasAttributes() || fields == null) {
+            return UNSUPPORTED;
+        }
+
+        Map<String, String> texts = parseTextFields(fields, FIELD_ID, FIELD_NAME);
+
+        return texts != null ? new SyntaxType(texts.get(FIELD_ID), texts.get(FIELD_NAME)) : UNSUPPORTED;
+    }
+
+    /**
+     * @param fields elements containing only text
+     * @param names the supported field names
+     * @return the text of each field indexed by field name or {@code null} if a field can't be converted directly
+     */
+    private Map<String, String> parseTextFields(List<ParameterElement> fields, String... names)
+    {
+        List<String> supportedNames = Arrays.asList(names);
+        Map<String, String> texts = new HashMap<String, String>();
+        for (ParameterElement field : fields) {
+            String text = field.hasAttributes() ? null : field.getText();
+            if (text == null || !supportedNames.contains(field.getName())) {
+                return null;
+            }
+            texts.put(field.getName(), text);
+        }
+
+        return texts;
+    }
+
+    /**
+     * @param element the element containing the fields of the {@link MetaData}
+     * @return the meta data
+     */
+    private Object parseMetaData(ParameterElement element)
+    {
+        List<ParameterElement> fields = element.getElements();
+        if (fields == null || fields.size() != 1) {
+            return UNSUPPORTED;
+        }
+
+        List<ParameterElement> entries = getMetaDataEntries(fields.get(0));
+        if (entries == null) {
+            return UNSUPPORTED;
+        }
+
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (ParameterElement entry : entries) {
+            List<ParameterElement> keyValue = getKeyValue(entry);
+            if (keyValue == null) {
+                return UNSUPPORTED;
+            }
+
+            Object key = parseStringOrNull(keyValue.get(0));
+            Object value = parseMetaDataValue(keyValue.get(1));
+            if (key == UNSUPPORTED || value == UNSUPPORTED) {
+                return UNSUPPORTED;
+            }
+
+            values.put((String) key, value);
+        }
+
+        return new MetaData(values);
+    }
+
+    /**
+     * @param field the element containing the map of the {@link MetaData}
+     * @return the entries of the map or {@code null} if the field is not as expected
+     */
+    private List<ParameterElement> getMetaDataEntries(ParameterElement field)
+    {
+        if (!field.getName().equals(ELEMENT_METADATA) || field.getAttributeCount() != 1
+            || !CLASS_LINKEDHASHMAP.equals(field.getAttribute(ATTRIBUTE_CLASS))) {
+            return null;
+        }
+
+        return field.getElements();
+    }
+
+    /**
+     * @param entry the element containing an entry of a map
+     * @return the elements containing the key and the value or {@code null} if the entry is not as expected
+     */
+    private List<ParameterElement> getKeyValue(ParameterElement entry)
+    {
+        List<ParameterElement> keyValue = entry.getElements();
+        if (entry.hasAttributes() || !entry.getName().equals(ELEMENT_ENTRY) || keyValue == null
+            || keyValue.size() != 2) {
+            return null;
+        }
+
+        return keyValue;
+    }
+
+    /**
+     * @param element the element containing a meta data value, named after the type of the value
+     * @return the value
+     */
+    private Object parseMetaDataValue(ParameterElement element)
+    {
+        String name = element.getName();
+
+        Object value;
+        if (element.hasAttributes()) {
+            value = UNSUPPORTED;
+        } else if (name.equals(ELEMENT_SYNTAX)) {
+            value = parseSyntax(element);
+        } else if (name.equals(ELEMENT_STRING) || name.equals(ELEMENT_NULL)) {
+            value = parseStringOrNull(element);
+        } else {
+            value = parsePrimitive(name, element.getText());
+        }
+
+        return value;
+    }
+
+    /**
+     * @param name the name of the element, which is the name of the primitive type
+     * @param text the text of the element
+     * @return the value
+     */
+    private Object parsePrimitive(String name, String text)
+    {
+        Object value = UNSUPPORTED;
+        if (text != null) {
+            try {
+                if (name.equals("int")) {
+                    value = Integer.decode(text);
+                } else if (name.equals("long")) {
+                    value = Long.decode(text);
+                } else if (name.equals("boolean")) {
+                    value = Boolean.valueOf(text);
+                }
+            } catch (NumberFormatException e) {
+                // Let XStream report the error
+            }
+        }
+
+        return value;
+    }
+}
@@ -19,26 +19,24 @@
  */
 package org.xwiki.rendering.xml.internal.parser;
 
-import java.lang.reflect.Method;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Stack;
 import java.util.regex.Matcher;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.apache.commons.lang3.ArrayUtils;
-import org.w3c.dom.Element;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.properties.ConverterManager;
 import org.xwiki.rendering.listener.descriptor.ListenerDescriptor;
-import org.xwiki.rendering.listener.descriptor.ListenerElement;
 import org.xwiki.rendering.xml.internal.XMLConfiguration;
+import org.xwiki.rendering.xml.internal.XMLListenerDescriptor;
+import org.xwiki.rendering.xml.internal.XMLListenerElement;
 import org.xwiki.rendering.xml.internal.XMLUtils;
+import org.xwiki.rendering.xml.internal.parameter.ParameterElement;
+import org.xwiki.rendering.xml.internal.parameter.ParameterElementBuilder;
+import org.xwiki.rendering.xml.internal.parameter.ParameterElementParser;
 import org.xwiki.rendering.xml.internal.parameter.ParameterManager;
 import org.xwiki.xml.Sax2Dom;
 
@@ -54,7 +52,9 @@ public class DefaultXMLParser extends DefaultHandler implements XMLParser
 
     private ConverterManager stringConverter;
 
-    private ListenerDescriptor listenerDescriptor;
+    private XMLListenerDescriptor listenerDescriptor;
+
+    private ParameterElementParser parameterParser = new ParameterElementParser();
 
     private Object listener;
 
@@ -68,19 +68,22 @@ public class DefaultXMLParser extends DefaultHandler implements XMLParser
 
     public static class Block
     {
-        public ListenerElement listenerElement;
+        public XMLListenerElement listenerElement;
 
         public boolean beginSent = false;
 
-        public List<Object> parametersList = new ArrayList<Object>();
-
-        public Sax2Dom parameterDOMBuilder;
+        public ParameterElementBuilder parameterBuilder;
 
         public int elementDepth;
 
-        private Object[] parametersTable;
+        /**
+         * The parameters of the event, ready to be passed to the event method.
+         */
+        private Object[] parameters;
 
-        public Block(ListenerElement listenerElement, int elementDepth)
+        private boolean parametersSet;
+
+        public Block(XMLListenerElement listenerElement, int elementDepth)
         {
             this.listenerElement = listenerElement;
             this.elementDepth = elementDepth;
@@ -88,94 +91,82 @@ public Block(ListenerElement listenerElement, int elementDepth)
 
         public boolean isContainer()
         {
-            return this.listenerElement.getOnMethod() == null;
+            return this.listenerElement.isContainer();
         }
 
         public void setParameter(int index, Object parameter)
         {
-            while (this.parametersList.size() <= index) {
-                this.parametersList.add(null);
+            if (parameter == null && this.listenerElement.getParameterClass(index).isPrimitive()) {
+                getParameters()[index] = this.listenerElement.getDefaultParameter(index);
+            } else {
+                getParameters()[index] = parameter;
             }
-
-            this.parametersList.set(index, parameter);
-            this.parametersTable = null;
+            this.parametersSet = true;
         }
 
-        public List<Object> getParametersList()
+        public boolean hasParameters()
         {
-            return parametersList;
+            return this.parametersSet;
         }
 
-        public Object[] getParametersTable()
+        private Object[] getParameters()
         {
-            if (this.parametersTable == null) {
-                if (this.parametersList.isEmpty()) {
-                    this.parametersTable = ArrayUtils.EMPTY_OBJECT_ARRAY;
-                }
-
-                this.parametersTable = this.parametersList.toArray();
+            if (this.parameters == null) {
+                this.parameters = this.listenerElement.newParameters();
             }
 
-            return this.parametersTable;
+            return this.parameters;
         }
 
-        public void fireBeginEvent(Object listener, Object[] parameters) throws SAXException
+        public void fireBeginEvent(Object listener) throws SAXException
         {
-            fireEvent(this.listenerElement.getBeginMethod(), listener, parameters);
+            try {
+                this.listenerElement.fireBeginEvent(listener, getParameters());
+            } catch (Exception e) {
+                throw new SAXException("Failed to invoke event [" + this.listenerElement.getListenerElement()
+                    .getBeginMethod() + "]", e);
+            }
             this.beginSent = true;
         }
 
-        public void fireEndEvent(Object listener, Object[] parameters) throws SAXException
-        {
-            fireEvent(this.listenerElement.getEndMethod(), listener, parameters);
-        }
-
-        public void fireOnEvent(Object listener, Object[] parameters) throws SAXException
+        public void fireEndEvent(Object listener) throws SAXException
         {
-            fireEvent(this.listenerElement.getOnMethod(), listener, parameters);
+            try {
+                this.listenerElement.fireEndEvent(listener, getParameters());
+            } catch (Exception e) {
+                throw new SAXException("Failed to invoke event [" + this.listenerElement.getListenerElement()
+                    .getEndMethod() + "]", e);
+            }
         }
 
-        private void fireEvent(Method eventMethod, Object listener, Object[] parameters) throws SAXException
+        public void fireOnEvent(Object listener) throws SAXException
         {
-            Object[] properParameters = parameters;
-            Class< ? >[] methodParameters = eventMethod.getParameterTypes();
-
-            // Missing parameters
-            if (methodParameters.length > parameters.length) {
-                properParameters = new Object[methodParameters.length];
-                for (int i = 0; i < methodParameters.length; ++i) {
-                    if (i < parameters.length) {
-                        properParameters[i] = parameters[i];
-                    } else {
-                        properParameters[i] = null;
-                    }
-                }
-            }
-
-            // Invalid primitive
-            for (int i = 0; i < properParameters.length; ++i) {
-                Object parameter = properParameters[i];
-
-                if (parameter == null) {
-                    Class< ? > methodParameter = methodParameters[i];
-
-                    if (methodParameter.isPrimitive()) {
-                        properParameters[i] = XMLUtils.defaultValue(methodParameter);
-                    }
-                }
-            }
-
-            // Send event
             try {
-                eventMethod.invoke(listener, properParameters);
+                this.listenerElement.fireOnEvent(listener, getParameters());
             } catch (Exception e) {
-                throw new SAXException("Failed to invoke event [" + eventMethod + "]", e);
+                throw new SAXException("Failed to invoke event [" + this.listenerElement.getListenerElement()
+                    .getOnMethod() + "]", e);
             }
         }
     }
 
     public DefaultXMLParser(Object listener, ListenerDescriptor listenerDescriptor, ConverterManager stringConverter,
         ParameterManager parameterManager, XMLConfiguration configuration)
+    {
+        this(listener, new XMLListenerDescriptor(listenerDescriptor), stringConverter, parameterManager,
+            configuration);
+    }
+
+    /**
+     * @param listener the listener to send events to
+     * @param listenerDescriptor the events supported by the listener
+     * @param stringConverter used to convert simple types
+     * @param parameterManager used to convert complex parameters
+     * @param configuration the configuration of the parser
+     * @since 5.2M1
+     */
+    public DefaultXMLParser(Object listener, XMLListenerDescriptor listenerDescriptor,
+        ConverterManager stringConverter, ParameterManager parameterManager, XMLConfiguration configuration)
     {
         this.listener = listener;
         this.listenerDescriptor = listenerDescriptor;
@@ -238,7 +229,7 @@ public void startElement(String uri, String localName, String qName, Attributes
             if (currentBlock != null) {
                 // send previous event
                 if (currentBlock.listenerElement != null && !currentBlock.beginSent) {
-                    currentBlock.fireBeginEvent(this.listener, currentBlock.getParametersTable());
+                    currentBlock.fireBeginEvent(this.listener);
                 }
             }
 
@@ -247,8 +238,8 @@ public void startElement(String uri, String localName, String qName, Attributes
 
             currentBlock = this.blockStack.push(block);
 
-            if (!block.isContainer() && block.listenerElement.getParameters().size() == 1
-                && XMLUtils.isSimpleType(block.listenerElement.getParameters().get(0))) {
+            if (!block.isContainer() && block.listenerElement.getParameterCount() == 1
+                && block.listenerElement.isSimpleParameter(0)) {
                 this.content = new StringBuilder();
             }
 
@@ -259,13 +250,12 @@ public void startElement(String uri, String localName, String qName, Attributes
                 if (this.configuration.getElementParameterPattern().matcher(attributeName).matches()) {
                     int parameterIndex = extractParameterIndex(attributeName);
 
-                    Type type = block.listenerElement.getParameters().get(parameterIndex);
-                    Class< ? > typeClass = ReflectionUtils.getTypeClass(type);
-
-                    if (XMLUtils.isSimpleType(typeClass)) {
-                        block.setParameter(parameterIndex, this.stringConverter.convert(type, attributes.getValue(i)));
+                    if (block.listenerElement.isSimpleParameter(parameterIndex)) {
+                        block.setParameter(parameterIndex, this.stringConverter.convert(
+                            block.listenerElement.getParameterType(parameterIndex), attributes.getValue(i)));
                     } else {
-                        block.setParameter(parameterIndex, XMLUtils.defaultValue(typeClass));
+                        block.setParameter(parameterIndex,
+                            XMLUtils.defaultValue(block.listenerElement.getParameterClass(parameterIndex)));
                     }
                 }
             }
@@ -273,17 +263,12 @@ public void startElement(String uri, String localName, String qName, Attributes
             if (onParameterElement(qName)) {
                 // starting a new block parameter
                 if (currentBlock.listenerElement != null) {
-                    try {
-                        currentBlock.parameterDOMBuilder = new Sax2Dom();
-                    } catch (ParserConfigurationException e) {
-                        throw new SAXException("Failed to create new Sax2Dom handler", e);
-                    }
-                    currentBlock.parameterDOMBuilder.startDocument();
+                    currentBlock.parameterBuilder = new ParameterElementBuilder();
                 }
             }
 
-            if (currentBlock.parameterDOMBuilder != null) {
-                currentBlock.parameterDOMBuilder.startElement(uri, localName, qName, attributes);
+            if (currentBlock.parameterBuilder != null) {
+                currentBlock.parameterBuilder.startElement(uri, localName, qName, attributes);
             }
         }
 
@@ -304,67 +289,81 @@ public void endElement(String uri, String localName, String qName) throws SAXExc
                 // Flush pending begin event and send end event or send on event
                 if (block.isContainer()) {
                     if (!block.beginSent) {
-                        block.fireBeginEvent(this.listener, block.getParametersTable());
+                        block.fireBeginEvent(this.listener);
                     }
 
-                    block.fireEndEvent(this.listener, block.getParametersTable());
+                    block.fireEndEvent(this.listener);
                 } else {
-                    if (block.getParametersList().size() == 0
-                        && this.listenerDescriptor.getElements().get(qName.toLowerCase()).getParameters().size() == 1) {
-                        block.setParameter(
-                            0,
-                            this.stringConverter.convert(this.listenerDescriptor.getElements().get(qName.toLowerCase())
-                                .getParameters().get(0), this.content.toString()));
+                    if (!block.hasParameters() && this.listenerDescriptor.getElement(qName).getParameterCount() == 1) {
+                        block.setParameter(0, this.stringConverter.convert(
+                            this.listenerDescriptor.getElement(qName).getParameterType(0), this.content.toString()));
                         this.content = null;
                     }
 
-                    block.fireOnEvent(this.listener, block.getParametersTable());
+                    block.fireOnEvent(this.listener);
                 }
             }
-        } else if (currentBlock.parameterDOMBuilder != null) {
-            currentBlock.parameterDOMBuilder.endElement(uri, localName, qName);
+        } else if (currentBlock.parameterBuilder != null) {
+            currentBlock.parameterBuilder.endElement();
 
             if (onParameterElement(qName)) {
                 if (currentBlock.listenerElement != null) {
-                    currentBlock.parameterDOMBuilder.endDocument();
-
-                    ListenerElement listenerElement = currentBlock.listenerElement;
-                    Type parameterType = listenerElement.getParameters().get(extractParameterIndex(qName));
-                    Element rootElement = currentBlock.parameterDOMBuilder.getRootElement();
-
                     int parameterIndex = extractParameterIndex(qName);
+                    Type parameterType = currentBlock.listenerElement.getParameterType(parameterIndex);
+
                     currentBlock.setParameter(parameterIndex,
-                        this.parameterManager.unSerialize(parameterType, rootElement));
+                        unSerialize(parameterType, currentBlock.parameterBuilder.getRootElement()));
                 }
 
-                currentBlock.parameterDOMBuilder = null;
+                currentBlock.parameterBuilder = null;
             }
         }
     }
 
-    @Override
-    public void characters(char[] ch, int start, int length) throws SAXException
+    /**
+     * Convert a parameter directly when possible and with the {@link ParameterManager} otherwise.
+     * 
+     * @param type the type of the parameter
+     * @param rootElement the element containing the serialized parameter
+     * @return the parameter value
+     * @throws SAXException when failing to create the DOM needed by the {@link ParameterManager}
+     */
+    private Object unSerialize(Type type, ParameterElement rootElement) throws SAXException
     {
-        if (!this.blockStack.isEmpty() && this.blockStack.peek().parameterDOMBuilder != null) {
-            this.blockStack.peek().parameterDOMBuilder.characters(ch, start, length);
-        } else if (this.content != null) {
-            this.content.append(ch, start, length);
+        Object value = this.parameterParser.parse(type, rootElement);
+
+        if (value == ParameterElementParser.UNSUPPORTED) {
+            Sax2Dom domBuilder;
+            try {
+                domBuilder = new Sax2Dom();
+            } catch (ParserConfigurationException e) {
+                throw new SAXException("Failed to create new Sax2Dom handler", e);
+            }
+            domBuilder.startDocument();
+            rootElement.send(domBuilder);
+            domBuilder.endDocument();
+
+            value = this.parameterManager.unSerialize(type, domBuilder.getRootElement());
         }
+
+        return value;
     }
 
     @Override
-    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
+    public void characters(char[] ch, int start, int length) throws SAXException
     {
-        if (!this.blockStack.isEmpty() && this.blockStack.peek().parameterDOMBuilder != null) {
-            this.blockStack.peek().parameterDOMBuilder.ignorableWhitespace(ch, start, length);
+        if (!this.blockStack.isEmpty() && this.blockStack.peek().parameterBuilder != null) {
+            this.blockStack.peek().parameterBuilder.characters(ch, start, length);
+        } else if (this.content != null) {
+            this.content.append(ch, start, length);
         }
     }
 
     @Override
-    public void skippedEntity(String name) throws SAXException
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException
     {
-        if (!this.blockStack.isEmpty() && this.blockStack.peek().parameterDOMBuilder != null) {
-            this.blockStack.peek().parameterDOMBuilder.skippedEntity(name);
+        if (!this.blockStack.isEmpty() && this.blockStack.peek().parameterBuilder != null) {
+            this.blockStack.peek().parameterBuilder.characters(ch, start, length);
         }
     }
 
@@ -377,8 +376,6 @@ private Block getBlock(String qName, Attributes attributes)
             blockName = qName;
         }
 
-        ListenerElement element = this.listenerDescriptor.getElements().get(blockName.toLowerCase());
-
-        return new Block(element, this.elementDepth);
+        return new Block(this.listenerDescriptor.getElement(blockName), this.elementDepth);
     }
 }
@@ -24,8 +24,8 @@
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.properties.ConverterManager;
-import org.xwiki.rendering.listener.descriptor.ListenerDescriptorManager;
 import org.xwiki.rendering.xml.internal.XMLConfiguration;
+import org.xwiki.rendering.xml.internal.XMLListenerDescriptorManager;
 import org.xwiki.rendering.xml.internal.parameter.ParameterManager;
 
 /**
@@ -48,7 +48,7 @@ public class DefaultXMLParserFactory implements XMLParserFactory
      * The events supported by the listener.
      */
     @Inject
-    private ListenerDescriptorManager descriptorManager;
+    private XMLListenerDescriptorManager descriptorManager;
 
     /**
      * Used to convert simple types.
@@ -21,10 +21,6 @@
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
-import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Pattern;
 
 import javax.inject.Singleton;
 
@@ -34,12 +30,11 @@
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.properties.ConverterManager;
 import org.xwiki.rendering.listener.descriptor.ListenerDescriptor;
-import org.xwiki.rendering.listener.descriptor.ListenerElement;
 import org.xwiki.rendering.xml.internal.XMLConfiguration;
-import org.xwiki.rendering.xml.internal.XMLUtils;
+import org.xwiki.rendering.xml.internal.XMLListenerDescriptor;
+import org.xwiki.rendering.xml.internal.XMLListenerElement;
 import org.xwiki.rendering.xml.internal.parameter.ParameterManager;
 
 /**
@@ -52,13 +47,11 @@
 @Singleton
 public class DefaultXMLSerializer implements InvocationHandler
 {
-    private static final Pattern VALID_ELEMENTNAME = Pattern.compile("[A-Za-z][A-Za-z0-9:_.-]*");
-
     private ContentHandler contentHandler;
 
     private ParameterManager parameterManager;
 
-    private ListenerDescriptor descriptor;
+    private XMLListenerDescriptor descriptor;
 
     private ConverterManager converter;
 
@@ -66,6 +59,20 @@ public class DefaultXMLSerializer implements InvocationHandler
 
     public DefaultXMLSerializer(ContentHandler contentHandler, ParameterManager parameterManager,
         ListenerDescriptor descriptor, ConverterManager converter, XMLConfiguration configuration)
+    {
+        this(contentHandler, parameterManager, new XMLListenerDescriptor(descriptor), converter, configuration);
+    }
+
+    /**
+     * @param contentHandler the handler to send SAX events to
+     * @param parameterManager used to serialize complex parameters
+     * @param descriptor the events supported by the listener
+     * @param converter used to convert simple parameters
+     * @param configuration the configuration of the serializer
+     * @since 5.2M1
+     */
+    public DefaultXMLSerializer(ContentHandler contentHandler, ParameterManager parameterManager,
+        XMLListenerDescriptor descriptor, ConverterManager converter, XMLConfiguration configuration)
     {
         this.contentHandler = contentHandler;
         this.parameterManager = parameterManager;
@@ -74,142 +81,105 @@ public DefaultXMLSerializer(ContentHandler contentHandler, ParameterManager para
         this.configuration = configuration != null ? configuration : new XMLConfiguration();
     }
 
-    private boolean isValidBlockElementName(String blockName)
-    {
-        return VALID_ELEMENTNAME.matcher(blockName).matches()
-            && !this.configuration.getElementParameter().equals(blockName);
-    }
-
-    private String getBlockName(String eventName, String prefix)
+    private boolean isValidBlockElementName(XMLListenerElement element)
     {
-        String blockName = eventName.substring(prefix.length());
-        blockName = Character.toLowerCase(blockName.charAt(0)) + blockName.substring(1);
-
-        return blockName;
+        return element.isValidElementName() && !this.configuration.getElementParameter().equals(element.getName());
     }
 
-    private void addInlineParameters(AttributesImpl attributes, List<Object> parameters, ListenerElement element)
+    /**
+     * Note: the passed parameters are modified, which is fine since the proxy creates a new table for each call.
+     */
+    private void addInlineParameters(AttributesImpl attributes, Object[] parameters, XMLListenerElement element)
     {
-        for (int i = 0; i < parameters.size(); ++i) {
-            Object parameter = parameters.get(i);
+        for (int i = 0; i < parameters.length; ++i) {
+            Object parameter = parameters[i];
 
             if (parameter != null) {
-                Type type = element.getParameters().get(i);
-                Class< ? > typeClass = ReflectionUtils.getTypeClass(type);
-
-                if (XMLUtils.isSimpleType(typeClass)) {
+                if (element.isSimpleParameter(i)) {
                     attributes.addAttribute(null, null, this.configuration.getElementParameter() + i, null,
                         this.converter.<String> convert(String.class, parameter));
 
-                    parameters.set(i, null);
-                } else if (ObjectUtils.equals(XMLUtils.defaultValue(typeClass), parameter)) {
+                    parameters[i] = null;
+                } else if (ObjectUtils.equals(element.getDefaultParameter(i), parameter)) {
                     attributes.addAttribute(null, null, this.configuration.getElementParameter() + i, null, "");
 
-                    parameters.set(i, null);
+                    parameters[i] = null;
                 }
             }
         }
     }
 
-    private AttributesImpl createStartAttributes(String blockName, List<Object> parameters)
+    private AttributesImpl createStartAttributes(XMLListenerElement element, Object[] parameters)
     {
         AttributesImpl attributes = new AttributesImpl();
 
-        if (!isValidBlockElementName(blockName)) {
-            attributes.addAttribute(null, null, this.configuration.getAttributeBlockName(), null, blockName);
+        if (!isValidBlockElementName(element)) {
+            attributes.addAttribute(null, null, this.configuration.getAttributeBlockName(), null, element.getName());
         }
 
         if (parameters != null) {
-            ListenerElement element = this.descriptor.getElements().get(blockName.toLowerCase());
-
             addInlineParameters(attributes, parameters, element);
         }
 
         return attributes;
     }
 
-    private void removeDefaultParameters(List<Object> parameters, ListenerElement descriptor)
+    private void removeDefaultParameters(Object[] parameters, XMLListenerElement element)
     {
         if (parameters != null) {
-            for (int i = 0; i < parameters.size(); ++i) {
-                Object value = parameters.get(i);
+            for (int i = 0; i < parameters.length; ++i) {
+                Object value = parameters[i];
 
-                if (value != null && !shouldPrintParameter(value, i, descriptor)) {
-                    parameters.set(i, null);
+                if (value != null && !shouldPrintParameter(value, i, element)) {
+                    parameters[i] = null;
                 }
             }
         }
     }
 
-    private void beginEvent(String eventName, Object[] parameters)
+    private String getElementName(XMLListenerElement element)
     {
-        String blockName = getBlockName(eventName, "begin");
-
-        ListenerElement element = this.descriptor.getElements().get(blockName.toLowerCase());
-
-        List<Object> elementParameters = parameters != null ? Arrays.asList(parameters) : null;
+        return isValidBlockElementName(element) ? element.getName() : this.configuration.getElementBlock();
+    }
 
+    private void beginEvent(XMLListenerElement element, Object[] parameters)
+    {
         // Remove useless parameters
-        removeDefaultParameters(elementParameters, element);
+        removeDefaultParameters(parameters, element);
 
         // Put as attributes parameters which are simple enough to not require full XML serialization
-        AttributesImpl attributes = createStartAttributes(blockName, elementParameters);
-
-        // Get proper element name
-        String elementName;
-        if (isValidBlockElementName(blockName)) {
-            elementName = blockName;
-        } else {
-            elementName = this.configuration.getElementBlock();
-        }
+        AttributesImpl attributes = createStartAttributes(element, parameters);
 
         // Print start element
-        startElement(elementName, attributes);
+        startElement(getElementName(element), attributes);
 
         // Print complex parameters
-        printParameters(elementParameters, element);
+        printParameters(parameters, element);
     }
 
-    private void endEvent(String eventName)
+    private void endEvent(XMLListenerElement element)
     {
-        String blockName = getBlockName(eventName, "end");
-
-        if (isValidBlockElementName(blockName)) {
-            endElement(blockName);
-        } else {
-            endElement(this.configuration.getElementBlock());
-        }
+        endElement(getElementName(element));
     }
 
-    private void onEvent(String eventName, Object[] parameters)
+    private void onEvent(XMLListenerElement element, Object[] parameters)
     {
-        String blockName = getBlockName(eventName, "on");
-
-        ListenerElement element = this.descriptor.getElements().get(blockName.toLowerCase());
-
-        List<Object> elementParameters = parameters != null ? Arrays.asList(parameters) : null;
-
         // Remove useless parameters
-        removeDefaultParameters(elementParameters, element);
+        removeDefaultParameters(parameters, element);
 
         // Put as attributes parameters which are simple enough to not require full XML serialization
         AttributesImpl attributes =
-            (elementParameters != null && elementParameters.size() > 1) ? createStartAttributes(blockName,
-                Arrays.asList(parameters)) : new AttributesImpl();
+            (parameters != null && parameters.length > 1) ? createStartAttributes(element, parameters)
+                : new AttributesImpl();
 
         // Get proper element name
-        String elementName;
-        if (isValidBlockElementName(blockName)) {
-            elementName = blockName;
-        } else {
-            elementName = this.configuration.getElementBlock();
-        }
+        String elementName = getElementName(element);
 
         // Print start element
         startElement(elementName, attributes);
 
         // Print complex parameters
-        if (parameters != null && parameters.length == 1 && XMLUtils.isSimpleType(element.getParameters().get(0))) {
+        if (parameters != null && parameters.length == 1 && element.isSimpleParameter(0)) {
             String value = parameters[0].toString();
             try {
                 this.contentHandler.characters(value.toCharArray(), 0, value.length());
@@ -217,43 +187,34 @@ private void onEvent(String eventName, Object[] parameters)
                 throw new RuntimeException("Failed to send sax event", e);
             }
         } else {
-            printParameters(elementParameters, element);
+            printParameters(parameters, element);
         }
 
         // Print end element
         endElement(elementName);
     }
 
-    private boolean shouldPrintParameter(Object value, int index, ListenerElement descriptor)
+    private boolean shouldPrintParameter(Object value, int index, XMLListenerElement element)
     {
         boolean print = true;
 
-        Type type = descriptor.getParameters().get(index);
-
-        if (type instanceof Class) {
-            Class< ? > typeClass = (Class< ? >) type;
-            try {
-                if (typeClass.isPrimitive()) {
-                    print = !XMLUtils.defaultValue(typeClass).equals(value);
-                }
-            } catch (Exception e) {
-                // Should never happen
-            }
+        if (element.getParameterType(index) instanceof Class && element.getParameterClass(index).isPrimitive()) {
+            print = !element.getDefaultParameter(index).equals(value);
         }
 
         return print;
     }
 
-    private void printParameters(List<Object> parameters, ListenerElement descriptor)
+    private void printParameters(Object[] parameters, XMLListenerElement element)
     {
-        if (parameters != null && !parameters.isEmpty()) {
-            for (int i = 0; i < parameters.size(); ++i) {
-                Object value = parameters.get(i);
+        if (parameters != null) {
+            for (int i = 0; i < parameters.length; ++i) {
+                Object value = parameters[i];
 
-                if (value != null && shouldPrintParameter(value, i, descriptor)) {
+                if (value != null && shouldPrintParameter(value, i, element)) {
                     startElement(this.configuration.getElementParameter() + i);
 
-                    this.parameterManager.serialize(descriptor.getParameters().get(i), value, this.contentHandler);
+                    this.parameterManager.serialize(element.getParameterType(i), value, this.contentHandler);
 
                     endElement(this.configuration.getElementParameter() + i);
                 }
@@ -310,16 +271,20 @@ public Object invoke(Object proxy, Method method, Object[] args) throws Throwabl
     {
         Object result = null;
 
-        if (method.getName().equals("setContentHandler")) {
+        XMLListenerElement element = this.descriptor.getElement(method);
+
+        if (element != null) {
+            if (element.isBeginMethod(method)) {
+                beginEvent(element, args);
+            } else if (element.isEndMethod(method)) {
+                endEvent(element);
+            } else {
+                onEvent(element, args);
+            }
+        } else if (method.getName().equals("setContentHandler")) {
             this.contentHandler = (ContentHandler) args[0];
         } else if (method.getName().equals("getContentHandler")) {
             result = this.contentHandler;
-        } else if (method.getName().startsWith("begin")) {
-            beginEvent(method.getName(), args);
-        } else if (method.getName().startsWith("end")) {
-            endEvent(method.getName());
-        } else if (method.getName().startsWith("on")) {
-            onEvent(method.getName(), args);
         } else {
             throw new NoSuchMethodException(method.toGenericString());
         }
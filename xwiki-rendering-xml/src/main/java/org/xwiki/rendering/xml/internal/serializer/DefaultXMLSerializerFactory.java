@@ -27,8 +27,8 @@
 import org.xml.sax.ContentHandler;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.properties.ConverterManager;
-import org.xwiki.rendering.listener.descriptor.ListenerDescriptorManager;
 import org.xwiki.rendering.xml.internal.XMLConfiguration;
+import org.xwiki.rendering.xml.internal.XMLListenerDescriptorManager;
 import org.xwiki.rendering.xml.internal.parameter.ParameterManager;
 
 /**
@@ -51,7 +51,7 @@ public class DefaultXMLSerializerFactory implements XMLSerializerFactory
      * The events supported by the listener.
      */
     @Inject
-    private ListenerDescriptorManager descriptorManager;
+    private XMLListenerDescriptorManager descriptorManager;
 
     /**
      * Used to convert simple types.
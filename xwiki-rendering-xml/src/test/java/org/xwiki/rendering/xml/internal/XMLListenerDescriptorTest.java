@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.VoidListener;
+import org.xwiki.rendering.listener.descriptor.ListenerDescriptor;
+import org.xwiki.rendering.listener.descriptor.ListenerDescriptorManager;
+import org.xwiki.rendering.listener.descriptor.ListenerElement;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Validate {@link DefaultXMLListenerDescriptorManager}, {@link XMLListenerDescriptor} and {@link XMLListenerElement}.
+ * 
+ * @version $Id$
+ */
+public class XMLListenerDescriptorTest extends AbstractComponentTestCase
+{
+    private XMLListenerDescriptorManager manager;
+
+    private ListenerDescriptor listenerDescriptor;
+
+    private XMLListenerDescriptor descriptor;
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.manager = getComponentManager().getInstance(XMLListenerDescriptorManager.class);
+        this.listenerDescriptor =
+            getComponentManager().<ListenerDescriptorManager>getInstance(ListenerDescriptorManager.class)
+                .getListenerDescriptor(Listener.class);
+        this.descriptor = this.manager.getListenerDescriptor(Listener.class);
+    }
+
+    @Test
+    public void getListenerDescriptor()
+    {
+        Assert.assertSame(this.listenerDescriptor, this.descriptor.getListenerDescriptor());
+        Assert.assertSame(this.descriptor, this.manager.getListenerDescriptor(Listener.class));
+    }
+
+    @Test
+    public void getElement()
+    {
+        for (Map.Entry<String, ListenerElement> entry : this.listenerDescriptor.getElements().entrySet()) {
+            ListenerElement listenerElement = entry.getValue();
+            XMLListenerElement element = this.descriptor.getElement(entry.getKey());
+
+            Assert.assertSame(listenerElement, element.getListenerElement());
+            Assert.assertSame(element, this.descriptor.getElement(listenerElement.getName()));
+            Assert.assertSame(element, this.descriptor.getElement(listenerElement.getName().toUpperCase()));
+            Assert.assertEquals(listenerElement.getOnMethod() == null, element.isContainer());
+            for (Method method : Arrays.asList(listenerElement.getBeginMethod(), listenerElement.getEndMethod(),
+                listenerElement.getOnMethod())) {
+                if (method != null) {
+                    Assert.assertSame(element, this.descriptor.getElement(method));
+                }
+            }
+        }
+
+        Assert.assertNull(this.descriptor.getElement("unknown"));
+    }
+
+    /**
+     * The parameter details must be the same as the ones the parser and serializer used to compute for each event.
+     */
+    @Test
+    public void getParameters()
+    {
+        for (ListenerElement listenerElement : this.listenerDescriptor.getElements().values()) {
+            XMLListenerElement element = this.descriptor.getElement(listenerElement.getName());
+            List<Type> parameters = listenerElement.getParameters();
+
+            Assert.assertEquals(parameters.size(), element.getParameterCount());
+            Object[] newParameters = element.newParameters();
+            Assert.assertEquals(parameters.size(), newParameters.length);
+            for (int i = 0; i < parameters.size(); ++i) {
+                Type type = parameters.get(i);
+                Class< ? > typeClass = ReflectionUtils.getTypeClass(type);
+
+                Assert.assertEquals(type, element.getParameterType(i));
+                Assert.assertEquals(typeClass, element.getParameterClass(i));
+                Assert.assertEquals(XMLUtils.isSimpleType(type), element.isSimpleParameter(i));
+                Assert.assertEquals(XMLUtils.defaultValue(typeClass), element.getDefaultParameter(i));
+                Assert.assertEquals(typeClass.isPrimitive() ? XMLUtils.defaultValue(typeClass) : null,
+                    newParameters[i]);
+            }
+        }
+    }
+
+    @Test
+    public void fireEvents() throws Exception
+    {
+        final List<String> events = new ArrayList<String>();
+        Listener listener = new VoidListener()
+        {
+            @Override
+            public void beginFormat(Format format, Map<String, String> parameters)
+            {
+                events.add("beginFormat " + format + ' ' + parameters);
+            }
+
+            @Override
+            public void endFormat(Format format, Map<String, String> parameters)
+            {
+                events.add("endFormat " + format + ' ' + parameters);
+            }
+
+            @Override
+            public void onEmptyLines(int count)
+            {
+                events.add("onEmptyLines " + count);
+            }
+        };
+
+        XMLListenerElement format = this.descriptor.getElement("format");
+        Object[] parameters = format.newParameters();
+        parameters[0] = Format.BOLD;
+        parameters[1] = Collections.singletonMap("class", "value");
+        format.fireBeginEvent(listener, parameters);
+        format.fireEndEvent(listener, parameters);
+
+        this.descriptor.getElement("emptyLines").fireOnEvent(listener,
+            this.descriptor.getElement("emptyLines").newParameters());
+
+        Assert.assertEquals(
+            Arrays.asList("beginFormat BOLD {class=value}", "endFormat BOLD {class=value}", "onEmptyLines 0"), events);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.xml.internal.parameter;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.rendering.syntax.SyntaxType;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+import org.xwiki.xml.Sax2Dom;
+
+import com.thoughtworks.xstream.converters.reflection.Sun14ReflectionProvider;
+import com.thoughtworks.xstream.core.JVM;
+
+/**
+ * Validate {@link ParameterElementParser} against {@link XStreamParameterManager}, which it must behave like.
+ * 
+ * @version $Id$
+ */
+public class ParameterElementParserTest extends AbstractComponentTestCase
+{
+    private static final Type STRING_MAP = new DefaultParameterizedType(null, Map.class, String.class, String.class);
+
+    /**
+     * XStream can create objects without a default constructor only with the reflection provider it uses on the JVMs
+     * it knows.
+     */
+    private static final boolean XSTREAM_CREATES_ANY_OBJECT =
+        new JVM().bestReflectionProvider() instanceof Sun14ReflectionProvider;
+
+    private ParameterManager parameterManager;
+
+    private ParameterElementParser parser = new ParameterElementParser();
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.parameterManager = getComponentManager().getInstance(ParameterManager.class);
+    }
+
+    @Test
+    public void parseString() throws Exception
+    {
+        assertParsedDirectly(String.class, "value with <markup> & \"quotes\"");
+    }
+
+    @Test
+    public void parseEnum() throws Exception
+    {
+        assertParsedDirectly(Format.class, Format.BOLD);
+    }
+
+    @Test
+    public void parseStringMap() throws Exception
+    {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        map.put("class", "value");
+        map.put("style", null);
+        map.put("empty", "");
+
+        assertParsedDirectly(STRING_MAP, map);
+    }
+
+    @Test
+    public void parseResourceReference() throws Exception
+    {
+        ResourceReference reference = new ResourceReference("Space.Page", ResourceType.DOCUMENT);
+        reference.setTyped(false);
+        reference.setParameter("queryString", "a=b");
+        reference.addBaseReference("wiki:Space.Base");
+        reference.addBaseReference("Other");
+
+        assertParsedDirectly(ResourceReference.class, reference);
+    }
+
+    @Test
+    public void parseResourceReferenceWithoutParameters() throws Exception
+    {
+        assertParsedDirectly(ResourceReference.class, new ResourceReference("http://xwiki.org", ResourceType.URL));
+    }
+
+    @Test
+    public void parseSyntax() throws Exception
+    {
+        assertParsedDirectly(Syntax.class, Syntax.XWIKI_2_1);
+        assertParsedDirectly(Syntax.class, new Syntax(new SyntaxType("custom", "Custom"), "1.0", "qualifier"));
+    }
+
+    @Test
+    public void parseMetaData() throws Exception
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put(MetaData.SYNTAX, Syntax.XWIKI_2_0);
+        values.put(MetaData.SOURCE, "Space.Page");
+        values.put("integer", -42);
+        values.put("long", Long.MAX_VALUE);
+        values.put("boolean", Boolean.TRUE);
+        values.put("null", null);
+
+        assertParsedDirectly(MetaData.class, new MetaData(values));
+    }
+
+    @Test
+    public void parseMetaDataWithUnknownValue() throws Exception
+    {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        values.put(MetaData.SOURCE, "Space.Page");
+        values.put("date", new Date(0));
+
+        MetaData metaData = new MetaData(values);
+
+        Assert.assertEquals(metaData, assertParsedWithXStream(MetaData.class, metaData));
+    }
+
+    @Test
+    public void parseWithAttribute() throws Exception
+    {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute(null, "class", "class", "CDATA", "string");
+        ParameterElementBuilder builder = new ParameterElementBuilder();
+        builder.startElement(null, "p0", "p0", attributes);
+        builder.characters("value".toCharArray(), 0, 5);
+        builder.endElement();
+        ParameterElement element = builder.getRootElement();
+
+        Assert.assertSame(ParameterElementParser.UNSUPPORTED, this.parser.parse(String.class, element));
+        Assert.assertEquals("value", unSerialize(String.class, element));
+    }
+
+    @Test
+    public void parseUnknownType() throws Exception
+    {
+        Assert.assertEquals(new Date(0), assertParsedWithXStream(Date.class, new Date(0)));
+        List<String> list = Arrays.asList("one", "two");
+        Assert.assertEquals(list,
+            assertParsedWithXStream(new DefaultParameterizedType(null, List.class, String.class), list));
+    }
+
+    private void assertParsedDirectly(Type type, Object value) throws Exception
+    {
+        ParameterElement element = serialize(type, value);
+
+        Object parsedValue = this.parser.parse(type, element);
+
+        Assert.assertNotSame(ParameterElementParser.UNSUPPORTED, parsedValue);
+        Assert.assertEquals(value, parsedValue);
+        if (canUnSerialize(value)) {
+            Assert.assertEquals(unSerialize(type, element), parsedValue);
+        }
+    }
+
+    /**
+     * @return the value converted by XStream
+     */
+    private Object assertParsedWithXStream(Type type, Object value) throws Exception
+    {
+        ParameterElement element = serialize(type, value);
+
+        Assert.assertSame(ParameterElementParser.UNSUPPORTED, this.parser.parse(type, element));
+
+        return unSerialize(type, element);
+    }
+
+    /**
+     * @return true if XStream can create the value on this JVM
+     */
+    private boolean canUnSerialize(Object value)
+    {
+        if (value instanceof MetaData) {
+            for (Object metaDataValue : ((MetaData) value).getMetaData().values()) {
+                if (!canUnSerialize(metaDataValue)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        // The tested types without default constructor
+        return XSTREAM_CREATES_ANY_OBJECT || !(value instanceof ResourceReference || value instanceof Syntax);
+    }
+
+    /**
+     * Serialize the value in a parameter element the same way the XML serializer does.
+     */
+    private ParameterElement serialize(Type type, Object value)
+    {
+        final ParameterElementBuilder builder = new ParameterElementBuilder();
+
+        builder.startElement(null, "p0", "p0", new AttributesImpl());
+        this.parameterManager.serialize(type, value, new DefaultHandler()
+        {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes)
+            {
+                builder.startElement(uri, localName, qName, attributes);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName)
+            {
+                builder.endElement();
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length)
+            {
+                builder.characters(ch, start, length);
+            }
+        });
+        builder.endElement();
+
+        return builder.getRootElement();
+    }
+
+    /**
+     * Convert the parameter element the way the XML parser does when it can't do it directly.
+     */
+    private Object unSerialize(Type type, ParameterElement element) throws Exception
+    {
+        Sax2Dom domBuilder = new Sax2Dom();
+        domBuilder.startDocument();
+        element.send(domBuilder);
+        domBuilder.endDocument();
+
+        return this.parameterManager.unSerialize(type, domBuilder.getRootElement());
+    }
+}